@@ -35,6 +35,7 @@ public abstract class YAbstractSession {
 
     private String _handle ;                                    // the session handle
     private long _interval;
+    private volatile long _lastAccess;                          // msecs
 
 
    /**
@@ -46,6 +47,7 @@ public abstract class YAbstractSession {
     public YAbstractSession(long timeOutSeconds) {
         _handle = UUID.randomUUID().toString();
         setInterval(timeOutSeconds);
+        touch();
     }
 
 
@@ -54,6 +56,14 @@ public abstract class YAbstractSession {
     public long getInterval() { return _interval; }
 
 
+    /**
+     * Records activity on this session, restarting its idle period.
+     */
+    public void touch() { _lastAccess = System.currentTimeMillis(); }
+
+    public long getLastAccess() { return _lastAccess; }
+
+
     /*****************************************************************/
     
     // sets secs to msecs, default to 60 mins if 0 seconds passed
@@ -24,6 +24,7 @@ import org.yawlfoundation.yawl.logging.table.YAuditEvent;
 import org.yawlfoundation.yawl.util.HibernateEngine;
 
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -31,7 +32,8 @@ import java.util.concurrent.ConcurrentHashMap;
  * An extended HashMap that manages connections to the engine from custom services
  * and external applications.
  * <p/>
- * The map is of the form [sessionHandle, session].
+ * The map is of the form [sessionHandle, session]. Sessions are also indexed by
+ * client and by service URI, so connection checks don't scan every session.
  *
  * @author Michael Adams
  * @since 2.1
@@ -44,6 +46,12 @@ public class YSessionCache extends ConcurrentHashMap<String, YSession>
     private YSessionTimer _timer;
     private HibernateEngine _db;                         // writes audit log
 
+    // [client, sessions] and [service uri, sessions]
+    private final Map<YClient, Set<YSession>> _clientIndex =
+            new ConcurrentHashMap<YClient, Set<YSession>>();
+    private final Map<String, Set<YSession>> _uriIndex =
+            new ConcurrentHashMap<String, Set<YSession>>();
+
     public YSessionCache() {
         super();
         _timer = new YSessionTimer(this);
@@ -117,10 +125,7 @@ public class YSessionCache extends ConcurrentHashMap<String, YSession>
      * @return true if the service has an active session.
      */
     public boolean isServiceConnected(String uri) {
-        for (YSession session : this.values()) {
-            if (session.getURI().equals(uri)) return true ;
-        }
-        return false;
+        return uri != null && _uriIndex.containsKey(uri);
     }
 
 
@@ -130,10 +135,7 @@ public class YSessionCache extends ConcurrentHashMap<String, YSession>
      * @return true if the client has an active session.
      */
     public boolean isClientConnected(YExternalClient client) {
-        for (YSession session : this.values()) {
-            if (session.getClient() == client) return true ;
-        }
-        return false;
+        return getClientSession(client) != null;
     }
 
 
@@ -167,12 +169,9 @@ public class YSessionCache extends ConcurrentHashMap<String, YSession>
      * writes the disconnection to the session audit log.
      */
     public void disconnect(YClient client) {
-        for (String handle : this.keySet()) {
-            YSession session = this.get(handle);
-            if (session.getClient() == client) {
-                disconnect(handle);
-                break;
-            }
+        YSession session = getClientSession(client);
+        if (session != null) {
+            disconnect(session.getHandle());
         }
     }
 
@@ -199,6 +198,20 @@ public class YSessionCache extends ConcurrentHashMap<String, YSession>
     }
 
 
+    /**
+     * Removes all sessions (without auditing them).
+     */
+    @Override
+    public void clear() {
+        for (YSession session : this.values()) {
+            _timer.expire(session);
+        }
+        super.clear();
+        _clientIndex.clear();
+        _uriIndex.clear();
+    }
+
+
     /******************************************************************************/
 
     // PRIVATE METHODS //
@@ -228,6 +241,8 @@ public class YSessionCache extends ConcurrentHashMap<String, YSession>
     private String storeSession(YSession session) {
         String handle = session.getHandle();
         this.put(handle, session);
+        addToIndex(_clientIndex, session.getClient(), session);
+        addToIndex(_uriIndex, session.getURI(), session);
         _timer.add(session);
         audit(session.getClient().getUserName(), YAuditEvent.Action.logon);
         return handle;        
@@ -238,12 +253,65 @@ public class YSessionCache extends ConcurrentHashMap<String, YSession>
         YSession session = this.remove(handle);
         if (session != null) {
             _timer.expire(session);
+            removeFromIndex(_clientIndex, session.getClient(), session);
+            removeFromUriIndex(session);
             audit(session.getClient().getUserName(), action);
         }
         return session;
     }
 
 
+    // clients are matched on identity, as the index is keyed on client equality
+    private YSession getClientSession(YClient client) {
+        if (client == null) return null;
+        Set<YSession> sessions = _clientIndex.get(client);
+        if (sessions != null) {
+            for (YSession session : sessions) {
+                if (session.getClient() == client) return session;
+            }
+        }
+        return null;
+    }
+
+
+    // adds and removes are done atomically per key, so that an empty set is never
+    // discarded while a session is being added to it
+    private <K> void addToIndex(Map<K, Set<YSession>> index, K key,
+                                final YSession session) {
+        if (key == null) return;
+        index.compute(key, (k, sessions) -> {
+            if (sessions == null) sessions = ConcurrentHashMap.newKeySet();
+            sessions.add(session);
+            return sessions;
+        });
+    }
+
+
+    // a service's uri may have been updated since the session was indexed
+    private void removeFromUriIndex(YSession session) {
+        String uri = session.getURI();
+        Set<YSession> sessions = uri != null ? _uriIndex.get(uri) : null;
+        if (sessions != null && sessions.contains(session)) {
+            removeFromIndex(_uriIndex, uri, session);
+        }
+        else if (session instanceof YServiceSession) {
+            for (String key : _uriIndex.keySet()) {
+                removeFromIndex(_uriIndex, key, session);
+            }
+        }
+    }
+
+
+    private <K> void removeFromIndex(Map<K, Set<YSession>> index, K key,
+                                     final YSession session) {
+        if (key == null) return;
+        index.computeIfPresent(key, (k, sessions) -> {
+            sessions.remove(session);
+            return sessions.isEmpty() ? null : sessions;
+        });
+    }
+
+
     private String failMsg(String msg) {
         return String.format("<failure>%s</failure>", msg) ;
     }
@@ -18,90 +18,197 @@
 
 package org.yawlfoundation.yawl.authentication;
 
-import java.util.HashMap;
+import org.apache.logging.log4j.LogManager;
+import org.yawlfoundation.yawl.util.NamedThreadFactory;
+
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
+ * Times out idle sessions.
+ * <p/>
+ * Each session records the time it was last accessed, so restarting its idle
+ * period (via reset) is a single volatile write. Sessions are swept by a hashed
+ * timing wheel: a session sits in the slot for the tick at which it would expire
+ * if it were not accessed again. When that slot comes round, its actual expiry is
+ * recalculated from its last access time, and it is either timed out or moved on
+ * to a later slot. So each session is visited about once per idle interval,
+ * however often it is accessed, and no per-access timer scheduling or purging
+ * is needed.
+ *
  * @author Michael Adams
  * @date 13/10/13
  */
 public class YSessionTimer {
 
-    protected static final Timer TIMER = new Timer();
+    private static final long DEFAULT_TICK_MSECS = 1000;
+    private static final int WHEEL_SIZE = 512;                     // a power of 2
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
 
-    private Map<YAbstractSession, TimerTask> _sessionMap;
-    private ISessionCache _cache;
+    private final ISessionCache _cache;
+    private final Map<YAbstractSession, Entry> _entries =
+            new ConcurrentHashMap<YAbstractSession, Entry>();
+    private final List<Queue<Entry>> _wheel;
+    private final long _tickMsecs;
+    private final long _start;
+    private long _lastTick;                   // last tick swept (sweeper thread only)
+    private ScheduledExecutorService _sweeper;
+    private boolean _shutdown;
 
 
     public YSessionTimer(ISessionCache cache) {
-        _sessionMap = new HashMap<YAbstractSession, TimerTask>();
+        this(cache, DEFAULT_TICK_MSECS);
+    }
+
+
+    /**
+     * @param cache the cache holding the sessions to time out
+     * @param tickMsecs the resolution of the timer. Sessions are timed out
+     * no more than one tick after their idle interval expires.
+     */
+    protected YSessionTimer(ISessionCache cache, long tickMsecs) {
         _cache = cache;
+        _tickMsecs = tickMsecs;
+        _wheel = new ArrayList<Queue<Entry>>(WHEEL_SIZE);
+        for (int i = 0; i < WHEEL_SIZE; i++) {
+            _wheel.add(new ConcurrentLinkedQueue<Entry>());
+        }
+        _start = System.currentTimeMillis();
     }
 
 
     public ISessionCache getCache() { return _cache; }
 
 
+    /**
+     * Starts timing a session, iff its interval is +ve (a -ve interval means
+     * never timeout)
+     * @param session the session
+     * @return true if the session will be timed out when idle
+     */
     public boolean add(YAbstractSession session) {
-        if (session == null) return false;
-        TimerTask timerTask = scheduleTimeout(session);
-        if (timerTask != null) {
-            _sessionMap.put(session, timerTask);
-        }
-        return timerTask != null;
+        if (session == null || session.getInterval() <= 0) return false;
+        session.touch();
+        Entry entry = new Entry(session);
+        Entry previous = _entries.put(session, entry);
+        if (previous != null) previous.cancelled = true;
+        schedule(entry, session.getLastAccess() + session.getInterval());
+        startSweeper();
+        return true;
     }
 
 
+    /**
+     * Restarts a session's idle period
+     * @param session the session
+     * @return true if the session will be timed out when idle
+     */
     public boolean reset(YAbstractSession session) {
-        if (session == null) return false;
-        expire(session);
-        return add(session);
+        if (session == null || session.getInterval() <= 0) return false;
+        if (! _entries.containsKey(session)) return add(session);
+        session.touch();
+        return true;
     }
 
 
+    /**
+     * Stops timing a session
+     * @param session the session
+     * @return true if the session was being timed
+     */
     public boolean expire(YAbstractSession session) {
         if (session != null) {
-            TimerTask task = _sessionMap.remove(session);
-            if (task != null) {
-                task.cancel();
-                TIMER.purge();
+            Entry entry = _entries.remove(session);
+            if (entry != null) {
+                entry.cancelled = true;
                 return true;
             }
         }
         return false;
     }
 
-    public void shutdown() {
-        TIMER.cancel();
-        TIMER.purge();
+
+    public synchronized void shutdown() {
+        _shutdown = true;
+        if (_sweeper != null) _sweeper.shutdownNow();
+        _entries.clear();
     }
 
-    // starts a timertask to timeout a session after the specified period of
-    // inactivity - iff the timer interval set is +ve (a -ve interval means never timeout)
-    protected TimerTask scheduleTimeout(YAbstractSession session) {
-        long interval = session.getInterval();
-        if (interval > 0) {
-            TimeOut timeout = new TimeOut(session.getHandle());
-            TIMER.schedule(timeout, interval);
-            return timeout;
-        }
-        return null;
+
+    // expires (removes) the active session. Called when a session's idle
+    // interval has passed
+    protected void timeout(YAbstractSession session) {
+        _cache.expire(session.getHandle());
     }
 
+
     /***************************************************************************/
 
-    // expires (removes) the active session. Called when a session timer expires.
-    private class TimeOut extends TimerTask {
+    // places an entry in the slot of the first tick at or after the expiry time
+    private void schedule(Entry entry, long expiry) {
+        long tick = (expiry - _start + _tickMsecs - 1) / _tickMsecs;
+        _wheel.get((int) (tick & WHEEL_MASK)).add(entry);
+    }
+
+
+    private synchronized void startSweeper() {
+        if (_sweeper == null && ! _shutdown) {
+            _sweeper = Executors.newSingleThreadScheduledExecutor(
+                    new NamedThreadFactory("session-timer"));
+            _sweeper.scheduleAtFixedRate(this::sweep, _tickMsecs, _tickMsecs,
+                    TimeUnit.MILLISECONDS);
+        }
+    }
 
-        private final String _handle;
 
-        public TimeOut(String handle) { _handle = handle; }
+    // visits each slot whose tick has passed since the last sweep. A slot may also
+    // hold entries for later revolutions of the wheel, which are simply re-queued
+    private void sweep() {
+        long now = System.currentTimeMillis();
+        long nowTick = (now - _start) / _tickMsecs;
+        while (_lastTick < nowTick) {
+            Queue<Entry> slot = _wheel.get((int) (++_lastTick & WHEEL_MASK));
+            for (int i = slot.size(); i > 0; i--) {        // only those queued so far
+                Entry entry = slot.poll();
+                if (entry == null) break;
+                if (! entry.cancelled) sweep(entry, now);
+            }
+        }
+    }
+
 
-        public void run() { _cache.expire(_handle) ; }
+    private void sweep(Entry entry, long now) {
+        YAbstractSession session = entry.session;
+        long expiry = session.getLastAccess() + session.getInterval();
+        if (expiry > now) {
+            schedule(entry, expiry);                       // accessed since queued
+        }
+        else if (_entries.remove(session, entry)) {
+            try {
+                timeout(session);
+            }
+            catch (Exception e) {
+                LogManager.getLogger(YSessionTimer.class).error(
+                        "Failed to expire session: " + session.getHandle(), e);
+            }
+        }
     }
 
 
+    /***************************************************************************/
+
+    private static class Entry {
+        final YAbstractSession session;
+        volatile boolean cancelled;
+
+        Entry(YAbstractSession session) { this.session = session; }
+    }
 
 }
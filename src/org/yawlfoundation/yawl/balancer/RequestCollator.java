@@ -124,15 +124,27 @@ public class RequestCollator implements Pollable {
     private void parseRequests(XNode reqs, long timestamp, long previous) {
         List<String> actions = new ArrayList<String>();
         for (XNode action : reqs.getChildren()) {
+            String name = action.getAttributeValue("name");
+            actions.add(name);
+
+            // engines summarise each action's requests as a histogram
+            if (action.hasAttribute("count")) {
+                getResponseStats(name).add(
+                        getDouble(action, "min"), getDouble(action, "max"),
+                        getDouble(action, "mean"),
+                        StringUtil.strToInt(action.getAttributeValue("count"), 0),
+                        timestamp, getTimespan(timestamp, previous),
+                        Collections.<ResponseTimes>emptyList());
+                continue;
+            }
+
+            // older engines list the timespan of each request
             List<ResponseTimes> times = new ArrayList<ResponseTimes>();
             for (XNode span : action.getChildren()) {
                 long b = StringUtil.strToLong(span.getAttributeValue("begin"), 0);
                 long e = StringUtil.strToLong(span.getAttributeValue("end"), 0);
                 times.add(new ResponseTimes(b, e));
             }
-
-            String name = action.getAttributeValue("name");
-            actions.add(name);
             getResponseStats(name).add(times, timestamp, previous);
         }
 
@@ -145,6 +157,16 @@ public class RequestCollator implements Pollable {
     }
 
 
+    private double getDouble(XNode node, String attribute) {
+        return StringUtil.strToDouble(node.getAttributeValue(attribute), 0);
+    }
+
+
+    private double getTimespan(long timestamp, long previous) {
+        return (timestamp > 0 && previous > 0) ? timestamp - previous : 0;
+    }
+
+
     private RequestStatOutputter getOutputter() {
         if (_outputter == null) {
             _outputter = new RequestStatOutputter(_engineName);
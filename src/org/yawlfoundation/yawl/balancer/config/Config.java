@@ -71,6 +71,7 @@ public class Config {
     private static final double DEFAULT_MIN_LOAD_THRESHOLD = 30.0;
     private static final int DEFAULT_MIN_ENGINE_COUNT = 2;
     private static final int DEFAULT_MAX_ENGINE_COUNT = 4;
+    private static final int DEFAULT_CONNECTIONS_PER_ENGINE = 16;
 
     public static boolean load(ServletContext context) {
         try {
@@ -275,6 +276,11 @@ public class Config {
     }
 
 
+    public static int getConnectionsPerEngine() {
+        return getInt("connections_per_engine", DEFAULT_CONNECTIONS_PER_ENGINE);
+    }
+
+
     public static String get(String key) {
         return get(key, null);
     }
@@ -19,7 +19,6 @@
 package org.yawlfoundation.yawl.balancer.instance;
 
 import org.apache.logging.log4j.LogManager;
-import org.json.JSONException;
 import org.yawlfoundation.yawl.balancer.LoadReader;
 import org.yawlfoundation.yawl.balancer.RequestCollator;
 import org.yawlfoundation.yawl.balancer.config.Config;
@@ -37,12 +36,12 @@ import org.yawlfoundation.yawl.engine.YSpecificationID;
 import org.yawlfoundation.yawl.util.HttpURLValidator;
 import org.yawlfoundation.yawl.util.StringUtil;
 
-import java.io.IOException;
 import java.net.MalformedURLException;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * @author Michael Adams
@@ -53,18 +52,21 @@ public class EngineInstance implements ConfigChangeListener, Pollable {
     private String _host;
     private int _port;
     private final LoadReader _loadReader;
-    private BusynessRule _busyRule;
+    private volatile BusynessRule _busyRule;
     private RequestCollator _reqCollator;
     private CombinedBusynessOutputter _combinedOutputter;
     private Map<String, String> _combinedOutputterMap;
     private String _sessionHandle;
-    private boolean _active;
+    private volatile boolean _active;
     private boolean _initialized;
     private boolean _restored;
     private boolean _authenticator;
     private Map<String, YSpecificationID> _runningCases;
     private final Set<BusynessListener> _busynessListeners;
-    private double _runningCasesComplexityMetric;
+    private volatile double _runningCasesComplexityMetric;
+
+    // the busyness score as at the last poll, or -1 if not yet polled
+    private volatile double _polledBusyness;
 
     private static final String YAWL_URL_TEMPLATE = "http://%s:%d/yawl%s";
 
@@ -76,10 +78,11 @@ public class EngineInstance implements ConfigChangeListener, Pollable {
         _active = false;
         _initialized = false;
         _authenticator = false;
-        _runningCases = new HashMap<String, YSpecificationID>();
+        _runningCases = new ConcurrentHashMap<String, YSpecificationID>();
         _combinedOutputterMap = new HashMap<String, String>();
         _combinedOutputterMap.put("index", getIndexFromPort(port));
         _runningCasesComplexityMetric = 0;
+        _polledBusyness = -1;
         _busyRule = getBusyRule();
         _busynessListeners = new HashSet<BusynessListener>();
         _reqCollator = new RequestCollator(host, port);
@@ -104,8 +107,13 @@ public class EngineInstance implements ConfigChangeListener, Pollable {
 
             // this will write values to log for all options (if configured)
             double busyness = _loadReader.getBusyness(Config.isWriteLog());
-            if (_busyRule != null) {
-                _busyRule.add(busyness);
+            BusynessRule rule = _busyRule;
+            if (rule != null) {
+                rule.add(busyness);
+                _polledBusyness = rule.get();
+            }
+            else {
+                _polledBusyness = busyness;
             }
             for (BusynessListener listener : _busynessListeners) {
                 listener.busynessEvent(this, busyness);
@@ -191,12 +199,12 @@ public class EngineInstance implements ConfigChangeListener, Pollable {
     public boolean hasCase(String caseid) { return _runningCases.containsKey(caseid); }
 
 
-    public void addComplexityMetric(double metric) {
+    public synchronized void addComplexityMetric(double metric) {
         _runningCasesComplexityMetric += metric;
     }
 
 
-    public void removeComplexityMetric(double metric) {
+    public synchronized void removeComplexityMetric(double metric) {
         _runningCasesComplexityMetric = Math.max(_runningCasesComplexityMetric - metric, 0);
     }
 
@@ -231,17 +239,16 @@ public class EngineInstance implements ConfigChangeListener, Pollable {
     }
 
 
-    public double getBusyness(boolean verbose) throws IOException, JSONException {
-//        double casesLaunched = _reqCollator.getResponsesPerSec("launchCase");
-//        double itemsStarted = _reqCollator.getResponsesPerSec("checkout");
-//        double itemsCompleted = _reqCollator.getResponsesPerSec("checkin");
-//        double busyness = (casesLaunched * 3) + (itemsStarted * 2) + itemsCompleted;
-//        System.out.println(String.format("** %s: %.3f, %.3f, %.3f, %.3f", _port,
-//                casesLaunched, itemsStarted, itemsCompleted, busyness));
-//        return busyness;
-        double baseBusyness = _busyRule != null ? _busyRule.get() :
-                _loadReader.getBusyness(verbose);
-        return baseBusyness + _runningCasesComplexityMetric;
+    /**
+     * Gets the engine's busyness score without contacting the engine. The score is
+     * that calculated at the most recent poll (smoothed or forecast by the busyness
+     * rule for the current operating mode), plus the complexity of the cases running
+     * on the engine.
+     * @return the engine's current busyness score
+     */
+    public double getBusyness() {
+        double polled = _polledBusyness;
+        return Math.max(polled, 0) + _runningCasesComplexityMetric;
     }
 
 
@@ -25,9 +25,11 @@ import org.yawlfoundation.yawl.balancer.config.Config;
 import org.yawlfoundation.yawl.balancer.monitor.Monitor;
 import org.yawlfoundation.yawl.balancer.output.ArffOutputter;
 import org.yawlfoundation.yawl.balancer.output.CombinedBusynessOutputter;
+import org.yawlfoundation.yawl.engine.YSpecificationID;
 import org.yawlfoundation.yawl.util.StringUtil;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * @author Michael Adams
@@ -40,6 +42,7 @@ public class EngineSet {
     private final Logger _log;
     private final ArffOutputter _arffWriter;
     private final Monitor _monitor;
+    private final Map<String, EngineInstance> _caseRoutes;   // [caseID, engine running it]
     
     private EngineInstance _authenticator;
     private int _lastCaseNbr = 0;
@@ -52,6 +55,7 @@ public class EngineSet {
         _log = LogManager.getFormatterLogger(this.getClass());
         _arffWriter = new ArffOutputter();
         _monitor = monitor;
+        _caseRoutes = new ConcurrentHashMap<String, EngineInstance>();
     }
 
 
@@ -143,7 +147,7 @@ public class EngineSet {
     }
 
 
-    public String getNextCaseNbr() {
+    public synchronized String getNextCaseNbr() {
         if (_lastCaseNbr == 0) {
             for (EngineInstance instance : _set) {
                  _lastCaseNbr = Math.max(_lastCaseNbr, instance.getLastCaseNbr());
@@ -154,35 +158,46 @@ public class EngineSet {
 
 
     public EngineInstance getEngineForCase(String caseID) {
-        for (EngineInstance instance : _set) {
-            if (instance.hasCase(caseID)) {
-                return instance;
-            }
+        return caseID != null ? _caseRoutes.get(caseID) : null;
+    }
+
+
+    public void addCase(EngineInstance instance, String caseID, YSpecificationID specID) {
+        instance.addCase(caseID, specID);
+        _caseRoutes.put(caseID, instance);
+    }
+
+
+    public void addCases(EngineInstance instance, Map<String, YSpecificationID> caseMap) {
+        instance.addCases(caseMap);
+        for (String caseID : caseMap.keySet()) {
+            _caseRoutes.put(caseID, instance);
         }
-        return null;
     }
 
 
+    public YSpecificationID removeCase(EngineInstance instance, String caseID) {
+        _caseRoutes.remove(caseID, instance);
+        return instance.removeCase(caseID);
+    }
+
+
+    // busyness scores are refreshed by each engine's poll, so no engine is contacted
     public EngineInstance getIdlestEngine() {
         if (Config.getOperatingMode() == OperatingMode.RANDOM) {
             return getRandomActiveInstance();
         }
         EngineInstance idlest = null;
         double lowestScore = Double.MAX_VALUE;
-        for (EngineInstance instance : getAllActive()) {
-            try {
-                double busyness = instance.getBusyness(false);
-                _log.info("Busyness: %s %.3f",
-                        instance.getName(), busyness);
+        for (EngineInstance instance : _set) {
+            if (instance.isActive()) {
+                double busyness = instance.getBusyness();
+                _log.debug("Busyness: %s %.3f", instance.getName(), busyness);
                 if (idlest == null || busyness < lowestScore) {
                     idlest = instance;
                     lowestScore = busyness;
                 }
             }
-            catch (Exception e) {
-                _log.warn("Unable to gather statistics from engine %s - %s",
-                        instance.getName(), e.getMessage());
-            }
         }
         return checkBusynessLimit(idlest, lowestScore);
     }
@@ -269,7 +284,7 @@ public class EngineSet {
     }
 
 
-    private boolean setActive(EngineInstance instance, boolean activate) {
+    private synchronized boolean setActive(EngineInstance instance, boolean activate) {
          if (activate != instance.isActive()) {
              instance.setActive(activate);
              _activeCount += activate ? 1 : -1;
@@ -25,7 +25,7 @@ package org.yawlfoundation.yawl.balancer.rule;
 public class ExponentialMovingAverage implements BusynessRule {
 
     private double _alpha;
-    private double _average;
+    private volatile double _average;     // written by the poller, read by requests
 
     public ExponentialMovingAverage(double alpha) {
         _alpha = alpha;
@@ -30,6 +30,7 @@ import org.yawlfoundation.yawl.balancer.polling.PollingService;
 import org.yawlfoundation.yawl.elements.YSpecification;
 import org.yawlfoundation.yawl.engine.YSpecificationID;
 import org.yawlfoundation.yawl.engine.interfce.Marshaller;
+import org.yawlfoundation.yawl.engine.interfce.PooledHttpTransport;
 import org.yawlfoundation.yawl.engine.interfce.ServletUtils;
 import org.yawlfoundation.yawl.engine.interfce.SpecificationData;
 import org.yawlfoundation.yawl.engine.interfce.YHttpServlet;
@@ -44,6 +45,7 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * @author Michael Adams
@@ -75,6 +77,9 @@ public class LoadBalancerServlet extends YHttpServlet implements ConfigChangeLis
     public void init() throws ServletException {
         Config.load(getServletContext());
         Config.addChangeListener(this);
+        _forwardClient.setTransport(new PooledHttpTransport(
+                Config.getConnectionsPerEngine(),
+                PooledHttpTransport.DEFAULT_IDLE_TIMEOUT));
         _engineSet.initialize();
    }
 
@@ -127,6 +132,7 @@ public class LoadBalancerServlet extends YHttpServlet implements ConfigChangeLis
     public void destroy() {
         _engineSet.closeAll();
         PollingService.shutdown();
+        _forwardClient.getTransport().shutdown();
         Config.stopConfigMonitoring();
         super.destroy();
     }
@@ -179,7 +185,7 @@ public class LoadBalancerServlet extends YHttpServlet implements ConfigChangeLis
             String result = _forwardClient.executePost(instance, params, req.getPathInfo());
             if (successful(result)) {
                 YSpecificationID specID = getSpecID(params);
-                instance.addCase(result, specID);
+                _engineSet.addCase(instance, result, specID);
                 instance.addComplexityMetric(_specComplexityMap.get(specID));
                 _log.info("Case {} launched on engine {}",
                         result, instance.getName());
@@ -305,7 +311,7 @@ public class LoadBalancerServlet extends YHttpServlet implements ConfigChangeLis
                             caseMap.put(caseNode.getText(), specID);
                         }
                     }
-                    instance.addCases(caseMap);
+                    _engineSet.addCases(instance, caseMap);
                 }
             }
             instance.setRestored(true);
@@ -314,8 +320,8 @@ public class LoadBalancerServlet extends YHttpServlet implements ConfigChangeLis
 
 
     private void restoreSpecifications() throws IOException {
-        _specMap = new HashMap<YSpecificationID, String>();
-        _specComplexityMap = new HashMap<YSpecificationID, Double>();
+        _specMap = new ConcurrentHashMap<YSpecificationID, String>();
+        _specComplexityMap = new ConcurrentHashMap<YSpecificationID, Double>();
         ComplexityMetric complexityMetric = new ComplexityMetric();
         for (EngineInstance instance : _engineSet.getAll()) {
             for (SpecificationData specData : getSpecList(instance)) {
@@ -333,14 +339,13 @@ public class LoadBalancerServlet extends YHttpServlet implements ConfigChangeLis
 
     private String removeCase(HttpServletRequest req) {
         String caseID = req.getParameter("caseid");
-        for (EngineInstance instance : _engineSet.getAll()) {
-            if (instance.hasCase(caseID)) {
-                YSpecificationID specID = instance.removeCase(caseID);
-                if (specID != null) {
-                    instance.removeComplexityMetric(_specComplexityMap.get(specID));
-                }
-                return "OK";
+        EngineInstance instance = _engineSet.getEngineForCase(caseID);
+        if (instance != null) {
+            YSpecificationID specID = _engineSet.removeCase(instance, caseID);
+            if (specID != null) {
+                instance.removeComplexityMetric(_specComplexityMap.get(specID));
             }
+            return "OK";
         }
         return "NOK";
     }
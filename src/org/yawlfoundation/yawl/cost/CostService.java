@@ -23,6 +23,8 @@ import org.apache.logging.log4j.Logger;
 import org.hibernate.Hibernate;
 import org.jdom2.Element;
 import org.yawlfoundation.yawl.cost.data.*;
+import org.yawlfoundation.yawl.cost.evaluate.CaseCosts;
+import org.yawlfoundation.yawl.cost.evaluate.CostLedger;
 import org.yawlfoundation.yawl.cost.evaluate.Predicate;
 import org.yawlfoundation.yawl.cost.evaluate.PredicateEvaluator;
 import org.yawlfoundation.yawl.cost.log.Annotator;
@@ -58,6 +60,7 @@ public class CostService implements InterfaceX_Service {
     private Map<YSpecificationID, CostModelCache> _models;
     private HibernateEngine _dataEngine;
     private PredicateEvaluator _evaluator;
+    private CostLedger _ledger;
     private YLogGatewayClient _engineLogClient;
     private InterfaceX_ServiceSideClient _ixClient;    // interface client to engine
     private ResourceLogGatewayClient _rsLogClient;
@@ -75,6 +78,7 @@ public class CostService implements InterfaceX_Service {
     private CostService() {
         _models = new ConcurrentHashMap<YSpecificationID, CostModelCache>();
         _evaluator = new PredicateEvaluator();
+        _ledger = new CostLedger();
         _dataEngine = new HibernateEngine(true, getPersistingClasses());
         restore();
     }
@@ -221,6 +225,7 @@ public class CostService implements InterfaceX_Service {
 
             int removed = models.size();
             _models.get(specID).clear();
+            _ledger.clear(specID);
             return successMsg("Successfully removed " + removed + " model(s).");
         } else return failMsg("No models found for specification.");
     }
@@ -242,6 +247,7 @@ public class CostService implements InterfaceX_Service {
         boolean removed = (cache != null) && cache.remove(model);
         if (removed) {
             _dataEngine.exec(model, HibernateEngine.DB_DELETE, commit);
+            _ledger.clear(model.getSpecID());
         }
         return removed ? successMsg("Successfully removed model: " + model.getId()) :
                 failMsg("Failed to remove model" + model.getId());
@@ -273,21 +279,25 @@ public class CostService implements InterfaceX_Service {
     }
 
 
+    /**
+     * Evaluates a cost predicate. Where possible, the running costs held in the ledger
+     * are used; predicates with a date filter are evaluated against the events of
+     * the relevant cases fetched from the log
+     */
     public boolean evaluate(YSpecificationID specID, String caseID, String predicate) {
         try {
 
             // verify the predicate
             Predicate costPredicate = new Predicate(predicate);
 
-            // if verified (no exception), get the list of events for the predicate
-            List<ResourceEvent> eventList = getLogEvents(specID, caseID, costPredicate);
-
             // get cost model(s) and evaluate
-            CostModelCache cache = getModelCache(specID);
-            if (cache != null) {
-                return _evaluator.evaluate(costPredicate, eventList, cache.getDriverMatrix());
+            DriverMatrix matrix = getDriverMatrix(specID, caseID);
+            if (costPredicate.hasDateFilter()) {
+                return _evaluator.evaluate(costPredicate,
+                        getLogEvents(specID, caseID, costPredicate), matrix);
             }
-            else throw new IllegalArgumentException("No cost models found for case " + caseID);
+            return _evaluator.evaluate(costPredicate,
+                    getCaseCosts(specID, caseID, costPredicate, matrix));
         }
         catch (Exception e) {
             _log.error("Failed to evaluate cost predicate: ", e);
@@ -301,15 +311,14 @@ public class CostService implements InterfaceX_Service {
             // verify the predicate
             Predicate costPredicate = new Predicate(predicate);
 
-            // if verified (no exception), get the list of events for the predicate
-            List<ResourceEvent> eventList = getLogEvents(specID, caseID, costPredicate);
-
             // get cost model(s) and evaluate
-            CostModelCache cache = getModelCache(specID);
-            if (cache != null) {
-                return _evaluator.calculate(costPredicate, eventList, cache.getDriverMatrix());
+            DriverMatrix matrix = getDriverMatrix(specID, caseID);
+            if (costPredicate.hasDateFilter()) {
+                return _evaluator.calculate(costPredicate,
+                        getLogEvents(specID, caseID, costPredicate), matrix);
             }
-            else throw new IllegalArgumentException("No cost models found for case " + caseID);
+            return _evaluator.calculate(costPredicate,
+                    getCaseCosts(specID, caseID, costPredicate, matrix));
         }
         catch (Exception e) {
             _log.error("Failed to evaluate cost predicate: ", e);
@@ -317,6 +326,55 @@ public class CostService implements InterfaceX_Service {
         return -1;
     }
 
+
+    /**
+     * Recalculates the cost a predicate refers to from the events of the relevant
+     * cases fetched from the log, rather than from the running costs in the ledger
+     */
+    public double recalculate(YSpecificationID specID, String caseID, String predicate) {
+        try {
+            Predicate costPredicate = new Predicate(predicate);
+            return _evaluator.calculate(costPredicate,
+                    getLogEvents(specID, caseID, costPredicate),
+                    getDriverMatrix(specID, caseID));
+        }
+        catch (Exception e) {
+            _log.error("Failed to evaluate cost predicate: ", e);
+        }
+        return -1;
+    }
+
+
+    /**
+     * Adds a resource event, as announced by the resource service, to the running
+     * costs of its case
+     * @param specID the specification of the event's case
+     * @param event the event
+     */
+    public void handleResourceEvent(YSpecificationID specID, ResourceEvent event) {
+        CostModelCache cache = getModelCache(specID);
+        if (cache != null) {
+            _ledger.add(specID, event, cache.getDriverMatrix());
+        }
+    }
+
+    /**
+     * Drops the running costs of cases that may have missed events, e.g. because the
+     * resource service failed to announce them, so that they are reloaded from the
+     * log when next needed
+     * @param caseIDs the ids of the cases, or null for all cases
+     */
+    public void resyncCases(Set<String> caseIDs) {
+        if (caseIDs == null) {
+            _ledger.clear();
+            return;
+        }
+        for (String caseID : caseIDs) {
+            String rootID = CaseCosts.getRootCaseID(caseID);
+            if (rootID != null) _ledger.untrack(rootID);
+        }
+    }
+
     /**
      * Resolves an id to a set of participant ids
      *
@@ -397,6 +455,7 @@ public class CostService implements InterfaceX_Service {
         removePrevVersion(cache, model);      // if any
         if (cache.add(model) && (!restoring)) {
             _dataEngine.exec(model, HibernateEngine.DB_INSERT, commit);
+            _ledger.clear(specID);
         }
         return cache;
     }
@@ -423,6 +482,15 @@ public class CostService implements InterfaceX_Service {
     }
 
 
+    private DriverMatrix getDriverMatrix(YSpecificationID specID, String caseID) {
+        CostModelCache cache = getModelCache(specID);
+        if (cache == null) {
+            throw new IllegalArgumentException("No cost models found for case " + caseID);
+        }
+        return cache.getDriverMatrix();
+    }
+
+
     private List<ResourceEvent> getLogEvents(YSpecificationID specID, String caseID,
                                              Predicate predicate) throws IOException {
         List<ResourceEvent> eventList = new ArrayList<ResourceEvent>();
@@ -430,19 +498,11 @@ public class CostService implements InterfaceX_Service {
             appendEvents(eventList,
                     _rsLogClient.getSpecificationEvents(specID, getRSHandle()));
         }
-        else if (predicate.hasCaseFilter()) {
-            Set<String> caseSet = predicate.getCaseList();
-            if (predicate.hasNamedRange()) {
-                if (caseSet == null) caseSet = new HashSet<String>();
-                caseSet.addAll(predicate.getNamedRange(getCaseIDs(specID)));
-            }
-            for (String rangeID : caseSet) {
+        else {
+            for (String rangeID : getPredicateCaseIDs(specID, caseID, predicate)) {
                 appendEvents(eventList, _rsLogClient.getCaseEvents(rangeID, getRSHandle()));
             }
         }
-        else {    // single case
-            appendEvents(eventList, _rsLogClient.getCaseEvents(caseID, getRSHandle()));
-        }
         if (predicate.hasDateFilter()) {
             eventList = predicate.applyDateFilter(eventList);
         }
@@ -453,6 +513,112 @@ public class CostService implements InterfaceX_Service {
     }
 
 
+    private Set<String> getPredicateCaseIDs(YSpecificationID specID, String caseID,
+                                            Predicate predicate) throws IOException {
+        if (predicate.isAllCases()) {
+            return new HashSet<String>(getCaseIDs(specID));
+        }
+        if (predicate.hasCaseFilter()) {
+            Set<String> caseSet = predicate.getCaseList();
+            if (predicate.hasNamedRange()) {
+                if (caseSet == null) caseSet = new HashSet<String>();
+                caseSet.addAll(predicate.getNamedRange(getCaseIDs(specID)));
+            }
+            return caseSet;
+        }
+        return Collections.singleton(caseID);                       // single case
+    }
+
+
+    /**
+     * Gets the running costs of the cases a predicate refers to from the ledger,
+     * first loading the logged events of any cases not yet in the ledger
+     */
+    private List<CaseCosts> getCaseCosts(YSpecificationID specID, String caseID,
+                                         Predicate predicate, DriverMatrix matrix)
+            throws IOException {
+        List<CaseCosts> caseCosts = new ArrayList<CaseCosts>();
+        Set<String> unloaded = new HashSet<String>();
+        for (String id : getPredicateCaseIDs(specID, caseID, predicate)) {
+            CaseCosts costs = _ledger.getCosts(specID, id);
+            if (costs != null) {
+                caseCosts.add(costs);
+            }
+            else unloaded.add(id);
+        }
+        if (! unloaded.isEmpty()) {
+            caseCosts.addAll(loadCaseCosts(specID, unloaded,
+                    predicate.isAllCases() && unloaded.size() > 1, matrix));
+        }
+        if (caseCosts.isEmpty()) {
+            throw new IllegalArgumentException("No events found for predicate");
+        }
+        return caseCosts;
+    }
+
+
+    // fetching all of the specification's events at once is preferred when many
+    // of its cases are to be loaded
+    private List<CaseCosts> loadCaseCosts(YSpecificationID specID, Set<String> caseIDs,
+                                          boolean bySpecification, DriverMatrix matrix)
+            throws IOException {
+        Set<String> tracked = new HashSet<String>();
+        for (String id : caseIDs) {
+            if (_ledger.track(specID, id)) tracked.add(id);
+        }
+        try {
+            Map<String, List<ResourceEvent>> caseEvents;
+            if (bySpecification) {
+                caseEvents = groupByCase(parseEventLog(
+                        _rsLogClient.getSpecificationEvents(specID, getRSHandle())));
+            }
+            else {
+                caseEvents = new HashMap<String, List<ResourceEvent>>();
+                for (String id : caseIDs) {
+                    caseEvents.put(id, parseEventLog(
+                            _rsLogClient.getCaseEvents(id, getRSHandle())));
+                }
+            }
+
+            List<CaseCosts> caseCosts = new ArrayList<CaseCosts>();
+            for (String id : caseIDs) {
+                List<ResourceEvent> events = caseEvents.get(id);
+                if (events == null || events.isEmpty()) {
+                    if (tracked.remove(id)) _ledger.untrack(id);    // unknown case
+                    continue;
+                }
+                CaseCosts costs = tracked.remove(id) ? _ledger.load(id, events, matrix) :
+                        null;
+                if (costs == null) {               // being loaded by another request
+                    costs = new CaseCosts(id);
+                    for (ResourceEvent event : events) costs.add(event, matrix);
+                }
+                caseCosts.add(costs);
+            }
+            return caseCosts;
+        }
+        finally {
+            for (String id : tracked) _ledger.untrack(id);          // failed to load
+        }
+    }
+
+
+    private Map<String, List<ResourceEvent>> groupByCase(List<ResourceEvent> events) {
+        Map<String, List<ResourceEvent>> caseEvents =
+                new HashMap<String, List<ResourceEvent>>();
+        for (ResourceEvent event : events) {
+            String caseID = CaseCosts.getRootCaseID(event.get_caseID());
+            List<ResourceEvent> eventList = caseEvents.get(caseID);
+            if (eventList == null) {
+                eventList = new ArrayList<ResourceEvent>();
+                caseEvents.put(caseID, eventList);
+            }
+            eventList.add(event);
+        }
+        return caseEvents;
+    }
+
+
     private List<String> getCaseIDs(YSpecificationID specID) throws IOException {
         List<String> caseIDs = new ArrayList<String>();
         String idString = _engineLogClient.getSpecificationCaseIDs(specID, getEngineHandle());
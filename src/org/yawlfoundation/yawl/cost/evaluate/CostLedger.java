@@ -0,0 +1,222 @@
+/*
+ * Copyright (c) 2004-2020 The YAWL Foundation. All rights reserved.
+ * The YAWL Foundation is a collaboration of individuals and
+ * organisations who are committed to improving workflow technology.
+ *
+ * This file is part of YAWL. YAWL is free software: you can
+ * redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation.
+ *
+ * YAWL is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with YAWL. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.yawlfoundation.yawl.cost.evaluate;
+
+import org.yawlfoundation.yawl.cost.data.DriverMatrix;
+import org.yawlfoundation.yawl.engine.YSpecificationID;
+import org.yawlfoundation.yawl.resourcing.datastore.eventlog.EventLogger;
+import org.yawlfoundation.yawl.resourcing.datastore.eventlog.ResourceEvent;
+
+import java.util.*;
+
+/**
+ * Holds the running costs of cases, kept up to date from the resource events announced
+ * by the resource service as they occur, so that cost predicates can be answered
+ * without fetching and re-evaluating each case's events from the process log.
+ * <p/>
+ * A case is tracked from its launch event, or otherwise from when its costs are first
+ * needed, at which time the events it has already logged are loaded into it. Any events
+ * announced for the case while its logged events are being fetched are held until the
+ * load, and duplicates of logged events are ignored. The number of cases held is
+ * bounded; the least recently used are removed first, and are reloaded from the log
+ * if needed again. A case that may have missed events is untracked, and so reloaded in
+ * the same way.
+ */
+public class CostLedger {
+
+    public static final int DEFAULT_MAX_CASES = 10000;
+
+    // [root case id, its entry], in least to most recently used order
+    private final Map<String, Entry> _cases;
+
+
+    public CostLedger() { this(DEFAULT_MAX_CASES); }
+
+
+    public CostLedger(final int maxCases) {
+        _cases = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxCases;
+            }
+        };
+    }
+
+
+    /**
+     * Adds an event as it occurs. A launch event begins the tracking of its case;
+     * events of cases not being tracked are ignored
+     * @param specID the specification of the event's case
+     * @param event the event
+     * @param matrix the cost drivers of the specification
+     */
+    public void add(YSpecificationID specID, ResourceEvent event, DriverMatrix matrix) {
+        String caseID = CaseCosts.getRootCaseID(event.get_caseID());
+        if (caseID == null) return;
+        Entry entry;
+        synchronized (this) {
+            entry = _cases.get(caseID);
+            if (entry == null) {
+                if (! isLaunchEvent(event)) return;
+                entry = new Entry(specID, caseID);
+                entry.load(Collections.<ResourceEvent>emptyList(), matrix);
+                _cases.put(caseID, entry);
+            }
+        }
+        entry.add(event, matrix);
+    }
+
+
+    /**
+     * @param specID the specification of the case
+     * @param caseID the id of a root case
+     * @return the costs of the case, or null if the case is not being tracked or its
+     * logged events have not yet been loaded
+     */
+    public CaseCosts getCosts(YSpecificationID specID, String caseID) {
+        Entry entry;
+        synchronized (this) {
+            entry = _cases.get(caseID);
+        }
+        return entry != null && entry.specID.equals(specID) ? entry.getCosts() : null;
+    }
+
+
+    /**
+     * Begins the tracking of a case, so that its events are held from now until its
+     * logged events are loaded. Must be called before the logged events are fetched
+     * @param specID the specification of the case
+     * @param caseID the id of a root case
+     * @return true if the case was not already being tracked, in which case the
+     * caller is responsible for either loading or untracking it
+     */
+    public synchronized boolean track(YSpecificationID specID, String caseID) {
+        if (_cases.containsKey(caseID)) return false;
+        _cases.put(caseID, new Entry(specID, caseID));
+        return true;
+    }
+
+
+    /**
+     * Loads the logged events of a case being tracked
+     * @param caseID the id of the root case
+     * @param events the events of the case, as fetched from the log
+     * @param matrix the cost drivers of the case's specification
+     * @return the costs of the case, or null if the case is no longer being tracked
+     */
+    public CaseCosts load(String caseID, List<ResourceEvent> events, DriverMatrix matrix) {
+        Entry entry;
+        synchronized (this) {
+            entry = _cases.get(caseID);
+        }
+        if (entry == null) return null;
+        entry.load(events, matrix);
+        return entry.getCosts();
+    }
+
+
+    /**
+     * Stops the tracking of a case. Also used when the case may have missed events,
+     * so that it is reloaded from the log when next needed
+     * @param caseID the id of the root case
+     */
+    public synchronized void untrack(String caseID) {
+        _cases.remove(caseID);
+    }
+
+
+    /**
+     * Removes all the cases of a specification, e.g. when its cost models change
+     * @param specID the specification
+     */
+    public synchronized void clear(YSpecificationID specID) {
+        Iterator<Entry> itr = _cases.values().iterator();
+        while (itr.hasNext()) {
+            if (itr.next().specID.equals(specID)) itr.remove();
+        }
+    }
+
+
+    public synchronized void clear() { _cases.clear(); }
+
+
+    /** @return the number of cases being tracked */
+    public synchronized int size() { return _cases.size(); }
+
+
+    private boolean isLaunchEvent(ResourceEvent event) {
+        return EventLogger.event.launch_case.name().equals(event.get_event());
+    }
+
+
+    /*********************************************************************************/
+
+    private static class Entry {
+        final YSpecificationID specID;
+        final CaseCosts costs;
+        final Set<String> applied;              // keys of the events added so far
+        List<ResourceEvent> pending;            // events held until the load
+
+        Entry(YSpecificationID id, String caseID) {
+            specID = id;
+            costs = new CaseCosts(caseID);
+            applied = new HashSet<String>();
+            pending = new ArrayList<ResourceEvent>();
+        }
+
+
+        synchronized void add(ResourceEvent event, DriverMatrix matrix) {
+            if (pending != null) {
+                pending.add(event);
+            }
+            else if (applied.add(toKey(event))) {
+                costs.add(event, matrix);
+            }
+        }
+
+
+        // merges the logged events with those held, in the order they occurred
+        synchronized void load(List<ResourceEvent> events, DriverMatrix matrix) {
+            if (pending == null) return;                             // already loaded
+            List<ResourceEvent> merged = new ArrayList<ResourceEvent>(events);
+            merged.addAll(pending);
+            Collections.sort(merged, new Comparator<ResourceEvent>() {
+                public int compare(ResourceEvent e1, ResourceEvent e2) {
+                    return Long.compare(e1.get_timeStamp(), e2.get_timeStamp());
+                }
+            });
+            pending = null;
+            for (ResourceEvent event : merged) {
+                add(event, matrix);
+            }
+        }
+
+
+        synchronized CaseCosts getCosts() {
+            return pending == null ? costs : null;
+        }
+
+
+        // events announced before they are logged have no key of their own
+        private String toKey(ResourceEvent event) {
+            return event.get_event() + ':' + event.get_itemID() + ':' +
+                    event.get_resourceID() + ':' + event.get_timeStamp();
+        }
+    }
+
+}
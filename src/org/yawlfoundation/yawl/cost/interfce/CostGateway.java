@@ -20,9 +20,13 @@ package org.yawlfoundation.yawl.cost.interfce;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.jdom2.Element;
 import org.yawlfoundation.yawl.cost.CostService;
 import org.yawlfoundation.yawl.cost.data.CostModelCache;
 import org.yawlfoundation.yawl.engine.YSpecificationID;
+import org.yawlfoundation.yawl.resourcing.datastore.eventlog.ResourceEvent;
+import org.yawlfoundation.yawl.resourcing.rsInterface.ResourceGatewayServer;
+import org.yawlfoundation.yawl.util.JDOMUtil;
 import org.yawlfoundation.yawl.util.Sessions;
 import org.yawlfoundation.yawl.util.XNode;
 import org.yawlfoundation.yawl.util.XNodeParser;
@@ -117,7 +121,11 @@ public class CostGateway extends HttpServlet {
         } else if (action.equals("disconnect")) {
             result = String.valueOf(_sessions.disconnect(handle));
         } else if (_sessions.checkConnection(handle)) {
-            if (action.equals("importModel")) {
+            if (action.equals(String.valueOf(ResourceGatewayServer.NOTIFY_RESOURCE_EVENT))) {
+                handleResourceEvent(specID, req.getParameter("event"));
+            } else if (action.equals("resyncCases")) {
+                resyncCases(req.getParameter("ids"));
+            } else if (action.equals("importModel")) {
                 result = _service.importModel(req.getParameter("model"));
             } else if (action.equals("importModels")) {
                 result = _service.importModels(req.getParameter("models"));
@@ -146,6 +154,10 @@ public class CostGateway extends HttpServlet {
                 String caseID = req.getParameter("id");
                 String predicate = req.getParameter("predicate");
                 result = String.valueOf(_service.calculate(specID, caseID, predicate));
+            } else if (action.equals("recalculate")) {
+                String caseID = req.getParameter("id");
+                String predicate = req.getParameter("predicate");
+                result = String.valueOf(_service.recalculate(specID, caseID, predicate));
             } else if (action.equals("disconnect")) {
                 result = String.valueOf(_sessions.disconnect(handle));
             } else throw new IOException("Unknown Cost Service action: " + action);
@@ -219,6 +231,41 @@ public class CostGateway extends HttpServlet {
     }
 
 
+    /**
+     * Passes a resource event announced by the resource service to the service
+     *
+     * @param specID   the specification identifier of the event's case
+     * @param eventXML the event
+     */
+    private void handleResourceEvent(YSpecificationID specID, String eventXML) {
+        Element eventElement = JDOMUtil.stringToElement(eventXML);
+        if (specID != null && eventElement != null) {
+            _service.handleResourceEvent(specID, new ResourceEvent(eventElement));
+        }
+    }
+
+
+    /**
+     * Passes the ids of cases that may have missed events to the service
+     *
+     * @param idsXML an XML set of root case ids, or null for all cases
+     * @throws IOException if the ids can't be parsed
+     */
+    private void resyncCases(String idsXML) throws IOException {
+        if (idsXML == null) {
+            _service.resyncCases(null);
+            return;
+        }
+        XNode node = new XNodeParser().parse(idsXML);
+        if (node == null) throw new IOException("Error parsing list of case ids");
+        Set<String> caseIDs = new HashSet<String>();
+        for (XNode id : node.getChildren()) {
+            caseIDs.add(id.getText());
+        }
+        _service.resyncCases(caseIDs);
+    }
+
+
     private YSpecificationID constructSpecID(HttpServletRequest req) {
         String version = req.getParameter("specversion");
         String uri = req.getParameter("specuri");
@@ -20,6 +20,7 @@ package org.yawlfoundation.yawl.cost.interfce;
 
 import org.yawlfoundation.yawl.engine.YSpecificationID;
 import org.yawlfoundation.yawl.engine.interfce.Interface_Client;
+import org.yawlfoundation.yawl.resourcing.rsInterface.ResourceGatewayServer;
 import org.yawlfoundation.yawl.util.PasswordEncryptor;
 import org.yawlfoundation.yawl.util.StringUtil;
 import org.yawlfoundation.yawl.util.XNode;
@@ -243,6 +244,67 @@ public class CostGatewayClient extends Interface_Client {
         }
     }
 
+
+    /**
+     * Calculates a cost predicate from the events of the cases it refers to, as
+     * fetched from the process log, rather than from the running costs held by the
+     * cost service
+     */
+    public double recalculate(YSpecificationID specID, String caseID, String predicate,
+                              String handle) throws IOException {
+        Map<String, String> params = prepareParamMap("recalculate", handle);
+        params.putAll(specID.toMap());
+        params.put("id", caseID);
+        params.put("predicate", predicate);
+        String result = executeGet(_costURI, params);
+        try {
+            return Double.parseDouble(result);
+        }
+        catch (NumberFormatException nfe) {
+            return -1;
+        }
+    }
+
+
+    /**
+     * Announces a resource event to the cost service, so that it can keep the
+     * running costs of the event's case up to date
+     *
+     * @param specID   the specification identifier of the event's case
+     * @param eventXML the event
+     * @param handle   a current sessionhandle to the cost service
+     * @throws IOException if the service can't be reached or rejects the event
+     */
+    public String notifyResourceEvent(YSpecificationID specID, String eventXML,
+                                      String handle) throws IOException {
+        Map<String, String> params = prepareParamMap(
+                String.valueOf(ResourceGatewayServer.NOTIFY_RESOURCE_EVENT), handle);
+        params.putAll(specID.toMap());
+        params.put("event", eventXML);
+        return executePost(_costURI, params);
+    }
+
+
+    /**
+     * Tells the cost service that some cases may have missed events, so that it
+     * reloads their running costs from the process log when they are next needed
+     *
+     * @param caseIDs the ids of the root cases, or null for all cases
+     * @param handle  a current sessionhandle to the cost service
+     * @throws IOException if the service can't be reached
+     */
+    public String resyncCases(Set<String> caseIDs, String handle) throws IOException {
+        Map<String, String> params = prepareParamMap("resyncCases", handle);
+        if (caseIDs != null) {
+            XNode node = new XNode("ids");
+            for (String caseID : caseIDs) {
+                node.addChild("id", caseID);
+            }
+            params.put("ids", node.toString());
+        }
+        return executePost(_costURI, params);
+    }
+
     /**
      * Gets an XML list of all cost functions for the specified specification - task
      * combination.
@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2004-2020 The YAWL Foundation. All rights reserved.
+ * The YAWL Foundation is a collaboration of individuals and
+ * organisations who are committed to improving workflow technology.
+ *
+ * This file is part of YAWL. YAWL is free software: you can
+ * redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation.
+ *
+ * YAWL is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with YAWL. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.yawlfoundation.yawl.documentStore;
+
+import org.hibernate.Transaction;
+import org.yawlfoundation.yawl.util.HibernateEngine;
+
+import java.util.*;
+
+/**
+ * Keeps a count, for each chunk in the ChunkStore, of the stored documents that
+ * reference it, so that the chunks a document no longer needs can be checked and
+ * deleted without scanning every stored document.
+ * <p/>
+ * Counts are changed in the same transaction as the documents they count. A count
+ * that falls to zero is kept until its chunk is deleted, so that a document stored
+ * meanwhile that reuses the chunk keeps it. Callers must serialise their use of this
+ * class, since each count is read and then written.
+ */
+class ChunkReferences {
+
+    private final HibernateEngine _db;
+
+    ChunkReferences(HibernateEngine db) { _db = db; }
+
+
+    /**
+     * Counts the references of any chunked documents stored before counts were kept.
+     * This scans every stored document, but only when there are no counts at all
+     */
+    void initialise() {
+        List<?> counted = _db.execQuery("select count(*) from YChunkReference");
+        _db.commit();
+        if (counted == null || ((Number) counted.get(0)).longValue() > 0) return;
+
+        List<?> stored = _db.execQuery("select yd.chunkHashes from YDocument as yd " +
+                "where yd.chunkHashes is not null");
+        if (stored != null && adjust(getDistinctHashes(stored), 1)) {
+            _db.commit();
+        }
+        else _db.rollback();
+    }
+
+
+    /**
+     * Adds to the reference counts of chunks, within the current transaction
+     * @param hashes the chunk hashes, where a hash listed n times is adjusted n times
+     * @param delta the amount to add to the count of each listed hash
+     * @return true if successful, or false if a count couldn't be written, in which
+     * case the transaction has been rolled back
+     */
+    boolean adjust(Collection<String> hashes, int delta) {
+        Transaction tx = _db.getOrBeginTransaction();
+        for (String hash : hashes) {
+            YChunkReference ref = (YChunkReference) _db.get(YChunkReference.class, hash,
+                    false);
+            boolean written;
+            if (ref != null) {
+                ref.adjust(delta);
+                written = _db.exec(ref, HibernateEngine.DB_UPDATE, tx);
+            }
+            else if (delta > 0) {
+                written = _db.exec(new YChunkReference(hash, delta),
+                        HibernateEngine.DB_INSERT, tx);
+            }
+            else continue;                                      // nothing to reduce
+
+            if (! written) return false;
+        }
+        return true;
+    }
+
+
+    /**
+     * Removes the counts of those chunks that no stored document references. No
+     * document that may reuse the chunks may be being stored while this runs
+     * @param candidates the hashes of chunks that may no longer be referenced
+     * @return the hashes of the chunks that can be deleted
+     */
+    Set<String> removeUnreferenced(Collection<String> candidates) {
+        Set<String> unreferenced = new HashSet<String>();
+        Transaction tx = _db.getOrBeginTransaction();
+        for (String hash : new HashSet<String>(candidates)) {
+            YChunkReference ref = (YChunkReference) _db.get(YChunkReference.class, hash,
+                    false);
+            if (ref == null || ref.getCount() <= 0) {
+                if (ref != null && ! _db.exec(ref, HibernateEngine.DB_DELETE, tx)) {
+                    return Collections.emptySet();           // rolled back, keep them
+                }
+                unreferenced.add(hash);
+            }
+        }
+        _db.commit();
+        return unreferenced;
+    }
+
+
+    /**
+     * @param documents the persisted chunk lists of a set of documents
+     * @return the hashes of each document's chunks, each listed once per document
+     */
+    static List<String> getDistinctHashes(Collection<?> documents) {
+        List<String> hashes = new ArrayList<String>();
+        for (Object chunks : documents) {
+            hashes.addAll(new LinkedHashSet<String>(YDocument.splitHashes((String) chunks)));
+        }
+        return hashes;
+    }
+
+}
@@ -0,0 +1,243 @@
+/*
+ * Copyright (c) 2004-2020 The YAWL Foundation. All rights reserved.
+ * The YAWL Foundation is a collaboration of individuals and
+ * organisations who are committed to improving workflow technology.
+ *
+ * This file is part of YAWL. YAWL is free software: you can
+ * redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation.
+ *
+ * YAWL is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with YAWL. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.yawlfoundation.yawl.documentStore;
+
+import java.io.*;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A content-addressed, on-disk store for the binary files held by the Document Store.
+ * Each file is split into fixed-size chunks, and each chunk is stored once, under the
+ * hash of its contents, so that content shared by several documents is stored only
+ * once. A stored file is fully described by the ordered hashes of its chunks and its
+ * size, which are all that need be persisted in the database.
+ * <p/>
+ * Files are streamed through the store a chunk at a time, so a file never has to be
+ * held in memory in full. Since every chunk but the last is full size, any byte range
+ * of a file can be read without reading the chunks before it.
+ * <p/>
+ * The store does not know which chunks are in use - it is up to the caller to delete
+ * only those chunks that are no longer referenced by any document.
+ */
+public class ChunkStore {
+
+    public static final int CHUNK_SIZE = 1024 * 1024;             // 1Mb
+
+    private static final String HASH_ALGORITHM = "SHA-256";
+    private static final int COPY_BUF_SIZE = 32768;
+
+    private final File _root;
+
+
+    /**
+     * Constructs a new ChunkStore
+     * @param root the directory to hold the stored chunks. It is created if it
+     *             doesn't already exist
+     * @throws IOException if the directory does not exist and can't be created
+     */
+    public ChunkStore(File root) throws IOException {
+        if (! (root.isDirectory() || root.mkdirs())) {
+            throw new IOException("Unable to create document store directory: " + root);
+        }
+        _root = root;
+    }
+
+
+    public File getRoot() { return _root; }
+
+
+    /**
+     * Reads a stream to its end and stores its contents
+     * @param in the stream to read
+     * @param hashes a list to which the hash of each chunk of the stream's contents is
+     *               added, in order. If an exception is thrown, it holds the hashes of
+     *               the chunks stored before the failure
+     * @return the number of bytes read from the stream
+     * @throws IOException if there's a problem reading the stream or writing a chunk
+     */
+    public long write(InputStream in, List<String> hashes) throws IOException {
+        MessageDigest digest = newDigest();
+        byte[] buffer = new byte[CHUNK_SIZE];
+        long size = 0;
+        int length;
+        while ((length = fill(in, buffer)) > 0) {
+            digest.update(buffer, 0, length);
+            String hash = toHex(digest.digest());
+            writeChunk(hash, buffer, length);
+            hashes.add(hash);
+            size += length;
+        }
+        return size;
+    }
+
+
+    /**
+     * Writes a byte range of a stored file to a stream
+     * @param hashes the ordered hashes of the chunks of the stored file
+     * @param offset the index of the first byte to write
+     * @param length the number of bytes to write
+     * @param out the stream to write to
+     * @throws IOException if a chunk is missing or can't be read, or there's a
+     * problem writing to the stream
+     */
+    public void read(List<String> hashes, long offset, long length, OutputStream out)
+            throws IOException {
+        byte[] buffer = new byte[COPY_BUF_SIZE];
+        int index = (int) (offset / CHUNK_SIZE);
+        long skip = offset % CHUNK_SIZE;
+        long remaining = length;
+        while (remaining > 0 && index < hashes.size()) {
+            File chunk = getChunkFile(hashes.get(index++));
+            if (! chunk.isFile()) {
+                throw new IOException("Stored document is missing chunk: " +
+                        chunk.getName());
+            }
+            InputStream in = new FileInputStream(chunk);
+            try {
+                skipFully(in, skip);
+                int bytesRead;
+                while (remaining > 0 && (bytesRead = in.read(buffer, 0,
+                        (int) Math.min(buffer.length, remaining))) > 0) {
+                    out.write(buffer, 0, bytesRead);
+                    remaining -= bytesRead;
+                }
+            }
+            finally {
+                in.close();
+            }
+            skip = 0;
+        }
+    }
+
+
+    /**
+     * Writes the whole of a stored file to a stream
+     * @param hashes the ordered hashes of the chunks of the stored file
+     * @param out the stream to write to
+     * @throws IOException if a chunk is missing or can't be read, or there's a
+     * problem writing to the stream
+     */
+    public void read(List<String> hashes, OutputStream out) throws IOException {
+        read(hashes, 0, Long.MAX_VALUE, out);
+    }
+
+
+    /**
+     * Removes chunks from the store. The caller must ensure that no document still
+     * references any of them
+     * @param hashes the hashes of the chunks to remove
+     */
+    public void delete(Collection<String> hashes) {
+        for (String hash : hashes) {
+            getChunkFile(hash).delete();
+        }
+    }
+
+
+    public boolean contains(String hash) {
+        return getChunkFile(hash).isFile();
+    }
+
+
+    /*********************************************************************************/
+
+    // chunks are spread over subdirectories named for the first two chars of the hash
+    private File getChunkFile(String hash) {
+        return new File(new File(_root, hash.substring(0, 2)), hash);
+    }
+
+
+    // a chunk already stored has identical content, so is left as it is
+    private void writeChunk(String hash, byte[] buffer, int length) throws IOException {
+        File chunk = getChunkFile(hash);
+        if (chunk.isFile()) return;
+
+        File dir = chunk.getParentFile();
+        if (! (dir.isDirectory() || dir.mkdirs())) {
+            throw new IOException("Unable to create document store directory: " + dir);
+        }
+
+        // write to a temp file first, so a partly written chunk is never visible
+        File temp = File.createTempFile(hash.substring(0, 8), ".tmp", dir);
+        try {
+            OutputStream os = new FileOutputStream(temp);
+            try {
+                os.write(buffer, 0, length);
+            }
+            finally {
+                os.close();
+            }
+            Files.move(temp.toPath(), chunk.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (FileAlreadyExistsException faee) {
+            // stored concurrently by another write of the same content
+        }
+        finally {
+            temp.delete();                        // if not already moved
+        }
+    }
+
+
+    // reads until the buffer is full or the end of the stream is reached
+    private int fill(InputStream in, byte[] buffer) throws IOException {
+        int total = 0;
+        int bytesRead;
+        while (total < buffer.length &&
+                (bytesRead = in.read(buffer, total, buffer.length - total)) > -1) {
+            total += bytesRead;
+        }
+        return total;
+    }
+
+
+    private void skipFully(InputStream in, long count) throws IOException {
+        while (count > 0) {
+            long skipped = in.skip(count);
+            if (skipped <= 0) throw new EOFException("Stored chunk is truncated");
+            count -= skipped;
+        }
+    }
+
+
+    private MessageDigest newDigest() throws IOException {
+        try {
+            return MessageDigest.getInstance(HASH_ALGORITHM);
+        }
+        catch (NoSuchAlgorithmException nsae) {
+            throw new IOException(nsae.getMessage());
+        }
+    }
+
+
+    private String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16))
+              .append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+
+}
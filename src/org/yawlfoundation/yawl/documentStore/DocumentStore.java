@@ -19,6 +19,7 @@
 package org.yawlfoundation.yawl.documentStore;
 
 import org.hibernate.ObjectNotFoundException;
+import org.hibernate.Transaction;
 import org.yawlfoundation.yawl.engine.interfce.YHttpServlet;
 import org.yawlfoundation.yawl.util.HibernateEngine;
 import org.yawlfoundation.yawl.util.Sessions;
@@ -31,12 +32,23 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.*;
 import java.sql.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * A storage cache for binary files passed as work item data.
+ * <p/>
+ * Files are streamed to and from a content-addressed ChunkStore on disk; the
+ * database holds only each document's case id and the hashes of its chunks.
+ * Documents stored in the database by earlier versions remain readable.
  *
  * @author Michael Adams
  * @date 18/11/11
@@ -46,9 +58,15 @@ public class DocumentStore extends YHttpServlet {
     private Sessions _sessions;            // maintains sessions with external services
     private HibernateEngine _db;           // communicates with underlying database
     private boolean _retainWhenCaseCompletes;
+    private ChunkStore _chunkStore;        // holds the stored files
+    private ChunkReferences _chunkRefs;    // counts the documents using each chunk
 
+    // chunks may be shared by documents, so are only deleted under the write lock,
+    // once no put in progress may yet reference them
+    private final ReadWriteLock _chunkLock = new ReentrantReadWriteLock();
 
-    public void init() {
+
+    public void init() throws ServletException {
         ServletContext context = getServletContext();
 
         // check size-fix for H2 databases
@@ -57,8 +75,18 @@ public class DocumentStore extends YHttpServlet {
         // setup database connection
         Set<Class> persistedClasses = new HashSet<Class>();
         persistedClasses.add(YDocument.class);
+        persistedClasses.add(YChunkReference.class);
         _db = new HibernateEngine(true, persistedClasses);
+        _chunkRefs = new ChunkReferences(_db);
+        _chunkRefs.initialise();
 
+        // set up the on-disk store for document contents
+        try {
+            _chunkStore = new ChunkStore(getChunkStoreDir(context));
+        }
+        catch (IOException ioe) {
+            throw new ServletException(ioe.getMessage(), ioe);
+        }
 
         // set up session connections
         _sessions = new Sessions();
@@ -111,9 +139,13 @@ public class DocumentStore extends YHttpServlet {
                 String caseID = dis.readUTF();
                 long docID = dis.readLong();
                 if (action.equals("get")) {
-                    writeDocument(res, getDocument(docID));
+                    writeDocument(res, getDocument(docID), 0, Long.MAX_VALUE);
+                } else if (action.equals("getrange")) {
+                    long offset = dis.readLong();
+                    long length = dis.readLong();
+                    writeDocument(res, getDocument(docID), offset, length);
                 } else if (action.equals("put")) {
-                    result = String.valueOf(putDocument(new YDocument(caseID, docID, dis)));
+                    result = String.valueOf(putDocument(caseID, docID, dis));
                 } else if (action.equals("remove")) {
                     result = String.valueOf(removeDocument(docID));
                 } else if (action.equals("clearcase")) {
@@ -139,18 +171,38 @@ public class DocumentStore extends YHttpServlet {
 
 
     /**
-     * Writes a binary file to a response's output stream
+     * Writes a binary file, or a byte range of it, to a response's output stream
      *
      * @param res the response
-     * @param doc a YDocument wrapper containing the binary file
-     * @throws IOException if there's a problem writing to the stream
+     * @param doc a YDocument wrapper for the binary file
+     * @param offset the index of the first byte to write
+     * @param length the maximum number of bytes to write
+     * @throws IOException if there's a problem reading the file or writing to the
+     * stream
      */
-    private void writeDocument(HttpServletResponse res, YDocument doc) throws IOException {
+    private void writeDocument(HttpServletResponse res, YDocument doc, long offset,
+                               long length) throws IOException {
         if (doc != null) {
+            if (offset < 0 || length < 0) {
+                throw new IOException("Invalid byte range requested");
+            }
+            long start = Math.min(offset, doc.getContentSize());
+            long count = Math.min(length, doc.getContentSize() - start);
             res.setContentType("multipart/form-data");
-            res.setBufferSize(doc.getDocumentSize());
+            res.setHeader("Content-Length", String.valueOf(count));
             ServletOutputStream out = res.getOutputStream();
-            out.write(doc.getDocument());
+            if (doc.isChunked()) {
+                _chunkLock.readLock().lock();
+                try {
+                    _chunkStore.read(doc.getChunks(), start, count, out);
+                }
+                finally {
+                    _chunkLock.readLock().unlock();
+                }
+            }
+            else if (count > 0) {
+                out.write(doc.getDocument(), (int) start, (int) count);
+            }
             out.flush();
             out.close();
         }
@@ -194,30 +246,46 @@ public class DocumentStore extends YHttpServlet {
 
 
     /**
-     * Writes a document to the database
+     * Streams a document to the chunk store, and writes its details to the database
      *
-     * @param doc a YDocument wrapper for the document to write
+     * @param caseID the id of the case the document belongs to
+     * @param docID the id of the document to replace, or -1 for a new document
+     * @param in the stream to read the document from
      * @return the id (primary key) of the stored document
      * @throws IOException if the document can't be read from the request stream
      */
-    private long putDocument(YDocument doc) throws IOException {
-        if (doc.getDocumentSize() > 0) {
-            if (doc.hasValidId()) {
-
-                // getDocument will propagate an exception if the id is unknown
-                YDocument existingDoc = getDocument(doc.getId());
-                existingDoc.setDocument(doc.getDocument());
-                _db.exec(existingDoc, HibernateEngine.DB_UPDATE, true);
-            } else {
-                _db.exec(doc, HibernateEngine.DB_INSERT, true);
+    private long putDocument(String caseID, long docID, InputStream in)
+            throws IOException {
+
+        // getDocument will propagate an exception if the id is unknown
+        YDocument doc = docID > -1 ? getDocument(docID) : new YDocument(caseID, -1,
+                (byte[]) null);
+        List<String> previousChunks = doc.getChunks();
+        List<String> chunks = new ArrayList<String>();
+        boolean stored = false;
+        _chunkLock.readLock().lock();
+        try {
+            long size = _chunkStore.write(in, chunks);
+            if (size == 0) {
+                throw new IOException("Could not read document from request stream");
             }
-            return doc.getId();
-        } else throw new IOException("Could not read document from request stream");
+            doc.setChunks(chunks, size);
+            stored = storeDocument(doc, doc.hasValidId() ? HibernateEngine.DB_UPDATE :
+                    HibernateEngine.DB_INSERT, chunks, previousChunks);
+            if (! stored) throw new IOException("Could not write document to database");
+        }
+        finally {
+            _chunkLock.readLock().unlock();
+
+            // discard the new chunks if the put failed, else those replaced
+            removeUnreferencedChunks(stored ? previousChunks : chunks);
+        }
+        return doc.getId();
     }
 
 
     /**
-     * Removes a document from the database
+     * Removes a document from the database and its unshared chunks from the store
      *
      * @param id the id of the document to remove
      * @return true if successful
@@ -225,13 +293,63 @@ public class DocumentStore extends YHttpServlet {
     private boolean removeDocument(long id) {
         try {
             YDocument doc = (YDocument) _db.load(YDocument.class, id);
-            return (doc != null) && _db.exec(doc, HibernateEngine.DB_DELETE, true);
+            if (doc != null && storeDocument(doc, HibernateEngine.DB_DELETE,
+                    Collections.<String>emptyList(), doc.getChunks())) {
+                removeUnreferencedChunks(doc.getChunks());
+                return true;
+            }
+            return false;
         } catch (ObjectNotFoundException onfe) {
             return false;
         }
     }
 
 
+    /**
+     * Writes or deletes a document, along with the changes to the reference counts of
+     * the chunks it adds and drops, in a single transaction
+     *
+     * @param doc the document
+     * @param action the database action to take for the document
+     * @param added the chunks the document now references
+     * @param dropped the chunks the document no longer references
+     * @return true if successful
+     */
+    private boolean storeDocument(YDocument doc, int action, List<String> added,
+                                  List<String> dropped) {
+        synchronized (_chunkRefs) {
+            Transaction tx = _db.getOrBeginTransaction();
+            if (_db.exec(doc, action, tx) &&
+                    _chunkRefs.adjust(new LinkedHashSet<String>(added), 1) &&
+                    _chunkRefs.adjust(new LinkedHashSet<String>(dropped), -1)) {
+                _db.commit();
+                return true;
+            }
+            _db.rollback();
+            return false;
+        }
+    }
+
+
+    /**
+     * Deletes those of a set of chunks that no stored document references
+     *
+     * @param candidates the hashes of chunks that may no longer be referenced
+     */
+    private void removeUnreferencedChunks(Collection<String> candidates) {
+        if (candidates.isEmpty()) return;
+        _chunkLock.writeLock().lock();
+        try {
+            synchronized (_chunkRefs) {
+                _chunkStore.delete(_chunkRefs.removeUnreferenced(candidates));
+            }
+        }
+        finally {
+            _chunkLock.writeLock().unlock();
+        }
+    }
+
+
     private String addCaseID(long id, String caseID) throws IOException {
         try {
             YDocument doc = (YDocument) _db.load(YDocument.class, id);
@@ -255,11 +373,27 @@ public class DocumentStore extends YHttpServlet {
      * @return a message indicating success or otherwise
      */
     private String clearCase(String id) {
+        List<String> chunks = null;
+        int rowsDeleted = -1;
+        synchronized (_chunkRefs) {
+            List<?> stored = _db.execQuery("select yd.chunkHashes from YDocument as yd " +
+                    "where yd.caseId='" + id + "' and yd.chunkHashes is not null");
+            if (stored != null) {
+                chunks = ChunkReferences.getDistinctHashes(stored);
+                rowsDeleted = _db.execUpdate("delete from YDocument as yd where " +
+                        "yd.caseId='" + id + "'", false);
+            }
+            if (rowsDeleted > -1 && _chunkRefs.adjust(chunks, -1)) {
+                _db.commit();
+            }
+            else {
+                _db.rollback();
+                rowsDeleted = -1;
+            }
+        }
         StringBuilder sb = new StringBuilder(64);
-        sb.append("delete from YDocument as yd where yd.caseId='").append(id).append("'");
-        int rowsDeleted = _db.execUpdate(sb.toString(), true);
-        sb.delete(0, sb.length());
         if (rowsDeleted > -1) {
+            removeUnreferencedChunks(chunks);
             sb.append(rowsDeleted).append(" document")
                     .append(rowsDeleted > 1 ? "s " : " ")
                     .append("removed for case: ")
@@ -271,6 +405,25 @@ public class DocumentStore extends YHttpServlet {
     }
 
 
+    /**
+     * Gets the directory for the chunk store, from the 'DocumentStorePath' context
+     * parameter if set, or else a 'documentStore' directory under the container's
+     * base directory
+     *
+     * @param context the current servlet context
+     * @return the chunk store directory
+     */
+    private File getChunkStoreDir(ServletContext context) {
+        String path = context.getInitParameter("DocumentStorePath");
+        if (! StringUtil.isNullOrEmpty(path)) {
+            return new File(path);
+        }
+        String base = System.getProperty("catalina.base",
+                System.getProperty("java.io.tmpdir"));
+        return new File(new File(base, "yawldata"), "documentStore");
+    }
+
+
     /**
      * Increases the maximum column length for stored documents in H2 databases from 255
      * to 5Mb.
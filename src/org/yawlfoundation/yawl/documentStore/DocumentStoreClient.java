@@ -36,6 +36,8 @@ public class DocumentStoreClient extends Interface_Client {
     // "http://localhost:8080/documentStore/"
     protected String _storeURI;
 
+    private static final int BUF_SIZE = 32768;
+
     /**
      * Constructs a new, empty DocumentStoreClient object
      */
@@ -109,6 +111,75 @@ public class DocumentStoreClient extends Interface_Client {
     }
 
 
+    /**
+     * Stores a document in the Document Store, streaming its contents so that the
+     * document need never be held in memory in full
+     * @param doc a YDocument holding the case id and, to update an existing document,
+     *            its id. Any binary file in the YDocument is ignored
+     * @param content a stream from which the binary file may be read. It is read to
+     *                its end and then closed
+     * @param handle a valid session handle
+     * @return the document id (as a String) if successful, otherwise an error message
+     * @throws IOException if the service can't be reached or the stream can't be read
+     */
+    public String putDocument(YDocument doc, InputStream content, String handle)
+            throws IOException {
+        HttpURLConnection connection = openConnection();
+        connection.setChunkedStreamingMode(BUF_SIZE);
+        OutputStream out = connection.getOutputStream();
+        try {
+            out.write(toByteArray(new YDocument(doc.getCaseId(), doc.getId(),
+                    (byte[]) null), "put", handle));
+            copy(content, out);
+        }
+        finally {
+            content.close();
+            out.close();
+        }
+        return readResponse(connection, new ByteArrayOutputStream()).toString("UTF-8");
+    }
+
+
+    /**
+     * Gets a document from the Document Store, streaming its contents to an output
+     * stream so that the document need never be held in memory in full
+     * @param docID the id of the document to get. The id must match an existing
+     *              document
+     * @param handle a valid session handle
+     * @param out the stream to write the binary file to
+     * @throws IOException if the service can't be reached
+     */
+    public void getDocument(long docID, String handle, OutputStream out)
+            throws IOException {
+        YDocument doc = new YDocument();
+        doc.setId(docID);
+        executePost(toByteArray(doc, "get", handle), out);
+    }
+
+
+    /**
+     * Gets a byte range of a document from the Document Store
+     * @param docID the id of the document to get. The id must match an existing
+     *              document
+     * @param offset the index of the first byte to get
+     * @param length the maximum number of bytes to get
+     * @param handle a valid session handle
+     * @param out the stream to write the bytes to
+     * @throws IOException if the service can't be reached
+     */
+    public void getDocumentRange(long docID, long offset, long length, String handle,
+                                 OutputStream out) throws IOException {
+        YDocument doc = new YDocument();
+        doc.setId(docID);
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        DataOutputStream d = new DataOutputStream(baos);
+        d.write(toByteArray(doc, "getrange", handle));
+        d.writeLong(offset);
+        d.writeLong(length);
+        executePost(baos.toByteArray(), out);
+    }
+
+
     /**
      * Gets a document from the Document Store
      * @param doc the YDocument to get. The YDocument's id must match an existing
@@ -269,37 +340,54 @@ public class DocumentStoreClient extends Interface_Client {
     
     
     private ByteArrayOutputStream executePost(byte[] bytes) throws IOException {
+        return executePost(bytes, new ByteArrayOutputStream(BUF_SIZE));
+    }
+
+
+    private <T extends OutputStream> T executePost(byte[] bytes, T out)
+            throws IOException {
+        HttpURLConnection connection = openConnection();
+        connection.setRequestProperty("Content-length", "" + bytes.length);
+        connection.getOutputStream().write(bytes);
+        connection.getOutputStream().close();
+        return readResponse(connection, out);
+    }
+
+
+    private HttpURLConnection openConnection() throws IOException {
         URL url = new URL(_storeURI);
         HttpURLConnection connection = (HttpURLConnection) url.openConnection();
         connection.setDoOutput(true);
         connection.setRequestProperty("Content-Type", "multipart/form-data");
-        connection.setRequestProperty("Content-length", "" + bytes.length);
         connection.setRequestProperty("Connection", "close");
-        connection.getOutputStream().write(bytes);
-        connection.getOutputStream().close();
-        ByteArrayOutputStream outStream = getOutStream(connection.getInputStream());
-        connection.disconnect();
-        return outStream;
+        return connection;
     }
 
 
-    private ByteArrayOutputStream getOutStream(InputStream is) throws IOException {
-        final int BUF_SIZE = 32768;
+    // the reply is copied as bytes - to preserve UTF-8
+    private <T extends OutputStream> T readResponse(HttpURLConnection connection, T out)
+            throws IOException {
+        InputStream inStream = connection.getInputStream();
+        try {
+            copy(inStream, out);
+        }
+        finally {
+            inStream.close();
+            connection.disconnect();
+        }
+        return out;
+    }
+
 
-        // read reply into a buffered byte stream - to preserve UTF-8
-        BufferedInputStream inStream = new BufferedInputStream(is);
-        ByteArrayOutputStream outStream = new ByteArrayOutputStream(BUF_SIZE);
+    private void copy(InputStream in, OutputStream out) throws IOException {
         byte[] buffer = new byte[BUF_SIZE];
 
         // read chunks from the input stream and write them out
         int bytesRead;
-        while ((bytesRead = inStream.read(buffer, 0, BUF_SIZE)) > 0) {
-            outStream.write(buffer, 0, bytesRead);
+        while ((bytesRead = in.read(buffer, 0, BUF_SIZE)) > 0) {
+            out.write(buffer, 0, bytesRead);
         }
-        outStream.close();
-        inStream.close();
-
-        return outStream;
+        out.flush();
     }
 
 }
@@ -0,0 +1,44 @@
+/*
+ * Copyright (c) 2004-2020 The YAWL Foundation. All rights reserved.
+ * The YAWL Foundation is a collaboration of individuals and
+ * organisations who are committed to improving workflow technology.
+ *
+ * This file is part of YAWL. YAWL is free software: you can
+ * redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation.
+ *
+ * YAWL is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with YAWL. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.yawlfoundation.yawl.documentStore;
+
+/**
+ * The number of stored documents that reference a chunk in the Document Store's
+ * ChunkStore. A chunk may be deleted once its count falls to zero.
+ */
+public class YChunkReference {
+
+    private String hash;                                 // the chunk's hash (key)
+    private int refCount;                                // the documents using it
+
+    public YChunkReference() { }
+
+    public YChunkReference(String chunkHash, int count) {
+        hash = chunkHash;
+        refCount = count;
+    }
+
+
+    public String getHash() { return hash; }
+
+    public int getCount() { return refCount; }
+
+    public void adjust(int delta) { refCount += delta; }
+
+}
@@ -19,11 +19,19 @@
 package org.yawlfoundation.yawl.documentStore;
 
 import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * Holds a binary file (of any type) to be passed as work item data. Note that the file
  * itself is located in the 'Document Store' service, only its name and id are passed
- * to and from the engine
+ * to and from the engine.
+ * <p/>
+ * Within the Document Store, the binary file is held in its ChunkStore, and a
+ * YDocument persists only the hashes of the file's chunks and its size. Documents
+ * stored before the ChunkStore was introduced hold the file itself.
  *
  * @author Michael Adams
  * @date 18/11/11
@@ -33,6 +41,10 @@ public class YDocument {
     long id;                                             // a hibernate primary key
     String caseId;                                       // the case it belongs to
     byte[] document;                                     // the binary file
+    String chunkHashes;                                  // or its stored chunks
+    Long contentSize;                                    // size of the stored chunks
+
+    private static final String HASH_SEPARATOR = ",";
 
 
     /**
@@ -176,6 +188,63 @@ public class YDocument {
     }
 
 
+    /**
+     * Checks whether the binary file is held as chunks in the Document Store's
+     * ChunkStore (or, if false, in this document)
+     * @return true if the binary file is held as stored chunks
+     */
+    // rows stored before chunking have neither chunk hashes nor a size
+    public boolean isChunked() { return chunkHashes != null && contentSize != null; }
+
+
+    /**
+     * Gets the hashes of the stored chunks of the binary file
+     * @return the ordered list of hashes, or an empty list if the binary file is not
+     * held as stored chunks
+     */
+    public List<String> getChunks() {
+        return isChunked() ? splitHashes(chunkHashes) : Collections.<String>emptyList();
+    }
+
+
+    /**
+     * Sets the stored chunks of the binary file, replacing any binary file held in
+     * this document
+     * @param hashes the ordered hashes of the stored chunks
+     * @param size the size of the binary file, as a number of bytes
+     */
+    public void setChunks(List<String> hashes, long size) {
+        StringBuilder sb = new StringBuilder(hashes.size() * 65);
+        for (String hash : hashes) {
+            if (sb.length() > 0) sb.append(HASH_SEPARATOR);
+            sb.append(hash);
+        }
+        chunkHashes = sb.toString();
+        contentSize = size;
+        document = null;
+    }
+
+
+    /**
+     * Gets the size of the binary file, wherever it is held
+     * @return the size of the file as a number of bytes
+     */
+    public long getContentSize() {
+        return isChunked() ? contentSize : getDocumentSize();
+    }
+
+
+    /**
+     * Splits a persisted list of chunk hashes
+     * @param hashes a list of chunk hashes, as persisted
+     * @return the list of hashes
+     */
+    public static List<String> splitHashes(String hashes) {
+        return hashes == null || hashes.isEmpty() ? new ArrayList<String>() :
+                new ArrayList<String>(Arrays.asList(hashes.split(HASH_SEPARATOR)));
+    }
+
+
     /**
      * Writes the binary file stored in this document to a disk file
      * @param fileName a fully qualified path and file name of a disk file to write
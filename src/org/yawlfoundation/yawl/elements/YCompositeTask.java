@@ -120,7 +120,7 @@ public final class YCompositeTask extends YTask {
     protected Element performDataExtraction(String expression, YParameter inputParam)
             throws YDataStateException, YQueryException {
 
-        Element result = evaluateTreeQuery(expression, _net.getInternalDataDocument());
+        Element result = evaluateNetDataQuery(expression);
 
         // if the param id of empty complex type flag type, don't return the query result
         // as input data if the flag is not currently set
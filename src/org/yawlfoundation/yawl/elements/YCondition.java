@@ -72,6 +72,7 @@ public class YCondition extends YExternalNetElement implements YConditionInterfa
 
     public void add(YPersistenceManager pmgr, YIdentifier identifier) throws YPersistenceException {
         _bag.addIdentifier(pmgr, identifier);
+        tokensChanged();
     }
 
     public boolean contains(YIdentifier identifier) {
@@ -93,23 +94,33 @@ public class YCondition extends YExternalNetElement implements YConditionInterfa
     public YIdentifier removeOne(YPersistenceManager pmgr) throws YPersistenceException {
         YIdentifier identifier = getIdentifiers().get(0);
         _bag.remove(pmgr, identifier, 1);
+        tokensChanged();
         return identifier;
     }
 
     public void removeOne(YPersistenceManager pmgr, YIdentifier identifier) throws YPersistenceException {
         _bag.remove(pmgr, identifier, 1);
+        tokensChanged();
     }
 
     public void remove(YPersistenceManager pmgr, YIdentifier identifier, int amount) throws YPersistenceException {
         _bag.remove(pmgr, identifier, amount);
+        tokensChanged();
     }
 
     public void removeAll(YPersistenceManager pmgr, YIdentifier identifier) throws YPersistenceException {
         _bag.remove(pmgr, identifier, _bag.getAmount(identifier));
+        tokensChanged();
     }
 
     public synchronized void removeAll(YPersistenceManager pmgr) throws YPersistenceException {
         _bag.removeAll(pmgr);
+        tokensChanged();
+    }
+
+    // a change in tokens may change the enablement of the tasks that follow
+    private void tokensChanged() {
+        if (_net != null) _net.conditionChanged(this);
     }
 
     public Object clone() throws CloneNotSupportedException {
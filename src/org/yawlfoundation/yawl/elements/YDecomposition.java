@@ -18,6 +18,8 @@
 
 package org.yawlfoundation.yawl.elements;
 
+import net.sf.saxon.s9api.SaxonApiException;
+import net.sf.saxon.s9api.XdmNode;
 import org.jdom2.Document;
 import org.jdom2.Element;
 import org.yawlfoundation.yawl.elements.data.YParameter;
@@ -27,6 +29,7 @@ import org.yawlfoundation.yawl.exceptions.YPersistenceException;
 import org.yawlfoundation.yawl.logging.YLogPredicate;
 import org.yawlfoundation.yawl.util.DynamicValue;
 import org.yawlfoundation.yawl.util.JDOMUtil;
+import org.yawlfoundation.yawl.util.SaxonUtil;
 import org.yawlfoundation.yawl.util.StringUtil;
 import org.yawlfoundation.yawl.util.YVerificationHandler;
 
@@ -52,6 +55,7 @@ public abstract class YDecomposition implements Cloneable, YVerifiable {
     private Map<String, YParameter> _enablementParameters;  // only used to generate editor xml
     private Set<String> _outputExpressions;
     protected Document _data;
+    private volatile XdmNode _dataTree;           // saxon copy of _data, built on demand
     private YNetData _casedata = null;
     private YAttributeMap _attributes;
     private YLogPredicate _logPredicate;
@@ -94,6 +98,7 @@ public abstract class YDecomposition implements Cloneable, YVerifiable {
     public void restoreData(YNetData casedata) {
         _casedata = casedata;
         _data = getNetDataDocument(casedata.getData());
+        clearDataTree();
     }
 
     
@@ -325,6 +330,27 @@ public abstract class YDecomposition implements Cloneable, YVerifiable {
     public Document getInternalDataDocument() { return _data; }
 
 
+    /**
+     * Gets the runtime variable values as a Saxon tree, for query evaluation. The tree
+     * is built on first use after each change to the data, and reused until the
+     * next change. Data changes must be made via assignData (or addData) for the tree
+     * to stay current.
+     * @return the Saxon tree of the document containing runtime variable values
+     * @throws SaxonApiException if the tree can't be built
+     */
+    public XdmNode getInternalDataTree() throws SaxonApiException {
+        XdmNode tree = _dataTree;
+        if (tree == null) {
+            tree = SaxonUtil.toXdmNode(_data);
+            _dataTree = tree;
+        }
+        return tree;
+    }
+
+
+    protected void clearDataTree() { _dataTree = null; }
+
+
     /**
      * This method returns the list of data from a decomposition. According to
      * its declared output parameters.  Only useful for Beta 4 and above.
@@ -363,6 +389,7 @@ public abstract class YDecomposition implements Cloneable, YVerifiable {
 
         _data.getRootElement().removeChild(variable.getName());
         _data.getRootElement().addContent(variable);
+        clearDataTree();
         _casedata.setData(JDOMUtil.documentToString(_data));
 
         if (pmgr != null)  pmgr.updateObjectExternal(_casedata);
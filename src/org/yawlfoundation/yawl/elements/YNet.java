@@ -26,9 +26,10 @@ import org.yawlfoundation.yawl.elements.data.YParameter;
 import org.yawlfoundation.yawl.elements.data.YVariable;
 import org.yawlfoundation.yawl.elements.data.external.ExternalDataGateway;
 import org.yawlfoundation.yawl.elements.data.external.ExternalDataGatewayFactory;
-import org.yawlfoundation.yawl.elements.e2wfoj.E2WFOJNet;
+import org.yawlfoundation.yawl.elements.e2wfoj.E2WFOJCache;
 import org.yawlfoundation.yawl.elements.state.YIdentifier;
 import org.yawlfoundation.yawl.elements.state.YMarking;
+import org.yawlfoundation.yawl.elements.state.YNetElementIndex;
 import org.yawlfoundation.yawl.engine.YPersistenceManager;
 import org.yawlfoundation.yawl.exceptions.YDataStateException;
 import org.yawlfoundation.yawl.exceptions.YPersistenceException;
@@ -56,6 +57,15 @@ public final class YNet extends YDecomposition {
     private String _externalDataGateway;
     private YNet _clone;
 
+    // tasks whose enablement may have changed since last taken by a net runner
+    private Set<YTask> _enablementChangedTasks;
+
+    // OR-join analysis, shared with this net's clones
+    private E2WFOJCache _orJoinCache = new E2WFOJCache();
+
+    // dense indices of this net's elements, for markings (not shared with clones)
+    private YNetElementIndex _elementIndex;
+
 
     public YNet(String id, YSpecification specification) {
         super(id, specification);
@@ -298,7 +308,9 @@ public final class YNet extends YDecomposition {
     }
 
 
-    public Object clone() {
+    // synchronized: the clone is built via the _clone field of this prototype net,
+    // and cases of the same specification may be started concurrently
+    public synchronized Object clone() {
         try {
             _clone = (YNet) super.clone();
             _clone._netElements = new HashMap<String, YExternalNetElement>();
@@ -325,6 +337,9 @@ public final class YNet extends YDecomposition {
             }
             _clone._externalDataGateway = _externalDataGateway;
             _clone._data = (Document) this._data.clone();
+            _clone.clearDataTree();
+            _clone._enablementChangedTasks = null;          // all tasks, initially
+            _clone._elementIndex = null;
 
             //do cleanup of class variable _clone before returning.
             Object temp = _clone;
@@ -343,6 +358,64 @@ public final class YNet extends YDecomposition {
     }
 
 
+    /**
+     * Records that tokens have been added to or removed from a condition, so that
+     * the enablement of the tasks it leads to may have changed
+     * @param condition the condition with changed tokens
+     */
+    public void conditionChanged(YCondition condition) {
+        for (YExternalNetElement element : condition.getPostsetElements()) {
+            if (element instanceof YTask) taskChanged((YTask) element);
+        }
+    }
+
+
+    /**
+     * Records that a task's enablement may have changed (e.g. it has started or
+     * finished being busy)
+     * @param task the changed task
+     */
+    public synchronized void taskChanged(YTask task) {
+        if (_enablementChangedTasks != null) _enablementChangedTasks.add(task);
+    }
+
+
+    /**
+     * Gets the tasks whose enablement may have changed since this method was last
+     * called, and clears the record. The first call returns all of the net's tasks.
+     * OR-join tasks are always included, since their enablement depends on the
+     * marking of the entire net.
+     * @return the set of tasks that need their enablement re-evaluated
+     */
+    public synchronized Set<YTask> takeEnablementChangedTasks() {
+        Set<YTask> changed = _enablementChangedTasks;
+        _enablementChangedTasks = new HashSet<YTask>();
+        if (changed == null) return new HashSet<YTask>(getNetTasks());
+        for (YTask task : getNetTasks()) {
+            if (task.getJoinType() == YTask._OR) changed.add(task);
+        }
+        return changed;
+    }
+
+
+    /**
+     * Prepares this net's OR-joins for enablement analysis, so that it is not done
+     * at runtime
+     */
+    public void prepareOrJoins() {
+        _orJoinCache.prepare(this);
+    }
+
+
+    /**
+     * @return the index used by markings of this net to number its elements
+     */
+    public synchronized YNetElementIndex getElementIndex() {
+        if (_elementIndex == null) _elementIndex = new YNetElementIndex();
+        return _elementIndex;
+    }
+
+
     public boolean orJoinEnabled(YTask orJoinTask, YIdentifier caseID) {
 
         if (orJoinTask == null || caseID == null) {
@@ -355,7 +428,7 @@ public final class YNet extends YDecomposition {
         }
 
         YMarking actualMarking = new YMarking(caseID);
-        List<YNetElement> locations = new Vector<YNetElement>(actualMarking.getLocations());
+        List<YNetElement> locations = actualMarking.getLocations();
         Set preSet = orJoinTask.getPresetElements();
         if (locations.containsAll(preSet)) {
             return true;
@@ -364,10 +437,7 @@ public final class YNet extends YDecomposition {
         for (YNetElement element : locations) {
             if (preSet.contains(element)) {
                 try {
-                    E2WFOJNet e2Net = new E2WFOJNet(this, orJoinTask);
-                    e2Net.restrictNet(actualMarking);
-                    e2Net.restrictNet(orJoinTask);
-                    return e2Net.orJoinEnabled(actualMarking, orJoinTask);
+                    return _orJoinCache.orJoinEnabled(this, orJoinTask, actualMarking);
                 } catch (Exception e) {
                     throw new RuntimeException("Exception in OR-join call:" + e);
                 }
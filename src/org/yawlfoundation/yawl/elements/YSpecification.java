@@ -226,6 +226,33 @@ public final class YSpecification implements Cloneable, YVerifiable {
         return new HashSet<YDecomposition>(_decompositions.values());
     }
 
+    /**
+     * @return the set of all XQueries that may be evaluated by the tasks of this
+     * specification's nets
+     */
+    public Set<String> getXQueries() {
+        Set<String> queries = new HashSet<String>();
+        for (YDecomposition decomposition : _decompositions.values()) {
+            if (decomposition instanceof YNet) {
+                for (YTask task : ((YNet) decomposition).getNetTasks()) {
+                    queries.addAll(task.getXQueries());
+                }
+            }
+        }
+        return queries;
+    }
+
+    /**
+     * Prepares the OR-join analysis of each of the specification's nets
+     */
+    public void prepareOrJoins() {
+        for (YDecomposition decomposition : _decompositions.values()) {
+            if (decomposition instanceof YNet) {
+                ((YNet) decomposition).prepareOrJoins();
+            }
+        }
+    }
+
     public YDecomposition removeDecomposition(String decompositionID) {
         return _decompositions.remove(decompositionID);
     }
@@ -127,6 +127,7 @@ public abstract class YTask extends YExternalNetElement {
 
     public void setI(YIdentifier i) {
         this._i = i;
+        busyStateChanged();
     }
 
     /**
@@ -267,6 +268,41 @@ public abstract class YTask extends YExternalNetElement {
     }
 
 
+    /**
+     * Gets every XQuery this task may evaluate at runtime - its input, output and
+     * enablement mappings, its multiple instance queries and its split predicates -
+     * so that they can be compiled ahead of time.
+     * @return the set of XQueries for this task
+     */
+    public Set<String> getXQueries() {
+        Set<String> queries = new HashSet<String>();
+        queries.addAll(_dataMappingsForTaskStarting.values());
+        queries.addAll(_dataMappingsForTaskCompletion.keySet());
+        queries.addAll(_dataMappingsForTaskEnablement.values());
+        if (isMultiInstance()) {
+            queries.add(_multiInstAttr.getMISplittingQuery());
+            queries.add(_multiInstAttr.getMIJoiningQuery());
+        }
+        for (YFlow flow : getPostsetFlows()) {
+            String predicate = flow.getXpathPredicate();
+            if (predicate != null && ! isTimerPredicate(predicate)) {
+                queries.add("boolean(" + predicate + ")");        // as per split eval
+            }
+        }
+
+        // remove any nulls & external mappings (which are not XQueries)
+        Iterator<String> itr = queries.iterator();
+        while (itr.hasNext()) {
+            String query = itr.next();
+            if (StringUtil.isNullOrEmpty(query) ||
+                    ExternalDataGatewayFactory.isExternalDataMappingExpression(query)) {
+                itr.remove();
+            }
+        }
+        return queries;
+    }
+
+
     public Map<String, String> getDataMappingsForTaskStarting() {
         return _dataMappingsForTaskStarting;
     }
@@ -309,6 +345,7 @@ public abstract class YTask extends YExternalNetElement {
             throw new YStateException(this + " cannot fire due to not being enabled");
         }
         _i = id;
+        busyStateChanged();
         _i.addLocation(pmgr, this);
         long numToSpawn = determineHowManyInstancesToCreate();
         List<YIdentifier> childIdentifiers = new Vector<YIdentifier>();
@@ -420,8 +457,7 @@ public abstract class YTask extends YExternalNetElement {
         int max = _multiInstAttr.getMaxInstances();
         int min = _multiInstAttr.getMinInstances();
         if (listSize > max || listSize < min) {
-            Element dataToSplit = evaluateTreeQuery(getPreSplittingMIQuery(),
-                    _net.getInternalDataDocument());
+            Element dataToSplit = evaluateNetDataQuery(getPreSplittingMIQuery());
             throw new YDataQueryException(
                     _multiInstAttr.getMISplittingQuery(), dataToSplit, this.getID(),
                     String.format(
@@ -465,7 +501,7 @@ public abstract class YTask extends YExternalNetElement {
     private List<Content> splitStartingDataForMultiInstances()
             throws YQueryException, YDataQueryException {
         String queryString = getPreSplittingMIQuery();
-        Element dataToSplit = evaluateTreeQuery(queryString, _net.getInternalDataDocument());
+        Element dataToSplit = evaluateNetDataQuery(queryString);
         if (dataToSplit == null) {
             throw new YDataQueryException(queryString, dataToSplit, this.getID(),
                     "No data available for MI splitting at task start");
@@ -780,6 +816,7 @@ public abstract class YTask extends YExternalNetElement {
                     getID(), _i, JDOMUtil.documentToString(_net.getInternalDataDocument()));
         }
         _i = null;
+        busyStateChanged();
     }
 
 
@@ -945,7 +982,7 @@ public abstract class YTask extends YExternalNetElement {
         String xquery = "boolean(" + query + ")";
         try {
             logger.debug("Evaluating XQuery: " + xquery);
-            String result = SaxonUtil.evaluateQuery(xquery, _net.getInternalDataDocument());
+            String result = SaxonUtil.evaluateQuery(xquery, _net.getInternalDataTree());
 
             if (result != null) {
                 if (result.equalsIgnoreCase("true")) {
@@ -1126,7 +1163,7 @@ public abstract class YTask extends YExternalNetElement {
     protected Element performDataExtraction(String expression, YParameter inputParam)
             throws YDataStateException, YQueryException {
 
-        Element result = evaluateTreeQuery(expression, _net.getInternalDataDocument());
+        Element result = evaluateNetDataQuery(expression);
 
         // if the param id of empty complex type flag type, don't return the query result
         // as input data if the flag is not currently set
@@ -1222,19 +1259,35 @@ public abstract class YTask extends YExternalNetElement {
             logger.debug("Evaluating XQuery: " + query);
             return SaxonUtil.evaluateTreeQuery(query, document);
         } catch (SaxonApiException e) {
-            YQueryException qe = new YQueryException(
-                    "Something Wrong with Process Specification:\n" +
-                            "The engine failed to parse an invalid query.\n" +
-                            "Please check task:\n\t" +
-                            "id[ " + getID() + " ]\n\t" +
-                            "query: \n\t" + query + ".\n" +
-                            "Message from parser: [" + e.getMessage() + "]");
-            qe.setStackTrace(e.getStackTrace());
-            throw qe;
+            throw newQueryException(query, e);
         }
     }
 
 
+    // evaluates a query against the net's (cached) saxon data tree
+    protected Element evaluateNetDataQuery(String query) throws YQueryException {
+        try {
+            logger.debug("Evaluating XQuery: " + query);
+            return SaxonUtil.evaluateTreeQuery(query, _net.getInternalDataTree());
+        } catch (SaxonApiException e) {
+            throw newQueryException(query, e);
+        }
+    }
+
+
+    private YQueryException newQueryException(String query, SaxonApiException e) {
+        YQueryException qe = new YQueryException(
+                "Something Wrong with Process Specification:\n" +
+                        "The engine failed to parse an invalid query.\n" +
+                        "Please check task:\n\t" +
+                        "id[ " + getID() + " ]\n\t" +
+                        "query: \n\t" + query + ".\n" +
+                        "Message from parser: [" + e.getMessage() + "]");
+        qe.setStackTrace(e.getStackTrace());
+        return qe;
+    }
+
+
     private List<Content> evaluateListQuery(String query, Element element)
             throws YQueryException {
 
@@ -1266,6 +1319,7 @@ public abstract class YTask extends YExternalNetElement {
             _i.removeLocation(pmgr, this);
             _caseToDataMap.remove(_i);
             _i = null;
+            busyStateChanged();
         }
     }
 
@@ -1276,6 +1330,13 @@ public abstract class YTask extends YExternalNetElement {
         _i.removeChild(childID);
         _i.removeLocation(pmgr, this);
         _i = null;
+        busyStateChanged();
+    }
+
+
+    // busy tasks are never enabled, so a change here may change enablement
+    private void busyStateChanged() {
+        if (_net != null) _net.taskChanged(this);
     }
 
 
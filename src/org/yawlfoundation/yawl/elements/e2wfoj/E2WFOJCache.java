@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2004-2020 The YAWL Foundation. All rights reserved.
+ * The YAWL Foundation is a collaboration of individuals and
+ * organisations who are committed to improving workflow technology.
+ *
+ * This file is part of YAWL. YAWL is free software: you can
+ * redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation.
+ *
+ * YAWL is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with YAWL. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.yawlfoundation.yawl.elements.e2wfoj;
+
+import org.yawlfoundation.yawl.elements.YNet;
+import org.yawlfoundation.yawl.elements.YTask;
+import org.yawlfoundation.yawl.elements.state.YMarking;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Caches the OR-join analysis of a net.
+ * <p/>
+ * The reset net conversion for an OR-join depends only on the structure of the
+ * net, so it is done once per OR-join and copied for each analysis, rather than
+ * rebuilt on every enablement check. The result of each analysis is also kept,
+ * keyed on the (reset net) marking it was made for, so that repeated checks of
+ * the same marking are answered without analysis.
+ * <p/>
+ * A cache is shared by a net and all of its per-case clones, which have the same
+ * structure.
+ */
+public class E2WFOJCache {
+
+    private static final int MAX_RESULTS_PER_JOIN = 1000;
+
+    // [orJoinID=converted net], [orJoinID=[placeMarking=enabled]]
+    private final Map<String, E2WFOJNet> _nets =
+            new ConcurrentHashMap<String, E2WFOJNet>();
+    private final Map<String, Map<Map<String, Integer>, Boolean>> _results =
+            new ConcurrentHashMap<String, Map<Map<String, Integer>, Boolean>>();
+
+
+    /**
+     * Converts the net for each of its OR-joins in advance of any analysis
+     * @param net the net to prepare
+     */
+    public void prepare(YNet net) {
+        for (YTask task : net.getNetTasks()) {
+            if (task.getJoinType() == YTask._OR) {
+                try {
+                    getNet(net, task);
+                }
+                catch (RuntimeException re) {
+                    // leave it to be reported when the OR-join is analysed
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Determines whether an OR-join is enabled in a marking
+     * @param net the net containing the OR-join
+     * @param orJoin the OR-join task
+     * @param marking the current marking of the net
+     * @return true if the OR-join is enabled
+     */
+    public boolean orJoinEnabled(YNet net, YTask orJoin, YMarking marking) {
+        E2WFOJNet converted = getNet(net, orJoin);
+        Map<String, Integer> placeMarking = converted.getPlaceMarking(marking);
+        Map<Map<String, Integer>, Boolean> results = getResults(orJoin);
+        Boolean enabled = results.get(placeMarking);
+        if (enabled == null) {
+            E2WFOJNet e2Net = converted.copy();
+            e2Net.restrictNet(marking);
+            e2Net.restrictNet(orJoin);
+            enabled = e2Net.orJoinEnabled(marking, orJoin);
+
+            // a simple bound - markings rarely recur once a case has moved on
+            if (results.size() >= MAX_RESULTS_PER_JOIN) results.clear();
+            results.put(placeMarking, enabled);
+        }
+        return enabled;
+    }
+
+
+    public void clear() {
+        _nets.clear();
+        _results.clear();
+    }
+
+
+    private E2WFOJNet getNet(YNet net, YTask orJoin) {
+        E2WFOJNet converted = _nets.get(orJoin.getID());
+        if (converted == null) {
+            converted = new E2WFOJNet(net, orJoin);
+            E2WFOJNet existing = _nets.putIfAbsent(orJoin.getID(), converted);
+            if (existing != null) converted = existing;
+        }
+        return converted;
+    }
+
+
+    private Map<Map<String, Integer>, Boolean> getResults(YTask orJoin) {
+        Map<Map<String, Integer>, Boolean> results = _results.get(orJoin.getID());
+        if (results == null) {
+            results = new ConcurrentHashMap<Map<String, Integer>, Boolean>();
+            Map<Map<String, Integer>, Boolean> existing =
+                    _results.putIfAbsent(orJoin.getID(), results);
+            if (existing != null) results = existing;
+        }
+        return results;
+    }
+
+}
@@ -49,11 +49,119 @@ public final class E2WFOJNet {
         _OJ = null;
         _YOJ = null;
         _yNet = null;
+        _Conditions = null;      // only needed for conversion
     }
     
     private E2WFOJNet(){
     	//do nothing
     }
+
+
+    /**
+     * Creates a copy of this reset net that can be restricted independently of it.
+     * Every element reachable from the net's places and transitions is copied, so
+     * that any flows to elements already restricted away are also preserved.
+     */
+    public E2WFOJNet copy() {
+        Map<RElement, RElement> copies = new IdentityHashMap<RElement, RElement>();
+        List<RElement> toVisit = new ArrayList<RElement>();
+        for (Object place : _Places.values()) toVisit.add((RElement) place);
+        for (Object transition : _Transitions.values()) toVisit.add((RElement) transition);
+
+        // first pass: create a copy of every reachable element
+        while (! toVisit.isEmpty()) {
+            RElement element = toVisit.remove(toVisit.size() - 1);
+            if (copies.containsKey(element)) continue;
+            RElement copy = element instanceof RTransition ?
+                    new RTransition(element.getID()) : new RPlace(element.getID());
+            copy.setName(element.getName());
+            copies.put(element, copy);
+            for (Object o : element.getPresetFlows().values()) {
+                toVisit.add(((RFlow) o).getPriorElement());
+            }
+            for (Object o : element.getPostsetFlows().values()) {
+                toVisit.add(((RFlow) o).getNextElement());
+            }
+            if (element instanceof RTransition) {
+                for (Object place : ((RTransition) element).getRemoveSet()) {
+                    toVisit.add((RElement) place);
+                }
+            }
+        }
+
+        // second pass: connect the copies, sharing flows as the originals do
+        Map<RFlow, RFlow> flowCopies = new IdentityHashMap<RFlow, RFlow>();
+        for (Map.Entry<RElement, RElement> entry : copies.entrySet()) {
+            RElement element = entry.getKey();
+            RElement copy = entry.getValue();
+            copy.setPresetFlows(copyFlows(element.getPresetFlows(), copies, flowCopies));
+            copy.setPostsetFlows(copyFlows(element.getPostsetFlows(), copies, flowCopies));
+            if (element instanceof RTransition) {
+                for (Object place : ((RTransition) element).getRemoveSet()) {
+                    ((RTransition) copy).setRemoveSet((RPlace) copies.get(place));
+                }
+            }
+        }
+
+        E2WFOJNet netCopy = new E2WFOJNet();
+        netCopy._Places = copyElements(_Places, copies);
+        netCopy._Transitions = copyElements(_Transitions, copies);
+        return netCopy;
+    }
+
+
+    private Map<String, RElement> copyElements(Map<?, ?> elements,
+                                               Map<RElement, RElement> copies) {
+        Map<String, RElement> copiedElements = new HashMap<String, RElement>(elements.size());
+        for (Object element : elements.values()) {
+            RElement copy = copies.get(element);
+            copiedElements.put(copy.getID(), copy);
+        }
+        return copiedElements;
+    }
+
+
+    private Map<String, RFlow> copyFlows(Map<?, ?> flows, Map<RElement, RElement> copies,
+                                         Map<RFlow, RFlow> flowCopies) {
+        Map<String, RFlow> copiedFlows = new HashMap<String, RFlow>();
+        for (Map.Entry<?, ?> entry : flows.entrySet()) {
+            RFlow flow = (RFlow) entry.getValue();
+            RFlow copy = flowCopies.get(flow);
+            if (copy == null) {
+                copy = new RFlow(copies.get(flow.getPriorElement()),
+                        copies.get(flow.getNextElement()));
+                flowCopies.put(flow, copy);
+            }
+            copiedFlows.put((String) entry.getKey(), copy);
+        }
+        return copiedFlows;
+    }
+
+
+    /**
+     * Gets the reset net equivalent of a YAWL marking, i.e. the token count of each
+     * marked place of this net. Since the restriction and enablement analysis of a
+     * marking use nothing else from it, two markings with equal place markings will
+     * always produce the same analysis result.
+     */
+    public Map<String, Integer> getPlaceMarking(YMarking M) {
+        Map<String, Integer> placeMarking = new HashMap<String, Integer>();
+        for (YNetElement element : M.getLocations()) {
+            if (element instanceof YCondition) {
+                if (_Places.containsKey(element.getID())) {
+                    Integer count = placeMarking.get(element.getID());
+                    placeMarking.put(element.getID(), count == null ? 1 : count + 1);
+                }
+            }
+            else if (element instanceof YTask) {
+                String internalPlace = "p_" + element.getID();
+                if (_Places.containsKey(internalPlace)) {
+                    placeMarking.put(internalPlace, 1);
+                }
+            }
+        }
+        return placeMarking;
+    }
     
     /**
      * The method converts a YAWL net into a Reset net.
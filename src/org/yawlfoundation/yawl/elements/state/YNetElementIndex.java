@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2004-2020 The YAWL Foundation. All rights reserved.
+ * The YAWL Foundation is a collaboration of individuals and
+ * organisations who are committed to improving workflow technology.
+ *
+ * This file is part of YAWL. YAWL is free software: you can
+ * redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation.
+ *
+ * YAWL is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with YAWL. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.yawlfoundation.yawl.elements.state;
+
+import org.yawlfoundation.yawl.elements.YNetElement;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Assigns a dense, stable integer index to each net element it is asked about, so
+ * that a marking can be held as an array of token counts rather than a list of
+ * elements. Normally there is one index per net (see YNet.getElementIndex), so
+ * indices run from zero to the number of elements in the net.
+ * <p/>
+ * Elements are matched on identity, as they are in a marking's location list.
+ * Indices are assigned on first request and never change.
+ */
+public class YNetElementIndex {
+
+    private final Map<YNetElement, Integer> _indices =
+            new IdentityHashMap<YNetElement, Integer>();
+    private volatile YNetElement[] _elements = new YNetElement[16];
+    private volatile int _size;
+
+
+    /**
+     * Gets the index of an element, assigning it one if it has none yet
+     * @param element the element
+     * @return its index
+     */
+    public synchronized int indexOf(YNetElement element) {
+        Integer index = _indices.get(element);
+        if (index == null) {
+            index = _size;
+            if (index == _elements.length) {
+                YNetElement[] grown = new YNetElement[_elements.length * 2];
+                System.arraycopy(_elements, 0, grown, 0, _elements.length);
+                _elements = grown;
+            }
+            _elements[index] = element;
+            _indices.put(element, index);
+            _size = index + 1;
+        }
+        return index;
+    }
+
+
+    /**
+     * Gets the index of an element without assigning one
+     * @param element the element
+     * @return its index, or -1 if it has not been indexed
+     */
+    public synchronized int find(YNetElement element) {
+        Integer index = _indices.get(element);
+        return index != null ? index : -1;
+    }
+
+
+    /**
+     * @param index an index previously returned by indexOf
+     * @return the element with that index
+     */
+    public YNetElement get(int index) {
+        return _elements[index];
+    }
+
+
+    public int size() { return _size; }
+
+}
@@ -49,11 +49,9 @@ public class YSetOfMarkings {
     }
 
     //changed by moe - ResetAnalyser
+    // equivalent markings are equal and hash alike, so no scan is needed
     public boolean contains(YMarking marking) {
-        for (YMarking yMarking : _markings) {
-            if (yMarking.equivalentTo(marking)) return true;
-        }
-        return false;
+        return _markings.contains(marking);
     }
 
     //added by moe - ResetAnalyser
@@ -94,9 +92,7 @@ public class YSetOfMarkings {
 
     public boolean containsEquivalentMarkingTo(YSetOfMarkings possibleFutureMarkingSet) {
         for (YMarking possibleMarking : possibleFutureMarkingSet.getMarkings()) {
-            for (YMarking marking : _markings) {
-                if (possibleMarking.equivalentTo(marking)) return true;
-            }
+            if (contains(possibleMarking)) return true;
         }
         return false;
     }
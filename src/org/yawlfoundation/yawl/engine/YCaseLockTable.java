@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2004-2020 The YAWL Foundation. All rights reserved.
+ * The YAWL Foundation is a collaboration of individuals and
+ * organisations who are committed to improving workflow technology.
+ *
+ * This file is part of YAWL. YAWL is free software: you can
+ * redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation.
+ *
+ * YAWL is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with YAWL. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.yawlfoundation.yawl.engine;
+
+import org.yawlfoundation.yawl.elements.state.YIdentifier;
+
+/**
+ * A fixed set of monitor objects, striped by root case id, used by the engine to
+ * serialise state changes within a case while allowing unrelated cases to
+ * progress in parallel.
+ * <p/>
+ * All identifiers belonging to the same root case (i.e. the case itself, its
+ * sub-nets and its work items) map to the same lock, so any operation that
+ * may cascade through parent and child net runners is always protected by a single
+ * monitor. Different cases may share a stripe, which is harmless since the monitors
+ * are reentrant.
+ */
+public class YCaseLockTable {
+
+    private static final int DEFAULT_STRIPE_COUNT = 256;
+
+    private final Object[] _locks;
+    private final int _mask;
+
+
+    public YCaseLockTable() {
+        this(DEFAULT_STRIPE_COUNT);
+    }
+
+
+    /**
+     * @param stripes the minimum number of locks to create. The actual number
+     *                created is rounded up to the next power of two.
+     */
+    public YCaseLockTable(int stripes) {
+        int size = 1;
+        while (size < Math.max(stripes, 1)) size <<= 1;
+        _locks = new Object[size];
+        for (int i = 0; i < size; i++) {
+            _locks[i] = new Object();
+        }
+        _mask = size - 1;
+    }
+
+
+    /**
+     * Gets the lock for the root case of the identifier passed
+     * @param caseID any case or sub-case identifier
+     * @return the monitor object to synchronise on
+     */
+    public Object getLock(YIdentifier caseID) {
+        if (caseID == null) {
+            throw new IllegalArgumentException("Cannot get a case lock for a null case");
+        }
+        return getLock(caseID.getRootAncestor().get_idString());
+    }
+
+
+    /**
+     * Gets the lock for the root case of the case id string passed
+     * @param caseID any case id string, or a work item id string of the form
+     *               'caseid:taskid'
+     * @return the monitor object to synchronise on
+     */
+    public Object getLock(String caseID) {
+        if (caseID == null) {
+            throw new IllegalArgumentException("Cannot get a case lock for a null case");
+        }
+        return _locks[spread(getRootID(caseID).hashCode()) & _mask];
+    }
+
+
+    public int getStripeCount() { return _locks.length; }
+
+
+    // the root id is everything up to the first '.' or ':' (if any)
+    private String getRootID(String caseID) {
+        for (int i = 0; i < caseID.length(); i++) {
+            char c = caseID.charAt(i);
+            if (c == '.' || c == ':') return caseID.substring(0, i);
+        }
+        return caseID;
+    }
+
+
+    // case ids are mostly sequential integers, so mix the hash bits a little
+    private int spread(int h) {
+        h ^= (h >>> 16);
+        h *= 0x85ebca6b;
+        return h ^ (h >>> 13);
+    }
+
+}
@@ -27,6 +27,14 @@ import java.util.concurrent.atomic.AtomicInteger;
 /**
  * Provides for the persistence of the last allocated case id, and the generation
  * of new case ids.
+ * <p/>
+ * By default the case number is persisted, within the caller's transaction, each
+ * time one is allocated. If a block size greater than one is set, case numbers are
+ * instead reserved in blocks: the top of each block is persisted, in a transaction
+ * of its own, when the block is reserved, and numbers within it are then allocated
+ * without touching the database. On restart allocation resumes above the last
+ * reserved block, so the unused remainder of a block is skipped but no number is
+ * ever reissued.
  *
  * Author: Michael Adams
  * Date: 1/03/2008
@@ -38,6 +46,9 @@ public class YCaseNbrStore {
     private AtomicInteger caseNbr;
     private boolean persisted = false ;                   // has this been persisted yet?
     private boolean persisting = false ;                  // is persistence on?
+    private volatile int blockSize = 1 ;                  // numbers reserved at a time
+    private volatile int reservedTo ;                     // top of the reserved block
+    private int reserving ;                               // top of a block being reserved
     private static YCaseNbrStore _instance ;
     private static final Logger log = LogManager.getLogger(YCaseNbrStore.class) ;
 
@@ -74,19 +85,72 @@ public class YCaseNbrStore {
 
     public void setPersisting(boolean persist) { persisting = persist; }
 
+    public int getBlockSize() { return blockSize; }
+
+    /**
+     * Sets the number of case numbers reserved with each persisted update
+     * @param size the block size; 1 (the default) persists every allocation
+     */
+    public void setBlockSize(int size) { blockSize = Math.max(1, size); }
+
+
+    // the value persisted: the top of the reserved block when allocating in blocks
+    public int getPersistedCaseNbr() {
+        if (blockSize == 1) return caseNbr.get();
+        return Math.max(Math.max(reserving, reservedTo), caseNbr.get());
+    }
+
+    public void setPersistedCaseNbr(int nbr) {
+        caseNbr.set(nbr);
+        reservedTo = nbr;
+    }
+
     public String toString() { return caseNbr.toString(); }
 
 
     /** @return the next available case number (as a String) */
     public String getNextCaseNbr(YPersistenceManager pmgr) {
-        caseNbr.incrementAndGet();
+        if (blockSize > 1) {
+            int nbr = caseNbr.incrementAndGet();
+            if (persisting && nbr > reservedTo && ! reserveBlock(pmgr, nbr)) {
+                persistThis(pmgr);           // no block, so persist this number alone
+            }
+            return String.valueOf(nbr);
+        }
+        int nbr = caseNbr.incrementAndGet();
         if (persisting) persistThis(pmgr) ;
-        return caseNbr.toString();
+        return String.valueOf(nbr);
+    }
+
+
+    // persists the top of a new block that includes 'nbr'. Threads that allocate
+    // beyond the current block wait here until the new block is persisted, so no
+    // number is handed out before its block is durable. Returns false if the block
+    // could not be persisted, in which case it is not reserved and the next
+    // allocation will try again.
+    private synchronized boolean reserveBlock(YPersistenceManager pmgr, int nbr) {
+        if (nbr <= reservedTo) return true;            // another thread got here first
+        reserving = Math.max(nbr, caseNbr.get()) + blockSize - 1;
+        try {
+            if (pmgr == null) pmgr = YEngine.getPersistenceManager();
+            if (pmgr != null) pmgr.updateInOwnTransaction(this);
+            persisted = true;
+            reservedTo = reserving;
+            return true;
+        }
+        catch (YPersistenceException ype) {
+            log.error("Could not persist case number block.", ype) ;
+            return false;
+        }
+        finally {
+            reserving = 0;
+        }
     }
 
 
-    /** persist the current case number */
-    private void persistThis(YPersistenceManager pmgr) {
+    // persist the current case number. Serialized, so that concurrent launches
+    // neither store the number twice nor write an older number after a newer one
+    private synchronized void persistThis(YPersistenceManager pmgr) {
         try {
             if (persisted)
                 updateThis(pmgr);
@@ -82,6 +82,7 @@ public class YEngine implements InterfaceADesign,
     private static Logger _logger;
     private static Set<YTimedObject> _expiredTimers;
     private static boolean _generateUIMetaData = true;           // extended attributes
+    private static boolean _incrementalEnablement = true;
     private static boolean _persisting;
     private static boolean _restoring;
 
@@ -101,6 +102,7 @@ public class YEngine implements InterfaceADesign,
     private YAnnouncer _announcer;                        // handles all i'face notifys
     private YAWLServiceReference _defaultWorklist;
     private InstanceCache _instanceCache;
+    private YCaseLockTable _caseLocks;                   // per-case state change locks
     private YBuildProperties _buildProps;
     private String _engineClassesRootFilePath;
     private boolean _allowGenericAdminID;
@@ -122,6 +124,7 @@ public class YEngine implements InterfaceADesign,
         _instanceCache = new InstanceCache();
         _logger = LogManager.getLogger(YEngine.class);
         _netRunnerRepository = new YNetRunnerRepository();
+        _caseLocks = new YCaseLockTable();
         _runningCaseIDToSpecMap = new ConcurrentHashMap<YIdentifier, YSpecification>();
         _yawlServices = new ConcurrentHashMap<String, YAWLServiceReference>();
         _externalClients = new ConcurrentHashMap<String, YExternalClient>();
@@ -306,6 +309,26 @@ public class YEngine implements InterfaceADesign,
     }
 
 
+    /**
+     * Indicate if net runners are to re-evaluate the enablement of only those tasks
+     * affected by the last change in a net's state, or of every task in the net.
+     * @param incremental true to evaluate incrementally (the default), false to
+     *                    evaluate every task
+     */
+    public void setIncrementalEnablement(boolean incremental) {
+        _incrementalEnablement = incremental;
+    }
+
+
+    /**
+     * Indicates if net runners re-evaluate task enablement incrementally.
+     * @return true if only affected tasks are re-evaluated, false if every task is
+     */
+    public boolean isIncrementalEnablement() {
+        return _incrementalEnablement;
+    }
+
+
     /**
      * Indicates if user interface metadata will be generated within a task's input XML doclet.
      * @return true=UIMetaData generated, false=UIMetaData not supported
@@ -361,6 +384,7 @@ public class YEngine implements InterfaceADesign,
         _sessionCache.shutdown();
         YTimer.getInstance().shutdown();              // stop timer threads
         YTimer.getInstance().cancel();                // stop the timer
+        if (_yawllog != null) _yawllog.shutdown();    // write any queued log events
         if (_pmgr != null) _pmgr.closeFactory();
     }
 
@@ -591,7 +615,15 @@ public class YEngine implements InterfaceADesign,
      * @return true if spec is loaded, false if it was already loaded
      */
     public boolean loadSpecification(YSpecification spec) {
-        return _specifications.loadSpecification(spec);
+        boolean loaded = _specifications.loadSpecification(spec);
+
+        // precompile the spec's queries and OR-join analysis so that cases don't pay
+        // for them at runtime
+        if (loaded) {
+            SaxonUtil.prepareQueries(spec.getSpecificationID(), spec.getXQueries());
+            spec.prepareOrJoins();
+        }
+        return loaded;
     }
 
 
@@ -622,6 +654,7 @@ public class YEngine implements InterfaceADesign,
 
         _logger.info("Removing process specification {}", specID.toString());
         _specifications.unloadSpecification(specToUnload);
+        SaxonUtil.releaseQueries(specID);
         _yawllog.removeSpecificationFromCache(specID);
         deleteObject(specToUnload);
 
@@ -853,7 +886,7 @@ public class YEngine implements InterfaceADesign,
 
         Set<YWorkItem> removedItems = _workItemRepository.removeWorkItemsForCase(caseID);
         YNetRunner runner = _netRunnerRepository.get(caseID);
-        synchronized(_pmgr) {
+        synchronized(getCaseLock(caseID)) {
             startTransaction();
             if (_persisting) clearWorkItemsFromPersistence(removedItems);
             YTimer.getInstance().cancelTimersForCase(caseID.toString());
@@ -911,7 +944,10 @@ public class YEngine implements InterfaceADesign,
         }
         checkEngineRunning();
 
-        synchronized(_pmgr) {
+        // a new case id is allocated up front so that the case lock can be taken
+        if (caseID == null) caseID = allocateCaseNbr();
+
+        synchronized(getCaseLock(caseID)) {
             startTransaction();
             try {
                 YIdentifier yCaseID = startCase(specID, caseParams, completionObserver,
@@ -1059,6 +1095,31 @@ public class YEngine implements InterfaceADesign,
     }
 
 
+    // allocates a new case number, persisting it in its own transaction if required
+    private String allocateCaseNbr() throws YPersistenceException {
+        boolean isLocalTransaction = startTransaction();
+        String caseNbr = getNextCaseNbr();
+        if (isLocalTransaction) commitTransaction();
+        return caseNbr;
+    }
+
+
+    /**
+     * Gets the lock object that serialises state changes for the root case of the
+     * identifier passed. Unrelated cases will (most likely) have different locks,
+     * and so may be processed concurrently.
+     * @param caseID the case, sub-net or work item case identifier
+     * @return the lock object for the case
+     */
+    protected Object getCaseLock(YIdentifier caseID) {
+        return _caseLocks.getLock(caseID);
+    }
+
+    protected Object getCaseLock(String caseID) {
+        return _caseLocks.getLock(caseID);
+    }
+
+
     /**
      * AJH: Public method which returns the next available caseID
      * Note: This is only available with a non-persisting engine and is used
@@ -1083,7 +1144,7 @@ public class YEngine implements InterfaceADesign,
      */
     public void suspendCase(YIdentifier caseID)
             throws YPersistenceException, YStateException {
-        synchronized(_pmgr) {
+        synchronized(getCaseLock(caseID)) {
             startTransaction();
             try {
                 suspendCase(_pmgr, caseID);
@@ -1143,7 +1204,7 @@ public class YEngine implements InterfaceADesign,
      * @throws YStateException if case cannot be resumed
      */
     public void resumeCase(YIdentifier id) throws YPersistenceException, YStateException {
-        synchronized(_pmgr) {
+        synchronized(getCaseLock(id)) {
             startTransaction();
             try {
                 resumeCase(_pmgr, id);
@@ -1268,7 +1329,7 @@ public class YEngine implements InterfaceADesign,
             throws YPersistenceException {
         YNetRunner runner = _netRunnerRepository.get(idStr);
         if (runner != null && data != null) {
-            synchronized(_pmgr) {
+            synchronized(getCaseLock(runner.getCaseID())) {
                 startTransaction();
                 try {
                     YNet net = runner.getNet();
@@ -1425,38 +1486,33 @@ public class YEngine implements InterfaceADesign,
 
         _logger.debug("--> startWorkItem");
         checkEngineRunning();
+        if (workItem == null) throw new YStateException("Cannot start null work item.");
         YWorkItem startedItem = null;
 
-        synchronized(_pmgr) {
+        synchronized(getCaseLock(workItem.getCaseID())) {
             startTransaction();
             try {
                 YNetRunner netRunner = null;
-                if (workItem != null) {
-                    switch (workItem.getStatus()) {
-                        case statusEnabled:
-                            netRunner = getNetRunner(workItem.getCaseID());
-                            startedItem = startEnabledWorkItem(netRunner, workItem, client);
-                            break;
-
-                        case statusFired:
-                            netRunner = getNetRunner(workItem.getCaseID().getParent());
-                            startedItem = startFiredWorkItem(netRunner, workItem, client);
-                            break;
-
-                        case statusDeadlocked:
-                            startedItem = workItem;
-                            break;
-
-                        default: // this work item is likely already executing.
-                            rollbackTransaction();
-                            throw new YStateException(String.format(
-                                    "Item [%s]: status [%s] does not permit starting.",
-                                     workItem.getIDString(), workItem.getStatus()));
-                    }
-                }
-                else {
-                    rollbackTransaction();
-                    throw new YStateException("Cannot start null work item.");
+                switch (workItem.getStatus()) {
+                    case statusEnabled:
+                        netRunner = getNetRunner(workItem.getCaseID());
+                        startedItem = startEnabledWorkItem(netRunner, workItem, client);
+                        break;
+
+                    case statusFired:
+                        netRunner = getNetRunner(workItem.getCaseID().getParent());
+                        startedItem = startFiredWorkItem(netRunner, workItem, client);
+                        break;
+
+                    case statusDeadlocked:
+                        startedItem = workItem;
+                        break;
+
+                    default: // this work item is likely already executing.
+                        rollbackTransaction();
+                        throw new YStateException(String.format(
+                                "Item [%s]: status [%s] does not permit starting.",
+                                 workItem.getIDString(), workItem.getStatus()));
                 }
 
                 // COMMIT POINT
@@ -1540,33 +1596,31 @@ public class YEngine implements InterfaceADesign,
                     workItem != null ? workItem.get_thisID() : "null", data);
         }
         checkEngineRunning();
+        if (workItem == null) throw new YStateException("WorkItem argument is equal to null.");
 
-        synchronized(_pmgr) {
+        synchronized(getCaseLock(workItem.getCaseID())) {
             startTransaction();
             try {
-                if (workItem != null) {
-                    if (! workItem.getCaseID().hasParent()) {
-                        throw new YStateException("WorkItem with ID [" + workItem.getIDString() +
-                                "] is a 'parent' and so may not be completed.");
-                    }
-                    YNetRunner netRunner = getNetRunner(workItem.getCaseID().getParent());
-                    if (workItem.getStatus().equals(YWorkItemStatus.statusExecuting)) {
-                        completeExecutingWorkitem(workItem, netRunner, data,
-                                logPredicate, completionType);
-                    }
-                    else if (workItem.getStatus().equals(YWorkItemStatus.statusDeadlocked)) {
-                        _workItemRepository.removeWorkItemFamily(workItem);
-                    }
-                    else {
-                        throw new YStateException("WorkItem with ID [" + workItem.getIDString() +
-                                "] not in executing state.");
-                    }
-
-                    // COMMIT POINT
-                    commitTransaction();
-                    if (netRunner != null) announceEvents(netRunner.getCaseID());
+                if (! workItem.getCaseID().hasParent()) {
+                    throw new YStateException("WorkItem with ID [" + workItem.getIDString() +
+                            "] is a 'parent' and so may not be completed.");
+                }
+                YNetRunner netRunner = getNetRunner(workItem.getCaseID().getParent());
+                if (workItem.getStatus().equals(YWorkItemStatus.statusExecuting)) {
+                    completeExecutingWorkitem(workItem, netRunner, data,
+                            logPredicate, completionType);
+                }
+                else if (workItem.getStatus().equals(YWorkItemStatus.statusDeadlocked)) {
+                    _workItemRepository.removeWorkItemFamily(workItem);
+                }
+                else {
+                    throw new YStateException("WorkItem with ID [" + workItem.getIDString() +
+                            "] not in executing state.");
                 }
-                else throw new YStateException("WorkItem argument is equal to null.");
+
+                // COMMIT POINT
+                commitTransaction();
+                if (netRunner != null) announceEvents(netRunner.getCaseID());
             }
             catch (YAWLException ye) {
                 rollbackTransaction();
@@ -1775,7 +1829,7 @@ public class YEngine implements InterfaceADesign,
         YIdentifier siblingID = workItem.getCaseID();
         YNetRunner netRunner = getNetRunner(siblingID.getParent());
 
-        synchronized(_pmgr) {
+        synchronized(getCaseLock(siblingID)) {
             startTransaction();
             try {
                 Element paramValue = JDOMUtil.stringToElement(paramValueForMICreation);
@@ -1797,7 +1851,7 @@ public class YEngine implements InterfaceADesign,
             throws YStateException, YPersistenceException {
         YWorkItem workItem = _workItemRepository.get(workItemID);
         if ((workItem != null) && (workItem.hasLiveStatus())) {
-            synchronized(_pmgr) {
+            synchronized(getCaseLock(workItem.getCaseID())) {
                 startTransaction();
                 workItem.setStatusToSuspended(_pmgr);
                 commitTransaction();
@@ -1812,7 +1866,7 @@ public class YEngine implements InterfaceADesign,
         YWorkItem workItem = _workItemRepository.get(workItemID);
         if ((workItem != null) &&
                 (workItem.getStatus().equals(YWorkItemStatus.statusSuspended))) {
-            synchronized(_pmgr) {
+            synchronized(getCaseLock(workItem.getCaseID())) {
                 startTransaction();
                 workItem.setStatusToUnsuspended(_pmgr);
                 commitTransaction();
@@ -1827,7 +1881,7 @@ public class YEngine implements InterfaceADesign,
             throws YStateException, YPersistenceException {
         YWorkItem workItem = _workItemRepository.get(workItemID);
         if ((workItem != null) && workItem.getStatus().equals(YWorkItemStatus.statusExecuting)) {
-            synchronized(_pmgr) {
+            synchronized(getCaseLock(workItem.getCaseID())) {
                 startTransaction();
                 workItem.rollBackStatus(_pmgr);
                 YNetRunner netRunner = getNetRunner(workItem.getCaseID().getParent());
@@ -1854,7 +1908,7 @@ public class YEngine implements InterfaceADesign,
     public boolean updateWorkItemData(String workItemID, String data) {
         YWorkItem workItem = getWorkItem(workItemID);
         if (workItem != null) {
-            synchronized(_pmgr) {
+            synchronized(getCaseLock(workItem.getCaseID())) {
                 try {
                     boolean localTransaction = startTransaction();
                     Element eleData = JDOMUtil.stringToElement(data);
@@ -1876,7 +1930,7 @@ public class YEngine implements InterfaceADesign,
         try {
             if ((workItem != null) && workItem.getStatus().equals(YWorkItemStatus.statusExecuting)) {
                 YNetRunner runner = getNetRunner(workItem.getCaseID().getParent());
-                synchronized(_pmgr) {
+                synchronized(getCaseLock(workItem.getCaseID())) {
                     startTransaction();
                     workItem.setStatusToDeleted(_pmgr);
                     YWorkItem parent = workItem.getParent();
@@ -2158,17 +2212,16 @@ public class YEngine implements InterfaceADesign,
     }
 
 
-    private synchronized void doPersistAction(Object obj, int action) throws YPersistenceException {
+    // sessions are bound to the calling thread, so no engine-wide lock is needed here
+    private void doPersistAction(Object obj, int action) throws YPersistenceException {
         if (isPersisting() && _pmgr != null) {
-            synchronized(_pmgr) {
-                boolean isLocalTransaction = startTransaction();
-                switch (action) {
-                    case YPersistenceManager.DB_UPDATE : _pmgr.updateObject(obj); break;
-                    case YPersistenceManager.DB_DELETE : _pmgr.deleteObject(obj); break;
-                    case YPersistenceManager.DB_INSERT : _pmgr.storeObject(obj); break;
-                }
-                if (isLocalTransaction) commitTransaction();
+            boolean isLocalTransaction = startTransaction();
+            switch (action) {
+                case YPersistenceManager.DB_UPDATE : _pmgr.updateObject(obj); break;
+                case YPersistenceManager.DB_DELETE : _pmgr.deleteObject(obj); break;
+                case YPersistenceManager.DB_INSERT : _pmgr.storeObject(obj); break;
             }
+            if (isLocalTransaction) commitTransaction();
         }
     }
 
@@ -2197,10 +2250,14 @@ public class YEngine implements InterfaceADesign,
         _logger.debug("--> clearCaseFromPersistence: CaseID = ", id.get_idString());
         if (_persisting) {
             try {
+
+                // the case's rows may still be waiting to be written (in write-behind
+                // mode), so must be passed to the session before it is searched
+                _pmgr.writeDeferredChanges();
                 if (! id.get_idString().contains(".")) {  // only if the root case id
                     String query = "delete from GroupedMIOutputData as m where m.uniqueIdentifier like '" +
                             id.get_idString() + ":%'";
-                    _pmgr.getSession().createQuery(query).executeUpdate();
+                    _pmgr.createQuery(query).executeUpdate();
                 }
                 
                 List<YIdentifier> list = id.get_children();
@@ -2208,13 +2265,11 @@ public class YEngine implements InterfaceADesign,
                     if (child != null) clearCaseFromPersistence(child);
                 }
 
-                synchronized(_pmgr) {
-                    Object obj = _pmgr.getSession().get(YNetRunner.class, id.toString());
-                    if (obj == null) {
-                        obj = _pmgr.getSession().get(YIdentifier.class, id.toString());
-                    }
-                    if (obj != null) _pmgr.deleteObject(obj);
+                Object obj = _pmgr.getSession().get(YNetRunner.class, id.toString());
+                if (obj == null) {
+                    obj = _pmgr.getSession().get(YIdentifier.class, id.toString());
                 }
+                if (obj != null) _pmgr.deleteObject(obj);
             }
             catch (Exception e) {
                 throw new YPersistenceException("Failure whilst clearing case", e);
@@ -2322,6 +2377,27 @@ public class YEngine implements InterfaceADesign,
         return _pmgr.getStatistics();
     }
 
+    public void setPersistenceWriteBehind(boolean enabled) {
+        _pmgr.setWriteBehind(enabled);
+    }
+
+    public boolean isPersistenceWriteBehind() {
+        return _pmgr.isWriteBehind();
+    }
+
+    public String getPersistenceWriteBehindStatistics() {
+        return _pmgr.getWriteBehindStatistics();
+    }
+
+    /**
+     * Sets how many case numbers are reserved with each persisted update of the
+     * case number store
+     * @param size the block size; 1 persists every case number allocated
+     */
+    public void setCaseNbrBlockSize(int size) {
+        _caseNbrStore.setBlockSize(size);
+    }
+
     public void disableProcessLogging() {
         _yawllog.disable();
     }
@@ -548,12 +548,18 @@ public class YNetRunner {
 
         // storage for the running set of enabled tasks
         YEnabledTransitionSet enabledTransitions = new YEnabledTransitionSet();
+        Set<YTask> enabledTasks = new HashSet<YTask>();
 
-        // iterate through the full set of tasks for the net
-        for (YTask task : _netTasks) {
+        // iterate through the tasks whose enablement may have changed since the last
+        // pass, or through the full set of tasks for the net
+        Set<YTask> tasksToCheck = _net.takeEnablementChangedTasks();
+        if (! _engine.isIncrementalEnablement()) tasksToCheck = _netTasks;
+
+        for (YTask task : tasksToCheck) {
 
             // if this task is an enabled 'transition'
             if (task.t_enabled(_caseIDForNet)) {
+                enabledTasks.add(task);
                 if (! (_enabledTasks.contains(task) || _busyTasks.contains(task)))
                     enabledTransitions.add(task) ;
             }
@@ -576,6 +582,12 @@ public class YNetRunner {
         // fire the set of enabled 'transitions' (if any)
         if (! enabledTransitions.isEmpty()) fireTasks(enabledTransitions, pmgr);
 
+        // whether an enabled task fires also depends on the enabled and busy sets,
+        // which may change before the next pass, so they are always checked again
+        for (YTask task : enabledTasks) {
+            _net.taskChanged(task);
+        }
+
         _busyTasks = _net.getBusyTasks();
         _logger.debug("<-- continueIfPossible");
 
@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2004-2020 The YAWL Foundation. All rights reserved.
+ * The YAWL Foundation is a collaboration of individuals and
+ * organisations who are committed to improving workflow technology.
+ *
+ * This file is part of YAWL. YAWL is free software: you can
+ * redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation.
+ *
+ * YAWL is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with YAWL. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.yawlfoundation.yawl.engine;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The inserts, updates and deletes requested during a single transaction, held
+ * back until the transaction commits when the persistence manager is in
+ * write-behind mode.
+ * <p/>
+ * Requests for the same object (by identity) are coalesced, so that, for example,
+ * the many updates of a net runner or work item made during one transition are
+ * written once, and an object inserted then deleted in the same transaction is
+ * not written at all.
+ */
+class YPersistenceChangeSet {
+
+    private final Map<Key, Change> _changes = new LinkedHashMap<Key, Change>();
+    private int _requested;                        // requests made this transaction
+    private int _written;                          // changes drained this transaction
+
+
+    void add(Object obj, int action) {
+        _requested++;
+        Key key = new Key(obj);
+        Change pending = _changes.get(key);
+        if (pending == null) {
+            _changes.put(key, new Change(obj, action));
+            return;
+        }
+        switch (action) {
+            case YPersistenceManager.DB_DELETE: {
+                if (pending.action == YPersistenceManager.DB_INSERT) {
+                    _changes.remove(key);                     // never written
+                }
+                else pending.action = YPersistenceManager.DB_DELETE;
+                break;
+            }
+            default: {
+                // an insert or update after a delete restores a row that exists
+                if (pending.action == YPersistenceManager.DB_DELETE) {
+                    pending.action = YPersistenceManager.DB_UPDATE;
+                }
+                // otherwise a pending insert or update already covers it
+            }
+        }
+    }
+
+
+    /**
+     * @return the coalesced changes, in the order first requested, leaving this
+     * set empty (but keeping its counts until cleared at the end of the transaction)
+     */
+    List<Change> drain() {
+        List<Change> changes = new ArrayList<Change>(_changes.values());
+        _changes.clear();
+        _written += changes.size();
+        return changes;
+    }
+
+
+    void clear() {
+        _changes.clear();
+        _requested = 0;
+        _written = 0;
+    }
+
+
+    boolean isEmpty() { return _changes.isEmpty(); }
+
+    int size() { return _changes.size(); }
+
+    int getRequestedCount() { return _requested; }
+
+    int getWrittenCount() { return _written; }
+
+
+    /******************************************************************************/
+
+    static class Change {
+        final Object obj;
+        int action;
+
+        Change(Object obj, int action) {
+            this.obj = obj;
+            this.action = action;
+        }
+    }
+
+
+    // persisted objects may define equals on mutable state, so match on identity
+    private static class Key {
+        private final Object obj;
+
+        Key(Object obj) { this.obj = obj; }
+
+        public boolean equals(Object other) {
+            return other instanceof Key && ((Key) other).obj == obj;
+        }
+
+        public int hashCode() { return System.identityHashCode(obj); }
+    }
+
+}
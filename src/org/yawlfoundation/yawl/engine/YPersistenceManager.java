@@ -38,10 +38,14 @@ import org.yawlfoundation.yawl.engine.time.YWorkItemTimer;
 import org.yawlfoundation.yawl.exceptions.Problem;
 import org.yawlfoundation.yawl.exceptions.YPersistenceException;
 import org.yawlfoundation.yawl.util.HibernateStatistics;
+import org.yawlfoundation.yawl.util.XNode;
 
 import java.util.EnumSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 
 /**
@@ -68,11 +72,28 @@ public class YPersistenceManager {
 
     private static final boolean INSERT = false;
     private static final boolean UPDATE = true;
+    private static final int WRITE_BEHIND_BATCH_SIZE = 50;
     private static Logger logger = null;
 
     protected static SessionFactory factory = null;
-    private boolean restoring = false;
-    private boolean enabled = false;
+    private volatile boolean restoring = false;
+    private volatile boolean enabled = false;
+
+    // in write-behind mode, changes are collected per transaction (and so per
+    // thread, as sessions are) and written in JDBC batches on commit
+    private volatile boolean writeBehind = false;
+    private final ThreadLocal<YPersistenceChangeSet> changeSets =
+            new ThreadLocal<YPersistenceChangeSet>() {
+                protected YPersistenceChangeSet initialValue() {
+                    return new YPersistenceChangeSet();
+                }
+            };
+
+    // write-behind metrics
+    private final AtomicLong wbTransactions = new AtomicLong();
+    private final AtomicLong wbRequested = new AtomicLong();
+    private final AtomicLong wbWritten = new AtomicLong();
+    private final AtomicInteger wbMaxWritten = new AtomicInteger();
 
     /**
      * Constructor
@@ -83,13 +104,25 @@ public class YPersistenceManager {
 
 
     protected SessionFactory initialise(boolean journalising) throws YPersistenceException {
+        return initialise(journalising, null);
+    }
+
+
+    /**
+     * @param journalising true to initialise persistence
+     * @param settings Hibernate settings that override those configured (may be null)
+     */
+    protected SessionFactory initialise(boolean journalising, Properties settings)
+            throws YPersistenceException {
 
         // Create the Hibernate config, check and create database if required,
         // and generally set things up .....
         if (journalising) {
             try {
-                StandardServiceRegistry standardRegistry =
-                        new StandardServiceRegistryBuilder().configure().build();
+                StandardServiceRegistryBuilder builder =
+                        new StandardServiceRegistryBuilder().configure();
+                if (settings != null) builder.applySettings(settings);
+                StandardServiceRegistry standardRegistry = builder.build();
 
                 MetadataSources metadataSources = new MetadataSources(standardRegistry);
                 for (Class clazz : persistedClasses) {
@@ -118,6 +151,21 @@ public class YPersistenceManager {
     public boolean isEnabled() { return enabled && (factory != null); }
 
 
+    /**
+     * Sets write-behind mode. When on, the inserts, updates and deletes made during a
+     * transaction are collected, coalesced per object and written together in JDBC
+     * batches when the transaction commits, rather than passed to the session (and,
+     * for deletes, flushed) as each is made.
+     * @param enable true to enable write-behind, false to write through
+     */
+    public void setWriteBehind(boolean enable) {
+        writeBehind = enable;
+        logger.info("Persistence write-behind mode {}", enable ? "enabled" : "disabled");
+    }
+
+    public boolean isWriteBehind() { return writeBehind; }
+
+
     public SessionFactory getFactory() {
         return factory;
     }
@@ -178,6 +226,28 @@ public class YPersistenceManager {
     }
 
 
+    /**
+     * @return the counts of persistence actions requested and actually written per
+     * transaction while in write-behind mode, as XML
+     */
+    public String getWriteBehindStatistics() {
+        long transactions = wbTransactions.get();
+        long requested = wbRequested.get();
+        long written = wbWritten.get();
+        XNode node = new XNode("WriteBehindStatistics");
+        node.addChild("enabled", writeBehind);
+        node.addChild("transactions", transactions);
+        node.addChild("actionsRequested", requested);
+        node.addChild("actionsWritten", written);
+        node.addChild("maxWrittenPerTransaction", wbMaxWritten.get());
+        if (transactions > 0) {
+            node.addChild("requestedPerTransaction", (double) requested / transactions);
+            node.addChild("writtenPerTransaction", (double) written / transactions);
+        }
+        return node.toString();
+    }
+
+
     /**
      * Start a new Hibernate transaction.
      *
@@ -207,7 +277,10 @@ public class YPersistenceManager {
     protected void storeObject(Object obj) throws YPersistenceException {
         if ((!restoring) && isEnabled()) {
             logger.debug("Adding to insert cache: Type={}", obj.getClass().getName());
-            doPersistAction(obj, INSERT);
+            if (writeBehind) {
+                changeSets.get().add(obj, DB_INSERT);
+            }
+            else doPersistAction(obj, INSERT);
         }
     }
 
@@ -220,7 +293,10 @@ public class YPersistenceManager {
     protected void updateObject(Object obj) throws YPersistenceException {
         if ((!restoring) && isEnabled()) {
             logger.debug("Adding to update cache: Type={}", obj.getClass().getName());
-            doPersistAction(obj, UPDATE);
+            if (writeBehind) {
+                changeSets.get().add(obj, DB_UPDATE);
+            }
+            else doPersistAction(obj, UPDATE);
         }
     }
 
@@ -237,6 +313,12 @@ public class YPersistenceManager {
 
         logger.debug("--> delete: Object={}: {}", obj.getClass().getName(), obj.toString());
 
+        if (writeBehind) {
+            changeSets.get().add(obj, DB_DELETE);
+            logger.debug("<-- delete (deferred)");
+            return;
+        }
+
         try {
             getSession().delete(obj);
             getSession().flush();
@@ -252,6 +334,39 @@ public class YPersistenceManager {
     }
 
 
+    /**
+     * Persists an object in a session and transaction of its own, so that the change
+     * is committed at once and independently of any transaction the caller has open.
+     *
+     * @param obj The object to be persisted
+     * @throws YPersistenceException if the object can't be persisted
+     */
+    public void updateInOwnTransaction(Object obj) throws YPersistenceException {
+        if (restoring || !isEnabled()) return;
+        Session session = null;
+        Transaction transaction = null;
+        try {
+            session = factory.openSession();
+            transaction = session.beginTransaction();
+            session.saveOrUpdate(obj);
+            transaction.commit();
+        }
+        catch (HibernateException e) {
+            try {
+                if ((transaction != null) && transaction.isActive()) transaction.rollback();
+            }
+            catch (HibernateException he) {
+                // nothing further to do
+            }
+            throw new YPersistenceException("Failure detected whilst persisting instance of " +
+                    obj.getClass().getName(), e);
+        }
+        finally {
+            if ((session != null) && session.isOpen()) session.close();
+        }
+    }
+
+
     private void updateOrMerge(Object obj) {
         try {
             getSession().saveOrUpdate(obj);
@@ -302,7 +417,11 @@ public class YPersistenceManager {
     }
 
 
-    private synchronized void doPersistAction(Object obj, boolean update)
+    // Sessions are obtained via getCurrentSession() and so are bound to the calling
+    // thread, which means each case's transaction has its own session. Callers
+    // serialise changes within a case (see YCaseLockTable), so there's no need to
+    // lock this manager across all cases.
+    private void doPersistAction(Object obj, boolean update)
             throws YPersistenceException {
 
             logger.debug("--> doPersistAction: Mode={}; Object = {}:{}; Object identity = {}",
@@ -341,21 +460,65 @@ public class YPersistenceManager {
     public void commit() throws YPersistenceException {
         logger.debug("--> start commit");
         try {
-            if (isEnabled() && isActiveTransaction()) getTransaction().commit();
+            if (isEnabled() && isActiveTransaction()) {
+                if (writeBehind) writeChanges(true);
+                getTransaction().commit();
+            }
         } catch (Exception e1) {
             logger.fatal("Failure to commit transactional session - Rolling Back Transaction", e1);
             rollbackTransaction();
             throw new YPersistenceException("Failure to commit transactional session", e1);
         }
+        finally {
+            changeSets.get().clear();
+        }
         logger.debug("<-- end commit");
     }
 
 
+    /**
+     * Passes the changes collected in write-behind mode to the session, to be
+     * written in batches when it is next flushed.
+     * @param ending true if the transaction is about to commit, in which case the
+     *               transaction's metrics are recorded
+     */
+    private void writeChanges(boolean ending) throws YPersistenceException {
+        YPersistenceChangeSet changeSet = changeSets.get();
+        if (! changeSet.isEmpty()) {
+            Session session = getSession();
+            session.setJdbcBatchSize(WRITE_BEHIND_BATCH_SIZE);
+            for (YPersistenceChangeSet.Change change : changeSet.drain()) {
+                switch (change.action) {
+                    case DB_INSERT: doPersistAction(change.obj, INSERT); break;
+                    case DB_UPDATE: doPersistAction(change.obj, UPDATE); break;
+                    case DB_DELETE: {
+                        try {
+                            session.delete(change.obj);
+                        }
+                        catch (HibernateException e) {
+                            logger.error("Failed to delete - " + e.getMessage());
+                        }
+                        break;
+                    }
+                }
+            }
+        }
+        if (ending && changeSet.getRequestedCount() > 0) {
+            int written = changeSet.getWrittenCount();
+            wbTransactions.incrementAndGet();
+            wbRequested.addAndGet(changeSet.getRequestedCount());
+            wbWritten.addAndGet(written);
+            wbMaxWritten.accumulateAndGet(written, Math::max);
+        }
+    }
+
+
     /**
      * Forces a rollback of the current transaction,<P>
      */
     protected void rollbackTransaction() throws YPersistenceException {
         logger.debug("--> rollback Transaction");
+        changeSets.get().clear();
         if (isEnabled() && isActiveTransaction()) {
             try {
                 getTransaction().rollback();
@@ -369,8 +532,21 @@ public class YPersistenceManager {
     }
 
 
+    /**
+     * Passes any changes deferred in write-behind mode to the session, so that they
+     * are seen by lookups and queries made directly on the session. Queries created
+     * through this manager do so already.
+     */
+    public void writeDeferredChanges() throws YPersistenceException {
+        if (isEnabled() && writeBehind && isActiveTransaction()) writeChanges(false);
+    }
+
+
     public Query createQuery(String queryString) throws YPersistenceException {
         if (isEnabled()) {
+
+            // queries auto-flush the session, so it must hold any deferred changes
+            writeDeferredChanges();
             try {
                 return getSession().createQuery(queryString);
             } catch (HibernateException e) {
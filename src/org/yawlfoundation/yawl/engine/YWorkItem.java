@@ -108,10 +108,10 @@ public class YWorkItem {
 
         _log.debug("Spec={} WorkItem={}", specID, workItemID.getTaskID());
 
+        _task = task;                        // set before the item is added to the repository
         createWorkItem(specID, workItemID, isDeadlocked ? statusDeadlocked : statusEnabled,
                        allowsDynamicCreation); 
 
-        _task = task;
         if (task != null) _documentation = task.getDocumentationPreParsed(); 
         _enablementTime = new Date();
         _eventLog.logWorkItemEvent(this, _status, null);
@@ -127,6 +127,7 @@ public class YWorkItem {
 
         _log.debug("Spec={} WorkItem={}", specID, workItemID.getTaskID());
 
+        if (parent != null) _task = parent.getTask();
         createWorkItem(specID, workItemID, statusFired, allowsDynamicInstanceCreation);
 
         _enablementTime = workItemCreationTime;
@@ -148,11 +149,11 @@ public class YWorkItem {
                                 throws YPersistenceException {
         _engine = YEngine.getInstance();
         _workItemID = workItemID;
-        addToRepository();
         set_thisID(_workItemID.toString() + "!" + _workItemID.getUniqueID());
         _specID = specificationID;
         _allowsDynamicCreation = allowsDynamicInstanceCreation;
         _status = status ;
+        addToRepository();              // last, so the repository can index the item
     }
 
 
@@ -460,6 +461,7 @@ public class YWorkItem {
                     if (pmgr != null) {
 
                         // workaround check to avoid double persist of timer - causes unknown
+                        pmgr.writeDeferredChanges();
                         Object o = pmgr.getSession().get(YWorkItemTimer.class, timer.getOwnerID());
                         if (o == null) {
                             pmgr.storeObject(timer);
@@ -758,6 +760,7 @@ public class YWorkItem {
                                                          throws YPersistenceException {
         _engine.getAnnouncer().announceWorkItemStatusChange(this, _status, status);
         _status = status;
+        _engine.getWorkItemRepository().statusChanged(this);
         if (pmgr != null) pmgr.updateObject(this);
     }
 
@@ -780,7 +783,10 @@ public class YWorkItem {
         _dataString = getDataString();
     }
 
-    public void setStatus(YWorkItemStatus status) { _status = status; }
+    public void setStatus(YWorkItemStatus status) {
+        _status = status;
+        if (_engine != null) _engine.getWorkItemRepository().statusChanged(this);
+    }
 
     public YWorkItemID getWorkItemID() { return _workItemID; }
 
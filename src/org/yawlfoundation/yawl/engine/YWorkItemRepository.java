@@ -20,6 +20,7 @@ package org.yawlfoundation.yawl.engine;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.yawlfoundation.yawl.authentication.YClient;
 import org.yawlfoundation.yawl.elements.YAWLServiceGateway;
 import org.yawlfoundation.yawl.elements.YAWLServiceReference;
 import org.yawlfoundation.yawl.elements.YTask;
@@ -32,6 +33,12 @@ import static org.yawlfoundation.yawl.engine.YWorkItemStatus.*;
 
 /**
  * A cache of active workitems.
+ * <p/>
+ * As well as the primary map of items by id, the repository maintains secondary
+ * indexes of items by status, by root case and by owning service, so that the
+ * common lookups are proportional to the size of their result rather than to the
+ * number of live items. The status index is kept current by the work items
+ * themselves, which notify the repository on each status change.
  * 
  * @author Lachlan Aldred
  * Date: 30/05/2003
@@ -42,17 +49,34 @@ import static org.yawlfoundation.yawl.engine.YWorkItemStatus.*;
  */
 public class YWorkItemRepository {
     private final Map<String, YWorkItem> _itemMap; //[case&taskIDStr=YWorkItem]
+    private final Map<YWorkItem, IndexKeys> _indexKeys;  // the keys each item is indexed by
+    private final Map<YWorkItemStatus, Set<YWorkItem>> _statusIndex;
+    private final Map<String, Set<YWorkItem>> _caseIndex;     // [rootCaseID=items]
+    private final Map<String, Set<YWorkItem>> _serviceIndex;  // [serviceURI=items]
     private final Logger _logger;
 
+    // the service index key for items of tasks that use the default worklist
+    private static final String DEFAULT_WORKLIST_KEY = "";
+
     public YWorkItemRepository() {
         _itemMap = new ConcurrentHashMap<>(500);
+        _indexKeys = new ConcurrentHashMap<>(500);
+        _statusIndex = new EnumMap<>(YWorkItemStatus.class);
+        for (YWorkItemStatus status : YWorkItemStatus.values()) {
+            _statusIndex.put(status, ConcurrentHashMap.<YWorkItem>newKeySet());
+        }
+        _caseIndex = new ConcurrentHashMap<>();
+        _serviceIndex = new ConcurrentHashMap<>();
         _logger = LogManager.getLogger(YWorkItemRepository.class);
     }
 
 
     protected YWorkItem add(YWorkItem workItem) {
         _logger.debug("--> YWorkItemRepository#add: {}", workItem.getIDString());
-        return _itemMap.put(workItem.getIDString(), workItem);
+        YWorkItem previous = _itemMap.put(workItem.getIDString(), workItem);
+        if (previous != null && previous != workItem) unindex(previous);
+        index(workItem);
+        return previous;
     }
 
 
@@ -68,10 +92,37 @@ public class YWorkItemRepository {
 
     public YWorkItem remove(YWorkItem workItem) {
         _logger.debug("--> YWorkItemRepository#remove: {}", workItem.getIDString());
-        return _itemMap.remove(workItem.getIDString());
+        return removeItem(workItem.getIDString());
+    }
+
+    public void clear() {
+        _itemMap.clear();
+        _indexKeys.clear();
+        for (Set<YWorkItem> items : _statusIndex.values()) {
+            items.clear();
+        }
+        _caseIndex.clear();
+        _serviceIndex.clear();
     }
 
-    public void clear() { _itemMap.clear(); }
+
+    /**
+     * Moves a work item to the status index matching its current status. Called by
+     * a work item each time its status changes.
+     * @param workItem the item with a changed status
+     */
+    protected void statusChanged(YWorkItem workItem) {
+        synchronized (workItem) {
+            IndexKeys keys = _indexKeys.get(workItem);
+            if (keys == null) return;                          // not in the repository
+            YWorkItemStatus status = workItem.getStatus();
+            if (keys.status != status) {
+                removeFromStatusIndex(workItem, keys.status);
+                addToStatusIndex(workItem, status);
+                keys.status = status;
+            }
+        }
+    }
 
 
     public Set<YWorkItem> removeWorkItemFamily(YWorkItem workItem) {
@@ -97,7 +148,7 @@ public class YWorkItemRepository {
      */
     public Set<YWorkItem> cancelNet(YIdentifier caseIDForNet) {
         Set<String> itemsToRemove = new HashSet<String>();
-        for (YWorkItem item : _itemMap.values()) {
+        for (YWorkItem item : getIndexedItems(_caseIndex, getRootID(caseIDForNet))) {
             YIdentifier identifier = item.getWorkItemID().getCaseID();
             if (identifier.isImmediateChildOf(caseIDForNet) ||
                     identifier.toString().equals(caseIDForNet.toString())) {
@@ -112,7 +163,7 @@ public class YWorkItemRepository {
     private Set<YWorkItem> removeItems(Set<String> itemsToRemove) {
         Set<YWorkItem> removedSet = new HashSet<YWorkItem>();
         for (String workItemID : itemsToRemove) {
-            YWorkItem item = _itemMap.remove(workItemID);
+            YWorkItem item = removeItem(workItemID);
             if (item != null) removedSet.add(item);
         }
         return removedSet;
@@ -142,7 +193,8 @@ public class YWorkItemRepository {
     public Set<YWorkItem> getExecutingWorkItems(String serviceName) {
         Set<YWorkItem> executingItems = new HashSet<YWorkItem>();
         for (YWorkItem workitem : getWorkItems(statusExecuting)) {
-            if (workitem.getExternalClient().getUserName().equals(serviceName)) {
+            YClient client = workitem.getExternalClient();
+            if (client != null && client.getUserName().equals(serviceName)) {
                 executingItems.add(workitem);
             }
         }
@@ -157,8 +209,9 @@ public class YWorkItemRepository {
 
     public Set<YWorkItem> getWorkItems(YWorkItemStatus status) {
         Set<YWorkItem> itemSet = new HashSet<YWorkItem>();
-        for (YWorkItem workitem : _itemMap.values()) {
-            if (workitem.getStatus() == status) {
+        if (status == null) return itemSet;
+        for (YWorkItem workitem : _statusIndex.get(status)) {
+            if (workitem.getStatus() == status) {            // in case of a late move
                 itemSet.add(workitem);
             }
         }
@@ -174,30 +227,49 @@ public class YWorkItemRepository {
 
     // check that the items in the repository are in synch with the engine
     public void cleanseRepository() {
+        cleanse(_itemMap.values());
+    }
+
+
+    // removes those items passed that are out of synch with the engine, and returns
+    // those that remain
+    private Set<YWorkItem> cleanse(Collection<YWorkItem> items) {
+        Set<YWorkItem> inSynch = new HashSet<YWorkItem>();
         Set<String> itemsToRemove = new HashSet<String>();
-        for (YWorkItem workitem : _itemMap.values()) {
+        Map<YNetRunner, Set<String>> activeTaskIDs = new HashMap<YNetRunner, Set<String>>();
+        for (YWorkItem workitem : items) {
 
             // keep completed mi tasks in repository until parent completes
             if (workitem.getTask().isMultiInstance() && workitem.hasCompletedStatus()) {
+                inSynch.add(workitem);
                 continue;
             }
 
             YNetRunner runner = YEngine.getInstance().getNetRunnerRepository().get(workitem);
 
-            if (runner != null) {                                      //MLF can be null
-                boolean foundOne = false;
-                for (YTask task : runner.getActiveTasks()) {
-                    if (task.getID().equals(workitem.getTaskID())) {
-                        foundOne = true;
-                        break;
-                    }
-                }
-
-                //clean up all the work items that are out of synch with the engine.
-                if (! foundOne) itemsToRemove.add(workitem.getIDString());
+            //clean up all the work items that are out of synch with the engine.
+            if (runner != null &&                                     //MLF can be null
+                    ! getActiveTaskIDs(runner, activeTaskIDs).contains(workitem.getTaskID())) {
+                itemsToRemove.add(workitem.getIDString());
             }
+            else inSynch.add(workitem);
         }
         if (! itemsToRemove.isEmpty()) removeItems(itemsToRemove);
+        return inSynch;
+    }
+
+
+    private Set<String> getActiveTaskIDs(YNetRunner runner,
+                                         Map<YNetRunner, Set<String>> cache) {
+        Set<String> taskIDs = cache.get(runner);
+        if (taskIDs == null) {
+            taskIDs = new HashSet<String>();
+            for (YTask task : runner.getActiveTasks()) {
+                taskIDs.add(task.getID());
+            }
+            cache.put(runner, taskIDs);
+        }
+        return taskIDs;
     }
 
 
@@ -231,27 +303,20 @@ public class YWorkItemRepository {
             throw new IllegalArgumentException("the argument <caseID> is not valid.");
         }
         
-        List<YWorkItem> caseItems = new ArrayList<YWorkItem>();
-        for (YWorkItem item : getWorkItems()) {
-            YWorkItemID wid = item.getWorkItemID();
-
-            //get the root id for this work item's case
-            YIdentifier rootCaseID = wid.getCaseID().getRootAncestor();
-
-            //if a work item's root case id matches case passed in save it
-            if (rootCaseID.toString().equals(caseID.toString())) {
-                caseItems.add(item);
-            }
-        }
-        return caseItems;
+        return new ArrayList<YWorkItem>(
+                cleanse(getIndexedItems(_caseIndex, caseID.toString())));
     }
 
 
     public Set<YWorkItem> getWorkItemsWithIdentifier(String idType, String id) {
         Set<YWorkItem> matches = new HashSet<YWorkItem>() ;
 
+        // case items can be found from the case index, so only they need be checked
+        Collection<YWorkItem> candidates = idType.equalsIgnoreCase("case") ?
+                cleanse(getIndexedItems(_caseIndex, getRootID(id))) : getWorkItems();
+
         // find out which items belong to the specified case/spec/task
-        for (YWorkItem item : getWorkItems()) {
+        for (YWorkItem item : candidates) {
             if ((idType.equalsIgnoreCase("spec") &&
                  item.getSpecificationID().getUri().equals(id)) ||
                 (idType.equalsIgnoreCase("case") &&
@@ -267,22 +332,123 @@ public class YWorkItemRepository {
     
 
     public Set<YWorkItem> getWorkItemsForService(String serviceURI) {
-        Set<YWorkItem> matches = new HashSet<YWorkItem>();
+        Set<YWorkItem> candidates = new HashSet<YWorkItem>(
+                getIndexedItems(_serviceIndex, serviceURI));
+
+        // items of tasks without a specified service belong to the default worklist
         YAWLServiceReference defWorklist = YEngine.getInstance().getDefaultWorklist();
+        if ((defWorklist != null) && defWorklist.getURI().equals(serviceURI)) {
+            candidates.addAll(getIndexedItems(_serviceIndex, DEFAULT_WORKLIST_KEY));
+        }
+        return cleanse(candidates);
+    }
+
+
+    /******************************************************************************/
+
+    // INDEX MAINTENANCE //
+
+    private YWorkItem removeItem(String workItemID) {
+        YWorkItem item = _itemMap.remove(workItemID);
+        if (item != null) unindex(item);
+        return item;
+    }
+
+
+    private void index(YWorkItem item) {
+        synchronized (item) {
+            IndexKeys keys = new IndexKeys(item.getStatus(), getRootID(item.getCaseID()),
+                    getServiceKey(item));
+            IndexKeys previous = _indexKeys.put(item, keys);
+            if (previous != null) unindex(item, previous);
+            addToStatusIndex(item, keys.status);
+            addToIndex(_caseIndex, keys.rootCaseID, item);
+            addToIndex(_serviceIndex, keys.serviceKey, item);
+        }
+    }
+
 
-        // find out which items belong to the specified service
-        for (YWorkItem item : getWorkItems()) {
-            YAWLServiceGateway gateway =
-                     ((YAWLServiceGateway) item.getTask().getDecompositionPrototype());
-            if (gateway != null) {
-                YAWLServiceReference service = gateway.getYawlService();
-                if (service == null) service = defWorklist;
-                if ((service != null) && (service.getURI().equals(serviceURI))) {
-                    matches.add(item);
-                }
+    private void unindex(YWorkItem item) {
+        synchronized (item) {
+
+            // only unindex if the item hasn't been replaced by an item with the same id
+            if (_itemMap.get(item.getIDString()) != item) {
+                IndexKeys keys = _indexKeys.remove(item);
+                if (keys != null) unindex(item, keys);
             }
         }
-        return matches;
+    }
+
+
+    private void unindex(YWorkItem item, IndexKeys keys) {
+        removeFromStatusIndex(item, keys.status);
+        removeFromIndex(_caseIndex, keys.rootCaseID, item);
+        removeFromIndex(_serviceIndex, keys.serviceKey, item);
+    }
+
+
+    private void addToStatusIndex(YWorkItem item, YWorkItemStatus status) {
+        if (status != null) _statusIndex.get(status).add(item);
+    }
+
+
+    private void removeFromStatusIndex(YWorkItem item, YWorkItemStatus status) {
+        if (status != null) _statusIndex.get(status).remove(item);
+    }
+
+
+    // adds and removes are done atomically per key, so that an empty set is never
+    // discarded while an item is being added to it
+    private void addToIndex(Map<String, Set<YWorkItem>> index, String key,
+                            final YWorkItem item) {
+        if (key == null) return;
+        index.compute(key, (k, items) -> {
+            if (items == null) items = ConcurrentHashMap.newKeySet();
+            items.add(item);
+            return items;
+        });
+    }
+
+
+    private void removeFromIndex(Map<String, Set<YWorkItem>> index, String key,
+                                 final YWorkItem item) {
+        if (key == null) return;
+        index.computeIfPresent(key, (k, items) -> {
+            items.remove(item);
+            return items.isEmpty() ? null : items;
+        });
+    }
+
+
+    private Set<YWorkItem> getIndexedItems(Map<String, Set<YWorkItem>> index,
+                                           String key) {
+        Set<YWorkItem> items = key != null ? index.get(key) : null;
+        return items != null ? new HashSet<YWorkItem>(items) :
+                Collections.<YWorkItem>emptySet();
+    }
+
+
+    private String getRootID(YIdentifier caseID) {
+        return caseID != null ? caseID.getRootAncestor().toString() : null;
+    }
+
+
+    // the root id is everything up to the first '.' (if any)
+    private String getRootID(String caseID) {
+        if (caseID == null) return null;
+        int dotPos = caseID.indexOf('.');
+        return dotPos > -1 ? caseID.substring(0, dotPos) : caseID;
+    }
+
+
+    private String getServiceKey(YWorkItem item) {
+        YTask task = item.getTask();
+        if (task != null && task.getDecompositionPrototype() instanceof YAWLServiceGateway) {
+            YAWLServiceReference service =
+                    ((YAWLServiceGateway) task.getDecompositionPrototype()).getYawlService();
+            return service != null ? service.getURI() : DEFAULT_WORKLIST_KEY;
+        }
+        return null;
     }
 
 
@@ -301,4 +467,22 @@ public class YWorkItemRepository {
         logger.debug("*** DUMP OF CASE_2_NETRUNNER_MAP ENDS");
     }
 
+
+
+    /******************************************************************************/
+
+    // the keys an item was indexed under, so that it can be found for removal
+    // even if its state has since changed
+    private static class IndexKeys {
+        volatile YWorkItemStatus status;
+        final String rootCaseID;
+        final String serviceKey;
+
+        IndexKeys(YWorkItemStatus status, String rootCaseID, String serviceKey) {
+            this.status = status;
+            this.rootCaseID = rootCaseID;
+            this.serviceKey = serviceKey;
+        }
+    }
+
 }
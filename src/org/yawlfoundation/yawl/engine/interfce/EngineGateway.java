@@ -57,6 +57,10 @@ public interface EngineGateway extends Remote {
 
     void setHibernateStatisticsEnabled(boolean enable);
 
+    void setPersistenceWriteBehind(boolean enable);
+
+    void setCaseNbrBlockSize(int size);
+
     void shutdown();
 
     void initBuildProperties(InputStream stream);
@@ -233,6 +233,24 @@ public class EngineGatewayImpl implements EngineGateway {
     }
 
 
+    /**
+     * Enables or disables write-behind batching of persistence changes
+     * @param enable true to enable, false to disable
+     */
+    public void setPersistenceWriteBehind(boolean enable) {
+        _engine.setPersistenceWriteBehind(enable);
+    }
+
+
+    /**
+     * Sets how many case numbers are reserved with each persisted update
+     * @param size the block size
+     */
+    public void setCaseNbrBlockSize(int size) {
+        _engine.setCaseNbrBlockSize(size);
+    }
+
+
     /**
      * Loads build properties from the stream (build number, date, version)
      * @param stream a stream of the file containing the build properties
@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2004-2020 The YAWL Foundation. All rights reserved.
+ * The YAWL Foundation is a collaboration of individuals and
+ * organisations who are committed to improving workflow technology.
+ *
+ * This file is part of YAWL. YAWL is free software: you can
+ * redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation.
+ *
+ * YAWL is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with YAWL. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.yawlfoundation.yawl.engine.interfce;
+
+import java.io.IOException;
+import java.net.URL;
+
+/**
+ * The means by which an Interface_Client delivers its requests. A request is always
+ * a POST of form-encoded data, and its reply is always returned as a string.
+ * <p/>
+ * Implementations must be safe for use by many threads at once, since one transport
+ * may be shared by several clients.
+ */
+public interface HttpTransport {
+
+    /**
+     * POSTs form-encoded data to a url and returns the reply
+     * @param url the url to POST to
+     * @param data the form-encoded data to send
+     * @param connectTimeout the maximum msecs to wait for a connection to be made,
+     *                       or 0 to wait indefinitely
+     * @param readTimeout the maximum msecs to wait for a reply, or 0 to wait
+     *                    indefinitely
+     * @return the body of the reply
+     * @throws IOException if the request can't be sent, the reply can't be read, or
+     * the reply has an error status
+     */
+    String post(URL url, String data, int connectTimeout, int readTimeout)
+            throws IOException;
+
+
+    /**
+     * @return the connection statistics of this transport
+     */
+    TransportStatistics getStatistics();
+
+
+    /**
+     * Closes any connections held by this transport
+     */
+    void shutdown();
+
+}
@@ -38,8 +38,14 @@ import java.util.Map;
 
 public class Interface_Client {
 
+    // the transport used by clients that have not been given one of their own
+    private static volatile HttpTransport DEFAULT_TRANSPORT = new URLConnectionTransport();
+
+    private HttpTransport _transport;
+
     // allows the prevention of socket reads from blocking indefinitely
-    private static int READ_TIMEOUT = 0;              // default: wait indefinitely
+    private int _readTimeout = 0;                     // default: wait indefinitely
+    private int _connectTimeout = 0;
 
 
     /**
@@ -88,11 +94,50 @@ public class Interface_Client {
 
     /**
      * Set the read timeout value for future connections
-     * @param timeout the timeout value in milliseconds. A value of -1 (the default)
+     * @param timeout the timeout value in milliseconds. A value of 0 (the default)
      *                means a read will wait indefinitely.
      */
     protected void setReadTimeout(int timeout) {
-        READ_TIMEOUT = timeout;
+        _readTimeout = timeout;
+    }
+
+
+    /**
+     * Set the connect timeout value for future connections
+     * @param timeout the timeout value in milliseconds. A value of 0 (the default)
+     *                means a connection attempt will wait indefinitely.
+     */
+    protected void setConnectTimeout(int timeout) {
+        _connectTimeout = timeout;
+    }
+
+
+    /**
+     * Sets the transport used by this client's requests
+     * @param transport the transport to use, or null to use the default transport
+     */
+    public void setTransport(HttpTransport transport) {
+        _transport = transport;
+    }
+
+
+    public HttpTransport getTransport() {
+        return _transport != null ? _transport : DEFAULT_TRANSPORT;
+    }
+
+
+    /**
+     * Sets the transport used by all clients that have not been given one of their
+     * own. The initial default opens a new connection for each request.
+     * @param transport the transport to use
+     */
+    public static void setDefaultTransport(HttpTransport transport) {
+        if (transport != null) DEFAULT_TRANSPORT = transport;
+    }
+
+
+    public static HttpTransport getDefaultTransport() {
+        return DEFAULT_TRANSPORT;
     }
 
 
@@ -148,7 +193,7 @@ public class Interface_Client {
         HttpURLConnection connection = (HttpURLConnection) url.openConnection();
         connection.setDoOutput(true);
         connection.setRequestProperty("Accept-Charset", "UTF-8");
-        connection.setReadTimeout(READ_TIMEOUT);
+        connection.setReadTimeout(_readTimeout);
 
         // required to ensure the connection is not reused. When not set, spurious
         // intermittent problems (double posts, missing posts) occur under heavy load.
@@ -183,7 +228,9 @@ public class Interface_Client {
      */
     private String send(String urlStr, Map<String, String> paramsMap, boolean post)
             throws IOException {
-        return send(initPostConnection(urlStr), paramsMap, post);
+        String result = getTransport().post(new URL(urlStr), encodeData(paramsMap),
+                _connectTimeout, _readTimeout);
+        return post ? stripOuterElement(result) : result;
     }
 
 
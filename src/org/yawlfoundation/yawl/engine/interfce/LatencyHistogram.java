@@ -0,0 +1,202 @@
+/*
+ * Copyright (c) 2004-2020 The YAWL Foundation. All rights reserved.
+ * The YAWL Foundation is a collaboration of individuals and
+ * organisations who are committed to improving workflow technology.
+ *
+ * This file is part of YAWL. YAWL is free software: you can
+ * redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation.
+ *
+ * YAWL is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with YAWL. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.yawlfoundation.yawl.engine.interfce;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A fixed-size, lock-free histogram of latencies, recorded in nanoseconds.
+ * <p/>
+ * Buckets are log-linear: each power of two is split into 32 equal sub-buckets,
+ * so any recorded value is known to within about 3%, across a range of 1ns to
+ * about 73 minutes (longer values are counted in the top bucket), in a fixed
+ * 1216 counters. Recording is a few atomic increments, so it can be left on
+ * under load.
+ * <p/>
+ * Counts are cumulative and never reset. Statistics for an interval are taken
+ * as the difference between the current counts and those at the end of the
+ * previous interval, so concurrent recording is never lost between intervals.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;      // per power of 2
+    private static final int MAX_BITS = 42;                           // 2^42ns ~ 73 mins
+    static final int BUCKETS = (MAX_BITS - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray _counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder _sum = new LongAdder();
+    private final AtomicLong _max = new AtomicLong();
+    private final AtomicLong _intervalMax = new AtomicLong();
+
+    private Snapshot _intervalStart = new Snapshot(new long[BUCKETS], 0, 0);
+
+
+    /**
+     * Records a latency
+     * @param nanos the latency, in nanoseconds
+     */
+    public void record(long nanos) {
+        if (nanos < 0) nanos = 0;
+        _counts.incrementAndGet(bucketIndex(nanos));
+        _sum.add(nanos);
+        _max.accumulateAndGet(nanos, Math::max);
+        _intervalMax.accumulateAndGet(nanos, Math::max);
+    }
+
+
+    /**
+     * @return the statistics of everything recorded so far
+     */
+    public Snapshot getSnapshot() {
+        long[] counts = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = _counts.get(i);
+        }
+        return new Snapshot(counts, _sum.sum(), _max.get());
+    }
+
+
+    /**
+     * @param endInterval if true, a new interval is started
+     * @return the statistics of everything recorded since the last interval ended
+     */
+    public synchronized Snapshot getIntervalSnapshot(boolean endInterval) {
+        Snapshot now = getSnapshot();
+        long max = endInterval ? _intervalMax.getAndSet(0) : _intervalMax.get();
+        Snapshot interval = now.minus(_intervalStart, max);
+        if (endInterval) _intervalStart = now;
+        return interval;
+    }
+
+
+    static int bucketIndex(long nanos) {
+        if (nanos < SUB_BUCKETS) return (int) nanos;
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        int shift = exponent - SUB_BUCKET_BITS;
+        int index = ((shift + 1) << SUB_BUCKET_BITS) +
+                (int) ((nanos >>> shift) & (SUB_BUCKETS - 1));
+        return Math.min(index, BUCKETS - 1);
+    }
+
+
+    // the smallest value counted in a bucket
+    static long lowerBound(int index) {
+        if (index < SUB_BUCKETS) return index;
+        int shift = (index >> SUB_BUCKET_BITS) - 1;
+        return ((long) (SUB_BUCKETS + (index & (SUB_BUCKETS - 1)))) << shift;
+    }
+
+
+    // the largest value counted in a bucket (below the top bucket)
+    static long upperBound(int index) {
+        return lowerBound(index + 1) - 1;
+    }
+
+
+    /******************************************************************************/
+
+    /**
+     * An immutable set of statistics taken from a histogram. All times are
+     * returned in milliseconds.
+     */
+    public static class Snapshot {
+
+        private final long[] _counts;
+        private final long _count;
+        private final long _sum;                                           // nanos
+        private final long _max;                                           // nanos
+
+        // a value may be counted before it reaches the max, so the max is never
+        // taken to be less than the bottom of the highest occupied bucket
+        Snapshot(long[] counts, long sum, long max) {
+            _counts = counts;
+            long count = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                if (counts[i] > 0) {
+                    count += counts[i];
+                    max = Math.max(max, lowerBound(i));
+                }
+            }
+            _count = count;
+            _sum = sum;
+            _max = max;
+        }
+
+
+        public long getCount() { return _count; }
+
+        public double getMinMsecs() {
+            for (int i = 0; i < BUCKETS; i++) {
+                if (_counts[i] > 0) return toMsecs(Math.min(lowerBound(i), _max));
+            }
+            return 0;
+        }
+
+        public double getMeanMsecs() {
+            return _count > 0 ? toMsecs(_sum) / _count : 0;
+        }
+
+        public double getMaxMsecs() { return toMsecs(_max); }
+
+        public double getMedianMsecs() { return getPercentileMsecs(50); }
+
+        public double getP90Msecs() { return getPercentileMsecs(90); }
+
+        public double getP99Msecs() { return getPercentileMsecs(99); }
+
+        public double getP999Msecs() { return getPercentileMsecs(99.9); }
+
+
+        /**
+         * @param percentile a value between 0 and 100
+         * @return the latency at or below which that percentage of recorded latencies
+         * fall, to within the precision of a bucket (and never more than the max)
+         */
+        public double getPercentileMsecs(double percentile) {
+            if (_count == 0) return 0;
+            long rank = Math.max(1, (long) Math.ceil(_count * percentile / 100.0));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += _counts[i];
+                if (seen >= rank) {
+                    long bound = i < BUCKETS - 1 ? upperBound(i) : _max;
+                    return toMsecs(Math.min(bound, _max));
+                }
+            }
+            return getMaxMsecs();
+        }
+
+
+        // the difference between this and an earlier snapshot of the same histogram
+        Snapshot minus(Snapshot earlier, long max) {
+            long[] counts = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] = _counts[i] - earlier._counts[i];
+            }
+            return new Snapshot(counts, _sum - earlier._sum, max);
+        }
+
+
+        private double toMsecs(long nanos) { return nanos / 1000000.0; }
+    }
+
+}
@@ -18,20 +18,37 @@
 
 package org.yawlfoundation.yawl.engine.interfce;
 
+import org.apache.logging.log4j.LogManager;
 import org.yawlfoundation.yawl.util.XNode;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
+ * Records the latency of each request, by action, in a fixed-size histogram per
+ * action. Statistics for the interval since the last poll are returned as XML
+ * by poll (and so by the 'pollPerfStats' Interface B action), and cumulative
+ * and interval statistics are also published via JMX once registerMBean is
+ * called.
+ *
  * @author Michael Adams
  * @date 11/6/17
  */
 public class PerfReporter {
 
-    private static final Map<String, List<TimeSpan>> _requestMap = new HashMap<String, List<TimeSpan>>();
+    // the most distinct actions tracked; any more are counted together
+    private static final int MAX_ACTIONS = 256;
+    private static final String OTHER_ACTIONS = "other";
+
+    private static final String MBEAN_NAME = "org.yawlfoundation.yawl:type=PerfReporter";
+
+    private static final Map<String, LatencyHistogram> _histograms =
+            new ConcurrentHashMap<String, LatencyHistogram>();
     private static long _previousTimestamp = 0;
 
 
@@ -39,66 +56,171 @@ public class PerfReporter {
 
 
     public static void add(String request, long start) {
-        getOrAdd(request).add(new TimeSpan(start, System.nanoTime()));
+        getOrAdd(request).record(System.nanoTime() - start);
+    }
+
+
+    // read and start a new interval
+    public static synchronized String poll() {
+        return toXML(true);
+    }
+
+
+    // read without starting a new interval
+    public static synchronized String read() {
+        return toXML(false);
+    }
+
+
+    /**
+     * @return the statistics for each action since recording began
+     */
+    public static Map<String, LatencyHistogram.Snapshot> getStatistics() {
+        Map<String, LatencyHistogram.Snapshot> stats =
+                new TreeMap<String, LatencyHistogram.Snapshot>();
+        for (Map.Entry<String, LatencyHistogram> entry : _histograms.entrySet()) {
+            stats.put(entry.getKey(), entry.getValue().getSnapshot());
+        }
+        return stats;
+    }
+
+
+    /**
+     * @return the statistics for each action since the last poll
+     */
+    public static Map<String, LatencyHistogram.Snapshot> getIntervalStatistics() {
+        return getIntervalStatistics(false);
+    }
+
+
+    /**
+     * Publishes the statistics as a platform MBean
+     */
+    public static void registerMBean() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(MBEAN_NAME);
+            if (! server.isRegistered(name)) {
+                server.registerMBean(new MBean(), name);
+            }
+        }
+        catch (Exception e) {
+            LogManager.getLogger(PerfReporter.class).warn(
+                    "Could not register performance statistics MBean", e);
+        }
     }
 
 
-    // read and clear
-    public static String poll() {
-        String resp = read();
-        _requestMap.clear();
-        return resp;
+    public static void unregisterMBean() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(MBEAN_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        }
+        catch (Exception e) {
+            // nothing to do
+        }
     }
 
 
-    public static String read() {
+    private static String toXML(boolean endInterval) {
         XNode root = new XNode("requeststats");
         long timestamp = System.nanoTime();
         root.addAttribute("timestamp", timestamp);
         root.addAttribute("previous", _previousTimestamp);
-        _previousTimestamp = timestamp;
-        root.addChild(getRequests());
+        if (endInterval) _previousTimestamp = timestamp;
+        root.addChild(getRequests(getIntervalStatistics(endInterval)));
+        root.addChild(getTransport());
         return root.toString();
     }
 
 
-    private static XNode getRequests() {
+    private static Map<String, LatencyHistogram.Snapshot> getIntervalStatistics(
+            boolean endInterval) {
+        Map<String, LatencyHistogram.Snapshot> stats =
+                new TreeMap<String, LatencyHistogram.Snapshot>();
+        for (Map.Entry<String, LatencyHistogram> entry : _histograms.entrySet()) {
+            stats.put(entry.getKey(),
+                    entry.getValue().getIntervalSnapshot(endInterval));
+        }
+        return stats;
+    }
+
+
+    // only actions with requests in the interval are included
+    private static XNode getRequests(Map<String, LatencyHistogram.Snapshot> stats) {
         XNode root = new XNode("requests");
-        for (String action : _requestMap.keySet()) {
-            XNode actionNode = root.addChild("action");
-            actionNode.addAttribute("name", action);
-            for (TimeSpan span : _requestMap.get(action)) {
-                actionNode.addChild(span.toXNode());
+        for (String action : stats.keySet()) {
+            LatencyHistogram.Snapshot snapshot = stats.get(action);
+            if (snapshot.getCount() > 0) {
+                XNode actionNode = root.addChild("action");
+                actionNode.addAttribute("name", action);
+                actionNode.addAttribute("count", snapshot.getCount());
+                actionNode.addAttribute("min", format(snapshot.getMinMsecs()));
+                actionNode.addAttribute("mean", format(snapshot.getMeanMsecs()));
+                actionNode.addAttribute("p50", format(snapshot.getMedianMsecs()));
+                actionNode.addAttribute("p90", format(snapshot.getP90Msecs()));
+                actionNode.addAttribute("p99", format(snapshot.getP99Msecs()));
+                actionNode.addAttribute("max", format(snapshot.getMaxMsecs()));
             }
         }
         return root;
     }
 
 
-    private static List<TimeSpan> getOrAdd(String action) {
-        if (! _requestMap.containsKey(action)) {
-            _requestMap.put(action, new ArrayList<TimeSpan>());
+    // cumulative counts of the connections used by the engine's outgoing requests
+    private static XNode getTransport() {
+        TransportStatistics stats = Interface_Client.getDefaultTransport().getStatistics();
+        XNode node = new XNode("transport");
+        node.addAttribute("requests", stats.getRequests());
+        node.addAttribute("failures", stats.getFailures());
+        node.addAttribute("opened", stats.getConnectionsOpened());
+        node.addAttribute("reused", stats.getConnectionsReused());
+        node.addAttribute("open", stats.getOpenConnections());
+        node.addAttribute("staleRetries", stats.getStaleConnectionRetries());
+        node.addAttribute("reuseRatio", String.format(Locale.ROOT, "%.3f", stats.getReuseRatio()));
+        return node;
+    }
+
+
+    private static String format(double msecs) {
+        return String.format(Locale.ROOT, "%.3f", msecs);
+    }
+
+
+    private static LatencyHistogram getOrAdd(String action) {
+        LatencyHistogram histogram = action != null ? _histograms.get(action) : null;
+        if (histogram == null) {
+            if (action == null || _histograms.size() >= MAX_ACTIONS) {
+                action = OTHER_ACTIONS;
+            }
+            histogram = _histograms.computeIfAbsent(action, k -> new LatencyHistogram());
         }
-        return _requestMap.get(action);
+        return histogram;
     }
 
-    /***/
+    /******************************************************************************/
+
+    public interface PerfReporterMXBean {
 
-    static class TimeSpan {
+        Map<String, LatencyHistogram.Snapshot> getStatistics();
 
-        private final long nanoBegin;
-        private final long nanoEnd;
+        Map<String, LatencyHistogram.Snapshot> getIntervalStatistics();
 
-        protected TimeSpan(long begin, long end) {
-            nanoBegin = begin;
-            nanoEnd = end;
+    }
+
+
+    private static class MBean implements PerfReporterMXBean {
+
+        public Map<String, LatencyHistogram.Snapshot> getStatistics() {
+            return PerfReporter.getStatistics();
         }
 
-        protected XNode toXNode() {
-            XNode node = new XNode("span");
-            node.addAttribute("begin", nanoBegin);
-            node.addAttribute("end", nanoEnd);
-            return node;
+        public Map<String, LatencyHistogram.Snapshot> getIntervalStatistics() {
+            return PerfReporter.getIntervalStatistics();
         }
     }
+
 }
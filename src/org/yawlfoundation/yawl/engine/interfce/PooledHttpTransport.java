@@ -0,0 +1,598 @@
+/*
+ * Copyright (c) 2004-2020 The YAWL Foundation. All rights reserved.
+ * The YAWL Foundation is a collaboration of individuals and
+ * organisations who are committed to improving workflow technology.
+ *
+ * This file is part of YAWL. YAWL is free software: you can
+ * redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation.
+ *
+ * YAWL is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with YAWL. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.yawlfoundation.yawl.engine.interfce;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.yawlfoundation.yawl.util.StringUtil;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A transport that keeps HTTP/1.1 connections open between requests, so that
+ * repeated requests to the same host (for example, engine announcements to a custom
+ * service) don't each pay the cost of setting up a new TCP connection.
+ * <p/>
+ * Connections are pooled per host and port. The number of connections open to a host
+ * at any time is bounded - a request made while all are in use waits for one to be
+ * released (for up to the connect timeout, if one is set). Each connection carries
+ * one request at a time: requests are not pipelined, since they are non-idempotent
+ * POSTs that can't be safely replayed should a pipelined connection fail part-way,
+ * and servlet containers process the requests on a connection serially anyway.
+ * <p/>
+ * A connection idle for longer than the idle timeout is closed rather than reused,
+ * so that it is not reused just as the server times it out (Tomcat's default
+ * keep-alive timeout is 20 seconds). A connection idle for more than a second is
+ * checked before reuse, and discarded if the server has closed it; if a reused
+ * connection nevertheless fails while the request is being written, the request is
+ * retried once on a new connection. A request that was written in full is never
+ * retried, since the server may already have processed it - the failure is passed
+ * back to the caller instead.
+ * <p/>
+ * Only plain http urls are pooled - others, and any request redirected by the
+ * server, are passed to a URLConnectionTransport.
+ */
+public class PooledHttpTransport implements HttpTransport {
+
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 8;
+    public static final long DEFAULT_IDLE_TIMEOUT = 15000;                  // msecs
+
+    // the check that an idle connection is still open takes a msec, so is skipped for
+    // connections idle for less than this (msecs)
+    private static final long VALIDATE_AFTER_IDLE = 1000;
+
+    private static final String CRLF = "\r\n";
+    private static final int BUF_SIZE = 16384;
+
+    private final ConcurrentHashMap<String, HostPool> _pools = new ConcurrentHashMap<>();
+    private final Map<String, HostSettings> _hostSettings = new ConcurrentHashMap<>();
+    private final TransportStatistics _stats = new TransportStatistics();
+    private final HttpTransport _fallback = new URLConnectionTransport();
+    private final int _maxConnectionsPerHost;
+    private final long _idleTimeout;
+    private final Logger _log = LogManager.getLogger(PooledHttpTransport.class);
+    private volatile boolean _shutdown;
+
+
+    public PooledHttpTransport() {
+        this(DEFAULT_MAX_CONNECTIONS_PER_HOST, DEFAULT_IDLE_TIMEOUT);
+    }
+
+
+    /**
+     * Constructs a new PooledHttpTransport
+     * @param maxConnectionsPerHost the maximum number of connections open to a host
+     *                              at any time
+     * @param idleTimeout the msecs after which an idle connection is closed
+     */
+    public PooledHttpTransport(int maxConnectionsPerHost, long idleTimeout) {
+        if (maxConnectionsPerHost < 1) {
+            throw new IllegalArgumentException("At least one connection per host is required");
+        }
+        _maxConnectionsPerHost = maxConnectionsPerHost;
+        _idleTimeout = idleTimeout;
+    }
+
+
+    /**
+     * Overrides the connection limit and read timeout for a particular host. Must be
+     * called before the first request to the host is made.
+     * @param hostAndPort the host, of the form 'host:port'
+     * @param maxConnections the maximum number of connections open to the host at
+     *                       any time, or 0 for the transport's default
+     * @param readTimeout the msecs to wait for a reply from the host, overriding the
+     *                    timeout of the requesting client, or -1 to use the client's
+     */
+    public void configureHost(String hostAndPort, int maxConnections, int readTimeout) {
+        _hostSettings.put(hostAndPort.toLowerCase(),
+                new HostSettings(maxConnections, readTimeout));
+    }
+
+
+    /**
+     * Overrides the connection limits and read timeouts for a set of hosts
+     * @param settings a semicolon-separated list of host settings, each of the form
+     *                 'host:port=maxConnections' or 'host:port=maxConnections/readTimeout'
+     *                 (for example "localhost:8080=16/30000; server2:8080=4"). Settings
+     *                 that can't be parsed are logged and ignored. May be null.
+     */
+    public void configureHosts(String settings) {
+        if (StringUtil.isNullOrEmpty(settings)) return;
+        for (String setting : settings.split(";")) {
+            if (setting.trim().isEmpty()) continue;
+            String[] parts = setting.trim().split("[=/]");
+            int max = parts.length > 1 ? StringUtil.strToInt(parts[1].trim(), -1) : -1;
+            int timeout = parts.length > 2 ? StringUtil.strToInt(parts[2].trim(), -2) : -1;
+            if (parts.length > 3 || max < 0 || timeout < -1 || ! parts[0].contains(":")) {
+                _log.warn("Ignoring malformed service connection setting: {}", setting);
+            }
+            else configureHost(parts[0].trim(), max, timeout);
+        }
+    }
+
+
+    public String post(URL url, String data, int connectTimeout, int readTimeout)
+            throws IOException {
+        if (_shutdown) throw new IOException("Transport has been shut down");
+        if (! "http".equalsIgnoreCase(url.getProtocol())) {
+            return _fallback.post(url, data, connectTimeout, readTimeout);
+        }
+
+        _stats.requestMade();
+        HostPool pool = getPool(url);
+        if (pool.settings != null && pool.settings.readTimeout > -1) {
+            readTimeout = pool.settings.readTimeout;
+        }
+        byte[] request = buildRequest(url, data);
+
+        pool.acquire(connectTimeout);
+        try {
+            return send(pool, request, connectTimeout, readTimeout);
+        }
+        catch (RedirectException re) {
+            _log.debug("Request to {} redirected, resending without pooling", url);
+            return _fallback.post(url, data, connectTimeout, readTimeout);
+        }
+        catch (IOException ioe) {
+            _stats.requestFailed();
+            throw ioe;
+        }
+        finally {
+            pool.release();
+        }
+    }
+
+
+    public TransportStatistics getStatistics() { return _stats; }
+
+
+    /**
+     * Closes all idle connections. Connections in use when this is called are closed
+     * once their current request completes.
+     */
+    public void shutdown() {
+        _shutdown = true;
+        for (HostPool pool : _pools.values()) {
+            pool.closeIdleConnections();
+        }
+        _fallback.shutdown();
+    }
+
+
+    /**
+     * @param hostAndPort the host, of the form 'host:port'
+     * @return the number of idle connections currently held for the host
+     */
+    public int getIdleConnectionCount(String hostAndPort) {
+        HostPool pool = _pools.get(hostAndPort.toLowerCase());
+        return pool != null ? pool.idle.size() : 0;
+    }
+
+
+    /*********************************************************************************/
+
+    private HostPool getPool(URL url) {
+        int port = url.getPort() > -1 ? url.getPort() : url.getDefaultPort();
+        String key = (url.getHost() + ":" + port).toLowerCase();
+        HostPool pool = _pools.get(key);
+        if (pool == null) {
+            HostSettings settings = _hostSettings.get(key);
+            int max = settings != null && settings.maxConnections > 0 ?
+                    settings.maxConnections : _maxConnectionsPerHost;
+            pool = new HostPool(url.getHost(), port, max, settings);
+            HostPool existing = _pools.putIfAbsent(key, pool);
+            if (existing != null) pool = existing;
+        }
+        return pool;
+    }
+
+
+    // sends the request on an idle connection if there is one, or else on a new one
+    private String send(HostPool pool, byte[] request, int connectTimeout,
+                        int readTimeout) throws IOException {
+        Connection connection = pool.getIdleConnection();
+        if (connection != null) {
+            try {
+                return exchange(pool, connection, request, readTimeout);
+            }
+            catch (StaleConnectionException sce) {
+
+                // the server closed the reused connection before it was sent the request
+                _stats.staleConnectionRetried();
+                _log.debug("Retrying request to {}:{} on a new connection",
+                        pool.host, pool.port);
+            }
+        }
+        return exchange(pool, pool.open(connectTimeout), request, readTimeout);
+    }
+
+
+    private byte[] buildRequest(URL url, String data) {
+        byte[] body = data.getBytes(StandardCharsets.UTF_8);
+        String path = url.getFile();
+        if (path.isEmpty()) path = "/";
+        String host = url.getHost() + (url.getPort() > -1 ? ":" + url.getPort() : "");
+        String header = "POST " + path + " HTTP/1.1" + CRLF +
+                "Host: " + host + CRLF +
+                "Content-Type: application/x-www-form-urlencoded; charset=UTF-8" + CRLF +
+                "Accept-Charset: UTF-8" + CRLF +
+                "Content-Length: " + body.length + CRLF +
+                "Connection: keep-alive" + CRLF + CRLF;
+        byte[] head = header.getBytes(StandardCharsets.ISO_8859_1);
+        byte[] request = new byte[head.length + body.length];
+        System.arraycopy(head, 0, request, 0, head.length);
+        System.arraycopy(body, 0, request, head.length, body.length);
+        return request;
+    }
+
+
+    // sends a request and reads its reply, then returns the connection to the pool
+    // if it can be reused, or closes it if not
+    private String exchange(HostPool pool, Connection connection, byte[] request,
+                            int readTimeout) throws IOException {
+        boolean reusable = false;
+        try {
+            connection.socket.setSoTimeout(readTimeout);
+            try {
+                connection.out.write(request);
+                connection.out.flush();
+            }
+            catch (IOException ioe) {
+                if (connection.isReused() && ! (ioe instanceof SocketTimeoutException)) {
+                    throw new StaleConnectionException();
+                }
+                throw ioe;
+            }
+            Response response = readResponse(connection);
+            reusable = response.keepAlive && ! _shutdown;
+            checkStatus(response, pool);
+            return response.body;
+        }
+        finally {
+            if (reusable) {
+                pool.offer(connection);
+            }
+            else {
+                pool.close(connection);
+            }
+        }
+    }
+
+
+    private Response readResponse(Connection connection) throws IOException {
+        String statusLine;
+        int status;
+        do {
+            statusLine = readLine(connection);
+            status = parseStatus(statusLine);
+            if (status < 200) {
+                while (! readLine(connection).isEmpty()) { }   // skip interim reply
+            }
+        } while (status < 200);
+
+        // HTTP/1.0 connections are never reused
+        boolean keepAlive = ! statusLine.startsWith("HTTP/1.0");
+        long contentLength = -1;
+        boolean chunked = false;
+        String location = null;
+        String line;
+        while (! (line = readLine(connection)).isEmpty()) {
+            int colon = line.indexOf(':');
+            if (colon < 1) continue;
+            String name = line.substring(0, colon).trim();
+            String value = line.substring(colon + 1).trim();
+            if (name.equalsIgnoreCase("Content-Length")) {
+                try {
+                    contentLength = Long.parseLong(value);
+                }
+                catch (NumberFormatException nfe) {
+                    throw new IOException("Malformed content length in reply: " + value);
+                }
+            }
+            else if (name.equalsIgnoreCase("Transfer-Encoding")) {
+                chunked = value.toLowerCase().contains("chunked");
+            }
+            else if (name.equalsIgnoreCase("Connection")) {
+                if (value.equalsIgnoreCase("close")) keepAlive = false;
+            }
+            else if (name.equalsIgnoreCase("Location")) {
+                location = value;
+            }
+        }
+
+        ByteArrayOutputStream body = new ByteArrayOutputStream(BUF_SIZE);
+        if (chunked) {
+            readChunked(connection, body);
+        }
+        else if (contentLength > -1) {
+            readFully(connection.in, body, contentLength);
+        }
+        else if (! (status == 204 || status == 304)) {        // never have a body
+            readFully(connection.in, body, Long.MAX_VALUE);          // until closed
+            keepAlive = false;
+        }
+        return new Response(status, body.toString("UTF-8"), keepAlive, location);
+    }
+
+
+    private void readChunked(Connection connection, OutputStream body)
+            throws IOException {
+        long size;
+        do {
+            String line = readLine(connection);
+            int semi = line.indexOf(';');                          // chunk extensions
+            if (semi > -1) line = line.substring(0, semi);
+            try {
+                size = Long.parseLong(line.trim(), 16);
+            }
+            catch (NumberFormatException nfe) {
+                throw new IOException("Malformed chunk size in reply: " + line);
+            }
+            if (size > 0) {
+                readFully(connection.in, body, size);
+                readLine(connection);                       // CRLF ending the chunk
+            }
+        } while (size > 0);
+        while (! readLine(connection).isEmpty()) { }                   // trailers
+    }
+
+
+    private void readFully(InputStream in, OutputStream out, long count)
+            throws IOException {
+        byte[] buffer = new byte[BUF_SIZE];
+        long remaining = count;
+        while (remaining > 0) {
+            int bytesRead = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+            if (bytesRead < 0) {
+                if (count == Long.MAX_VALUE) return;               // read until closed
+                throw new EOFException("Connection closed before reply was complete");
+            }
+            out.write(buffer, 0, bytesRead);
+            remaining -= bytesRead;
+        }
+    }
+
+
+    // reads a CRLF (or LF) terminated line of ISO-8859-1 header text
+    private String readLine(Connection connection) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        int c;
+        while ((c = connection.in.read()) != '\n') {
+            if (c < 0) throw new EOFException("Connection closed before reply was complete");
+            connection.bytesRead++;
+            if (c != '\r') sb.append((char) c);
+        }
+        return sb.toString();
+    }
+
+
+    private int parseStatus(String statusLine) throws IOException {
+        String[] parts = statusLine.split(" ", 3);
+        if (parts.length < 2 || ! parts[0].startsWith("HTTP/")) {
+            throw new IOException("Malformed reply status line: " + statusLine);
+        }
+        try {
+            return Integer.parseInt(parts[1]);
+        }
+        catch (NumberFormatException nfe) {
+            throw new IOException("Malformed reply status line: " + statusLine);
+        }
+    }
+
+
+    // mirrors the exceptions thrown by HttpURLConnection for error replies
+    private void checkStatus(Response response, HostPool pool) throws IOException {
+        int status = response.status;
+        if (status >= 300 && status < 400 && response.location != null) {
+            throw new RedirectException();
+        }
+        if (status == 404 || status == 410) {
+            throw new FileNotFoundException("http://" + pool.host + ":" + pool.port +
+                    " returned HTTP response code: " + status);
+        }
+        if (status >= 400) {
+            throw new IOException("Server returned HTTP response code: " + status +
+                    " for host: " + pool.host + ":" + pool.port);
+        }
+    }
+
+
+    /*********************************************************************************/
+
+    private class HostPool {
+        final String host;
+        final int port;
+        final HostSettings settings;
+        final Semaphore permits;
+        final Deque<Connection> idle = new ConcurrentLinkedDeque<>();
+
+        HostPool(String host, int port, int maxConnections, HostSettings settings) {
+            this.host = host;
+            this.port = port;
+            this.settings = settings;
+            permits = new Semaphore(maxConnections, true);
+        }
+
+
+        void acquire(int timeout) throws IOException {
+            try {
+                if (timeout > 0) {
+                    if (! permits.tryAcquire(timeout, TimeUnit.MILLISECONDS)) {
+                        throw new SocketTimeoutException("Timed out waiting for a " +
+                                "free connection to " + host + ":" + port);
+                    }
+                }
+                else permits.acquire();
+            }
+            catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted waiting for a " +
+                        "free connection to " + host + ":" + port);
+            }
+        }
+
+
+        void release() { permits.release(); }
+
+
+        // the most recently used connection that is neither expired nor closed
+        Connection getIdleConnection() {
+            Connection connection;
+            while ((connection = idle.pollFirst()) != null) {
+                long idleTime = System.currentTimeMillis() - connection.lastUsed;
+                if (idleTime < _idleTimeout && (idleTime < VALIDATE_AFTER_IDLE ||
+                        connection.isOpen())) {
+                    connection.uses++;
+                    connection.bytesRead = 0;
+                    _stats.connectionReused();
+                    return connection;
+                }
+                close(connection);
+            }
+            return null;
+        }
+
+
+        Connection open(int connectTimeout) throws IOException {
+            Socket socket = new Socket();
+            try {
+                socket.setTcpNoDelay(true);
+                socket.setKeepAlive(true);
+                socket.connect(new InetSocketAddress(host, port), connectTimeout);
+                Connection connection = new Connection(socket);
+                _stats.connectionOpened();
+                return connection;
+            }
+            catch (IOException ioe) {
+                socket.close();
+                throw ioe;
+            }
+        }
+
+
+        void offer(Connection connection) {
+            connection.lastUsed = System.currentTimeMillis();
+            idle.offerFirst(connection);
+            if (_shutdown) closeIdleConnections();          // shut down concurrently
+        }
+
+
+        void close(Connection connection) {
+            try {
+                connection.socket.close();
+            }
+            catch (IOException ioe) {
+                // nothing further to do
+            }
+            _stats.connectionClosed();
+        }
+
+
+        void closeIdleConnections() {
+            Connection connection;
+            while ((connection = idle.pollFirst()) != null) {
+                close(connection);
+            }
+        }
+    }
+
+
+    private static class Connection {
+        final Socket socket;
+        final InputStream in;
+        final OutputStream out;
+        long lastUsed;
+        int uses;
+        long bytesRead;
+
+        Connection(Socket socket) throws IOException {
+            this.socket = socket;
+            in = new BufferedInputStream(socket.getInputStream(), BUF_SIZE);
+            out = new BufferedOutputStream(socket.getOutputStream(), BUF_SIZE);
+        }
+
+        boolean isReused() { return uses > 0; }
+
+        // an idle connection closed by the server has an end-of-stream waiting
+        boolean isOpen() {
+            if (socket.isClosed()) return false;
+            try {
+                socket.setSoTimeout(1);
+                in.mark(1);
+                if (in.read() < 0) return false;
+                in.reset();
+                return false;                       // unsolicited data - not usable
+            }
+            catch (SocketTimeoutException ste) {
+                return true;                        // nothing to read - still open
+            }
+            catch (IOException ioe) {
+                return false;
+            }
+        }
+    }
+
+
+    private static class HostSettings {
+        final int maxConnections;
+        final int readTimeout;
+
+        HostSettings(int maxConnections, int readTimeout) {
+            this.maxConnections = maxConnections;
+            this.readTimeout = readTimeout;
+        }
+    }
+
+
+    private static class Response {
+        final int status;
+        final String body;
+        final boolean keepAlive;
+        final String location;
+
+        Response(int status, String body, boolean keepAlive, String location) {
+            this.status = status;
+            this.body = body;
+            this.keepAlive = keepAlive;
+            this.location = location;
+        }
+    }
+
+
+    private static class StaleConnectionException extends IOException {
+        private static final long serialVersionUID = 1L;
+    }
+
+    private static class RedirectException extends IOException {
+        private static final long serialVersionUID = 1L;
+    }
+
+}
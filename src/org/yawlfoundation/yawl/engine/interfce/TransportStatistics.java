@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2004-2020 The YAWL Foundation. All rights reserved.
+ * The YAWL Foundation is a collaboration of individuals and
+ * organisations who are committed to improving workflow technology.
+ *
+ * This file is part of YAWL. YAWL is free software: you can
+ * redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation.
+ *
+ * YAWL is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with YAWL. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.yawlfoundation.yawl.engine.interfce;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the requests made through an HttpTransport and the connections used to
+ * make them, so that the effectiveness of connection reuse can be monitored.
+ */
+public class TransportStatistics {
+
+    private final AtomicLong _requests = new AtomicLong();
+    private final AtomicLong _failures = new AtomicLong();
+    private final AtomicLong _opened = new AtomicLong();
+    private final AtomicLong _reused = new AtomicLong();
+    private final AtomicLong _closed = new AtomicLong();
+    private final AtomicLong _retries = new AtomicLong();
+
+
+    void requestMade() { _requests.incrementAndGet(); }
+
+    void requestFailed() { _failures.incrementAndGet(); }
+
+    void connectionOpened() { _opened.incrementAndGet(); }
+
+    void connectionReused() { _reused.incrementAndGet(); }
+
+    void connectionClosed() { _closed.incrementAndGet(); }
+
+    void staleConnectionRetried() { _retries.incrementAndGet(); }
+
+
+    public long getRequests() { return _requests.get(); }
+
+    public long getFailures() { return _failures.get(); }
+
+    public long getConnectionsOpened() { return _opened.get(); }
+
+    public long getConnectionsReused() { return _reused.get(); }
+
+    public long getConnectionsClosed() { return _closed.get(); }
+
+    public long getStaleConnectionRetries() { return _retries.get(); }
+
+
+    /**
+     * @return the number of connections currently open
+     */
+    public long getOpenConnections() {
+        return _opened.get() - _closed.get();
+    }
+
+
+    /**
+     * @return the fraction of connections used that were reused (0 to 1)
+     */
+    public double getReuseRatio() {
+        long reused = _reused.get();
+        long used = reused + _opened.get();
+        return used > 0 ? (double) reused / used : 0;
+    }
+
+
+    public String toString() {
+        return String.format("requests: %d, failures: %d, connections opened: %d, " +
+                "reused: %d, closed: %d, stale retries: %d, reuse ratio: %.2f",
+                getRequests(), getFailures(), getConnectionsOpened(),
+                getConnectionsReused(), getConnectionsClosed(),
+                getStaleConnectionRetries(), getReuseRatio());
+    }
+
+}
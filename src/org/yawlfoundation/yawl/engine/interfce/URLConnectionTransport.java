@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2004-2020 The YAWL Foundation. All rights reserved.
+ * The YAWL Foundation is a collaboration of individuals and
+ * organisations who are committed to improving workflow technology.
+ *
+ * This file is part of YAWL. YAWL is free software: you can
+ * redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation.
+ *
+ * YAWL is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with YAWL. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.yawlfoundation.yawl.engine.interfce;
+
+import java.io.*;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/**
+ * The original transport: each request is made on a new HttpURLConnection, which is
+ * closed once the reply is read.
+ */
+public class URLConnectionTransport implements HttpTransport {
+
+    private static final int BUF_SIZE = 16384;
+
+    private final TransportStatistics _stats = new TransportStatistics();
+
+
+    public String post(URL url, String data, int connectTimeout, int readTimeout)
+            throws IOException {
+        _stats.requestMade();
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        _stats.connectionOpened();
+        try {
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Accept-Charset", "UTF-8");
+            connection.setConnectTimeout(connectTimeout);
+            connection.setReadTimeout(readTimeout);
+
+            // required to ensure the connection is not reused. When not set, spurious
+            // intermittent problems (double posts, missing posts) occur under heavy load.
+            connection.setRequestProperty("Connection", "close");
+
+            OutputStreamWriter out = new OutputStreamWriter(
+                    connection.getOutputStream(), "UTF-8");
+            out.write(data);
+            out.close();
+            return read(connection.getInputStream());
+        }
+        catch (IOException ioe) {
+            _stats.requestFailed();
+            throw ioe;
+        }
+        finally {
+            connection.disconnect();
+            _stats.connectionClosed();
+        }
+    }
+
+
+    public TransportStatistics getStatistics() { return _stats; }
+
+
+    public void shutdown() { }
+
+
+    private String read(InputStream is) throws IOException {
+        ByteArrayOutputStream outStream = new ByteArrayOutputStream(BUF_SIZE);
+        byte[] buffer = new byte[BUF_SIZE];
+        int bytesRead;
+        try {
+            while ((bytesRead = is.read(buffer, 0, BUF_SIZE)) > 0) {
+                outStream.write(buffer, 0, bytesRead);
+            }
+        }
+        finally {
+            is.close();
+        }
+        return outStream.toString("UTF-8");
+    }
+
+}
@@ -0,0 +1,440 @@
+/*
+ * Copyright (c) 2004-2020 The YAWL Foundation. All rights reserved.
+ * The YAWL Foundation is a collaboration of individuals and
+ * organisations who are committed to improving workflow technology.
+ *
+ * This file is part of YAWL. YAWL is free software: you can
+ * redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation.
+ *
+ * YAWL is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with YAWL. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.yawlfoundation.yawl.engine.interfce.interfaceB;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.yawlfoundation.yawl.engine.announcement.YEngineEvent;
+import org.yawlfoundation.yawl.engine.interfce.LatencyHistogram;
+import org.yawlfoundation.yawl.util.XNode;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.yawlfoundation.yawl.engine.announcement.YEngineEvent.*;
+
+/**
+ * Delivers engine announcements to custom services. Each service has its own
+ * bounded queue of announcements waiting to be sent, and its own set of threads
+ * sending them, so that a slow or unavailable service delays only its own
+ * announcements.
+ * <p/>
+ * When a service's queue is full, an announcement is rejected straight away rather
+ * than holding up the engine thread making it. A rejected broadcast announcement
+ * is simply dropped, since a service need not be listening for it; any other is
+ * treated as undeliverable.
+ * <p/>
+ * An announcement that fails because the service can't be connected to (and so was
+ * never delivered) is retried a few times after a randomised, increasing delay.
+ * Broadcast announcements are not retried. A queued work item announcement
+ * that is followed by a cancellation of the same work item is never sent: the
+ * announcement and cancellation are both discarded.
+ * <p/>
+ * Queue depths, delivery counts and queue wait and send latencies are kept for each
+ * service.
+ */
+public class AnnouncementDispatcher {
+
+    public static final int DEFAULT_THREADS_PER_SERVICE = 2;
+    public static final int DEFAULT_QUEUE_CAPACITY = 5000;
+    public static final int DEFAULT_MAX_RETRIES = 3;
+
+    private static final long BACKOFF_BASE = 250;                        // msecs
+    private static final long BACKOFF_MAX = 8000;                        // msecs
+
+    // limits for the queues of services not yet announced to
+    private static volatile int THREADS_PER_SERVICE = DEFAULT_THREADS_PER_SERVICE;
+    private static volatile int QUEUE_CAPACITY = DEFAULT_QUEUE_CAPACITY;
+    private static volatile int MAX_RETRIES = DEFAULT_MAX_RETRIES;
+
+    // all active dispatchers, for statistics reporting
+    private static final Set<AnnouncementDispatcher> DISPATCHERS =
+            Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+    private final Map<String, ServiceQueue> _queues = new ConcurrentHashMap<>();
+    private final Logger _log = LogManager.getLogger(AnnouncementDispatcher.class);
+    private final String _name;
+    private volatile boolean _shutdown;
+
+
+    /**
+     * An announcement to be sent to a service
+     */
+    public interface Delivery {
+
+        YEngineEvent getEvent();
+
+        /**
+         * @return the id of the work item announced, or null if the announcement is
+         * not about a work item
+         */
+        String getWorkItemID();
+
+        /**
+         * Sends the announcement to the service
+         * @throws IOException if the announcement could not be sent
+         */
+        void send() throws IOException;
+
+        /**
+         * Called when the announcement could not be delivered, after any retries
+         * @param ioe the reason for the failure
+         */
+        void failed(IOException ioe);
+    }
+
+
+    /**
+     * Constructs a new dispatcher
+     * @param name a name identifying the dispatcher in reported statistics
+     */
+    public AnnouncementDispatcher(String name) {
+        _name = name;
+        DISPATCHERS.add(this);
+    }
+
+
+    /**
+     * Sets the limits for service queues created from now on
+     * @param threadsPerService the number of announcements sent concurrently to a
+     *                          service
+     * @param queueCapacity the maximum number of announcements waiting to be sent to
+     *                      a service
+     * @param maxRetries the maximum number of times an announcement is resent to a
+     *                   service that can't be connected to
+     */
+    public static void setLimits(int threadsPerService, int queueCapacity,
+                                 int maxRetries) {
+        if (threadsPerService > 0) THREADS_PER_SERVICE = threadsPerService;
+        if (queueCapacity > 0) QUEUE_CAPACITY = queueCapacity;
+        if (maxRetries >= 0) MAX_RETRIES = maxRetries;
+    }
+
+
+    /**
+     * @return the statistics of all active dispatchers, as XML
+     */
+    public static String getAllStatistics() {
+        XNode root = new XNode("announcementstats");
+        for (AnnouncementDispatcher dispatcher : DISPATCHERS) {
+            root.addChild(dispatcher.toXNode());
+        }
+        return root.toString();
+    }
+
+
+    /**
+     * Queues an announcement for delivery to a service
+     * @param serviceURI the URI of the service
+     * @param delivery the announcement to send
+     */
+    public void dispatch(String serviceURI, Delivery delivery) {
+        if (! _shutdown) getQueue(serviceURI).add(delivery);
+    }
+
+
+    /**
+     * @param serviceURI the URI of a service
+     * @return the statistics of the service's announcements, or null if no
+     * announcements have been made to the service
+     */
+    public ServiceStatistics getStatistics(String serviceURI) {
+        ServiceQueue queue = _queues.get(serviceURI);
+        return queue != null ? queue.stats : null;
+    }
+
+
+    /**
+     * Stops all delivery threads. Announcements not yet sent are discarded.
+     */
+    public void shutdown() {
+        _shutdown = true;
+        DISPATCHERS.remove(this);
+        for (ServiceQueue queue : _queues.values()) {
+            queue.stop();
+        }
+    }
+
+
+    public String toXML() { return toXNode().toString(); }
+
+
+    /*********************************************************************************/
+
+    private ServiceQueue getQueue(String serviceURI) {
+        ServiceQueue queue = _queues.get(serviceURI);
+        if (queue == null) {
+            synchronized (_queues) {
+                queue = _queues.get(serviceURI);
+                if (queue == null) {
+                    queue = new ServiceQueue(serviceURI, THREADS_PER_SERVICE,
+                            QUEUE_CAPACITY, MAX_RETRIES);
+                    _queues.put(serviceURI, queue);
+                }
+            }
+        }
+        return queue;
+    }
+
+
+    private XNode toXNode() {
+        XNode node = new XNode("dispatcher");
+        node.addAttribute("name", _name);
+        for (ServiceQueue queue : _queues.values()) {
+            node.addChild(queue.stats.toXNode(queue.uri, queue.getDepth()));
+        }
+        return node;
+    }
+
+
+    // retries are delayed by a random time between half and all of a doubling interval
+    private long getBackoff(int attempt) {
+        long interval = Math.min(BACKOFF_MAX, BACKOFF_BASE << Math.min(attempt - 1, 16));
+        return interval / 2 + ThreadLocalRandom.current().nextLong(interval / 2 + 1);
+    }
+
+
+    private boolean isRetryable(YEngineEvent event) {
+        return ! (event.isBroadcast() || event == ENGINE_INIT);
+    }
+
+
+    /*********************************************************************************/
+
+    private class ServiceQueue implements Runnable {
+
+        final String uri;
+        final ServiceStatistics stats = new ServiceStatistics();
+        private final BlockingQueue<Entry> _queue;
+        private final Map<String, Entry> _pendingItemAdds = new ConcurrentHashMap<>();
+        private final List<Thread> _threads = new ArrayList<>();
+        private final int _maxRetries;
+
+        ServiceQueue(String uri, int threads, int capacity, int maxRetries) {
+            this.uri = uri;
+            _queue = new LinkedBlockingQueue<>(capacity);
+            _maxRetries = maxRetries;
+            for (int i = 0; i < threads; i++) {
+                Thread thread = new Thread(this, "announcer-" + _name + "-" + uri + "-" + i);
+                thread.setDaemon(true);
+                thread.start();
+                _threads.add(thread);
+            }
+        }
+
+
+        void add(Delivery delivery) {
+            stats.queued.incrementAndGet();
+            YEngineEvent event = delivery.getEvent();
+            String itemID = delivery.getWorkItemID();
+            if (event == ITEM_CANCEL && itemID != null && discardPendingAdd(itemID)) {
+                return;
+            }
+
+            Entry entry = new Entry(delivery);
+            if (event == ITEM_ADD && itemID != null) _pendingItemAdds.put(itemID, entry);
+            if (_queue.offer(entry)) {
+                stats.maxDepth.accumulateAndGet(_queue.size(), Math::max);
+            }
+            else {
+                if (itemID != null) _pendingItemAdds.remove(itemID, entry);
+                stats.rejected.incrementAndGet();
+                if (event.isBroadcast()) {
+                    _log.debug("Announcement queue for service at {} is full; " +
+                            "dropped '{}' announcement", uri, event.label());
+                }
+                else {
+                    _log.warn("Announcement queue for service at {} is full; " +
+                            "unable to send '{}' announcement", uri, event.label());
+                    delivery.failed(new IOException("Announcement queue for service at " +
+                            uri + " is full"));
+                }
+            }
+        }
+
+
+        // a queued work item announcement and its cancellation cancel each other out
+        private boolean discardPendingAdd(String itemID) {
+            Entry pending = _pendingItemAdds.remove(itemID);
+            if (pending != null && _queue.remove(pending)) {
+                stats.coalesced.addAndGet(2);
+                return true;
+            }
+            return false;
+        }
+
+
+        int getDepth() { return _queue.size(); }
+
+
+        void stop() {
+            for (Thread thread : _threads) thread.interrupt();
+            _queue.clear();
+            _pendingItemAdds.clear();
+        }
+
+
+        public void run() {
+            while (! _shutdown) {
+                try {
+                    Entry entry = _queue.take();
+                    String itemID = entry.delivery.getWorkItemID();
+                    if (itemID != null) _pendingItemAdds.remove(itemID, entry);
+                    deliver(entry);
+                }
+                catch (InterruptedException ie) {
+                    break;
+                }
+                catch (RuntimeException re) {
+                    _log.error("Unexpected error sending announcement to service at " +
+                            uri, re);
+                }
+            }
+        }
+
+
+        private void deliver(Entry entry) throws InterruptedException {
+            long start = System.nanoTime();
+            stats.waitLatency.record(start - entry.queuedAt);
+            YEngineEvent event = entry.delivery.getEvent();
+            int attempt = 0;
+            try {
+                while (true) {
+
+                    // counted first, so that the count is current by the time the
+                    // service sees the announcement; withdrawn if the send fails
+                    stats.sent.incrementAndGet();
+                    try {
+                        entry.delivery.send();
+                        return;
+                    }
+                    catch (ConnectException ce) {
+                        stats.sent.decrementAndGet();
+                        if (attempt == _maxRetries || ! isRetryable(event) || _shutdown) {
+                            fail(entry, ce);
+                            return;
+                        }
+                        stats.retries.incrementAndGet();
+                        Thread.sleep(getBackoff(++attempt));
+                    }
+                    catch (IOException ioe) {
+                        stats.sent.decrementAndGet();
+                        fail(entry, ioe);
+                        return;
+                    }
+                    catch (RuntimeException re) {
+                        stats.sent.decrementAndGet();
+                        throw re;
+                    }
+                }
+            }
+            finally {
+                stats.sendLatency.record(System.nanoTime() - start);
+            }
+        }
+
+
+        private void fail(Entry entry, IOException ioe) {
+            stats.failed.incrementAndGet();
+            entry.delivery.failed(ioe);
+        }
+    }
+
+
+    private static class Entry {
+        final Delivery delivery;
+        final long queuedAt = System.nanoTime();
+
+        Entry(Delivery delivery) { this.delivery = delivery; }
+    }
+
+
+    /**
+     * The counts and latencies of the announcements made to a service
+     */
+    public static class ServiceStatistics {
+        private final AtomicLong queued = new AtomicLong();
+        private final AtomicLong sent = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        private final AtomicLong retries = new AtomicLong();
+        private final AtomicLong coalesced = new AtomicLong();
+        private final AtomicLong rejected = new AtomicLong();
+        private final AtomicInteger maxDepth = new AtomicInteger();
+        private final LatencyHistogram waitLatency = new LatencyHistogram();
+        private final LatencyHistogram sendLatency = new LatencyHistogram();
+
+        public long getQueued() { return queued.get(); }
+
+        public long getSent() { return sent.get(); }
+
+        public long getFailed() { return failed.get(); }
+
+        public long getRetries() { return retries.get(); }
+
+        public long getCoalesced() { return coalesced.get(); }
+
+        public long getRejected() { return rejected.get(); }
+
+        public int getMaxDepth() { return maxDepth.get(); }
+
+        public LatencyHistogram.Snapshot getWaitLatency() {
+            return waitLatency.getSnapshot();
+        }
+
+        public LatencyHistogram.Snapshot getSendLatency() {
+            return sendLatency.getSnapshot();
+        }
+
+
+        private XNode toXNode(String uri, int depth) {
+            XNode node = new XNode("service");
+            node.addAttribute("uri", uri);
+            node.addAttribute("depth", depth);
+            node.addAttribute("maxDepth", getMaxDepth());
+            node.addAttribute("queued", getQueued());
+            node.addAttribute("sent", getSent());
+            node.addAttribute("failed", getFailed());
+            node.addAttribute("retries", getRetries());
+            node.addAttribute("coalesced", getCoalesced());
+            node.addAttribute("rejected", getRejected());
+            addLatency(node, "wait", getWaitLatency());
+            addLatency(node, "send", getSendLatency());
+            return node;
+        }
+
+
+        private void addLatency(XNode node, String prefix,
+                                LatencyHistogram.Snapshot snapshot) {
+            node.addAttribute(prefix + "Mean", format(snapshot.getMeanMsecs()));
+            node.addAttribute(prefix + "P99", format(snapshot.getP99Msecs()));
+            node.addAttribute(prefix + "Max", format(snapshot.getMaxMsecs()));
+        }
+
+
+        private String format(double msecs) {
+            return String.format(Locale.ROOT, "%.3f", msecs);
+        }
+    }
+
+}
@@ -38,9 +38,6 @@ import org.yawlfoundation.yawl.util.JDOMUtil;
 import java.io.IOException;
 import java.net.ConnectException;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 import static org.yawlfoundation.yawl.engine.announcement.YEngineEvent.*;
 
@@ -58,7 +55,8 @@ import static org.yawlfoundation.yawl.engine.announcement.YEngineEvent.*;
 public class InterfaceB_EngineBasedClient extends Interface_Client implements ObserverGateway {
 
     protected static final Logger _logger = LogManager.getLogger(InterfaceB_EngineBasedClient.class);
-    private final Map<YAWLServiceReference, ExecutorService> _executorMap = new ConcurrentHashMap<>();
+    private final AnnouncementDispatcher _dispatcher =
+            new AnnouncementDispatcher(getClass().getSimpleName());
 
 
     /**
@@ -78,7 +76,7 @@ public class InterfaceB_EngineBasedClient extends Interface_Client implements Ob
         YAWLServiceReference service = announcement.getYawlService();
         Handler handler = new Handler(service, paramsMap);
         handler.setWorkItem(announcement.getItem());         // needed for possible redirect
-        getServiceExecutor(service).execute(handler);
+        dispatch(service, handler);
     }
 
 
@@ -107,7 +105,9 @@ public class InterfaceB_EngineBasedClient extends Interface_Client implements Ob
     public void cancelWorkItem(YAWLServiceReference yawlService, YWorkItem workItem) {
         Map<String, String> paramsMap = prepareParamMap(ITEM_CANCEL);
         paramsMap.put("workItem", workItem.toXML());
-        getServiceExecutor(yawlService).execute(new Handler(yawlService, paramsMap));
+        Handler handler = new Handler(yawlService, paramsMap);
+        handler.setWorkItem(workItem);                       // allows coalescing
+        dispatch(yawlService, handler);
     }
 
 
@@ -119,7 +119,7 @@ public class InterfaceB_EngineBasedClient extends Interface_Client implements Ob
         Map<String, String> paramsMap = prepareParamMap(TIMER_EXPIRED);
         paramsMap.put("workItem", announcement.getItem().toXML());
         YAWLServiceReference yawlService = announcement.getYawlService();
-        getServiceExecutor(yawlService).execute(new Handler(yawlService, paramsMap));
+        dispatch(yawlService, new Handler(yawlService, paramsMap));
     }
 
 
@@ -164,7 +164,7 @@ public class InterfaceB_EngineBasedClient extends Interface_Client implements Ob
         paramsMap.put("oldStatus", oldStatus.toString());
         paramsMap.put("newStatus", newStatus.toString());
         for (YAWLServiceReference service : services) {
-            getServiceExecutor(service).execute(new Handler(service, paramsMap));
+            dispatch(service, new Handler(service, paramsMap));
         }
     }
 
@@ -187,7 +187,7 @@ public class InterfaceB_EngineBasedClient extends Interface_Client implements Ob
         paramsMap.put("launchingService", launchingService);
         paramsMap.put("delayed", String.valueOf(delayed));
         for (YAWLServiceReference service : services) {
-            getServiceExecutor(service).execute(new Handler(service, paramsMap));
+            dispatch(service, new Handler(service, paramsMap));
         }
     }
 
@@ -214,7 +214,7 @@ public class InterfaceB_EngineBasedClient extends Interface_Client implements Ob
         Map<String, String> paramsMap = prepareParamMap(CASE_COMPLETE);
         paramsMap.put("caseID", caseID.toString());
         paramsMap.put("casedata", JDOMUtil.documentToString(caseData));
-        getServiceExecutor(yawlService).execute(new Handler(yawlService, paramsMap));
+        dispatch(yawlService, new Handler(yawlService, paramsMap));
     }
 
 
@@ -227,7 +227,7 @@ public class InterfaceB_EngineBasedClient extends Interface_Client implements Ob
         Map<String, String> paramsMap = prepareParamMap(ENGINE_INIT);
         paramsMap.put("maxWaitSeconds", String.valueOf(maxWaitSeconds));
         for (YAWLServiceReference service : services) {
-            getServiceExecutor(service).execute(new Handler(service, paramsMap));
+            dispatch(service, new Handler(service, paramsMap));
         }
     }
 
@@ -241,7 +241,7 @@ public class InterfaceB_EngineBasedClient extends Interface_Client implements Ob
         Map<String, String> paramsMap = prepareParamMap(CASE_CANCELLED);
         paramsMap.put("caseID", id.toString());
         for (YAWLServiceReference service : services) {
-            getServiceExecutor(service).execute(new Handler(service, paramsMap));
+            dispatch(service, new Handler(service, paramsMap));
         }
     }
 
@@ -260,7 +260,7 @@ public class InterfaceB_EngineBasedClient extends Interface_Client implements Ob
         for (YTask task : tasks) list.add(task.getID());
         paramsMap.put("tasks", list.toString());
         for (YAWLServiceReference service : services) {
-            getServiceExecutor(service).execute(new Handler(service, paramsMap));
+            dispatch(service, new Handler(service, paramsMap));
         }
     }
 
@@ -270,9 +270,7 @@ public class InterfaceB_EngineBasedClient extends Interface_Client implements Ob
      */
     public void shutdown() {
         HttpURLValidator.cancelAll();
-        for (ExecutorService executor : _executorMap.values()) {
-            executor.shutdownNow();
-        }
+        _dispatcher.shutdown();
 
     	// Nothing else to do - Interface B Clients handle shutdown within their own servlet.
     }
@@ -312,7 +310,7 @@ public class InterfaceB_EngineBasedClient extends Interface_Client implements Ob
         Map<String, String> paramsMap = prepareParamMap(event);
         paramsMap.put("caseID", caseID.toString());
         for (YAWLServiceReference service : services) {
-            getServiceExecutor(service).execute(new Handler(service, paramsMap));
+            dispatch(service, new Handler(service, paramsMap));
         }
     }
 
@@ -321,14 +319,18 @@ public class InterfaceB_EngineBasedClient extends Interface_Client implements Ob
         return super.prepareParamMap(event.label(), null);
     }
 
-    // use a different 2-thread executor for each destination service
-    private ExecutorService getServiceExecutor(YAWLServiceReference service) {
-        ExecutorService executor = _executorMap.get(service);
-        if (executor == null) {
-            executor = Executors.newFixedThreadPool(2);
-            _executorMap.put(service, executor);
-        }
-        return executor;
+    /**
+     * @return the queue depths, delivery counts and latencies of the announcements
+     * made to each service, as XML
+     */
+    public String getDispatchStatistics() {
+        return _dispatcher.toXML();
+    }
+
+
+    // each destination service has its own bounded queue and delivery threads
+    private void dispatch(YAWLServiceReference service, Handler handler) {
+        _dispatcher.dispatch(service.getURI(), handler);
     }
 
 
@@ -340,7 +342,7 @@ public class InterfaceB_EngineBasedClient extends Interface_Client implements Ob
      * parameter values as HTTP POST messages to external custom services
      */
 
-    private class Handler implements Runnable {
+    private class Handler implements AnnouncementDispatcher.Delivery {
 
         private final YAWLServiceReference _yawlService;
         private final Map<String, String> _paramsMap ;
@@ -354,24 +356,38 @@ public class InterfaceB_EngineBasedClient extends Interface_Client implements Ob
         void setWorkItem(YWorkItem item) { _workItem = item; }
 
 
+        public YEngineEvent getEvent() {
+            return YEngineEvent.fromString(_paramsMap.get("action"));
+        }
+
+
+        public String getWorkItemID() {
+            return _workItem != null ? _workItem.getIDString() : null;
+        }
+
+
         /**
          * POST the message to the custom service
          */
-         public void run() {
-            String event = _paramsMap.get("action");
-            try {
-                if (event.equals(ENGINE_INIT.label())) {
-                    int maxWait = Integer.parseInt(_paramsMap.get("maxWaitSeconds"));
-                    HttpURLValidator.pingUntilAvailable(_yawlService.getURI(), maxWait);
-                }
-                
-                executePost(_yawlService.getURI(), _paramsMap);
+        public void send() throws IOException {
+            if (getEvent() == ENGINE_INIT) {
+                int maxWait = Integer.parseInt(_paramsMap.get("maxWaitSeconds"));
+                HttpURLValidator.pingUntilAvailable(_yawlService.getURI(), maxWait);
             }
-            catch (ConnectException ce) {
-                if (event.equals(ITEM_ADD.label())) {
+            executePost(_yawlService.getURI(), _paramsMap);
+        }
+
+
+        /**
+         * Handles an announcement that could not be delivered
+         */
+        public void failed(IOException ioe) {
+            YEngineEvent event = getEvent();
+            if (ioe instanceof ConnectException) {
+                if (event == ITEM_ADD) {
                     redirectWorkItem(true);
                 }
-                else if (event.equals(ENGINE_INIT.label())) {
+                else if (event == ENGINE_INIT) {
                     try {
                         _logger.warn("Failed to announce engine initialisation to {} at URI {}",
                             _yawlService.getServiceName(), _yawlService.getURI());
@@ -382,17 +398,14 @@ public class InterfaceB_EngineBasedClient extends Interface_Client implements Ob
                     }
                 }
             }
-            catch (IOException e) {
-
-                if (event.equals(ITEM_ADD.label())) {
-                    redirectWorkItem(false);
-                }
+            else if (event == ITEM_ADD) {
+                redirectWorkItem(false);
+            }
 
-                // ignore broadcast announcements for missing services
-                else if (! YEngineEvent.fromString(event).isBroadcast()) {
-                    _logger.warn("Failed to call YAWL service", e);
-                }
-            }            
+            // ignore broadcast announcements for missing services
+            else if (! event.isBroadcast()) {
+                _logger.warn("Failed to call YAWL service", ioe);
+            }
         }
 
         
@@ -27,6 +27,8 @@ import org.yawlfoundation.yawl.engine.interfce.*;
 import org.yawlfoundation.yawl.engine.time.workdays.HolidayLoader;
 import org.yawlfoundation.yawl.exceptions.YAWLException;
 import org.yawlfoundation.yawl.exceptions.YPersistenceException;
+import org.yawlfoundation.yawl.logging.YEventLogWriter;
+import org.yawlfoundation.yawl.logging.YEventLogger;
 import org.yawlfoundation.yawl.util.StringUtil;
 
 import javax.servlet.ServletContext;
@@ -83,8 +85,40 @@ public class InterfaceB_EngineBasedServer extends YHttpServlet {
                 context.setAttribute("engine", _engine);
             }
 
+            // collect and batch persistence changes until commit if requested
+            if (getBooleanFromContext("EnablePersistenceWriteBehind")) {
+                _engine.setPersistenceWriteBehind(true);
+            }
+
+            // reserve case numbers in blocks if requested
+            int blockSize = StringUtil.strToInt(
+                    context.getInitParameter("CaseNumberBlockSize"), 1);
+            if (blockSize > 1) _engine.setCaseNbrBlockSize(blockSize);
+
             // enable performance statistics gathering if requested
             _gatherPerfStats = getBooleanFromContext("EnablePerformanceStatisticsGathering");
+            if (_gatherPerfStats) PerfReporter.registerMBean();
+
+            // keep connections to custom services open between announcements if requested
+            if (getBooleanFromContext("PooledServiceConnections")) {
+                PooledHttpTransport transport = new PooledHttpTransport(
+                        StringUtil.strToInt(context.getInitParameter(
+                                "ServiceConnectionsPerHost"),
+                                PooledHttpTransport.DEFAULT_MAX_CONNECTIONS_PER_HOST),
+                        PooledHttpTransport.DEFAULT_IDLE_TIMEOUT);
+                transport.configureHosts(context.getInitParameter(
+                        "ServiceConnectionSettings"));
+                Interface_Client.setDefaultTransport(transport);
+            }
+
+            // set the limits of the announcement queue of each custom service
+            AnnouncementDispatcher.setLimits(
+                    StringUtil.strToInt(context.getInitParameter(
+                            "AnnouncementThreadsPerService"), -1),
+                    StringUtil.strToInt(context.getInitParameter(
+                            "AnnouncementQueueSize"), -1),
+                    StringUtil.strToInt(context.getInitParameter(
+                            "AnnouncementRetries"), -1));
 
             // set flag to disable logging (only if false) - enabled with persistence by
             // default
@@ -93,6 +127,16 @@ public class InterfaceB_EngineBasedServer extends YHttpServlet {
                 _engine.disableLogging();
             }
 
+            // set how process log events are batched and written
+            YEventLogger.getInstance().setWriterSettings(
+                    getLogWriteMode(context.getInitParameter("ProcessLogWriteMode")),
+                    StringUtil.strToInt(context.getInitParameter(
+                            "ProcessLogBatchSize"), -1),
+                    StringUtil.strToLong(context.getInitParameter(
+                            "ProcessLogBatchDelay"), -1),
+                    StringUtil.strToInt(context.getInitParameter(
+                            "ProcessLogQueueSize"), -1));
+
             // add the reference to the default worklist
             _engine.setDefaultWorklist(context.getInitParameter("DefaultWorklist"));
 
@@ -144,6 +188,19 @@ public class InterfaceB_EngineBasedServer extends YHttpServlet {
     }
 
 
+    private YEventLogWriter.Durability getLogWriteMode(String mode) {
+        if (mode != null) {
+            try {
+                return YEventLogWriter.Durability.valueOf(mode.trim().toUpperCase());
+            }
+            catch (IllegalArgumentException iae) {
+                _log.warn("Unknown ProcessLogWriteMode '{}' - using default", mode);
+            }
+        }
+        return null;
+    }
+
+
     private void registerObserverGateway(String gatewayClassName) {
         ObserverGateway gateway ;
         try {
@@ -208,7 +265,11 @@ public class InterfaceB_EngineBasedServer extends YHttpServlet {
 
 
     public void destroy() {
+        if (_gatherPerfStats) PerfReporter.unregisterMBean();
         _engine.shutdown();
+        HttpTransport transport = Interface_Client.getDefaultTransport();
+        _log.info("Outgoing connections: {}", transport.getStatistics());
+        transport.shutdown();
         super.destroy();
     }
 
@@ -462,6 +523,9 @@ public class InterfaceB_EngineBasedServer extends YHttpServlet {
                 else if (action.equals("pollPerfStats")) {
                     msg.append(PerfReporter.poll());
                 }
+                else if (action.equals("getAnnouncementStats")) {
+                    msg.append(AnnouncementDispatcher.getAllStatistics());
+                }
                 if (_gatherPerfStats) PerfReporter.add(action, start);
             }  // action is null
             else if (request.getRequestURI().endsWith("ib")) {
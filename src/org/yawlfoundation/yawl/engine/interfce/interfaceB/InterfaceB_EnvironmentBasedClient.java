@@ -1177,6 +1177,19 @@ public class InterfaceB_EnvironmentBasedClient extends Interface_Client {
      }
 
 
+    /**
+     * Gets the queue depths, delivery counts and latencies of the engine's
+     * announcements to each custom service
+     * @param sessionHandle the session handle
+     * @return an XML string of the statistics
+     * @throws IOException if the engine can't be reached
+     */
+    public String getAnnouncementStats(String sessionHandle) throws IOException {
+        Map<String, String> params = prepareParamMap("getAnnouncementStats", sessionHandle);
+        return stripOuterElement(executeGet(_backEndURIStr, params));
+    }
+
+
     /**
      * Removes the outermost set of xml tags from a string, if any
      * @param xml the xml string to strip
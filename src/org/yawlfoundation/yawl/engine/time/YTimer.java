@@ -20,6 +20,7 @@ package org.yawlfoundation.yawl.engine.time;
 
 import javax.xml.datatype.Duration;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Author: Michael Adams
@@ -36,11 +37,11 @@ public class YTimer extends Timer {
 
     private YTimer() {
         super(true) ;
-        _runners = new HashMap<String, TimeKeeper>();
+        _runners = new ConcurrentHashMap<String, TimeKeeper>();
     }
 
 
-    public static YTimer getInstance() {
+    public static synchronized YTimer getInstance() {
         if (_me == null) _me = new YTimer() ;
         return _me ;
     }
@@ -52,12 +53,11 @@ public class YTimer extends Timer {
 
     public YTimedObject cancelTimerTask(String itemID) {
         YTimedObject result = null;
-        TimeKeeper timer = _runners.get(itemID);
+        TimeKeeper timer = _runners.remove(itemID);
         if (timer != null) {
             result = timer.getOwner();
             timer.cancel();                           // cancel the scheduled timertask
             result.cancel();                          // cancel the YWorkItemTimer
-            _runners.remove(itemID);
         }
         return result;
     }
@@ -152,7 +152,7 @@ public class YTimer extends Timer {
 
         public synchronized void run() {
             _owner.handleTimerExpiry();
-            _runners.remove(_owner.getOwnerID());
+            _runners.remove(_owner.getOwnerID(), this);     // unless rescheduled
         }
     }
 }
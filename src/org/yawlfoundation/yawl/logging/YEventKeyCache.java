@@ -16,6 +16,7 @@
  * License along with YAWL. If not, see <http://www.gnu.org/licenses/>.
  */
 
+
 package org.yawlfoundation.yawl.logging;
 
 import org.yawlfoundation.yawl.elements.state.YIdentifier;
@@ -23,16 +24,33 @@ import org.yawlfoundation.yawl.engine.YSpecificationID;
 import org.yawlfoundation.yawl.logging.table.YLogSpecification;
 import org.yawlfoundation.yawl.schema.YDataSchemaCache;
 
-import java.util.Hashtable;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * A cache of foreign keys for use in event log tables.
+ * <p/>
+ * Specification level keys are held in concurrent maps. The net and task instance
+ * keys of each case are held together, in an object of their own that is locked
+ * only by the threads logging events for that case, with task instance keys held
+ * unboxed. Rather than being dropped as soon as a case completes, the keys of the
+ * most recently completed cases are kept until a bounded number have accumulated,
+ * so that events for a case logged just after its completion don't have to fetch
+ * its keys from the database again.
+ *
  * @author Michael Adams
  * @date 16/06/11
  */
 public class YEventKeyCache {
 
+    private static final int DEFAULT_MAX_COMPLETED_CASES = 1000;
+
     protected final YDataSchemaCache dataSchema;
 
     // [service url or client name, YLogServiceID] - always active
@@ -53,23 +71,36 @@ public class YEventKeyCache {
     // [netID, [taskName, taskID]] - removed when spec unloaded (via netID relation)
     protected final Map<Long, Map<String, Long>> tasks;
 
-    // [caseID, netInstanceID] - removed when case completes or cancelled
-    protected final Map<YIdentifier, Long> netInstances;
+    // [root caseID, net and task instance keys of the case] - evicted some time
+    // after case completes or is cancelled
+    private final ConcurrentHashMap<YIdentifier, CaseKeys> _cases;
 
-    // [caseID, [taskID, taskInstanceID]] - removed when case completes or cancelled
-    protected final Map<YIdentifier, Map<Long, Long>> taskInstances;
+    // root caseIDs of completed cases, oldest first
+    private final Queue<YIdentifier> _completedCases;
+    private final AtomicInteger _completedCount;
+    private final int _maxCompletedCases;
 
 
     protected YEventKeyCache() {
+        this(DEFAULT_MAX_COMPLETED_CASES);
+    }
+
+
+    /**
+     * @param maxCompletedCases the number of completed cases to keep the keys of
+     */
+    protected YEventKeyCache(int maxCompletedCases) {
         dataSchema = new YDataSchemaCache();
-        services = new Hashtable<String, Long>();
-        rootNets = new Hashtable<YSpecificationID, Long>();
-        nets = new Hashtable<YSpecificationID, Map<String, Long>>();
-        tasks = new Hashtable<Long, Map<String, Long>>();
-        specEntries = new Hashtable<YSpecificationID, YLogSpecification>();
-        netInstances = new Hashtable<YIdentifier, Long>();
-        taskInstances = new Hashtable<YIdentifier, Map<Long, Long>>();
-        dataDefn = new Hashtable<String, Map<String, Long>>();
+        services = new ConcurrentHashMap<String, Long>();
+        rootNets = new ConcurrentHashMap<YSpecificationID, Long>();
+        nets = new ConcurrentHashMap<YSpecificationID, Map<String, Long>>();
+        tasks = new ConcurrentHashMap<Long, Map<String, Long>>();
+        specEntries = new ConcurrentHashMap<YSpecificationID, YLogSpecification>();
+        dataDefn = new ConcurrentHashMap<String, Map<String, Long>>();
+        _cases = new ConcurrentHashMap<YIdentifier, CaseKeys>();
+        _completedCases = new ConcurrentLinkedQueue<YIdentifier>();
+        _completedCount = new AtomicInteger();
+        _maxCompletedCases = maxCompletedCases;
     }
 
 
@@ -95,14 +126,35 @@ public class YEventKeyCache {
     }
 
 
-    protected long getTaskInstanceID(YIdentifier caseID, Long taskID) {
-        Long id = getID(taskInstances, caseID, taskID);
-        return (id != null) ? id : -1;
+    protected long getNetInstanceID(YIdentifier caseID) {
+        CaseKeys keys = _cases.get(caseID.getRootAncestor());
+        return (keys != null) ? keys.getNetInstanceID(caseID) : -1;
     }
 
-    protected long putTaskInstanceID(YIdentifier caseID, Long taskID, long key) {
-        Long id = putID(taskInstances, caseID, taskID, key);
-        return (id != null) ? id : -1;
+    protected void putNetInstanceID(YIdentifier caseID, long key) {
+        getCaseKeys(caseID).putNetInstanceID(caseID, key);
+    }
+
+
+    protected long getTaskInstanceID(YIdentifier caseID, long taskID) {
+        CaseKeys keys = _cases.get(caseID.getRootAncestor());
+        return (keys != null) ? keys.getTaskInstanceID(caseID, taskID) : -1;
+    }
+
+    protected void putTaskInstanceID(YIdentifier caseID, long taskID, long key) {
+        getCaseKeys(caseID).putTaskInstanceID(caseID, taskID, key);
+    }
+
+
+    /**
+     * Gets an object to synchronise on when creating a key for a case, so that
+     * threads logging events for the same case can't create the same key twice,
+     * while those logging events for other cases are not held up
+     * @param caseID the case or one of its descendants
+     * @return the lock object for the case
+     */
+    protected Object getCaseLock(YIdentifier caseID) {
+        return getCaseKeys(caseID).creationLock;
     }
 
 
@@ -117,10 +169,25 @@ public class YEventKeyCache {
     }
 
 
+    /**
+     * Removes the keys of a net instance and its descendants. The keys of a root net
+     * instance (i.e. a case) are marked for eviction, and evicted once the keys of
+     * the maximum number of more recently completed cases are held
+     * @param caseID the id of the net instance
+     */
     protected void removeCase(YIdentifier caseID) {
-        for (YIdentifier descendant : caseID.getDescendants()) {  // includes parent
-            netInstances.remove(descendant);
-            taskInstances.remove(descendant);
+        if (caseID.getParent() != null) {
+            CaseKeys keys = _cases.get(caseID.getRootAncestor());
+            if (keys != null) keys.remove(caseID);
+        }
+        else {
+            CaseKeys keys = _cases.get(caseID);
+            if (keys != null && keys.setCompleted()) {
+                _completedCases.add(caseID);
+                if (_completedCount.incrementAndGet() > _maxCompletedCases) {
+                    evictOldestCompletedCase();
+                }
+            }
         }
     }
 
@@ -138,8 +205,53 @@ public class YEventKeyCache {
     }
 
 
+    /**
+     * Removes all cached database keys, e.g. after a failed write has made some of
+     * them invalid. Data schemas are not database keys, so are kept
+     */
+    protected void clear() {
+        services.clear();
+        dataDefn.clear();
+        specEntries.clear();
+        rootNets.clear();
+        nets.clear();
+        tasks.clear();
+        _cases.clear();
+        while (_completedCases.poll() != null) {
+            _completedCount.decrementAndGet();
+        }
+    }
+
+
+    /**
+     * @return the number of cases (active or recently completed) with cached keys
+     */
+    protected int getCachedCaseCount() { return _cases.size(); }
+
+
     /****************************************************************************/
 
+    private CaseKeys getCaseKeys(YIdentifier caseID) {
+        YIdentifier rootID = caseID.getRootAncestor();
+        CaseKeys keys = _cases.get(rootID);
+        if (keys == null) {
+            keys = new CaseKeys();
+            CaseKeys existing = _cases.putIfAbsent(rootID, keys);
+            if (existing != null) keys = existing;
+        }
+        return keys;
+    }
+
+
+    private void evictOldestCompletedCase() {
+        YIdentifier oldest = _completedCases.poll();
+        if (oldest != null) {
+            _completedCount.decrementAndGet();
+            _cases.remove(oldest);
+        }
+    }
+
+
     private <K, S, V> V getID(Map<K, Map<S, V>> map, K key, S subKey) {
         Map<S, V> subMap = map.get(key);
         return (subMap != null) ? subMap.get(subKey) : null;
@@ -149,10 +261,101 @@ public class YEventKeyCache {
     private <K, S, V> V putID(Map<K, Map<S, V>> map, K key, S subKey, V value) {
         Map<S, V> subMap = map.get(key);
         if (subMap == null) {
-            subMap = new Hashtable<S, V>();
-            map.put(key, subMap);
+            subMap = new ConcurrentHashMap<S, V>();
+            Map<S, V> existing = map.putIfAbsent(key, subMap);
+            if (existing != null) subMap = existing;
         }
         return subMap.put(subKey, value);
     }
 
+
+    /****************************************************************************/
+
+    // the net and task instance keys of a case and its descendants
+    private static class CaseKeys {
+
+        // [engine instance id, its keys]
+        private final Map<YIdentifier, InstanceKeys> _instances =
+                new HashMap<YIdentifier, InstanceKeys>();
+        private boolean _completed;
+
+        // held while a key is fetched or created, so reads aren't blocked meanwhile
+        final Object creationLock = new Object();
+
+
+        synchronized long getNetInstanceID(YIdentifier id) {
+            InstanceKeys keys = _instances.get(id);
+            return (keys != null) ? keys.netInstanceID : -1;
+        }
+
+        synchronized void putNetInstanceID(YIdentifier id, long key) {
+            getInstanceKeys(id).netInstanceID = key;
+        }
+
+        synchronized long getTaskInstanceID(YIdentifier id, long taskID) {
+            InstanceKeys keys = _instances.get(id);
+            return (keys != null) ? keys.getTaskInstanceID(taskID) : -1;
+        }
+
+        synchronized void putTaskInstanceID(YIdentifier id, long taskID, long key) {
+            getInstanceKeys(id).putTaskInstanceID(taskID, key);
+        }
+
+        synchronized void remove(YIdentifier id) {
+            Iterator<YIdentifier> itr = _instances.keySet().iterator();
+            while (itr.hasNext()) {
+                if (id.equalsOrIsAncestorOf(itr.next())) itr.remove();
+            }
+        }
+
+        // returns true if the case was not already completed
+        synchronized boolean setCompleted() {
+            boolean wasCompleted = _completed;
+            _completed = true;
+            return ! wasCompleted;
+        }
+
+        private InstanceKeys getInstanceKeys(YIdentifier id) {
+            InstanceKeys keys = _instances.get(id);
+            if (keys == null) {
+                keys = new InstanceKeys();
+                _instances.put(id, keys);
+            }
+            return keys;
+        }
+    }
+
+
+    // the keys of one net instance: its own, and those of its task instances as
+    // parallel arrays of [taskID, taskInstanceID] (there are usually very few)
+    private static class InstanceKeys {
+
+        long netInstanceID = -1;
+        private long[] _taskIDs = new long[2];
+        private long[] _taskInstanceIDs = new long[2];
+        private int _size;
+
+        long getTaskInstanceID(long taskID) {
+            for (int i = 0; i < _size; i++) {
+                if (_taskIDs[i] == taskID) return _taskInstanceIDs[i];
+            }
+            return -1;
+        }
+
+        void putTaskInstanceID(long taskID, long key) {
+            for (int i = 0; i < _size; i++) {
+                if (_taskIDs[i] == taskID) {
+                    _taskInstanceIDs[i] = key;
+                    return;
+                }
+            }
+            if (_size == _taskIDs.length) {
+                _taskIDs = Arrays.copyOf(_taskIDs, _size * 2);
+                _taskInstanceIDs = Arrays.copyOf(_taskInstanceIDs, _size * 2);
+            }
+            _taskIDs[_size] = taskID;
+            _taskInstanceIDs[_size++] = key;
+        }
+    }
+
 }
@@ -0,0 +1,268 @@
+/*
+ * Copyright (c) 2004-2020 The YAWL Foundation. All rights reserved.
+ * The YAWL Foundation is a collaboration of individuals and
+ * organisations who are committed to improving workflow technology.
+ *
+ * This file is part of YAWL. YAWL is free software: you can
+ * redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation.
+ *
+ * YAWL is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with YAWL. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.yawlfoundation.yawl.logging;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes process log events to the database from a single thread, in batches.
+ * <p/>
+ * Events are held in a bounded queue until the writer thread takes them. The thread
+ * takes as many events as are waiting, up to a maximum batch size, and then waits
+ * up to a maximum delay for more to arrive before it writes them together. Each
+ * batch is written in one database transaction, rather than each event in its own
+ * transaction. Since there is only one writer, events are written in the order in
+ * which they are logged.
+ * <p/>
+ * How a logging thread waits for its event to be written depends on the durability
+ * mode:
+ * <ul>
+ *     <li>SYNC: the thread waits until the batch holding its event is committed</li>
+ *     <li>ASYNC: the thread waits only while the queue is full</li>
+ *     <li>DROP: the thread never waits. An event logged while the queue is full is
+ *     discarded and counted</li>
+ * </ul>
+ */
+public class YEventLogWriter {
+
+    public enum Durability { SYNC, ASYNC, DROP }
+
+    public static final int DEFAULT_BATCH_SIZE = 200;
+    public static final long DEFAULT_BATCH_DELAY = 10;                   // msecs
+    public static final int DEFAULT_QUEUE_SIZE = 20000;
+
+    private static final long IDLE_POLL = 500;                           // msecs
+    private static final long SHUTDOWN_TIMEOUT = 30000;                  // msecs
+
+
+    /**
+     * Writes a batch of events to the database
+     */
+    public interface BatchHandler {
+
+        /**
+         * Writes a batch of events, in order
+         * @param events the events to write
+         * @return true if the batch was written in full, false if some or all of it
+         * was lost
+         */
+        boolean write(List<Runnable> events);
+    }
+
+
+    private final Logger _log = LogManager.getLogger(YEventLogWriter.class);
+    private final BlockingQueue<Entry> _queue;
+    private final BatchHandler _handler;
+    private final Durability _durability;
+    private final int _maxBatchSize;
+    private final long _maxDelayNanos;
+    private final Thread _writer;
+    private final Object _commitLock = new Object();
+    private volatile boolean _shutdown;
+
+    private final AtomicLong _written = new AtomicLong();
+    private final AtomicLong _dropped = new AtomicLong();
+    private final AtomicLong _batches = new AtomicLong();
+    private final AtomicLong _failedBatches = new AtomicLong();
+
+
+    /**
+     * Constructs a new writer and starts its thread
+     * @param handler writes each batch of events
+     * @param durability how a logging thread waits for its event to be written
+     * @param maxBatchSize the maximum number of events written in one transaction
+     * @param maxDelay the maximum time (msecs) the writer waits for further events to
+     *                 add to a batch before writing it
+     * @param queueSize the maximum number of events waiting to be written
+     */
+    public YEventLogWriter(BatchHandler handler, Durability durability,
+                           int maxBatchSize, long maxDelay, int queueSize) {
+        _handler = handler;
+        _durability = durability;
+        _maxBatchSize = Math.max(1, maxBatchSize);
+        _maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, maxDelay));
+        _queue = new ArrayBlockingQueue<Entry>(Math.max(1, queueSize));
+        _writer = new Thread(new Runnable() {
+            public void run() { writeBatches(); }
+        }, "YEventLogWriter");
+        _writer.setDaemon(true);
+        _writer.start();
+    }
+
+
+    /**
+     * Queues an event to be written
+     * @param event the event, which when run writes its rows to the database
+     * @return true if the event was queued (and, for SYNC durability, written),
+     * false if it was dropped
+     */
+    public boolean submit(Runnable event) {
+        if (_shutdown) {
+            _dropped.incrementAndGet();
+            return false;
+        }
+        Entry entry = new Entry(event);
+        try {
+            if (_durability == Durability.DROP) {
+                if (! _queue.offer(entry)) {
+                    if (_dropped.incrementAndGet() % 1000 == 1) {
+                        _log.warn("Process log queue is full - events are being dropped");
+                    }
+                    return false;
+                }
+            }
+            else {
+                _queue.put(entry);
+                if (_durability == Durability.SYNC) awaitWrite(entry);
+            }
+            return true;
+        }
+        catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+
+    /**
+     * Writes all queued events and stops the writer thread. Events submitted after
+     * this call are dropped
+     */
+    public void shutdown() {
+        _shutdown = true;
+        try {
+            _writer.join(SHUTDOWN_TIMEOUT);
+        }
+        catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+        if (_writer.isAlive()) {
+            _log.warn("Process log writer shut down with {} events unwritten",
+                    _queue.size());
+        }
+    }
+
+
+    public Durability getDurability() { return _durability; }
+
+    public int getQueueDepth() { return _queue.size(); }
+
+    public long getWrittenCount() { return _written.get(); }
+
+    public long getDroppedCount() { return _dropped.get(); }
+
+    public long getBatchCount() { return _batches.get(); }
+
+    public long getFailedBatchCount() { return _failedBatches.get(); }
+
+
+    public String toString() {
+        long batches = getBatchCount();
+        return String.format("events written=%d, dropped=%d, queued=%d; batches=%d " +
+                "(mean size %.1f), failed=%d", getWrittenCount(), getDroppedCount(),
+                getQueueDepth(), batches,
+                batches > 0 ? getWrittenCount() / (double) batches : 0.0,
+                getFailedBatchCount());
+    }
+
+
+    /****************************************************************************/
+
+    private void writeBatches() {
+        List<Entry> batch = new ArrayList<Entry>(_maxBatchSize);
+        while (! (_shutdown && _queue.isEmpty())) {
+            try {
+                Entry first = _queue.poll(IDLE_POLL, TimeUnit.MILLISECONDS);
+                if (first == null) continue;
+                batch.add(first);
+                fill(batch);
+            }
+            catch (InterruptedException ie) {
+                _queue.drainTo(batch, _maxBatchSize - batch.size());
+            }
+            if (! batch.isEmpty()) {
+                write(batch);
+                batch.clear();
+            }
+        }
+    }
+
+
+    // adds waiting events to the batch until it is full, or no event arrives before
+    // the batch's delay expires
+    private void fill(List<Entry> batch) throws InterruptedException {
+        long deadline = System.nanoTime() + _maxDelayNanos;
+        while (batch.size() < _maxBatchSize) {
+            if (_queue.drainTo(batch, _maxBatchSize - batch.size()) == 0) {
+                long wait = deadline - System.nanoTime();
+                if (wait <= 0 || _shutdown) break;
+                Entry next = _queue.poll(wait, TimeUnit.NANOSECONDS);
+                if (next == null) break;
+                batch.add(next);
+            }
+        }
+    }
+
+
+    private void write(List<Entry> batch) {
+        List<Runnable> events = new ArrayList<Runnable>(batch.size());
+        for (Entry entry : batch) events.add(entry.event);
+        try {
+            if (! _handler.write(events)) _failedBatches.incrementAndGet();
+        }
+        catch (RuntimeException re) {
+            _failedBatches.incrementAndGet();
+            _log.error("Failed to write a batch of process log events", re);
+        }
+        _batches.incrementAndGet();
+        _written.addAndGet(batch.size());
+        if (_durability == Durability.SYNC) {
+            synchronized (_commitLock) {
+                for (Entry entry : batch) entry.written = true;
+                _commitLock.notifyAll();
+            }
+        }
+    }
+
+
+    private void awaitWrite(Entry entry) throws InterruptedException {
+        synchronized (_commitLock) {
+            while (! entry.written && _writer.isAlive()) {
+                _commitLock.wait(IDLE_POLL);
+            }
+        }
+    }
+
+
+    private static class Entry {
+        final Runnable event;
+        boolean written;                              // guarded by _commitLock
+
+        Entry(Runnable event) { this.event = event; }
+    }
+
+}
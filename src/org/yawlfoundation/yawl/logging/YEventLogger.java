@@ -21,6 +21,7 @@ package org.yawlfoundation.yawl.logging;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.hibernate.Query;
+import org.hibernate.Transaction;
 import org.yawlfoundation.yawl.authentication.YClient;
 import org.yawlfoundation.yawl.authentication.YSession;
 import org.yawlfoundation.yawl.elements.YAWLServiceReference;
@@ -33,12 +34,7 @@ import org.yawlfoundation.yawl.schema.XSDType;
 import org.yawlfoundation.yawl.schema.internal.YInternalType;
 import org.yawlfoundation.yawl.util.HibernateEngine;
 
-import java.util.Arrays;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.*;
 
 import static org.yawlfoundation.yawl.engine.YWorkItemStatus.statusIsParent;
 
@@ -61,6 +57,9 @@ import static org.yawlfoundation.yawl.engine.YWorkItemStatus.statusIsParent;
  *  - YLogDataItemInstance: descriptor, attribute, value, FK to YEvent, FK to YLogDataType
  *  - YLogDataType: definition
  *
+ * Events are written by a single writer thread, in batches of one transaction each
+ * (see YEventLogWriter).
+ *
  * @author Michael Adams - completely refactored for v2.0 10/2007,
  * and again for v2.1 04-12/2009, and again for v2.2 11/2010
  *
@@ -83,7 +82,6 @@ public class YEventLogger {
     private YEngine _engine;
     private HibernateEngine _db;
 
-    private static final Object TASK_INST_MUTEX = new Object();
     private final YEventKeyCache _keyCache = new YEventKeyCache();
 
     private static final Class[] LOG_CLASSES = {
@@ -92,8 +90,16 @@ public class YEventLogger {
             YLogDataItemInstance.class, YLogDataType.class, YLogService.class
     };
 
-    private static final ExecutorService _executor =
-                Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+    // the batched writer, and the settings it is created with
+    private YEventLogWriter _writer;
+    private YEventLogWriter.Durability _durability = YEventLogWriter.Durability.ASYNC;
+    private int _batchSize = YEventLogWriter.DEFAULT_BATCH_SIZE;
+    private long _batchDelay = YEventLogWriter.DEFAULT_BATCH_DELAY;
+    private int _queueSize = YEventLogWriter.DEFAULT_QUEUE_SIZE;
+
+    // set by the writer thread when a row of the current batch fails to insert
+    private boolean _batchFailed;
+    private boolean _writingBatch;
 
     // PUBLIC INTERFACE METHODS //
 
@@ -131,6 +137,52 @@ public class YEventLogger {
     public boolean isEnabled() { return _enabled; }
 
 
+    /**
+     * Sets how logged events are batched and written. Any events logged under the
+     * previous settings are written first
+     * @param durability how a logging thread waits for its event to be written
+     * @param batchSize the maximum number of events written in one transaction
+     * @param batchDelay the maximum time (msecs) to wait for further events to add to
+     *                   a batch before writing it
+     * @param queueSize the maximum number of events waiting to be written
+     */
+    public void setWriterSettings(YEventLogWriter.Durability durability, int batchSize,
+                                  long batchDelay, int queueSize) {
+        synchronized (this) {
+            if (durability != null) _durability = durability;
+            if (batchSize > 0) _batchSize = batchSize;
+            if (batchDelay >= 0) _batchDelay = batchDelay;
+            if (queueSize > 0) _queueSize = queueSize;
+        }
+        shutdown();                                      // recreated on next event
+    }
+
+
+    /**
+     * Writes any events waiting to be written and stops the writer thread
+     */
+    public void shutdown() {
+        YEventLogWriter writer;
+        synchronized (this) {
+            writer = _writer;
+            _writer = null;
+        }
+        if (writer != null) {
+            writer.shutdown();
+            _log.info("Process log writer: {}", writer);
+        }
+    }
+
+
+    /**
+     * @return a summary of the counts of events written, or null if no events have
+     * been logged
+     */
+    public synchronized String getWriterStatistics() {
+        return _writer != null ? _writer.toString() : null;
+    }
+
+
     public String getDataSchema(YSpecificationID specID, String dataTypeName) {
         if (XSDType.isBuiltInType(dataTypeName)) {
             return dataTypeName;                        // most likely scenario
@@ -163,14 +215,14 @@ public class YEventLogger {
                                final YIdentifier caseID, final YLogDataItemList datalist,
                                final String serviceRef) {
         if (loggingEnabled()) {
-            _executor.execute(new Runnable() {
+            submit(new Runnable() {
                 @Override
                 public void run() {
                     long netInstanceID = YEventLogger.this.insertNetInstance(caseID,
                             YEventLogger.this.getRootNetID(ySpecID), -1);
                     long serviceID = YEventLogger.this.getServiceID(serviceRef);
                     YEventLogger.this.logEvent(netInstanceID, CASE_START, datalist, serviceID, netInstanceID);
-                    _keyCache.netInstances.put(caseID, netInstanceID);
+                    _keyCache.putNetInstanceID(caseID, netInstanceID);
                 }
             });
         }
@@ -187,7 +239,7 @@ public class YEventLogger {
     public void logSubNetCreated(final YSpecificationID ySpecID,
                                  final YNetRunner runner, final String engineTaskID, final YLogDataItemList datalist) {
         if (loggingEnabled()) {
-            _executor.execute(new Runnable() {
+            submit(new Runnable() {
                 @Override
                 public void run() {
                     // get the required foreign key values
@@ -201,6 +253,7 @@ public class YEventLogger {
                     if (parentTaskInstanceID < 0) {
                         parentTaskInstanceID = YEventLogger.this.insertTaskInstance(subnetID.toString(),
                                 taskID, -1, YEventLogger.this.getNetInstanceID(subnetID.getParent()));
+                        _keyCache.putTaskInstanceID(subnetID, taskID, parentTaskInstanceID);
                     }
                     YEventLogger.this.logEvent(parentTaskInstanceID, NET_UNFOLD, null, -1, rootNetInstanceID);
 
@@ -223,7 +276,7 @@ public class YEventLogger {
     public void logCaseCancelled(final YIdentifier caseID,
                                  final YLogDataItemList datalist, final String serviceRef) {
         if (loggingEnabled()) {
-            _executor.execute(new Runnable() {
+            submit(new Runnable() {
                 @Override
                 public void run() {
                     long netInstanceID = YEventLogger.this.getNetInstanceID(caseID);
@@ -246,7 +299,7 @@ public class YEventLogger {
     public void logNetCompleted(final YIdentifier engineNetID,
                                 final YLogDataItemList datalist) {
         if (loggingEnabled()) {
-            _executor.execute(new Runnable() {
+            submit(new Runnable() {
                 @Override
                 public void run() {
                     String event;
@@ -271,7 +324,7 @@ public class YEventLogger {
      public void logNetCancelled(final YSpecificationID ySpecID, final YNetRunner runner,
                                  final String engineTaskID, final YLogDataItemList datalist) {
         if (loggingEnabled()) {
-            _executor.execute(new Runnable() {
+            submit(new Runnable() {
                 @Override
                 public void run() {
                     // get the required foreign key values
@@ -299,7 +352,7 @@ public class YEventLogger {
     public void logWorkItemEvent(final YWorkItem workItem, final String eventName,
                                  final YLogDataItemList datalist) {
         if (loggingEnabled()) {
-            _executor.execute(() -> {
+            submit(() -> {
                 long taskInstanceID = YEventLogger.this.getOrCreateTaskInstanceID(workItem);
                 YEventLogger.this.logEvent(taskInstanceID, eventName, datalist,
                         YEventLogger.this.getServiceID(workItem),
@@ -336,7 +389,7 @@ public class YEventLogger {
     public void logDataEvent(final YWorkItem workitem, final String descriptor,
                              final YLogDataItemList datalist) {
         if (loggingEnabled() && (datalist.size() > 0)) {
-            _executor.execute(new Runnable() {
+            submit(new Runnable() {
                 @Override
                 public void run() {
                     long instanceID = YEventLogger.this.getOrCreateTaskInstanceID(workitem);
@@ -379,6 +432,75 @@ public class YEventLogger {
     private long now() { return System.currentTimeMillis(); }
 
 
+    private void submit(Runnable event) {
+        getWriter().submit(event);
+    }
+
+
+    private synchronized YEventLogWriter getWriter() {
+        if (_writer == null) {
+            _writer = new YEventLogWriter(new YEventLogWriter.BatchHandler() {
+                public boolean write(List<Runnable> events) {
+                    return writeBatch(events);
+                }
+            }, _durability, _batchSize, _batchDelay, _queueSize);
+        }
+        return _writer;
+    }
+
+
+    /**
+     * Writes a batch of events in a single transaction. If any row fails to insert,
+     * the transaction is rolled back, the cached keys (some of which may belong to the
+     * rolled back rows) are cleared, and each event of the batch is written again
+     * with its rows committed one at a time.
+     * @param events the events to write
+     * @return true if the batch was written in a single transaction
+     */
+    private boolean writeBatch(List<Runnable> events) {
+        Transaction tx = null;
+        _batchFailed = false;
+        _writingBatch = true;
+        try {
+            tx = getDb().getOrBeginTransaction();
+            for (Runnable event : events) {
+                runEvent(event);
+
+                // a failed query also rolls back the transaction
+                if (_batchFailed || ! tx.isActive()) break;
+            }
+            if (! _batchFailed && tx.isActive()) {
+                tx.commit();
+                return true;
+            }
+        }
+        catch (RuntimeException re) {
+            _log.error("Failed to write a batch of process log events", re);
+            if (tx != null && tx.isActive()) tx.rollback();
+        }
+        finally {
+            _writingBatch = false;
+        }
+
+        _keyCache.clear();
+        getDb().rollback();
+        for (Runnable event : events) {
+            runEvent(event);
+        }
+        return false;
+    }
+
+
+    private void runEvent(Runnable event) {
+        try {
+            event.run();
+        }
+        catch (RuntimeException re) {
+            _log.error("Failed to write process log event", re);
+        }
+    }
+
+
     private boolean loggingEnabled() {
         return _enabled;
     }
@@ -523,23 +645,28 @@ public class YEventLogger {
      * @return the primary key of a net instance record
      */
     private long getNetInstanceID(YIdentifier engineID) {
-        Long result = _keyCache.netInstances.get(engineID);
-        if (result == null) {
+        long result = _keyCache.getNetInstanceID(engineID);
+        if (result < 0) {
             String where = String.format("engineInstanceID='%s'", engineID.toString());
             YLogNetInstance instance =
                     (YLogNetInstance) selectScalarWhere("YLogNetInstance", where);
-            result = (instance != null) ? instance.getNetInstanceID() : -1;
-            _keyCache.netInstances.put(engineID, result);
+            if (instance != null) {
+                result = instance.getNetInstanceID();
+                _keyCache.putNetInstanceID(engineID, result);
+            }
         }
         return result;
     }
 
 
+    // only one thread per case may create a task instance record
     private long getOrCreateTaskInstanceID(YWorkItem workItem) {
-        synchronized (TASK_INST_MUTEX) {
-            long taskInstanceID = getTaskInstanceID(workItem);
+        synchronized (_keyCache.getCaseLock(workItem.getCaseID())) {
+            long taskID = getTaskID(workItem);
+            long taskInstanceID = getTaskInstanceID(workItem.getCaseID(), taskID);
             if (taskInstanceID < 0) {
                 taskInstanceID = insertTaskInstance(workItem);
+                _keyCache.putTaskInstanceID(workItem.getCaseID(), taskID, taskInstanceID);
             }
             return taskInstanceID;
         }
@@ -569,8 +696,10 @@ public class YEventLogger {
                                         engineID.toString(), taskID);
             YLogTaskInstance instance =
                     (YLogTaskInstance) selectScalarWhere("YLogTaskInstance", where);
-            taskInstanceID = (instance != null) ? instance.getTaskInstanceID() : -1;
-            _keyCache.putTaskInstanceID(engineID, taskID, taskInstanceID);
+            if (instance != null) {
+                taskInstanceID = instance.getTaskInstanceID();
+                _keyCache.putTaskInstanceID(engineID, taskID, taskInstanceID);
+            }
         }
         return taskInstanceID;
     }
@@ -698,6 +827,7 @@ public class YEventLogger {
         YLogNetInstance netInstance =
                     new YLogNetInstance(engineID.toString(), netID, parentTaskInstanceID);
         insertRow(netInstance);
+        _keyCache.putNetInstanceID(engineID, netInstance.getNetInstanceID());
         return netInstance.getNetInstanceID();
     }
 
@@ -884,7 +1014,7 @@ public class YEventLogger {
      * @param o the object representing the contents of the row to insert
      */
     private void insertRow(Object o) {
-        getDb().exec(o, HibernateEngine.DB_INSERT, true);
+        exec(o, HibernateEngine.DB_INSERT);
     }
 
 
@@ -893,14 +1023,33 @@ public class YEventLogger {
      * @param o the object representing the contents of the row to update
      */
     private void updateRow(Object o) {
-        getDb().exec(o, HibernateEngine.DB_UPDATE, true);
+        exec(o, HibernateEngine.DB_UPDATE);
+    }
+
+
+    // rows are committed with their batch, or one at a time when a batch is rewritten
+    private void exec(Object o, int action) {
+        if (_writingBatch) {
+            if (! _batchFailed) {
+                _batchFailed = ! getDb().exec(o, action, false);
+            }
+        }
+        else {
+            getDb().exec(o, action, true);
+        }
     }
 
 
     protected HibernateEngine getDb() {
         if (_db == null) {
             Set<Class> classSet = new HashSet<Class>(Arrays.asList(LOG_CLASSES));
-            _db = new HibernateEngine(true, classSet);
+
+            // lets the rows of a batch be sent to the database together where the
+            // dialect's key generation allows it
+            Properties props = new Properties();
+            props.setProperty("hibernate.jdbc.batch_size", String.valueOf(_batchSize));
+            props.setProperty("hibernate.order_inserts", "true");
+            _db = new HibernateEngine(true, classSet, props);
         }
         return _db;
     }
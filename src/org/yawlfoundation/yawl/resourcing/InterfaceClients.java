@@ -97,6 +97,7 @@ public class InterfaceClients extends AbstractEngineClient {
         if (costServiceURI != null) {
             _costServiceClient = new CostClient(
                     costServiceURI, _engineLogonName, _engineLogonPassword);
+            _gatewayServer.setCostServiceClient(_costServiceClient);
         }
         if (docStoreURI != null) {
             _docStoreClient = new DocStoreClient(
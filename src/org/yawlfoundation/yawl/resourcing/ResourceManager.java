@@ -96,6 +96,9 @@ public final class ResourceManager extends InterfaceBWebsideController {
     // cache of 'live' workitems
     private WorkItemCache _workItemCache = WorkItemCache.getInstance();
 
+    // the participant queues that hold each workitem
+    private WorkQueueIndex _queueIndex = WorkQueueIndex.getInstance();
+
     // String literals
     public static final String ADMIN_STR = "admin";
     private static final String FAIL_STR = "failure";
@@ -935,15 +938,34 @@ public final class ResourceManager extends InterfaceBWebsideController {
     public WorkItemRecord offerToAll(WorkItemRecord wir) {
         if (_orgDataSet.getParticipantCount() > 0) {
             _workItemCache.updateResourceStatus(wir, WorkItemRecord.statusResourceOffered);
-            for (Participant p : _orgDataSet.getParticipants()) {
+            offerTo(_orgDataSet.getParticipants(), wir);
+        } else _resAdmin.addToUnoffered(wir);
+
+        return wir;
+    }
+
+
+    /**
+     * Adds a workitem to the offered queue of each of a set of participants. The
+     * modified queues are persisted together, once all have been updated
+     * @param pSet the participants to offer the workitem to
+     * @param wir the workitem to offer
+     */
+    public void offerTo(Collection<Participant> pSet, WorkItemRecord wir) {
+        Set<String> modified = new HashSet<String>();
+        boolean batch = WorkQueue.beginBatch();
+        try {
+            for (Participant p : pSet) {
                 QueueSet qSet = p.getWorkQueues();
                 if (qSet == null) qSet = p.createQueueSet(_persisting);
                 qSet.addToQueue(wir, WorkQueue.OFFERED);
-                announceModifiedQueue(p.getID());
+                modified.add(p.getID());
             }
-        } else _resAdmin.addToUnoffered(wir);
-
-        return wir;
+        }
+        finally {
+            if (batch) WorkQueue.endBatch();
+        }
+        announceModifiedQueues(modified);
     }
 
 
@@ -957,39 +979,82 @@ public final class ResourceManager extends InterfaceBWebsideController {
     }
 
 
+    // only those participants that have been offered the item are visited
     public void withdrawOfferFromAll(WorkItemRecord wir) {
-        for (Participant p : _orgDataSet.getParticipants()) {
-            QueueSet qSet = p.getWorkQueues();
-            if (qSet != null && qSet.removeFromQueue(wir, WorkQueue.OFFERED)) {
-                announceModifiedQueue(p.getID());
+        Set<Participant> pSet = new HashSet<Participant>();
+        for (String pid : _queueIndex.getHolders(wir.getID(), WorkQueue.OFFERED)) {
+            Participant p = _orgDataSet.getParticipant(pid);
+            if (p != null) pSet.add(p);
+        }
+        withdrawOfferFrom(pSet, wir);
+    }
+
+
+    /**
+     * Removes a workitem from the offered queue of each of a set of participants. The
+     * modified queues are persisted together, once all have been updated
+     * @param pSet the participants to withdraw the offer from
+     * @param wir the workitem to withdraw
+     */
+    public void withdrawOfferFrom(Collection<Participant> pSet, WorkItemRecord wir) {
+        Set<String> modified = new HashSet<String>();
+        boolean batch = WorkQueue.beginBatch();
+        try {
+            for (Participant p : pSet) {
+                QueueSet qSet = p.getWorkQueues();
+                if (qSet != null && qSet.removeFromQueue(wir, WorkQueue.OFFERED)) {
+                    modified.add(p.getID());
+                }
             }
         }
+        finally {
+            if (batch) WorkQueue.endBatch();
+        }
+        announceModifiedQueues(modified);
     }
 
 
+    // only those participants with the item in one of their queues are visited
     public boolean removeFromAll(WorkItemRecord wir) {
-        for (Participant p : _orgDataSet.getParticipants()) {
-            QueueSet qSet = p.getWorkQueues();
-            if (qSet != null) {
-                qSet.removeFromAllQueues(wir);
-                announceModifiedQueue(p.getID());
+        Set<String> modified = _queueIndex.getHolders(wir.getID());
+        boolean batch = WorkQueue.beginBatch();
+        try {
+            for (String pid : modified) {
+                QueueSet qSet = getQueueSet(pid);
+                if (qSet != null) qSet.removeFromAllQueues(wir);
             }
         }
+        finally {
+            if (batch) WorkQueue.endBatch();
+        }
+        announceModifiedQueues(modified);
         return _resAdmin.removeFromAllQueues(wir);
     }
 
 
+    // only those participants with an item of the case in their queues are visited
     public void removeCaseFromAllQueues(String caseID) {
-        for (Participant p : _orgDataSet.getParticipants()) {
-            QueueSet qSet = p.getWorkQueues();
-            if (qSet != null) {
-                qSet.removeCaseFromAllQueues(caseID);
-                announceModifiedQueue(p.getID());
+        Set<String> modified = _queueIndex.getCaseHolders(caseID);
+        boolean batch = WorkQueue.beginBatch();
+        try {
+            for (String pid : modified) {
+                QueueSet qSet = getQueueSet(pid);
+                if (qSet != null) qSet.removeCaseFromAllQueues(caseID);
             }
         }
+        finally {
+            if (batch) WorkQueue.endBatch();
+        }
+        announceModifiedQueues(modified);
         _resAdmin.removeCaseFromAllQueues(caseID);
     }
 
+
+    private QueueSet getQueueSet(String pid) {
+        Participant p = _orgDataSet.getParticipant(pid);
+        return (p != null) ? p.getWorkQueues() : null;
+    }
+
     public QueueSet getAdminQueues() {
         return _resAdmin.getWorkQueues();
     }
@@ -1097,18 +1162,12 @@ public final class ResourceManager extends InterfaceBWebsideController {
             if ((qOffer != null) && (!qOffer.isEmpty())) {
                 Set<WorkItemRecord> wirSet = qOffer.getAll();
 
-                // get all items on all offered queues, except this part's queue
-                Set<WorkItemRecord> offerSet = new HashSet<WorkItemRecord>();
-                for (Participant temp : _orgDataSet.getParticipants()) {
-                    if ((p == null) || (!temp.getID().equals(p.getID()))) {
-                        WorkQueue q = temp.getWorkQueues().getQueue(WorkQueue.OFFERED);
-                        if (q != null) offerSet.addAll(q.getAll());
-                    }
-                }
-
-                // compare each item in this part's queue to the complete set
+                // move each item not also offered to someone else to unoffered
                 for (WorkItemRecord wir : wirSet) {
-                    if (!offerSet.contains(wir)) {
+                    Set<String> offeredTo = _queueIndex.getHolders(wir.getID(),
+                            WorkQueue.OFFERED);
+                    if (p != null) offeredTo.remove(p.getID());
+                    if (offeredTo.isEmpty()) {
                         _resAdmin.getWorkQueues().removeFromQueue(wir, WorkQueue.WORKLISTED);
                         _resAdmin.addToUnoffered(wir);
                     }
@@ -2500,6 +2559,16 @@ public final class ResourceManager extends InterfaceBWebsideController {
     }
 
 
+    /**
+     * Announces the modification of the queues of a number of participants, once per
+     * participant, after an action that has modified them all
+     * @param pids the ids of the participants whose queues were modified
+     */
+    public void announceModifiedQueues(Collection<String> pids) {
+        for (String pid : pids) announceModifiedQueue(pid);
+    }
+
+
     public String addRegisteredService(YAWLServiceReference service) throws IOException {
         String result = _services.addRegisteredService(service);
         if (successful(result)) {
@@ -363,12 +363,7 @@ public class ResourceMap {
         if (_allocate.getInitiator() == AbstractInteraction.USER_INITIATED) {
 
             // for each participant in set, place workitem on their offered queue
-            for (Participant p : distributionSet) {
-                QueueSet qs = p.getWorkQueues() ;
-                if (qs == null) qs = p.createQueueSet(getRM().isPersisting());
-                qs.addToQueue(wir, WorkQueue.OFFERED);
-                getRM().announceModifiedQueue(p.getID());
-            }
+            getRM().offerTo(distributionSet, wir);
             _offered.put(wir.getID(), distributionSet);
         }
         else {
@@ -18,6 +18,7 @@
 
 package org.yawlfoundation.yawl.resourcing;
 
+import org.apache.logging.log4j.LogManager;
 import org.jdom2.Element;
 import org.yawlfoundation.yawl.engine.interfce.Marshaller;
 import org.yawlfoundation.yawl.engine.interfce.WorkItemRecord;
@@ -29,6 +30,7 @@ import org.yawlfoundation.yawl.util.StringUtil;
 
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
@@ -61,6 +63,11 @@ public class WorkQueue {
     private String _ownerID ;                                // who owns this queue?
     private int _queueType ;
     private boolean _persisting ;
+    private boolean _indexed ;                               // in the WorkQueueIndex?
+
+    // the queues changed by the current thread during a batch, persisted at its end
+    private static final ThreadLocal<Set<WorkQueue>> _batch =
+            new ThreadLocal<Set<WorkQueue>>();
 
 
     /******************************************************************************/
@@ -103,11 +110,35 @@ public class WorkQueue {
      */
     private void persistThis() {
         if (_persisting && _queueType < WORKLISTED) {
-            Persister.getInstance().update(this);
+            Set<WorkQueue> batch = _batch.get();
+            if (batch != null) {
+                batch.add(this);                            // persisted at batch end
+            }
+            else Persister.getInstance().update(this);
         }    
     }
 
 
+    private void index(WorkItemRecord wir) {
+        if (_indexed) WorkQueueIndex.getInstance().add(_ownerID, _queueType, wir);
+    }
+
+
+    private void unindex(WorkItemRecord wir) {
+        if (_indexed) WorkQueueIndex.getInstance().remove(_ownerID, _queueType, wir);
+    }
+
+
+    private void indexAll() {
+        for (WorkItemRecord wir : _workitems.values()) index(wir);
+    }
+
+
+    private void unindexAll() {
+        for (WorkItemRecord wir : _workitems.values()) unindex(wir);
+    }
+
+
     /**
      * adds an entry in the process log when a workitem is added to a queue
      * (since that signifies a resourcing status change).
@@ -130,7 +161,11 @@ public class WorkQueue {
 
     // ACCESSIBLE METHODS //
 
-    public void setOwnerID(String id) { _ownerID = id ; }
+    public void setOwnerID(String id) {
+        unindexAll();
+        _ownerID = id ;
+        indexAll();
+    }
 
     public String getOwnerID() { return _ownerID ; }
 
@@ -147,12 +182,70 @@ public class WorkQueue {
     public void setPersisting(boolean persist) { _persisting = persist; }
 
 
+    public boolean isIndexed() { return _indexed; }
+
+    /**
+     * Sets whether the contents of this queue are recorded in the WorkQueueIndex. Only
+     * the queues of a participant's queue set are indexed
+     * @param indexed true to index the queue, false to remove it from the index
+     */
+    public void setIndexed(boolean indexed) {
+        indexed = indexed && _queueType >= OFFERED && _queueType <= SUSPENDED;
+        if (indexed != _indexed) {
+            if (indexed) {
+                _indexed = true;
+                indexAll();
+            }
+            else {
+                unindexAll();
+                _indexed = false;
+            }
+        }
+    }
+
+
+    /**
+     * Starts a batch of changes to work queues on the current thread. Until the batch
+     * ends, the queues changed are not persisted as each change is made, but instead
+     * are persisted together, in a single transaction, when the batch ends
+     * @return true if a batch was started, or false if the current thread is already
+     * in a batch (in which case the caller should not end it)
+     */
+    public static boolean beginBatch() {
+        if (_batch.get() != null) return false;
+        _batch.set(new LinkedHashSet<WorkQueue>());
+        return true;
+    }
+
+
+    /**
+     * Ends the current thread's batch of changes, persisting each queue changed
+     * during it. If the batch can't be persisted as a whole, each queue is persisted
+     * on its own, so that one failed update doesn't lose the others
+     */
+    public static void endBatch() {
+        Set<WorkQueue> batch = _batch.get();
+        _batch.remove();
+        if (! (batch == null || batch.isEmpty())) {
+            Persister persister = Persister.getInstance();
+            if (! persister.updateAll(batch)) {
+                LogManager.getLogger(WorkQueue.class).warn("Failed to persist a batch " +
+                        "of {} work queues; persisting each queue separately", batch.size());
+                for (WorkQueue queue : batch) {
+                    persister.update(queue);
+                }
+            }
+        }
+    }
+
+
     /**
      * Adds a workitem to the queue
      * @param item the workitem to add
      */
     public void add(WorkItemRecord item, boolean log) {
         _workitems.put(item.getID(), item) ;
+        index(item);
         persistThis() ;
         if (log) logEvent(item);
     }
@@ -163,6 +256,7 @@ public class WorkQueue {
      */
     public void addQueue(Map<String, WorkItemRecord> queueMap) {
         _workitems.putAll(queueMap);
+        for (WorkItemRecord wir : queueMap.values()) index(wir);
         persistThis() ;
         logEvent(queueMap) ;
     }
@@ -182,7 +276,9 @@ public class WorkQueue {
      * @param queue the new queue
      */
     public void setQueue(WorkQueue queue) {
+        unindexAll();
         _workitems = queue.getQueueAsMap() ;
+        indexAll();
         persistThis() ;
         logEvent(_workitems) ;
     }
@@ -223,6 +319,7 @@ public class WorkQueue {
         WorkItemRecord removed = null;
         if (item != null && _workitems.containsKey(item.getID())) {
             removed = _workitems.remove(item.getID());
+            if (removed != null) unindex(removed);
             persistThis();
         }
         return removed != null;
@@ -245,6 +342,7 @@ public class WorkQueue {
     /* Removes all workitems from the queue */
     public void clear() {
         if (! _workitems.isEmpty()) {
+            unindexAll();
             _workitems.clear();
             persistThis() ;
         }    
@@ -262,7 +360,10 @@ public class WorkQueue {
     public void cleanse(WorkItemCache cache) {
         Set<String> clonedQueue = new HashSet<String>(_workitems.keySet());
         for (String itemID : clonedQueue) {
-            if (cache.get(itemID) == null) _workitems.remove(itemID);
+            if (cache.get(itemID) == null) {
+                WorkItemRecord removed = _workitems.remove(itemID);
+                if (removed != null) unindex(removed);
+            }
         }
         if (_workitems.size() != clonedQueue.size()) persistThis();
     }
@@ -271,7 +372,10 @@ public class WorkQueue {
     public void removeCase(String caseID) {
         Set<WorkItemRecord> clonedQueue = new HashSet<WorkItemRecord>(_workitems.values());
         for (WorkItemRecord wir : clonedQueue) {
-            if (wir.getRootCaseID().equals(caseID)) _workitems.remove(wir.getID());
+            if (wir.getRootCaseID().equals(caseID)) {
+                _workitems.remove(wir.getID());
+                unindex(wir);
+            }
         }
         if (_workitems.size() != clonedQueue.size()) persistThis();
     }
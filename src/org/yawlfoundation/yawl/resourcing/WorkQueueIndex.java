@@ -0,0 +1,191 @@
+/*
+ * Copyright (c) 2004-2020 The YAWL Foundation. All rights reserved.
+ * The YAWL Foundation is a collaboration of individuals and
+ * organisations who are committed to improving workflow technology.
+ *
+ * This file is part of YAWL. YAWL is free software: you can
+ * redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation.
+ *
+ * YAWL is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with YAWL. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.yawlfoundation.yawl.resourcing;
+
+import org.yawlfoundation.yawl.engine.interfce.WorkItemRecord;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An index of the participant work queues that each workitem is currently in, and of
+ * the workitems of each case that are currently in a participant work queue.
+ * <p/>
+ * The index is kept up to date by the participant work queues themselves as their
+ * contents change, so that an action on a workitem or case that may involve many
+ * participants (e.g. a withdrawal of an item offered to all participants) need only
+ * visit the queues that actually hold it, rather than every participant's queues.
+ */
+public class WorkQueueIndex {
+
+    private static final WorkQueueIndex INSTANCE = new WorkQueueIndex();
+
+    // [item id, [participant id, bitmask of the queue types holding the item]]
+    private final ConcurrentHashMap<String, Map<String, Integer>> _holders =
+            new ConcurrentHashMap<String, Map<String, Integer>>();
+
+    // [root case id, ids of the case's items in at least one queue]
+    private final ConcurrentHashMap<String, Set<String>> _caseItems =
+            new ConcurrentHashMap<String, Set<String>>();
+
+
+    public WorkQueueIndex() { }
+
+
+    public static WorkQueueIndex getInstance() { return INSTANCE; }
+
+
+    /**
+     * Records that a workitem has been added to a participant's queue
+     * @param pid the id of the participant who owns the queue
+     * @param queueType the type of the queue (OFFERED, ALLOCATED, STARTED or SUSPENDED)
+     * @param wir the workitem added
+     */
+    public void add(final String pid, final int queueType, final WorkItemRecord wir) {
+        final String itemID = wir.getID();
+        _holders.compute(itemID, (id, queues) -> {
+            if (queues == null) {
+                queues = new ConcurrentHashMap<String, Integer>();
+                addCaseItem(wir.getRootCaseID(), itemID);
+            }
+            Integer mask = queues.get(pid);
+            queues.put(pid, (mask != null ? mask : 0) | toBit(queueType));
+            return queues;
+        });
+    }
+
+
+    /**
+     * Records that a workitem has been removed from a participant's queue
+     * @param pid the id of the participant who owns the queue
+     * @param queueType the type of the queue
+     * @param wir the workitem removed
+     */
+    public void remove(final String pid, final int queueType, final WorkItemRecord wir) {
+        final String itemID = wir.getID();
+        _holders.computeIfPresent(itemID, (id, queues) -> {
+            Integer mask = queues.get(pid);
+            if (mask != null) {
+                mask &= ~toBit(queueType);
+                if (mask == 0) queues.remove(pid);
+                else queues.put(pid, mask);
+            }
+            if (! queues.isEmpty()) return queues;
+
+            removeCaseItem(wir.getRootCaseID(), itemID);   // no queue holds it now
+            return null;
+        });
+    }
+
+
+    /**
+     * @param itemID the id of a workitem
+     * @return the ids of the participants with the workitem in at least one of their
+     * queues
+     */
+    public Set<String> getHolders(String itemID) {
+        Map<String, Integer> queues = _holders.get(itemID);
+        return queues != null ? new HashSet<String>(queues.keySet()) :
+                Collections.<String>emptySet();
+    }
+
+
+    /**
+     * @param itemID the id of a workitem
+     * @param queueType the type of queue
+     * @return the ids of the participants with the workitem in their queue of the type
+     */
+    public Set<String> getHolders(String itemID, int queueType) {
+        Set<String> holders = new HashSet<String>();
+        Map<String, Integer> queues = _holders.get(itemID);
+        if (queues != null) {
+            for (Map.Entry<String, Integer> entry : queues.entrySet()) {
+                if ((entry.getValue() & toBit(queueType)) != 0) {
+                    holders.add(entry.getKey());
+                }
+            }
+        }
+        return holders;
+    }
+
+
+    /**
+     * @param caseID the id of a root case
+     * @return the ids of the participants with at least one workitem of the case in at
+     * least one of their queues
+     */
+    public Set<String> getCaseHolders(String caseID) {
+        Set<String> holders = new HashSet<String>();
+        Set<String> caseItems = _caseItems.get(caseID);
+        if (caseItems != null) {
+            for (String itemID : caseItems) {
+                holders.addAll(getHolders(itemID));
+            }
+        }
+        return holders;
+    }
+
+
+    /**
+     * @param caseID the id of a root case
+     * @return the ids of the case's workitems that are in at least one queue
+     */
+    public Set<String> getItemsForCase(String caseID) {
+        Set<String> caseItems = _caseItems.get(caseID);
+        return caseItems != null ? new HashSet<String>(caseItems) :
+                Collections.<String>emptySet();
+    }
+
+
+    /** @return the number of workitems in at least one queue */
+    public int getItemCount() { return _holders.size(); }
+
+
+    public void clear() {
+        _holders.clear();
+        _caseItems.clear();
+    }
+
+
+    /*********************************************************************************/
+
+    private void addCaseItem(String caseID, final String itemID) {
+        _caseItems.compute(caseID, (id, items) -> {
+            if (items == null) items = ConcurrentHashMap.newKeySet();
+            items.add(itemID);
+            return items;
+        });
+    }
+
+
+    // the case's entry is removed along with its last item
+    private void removeCaseItem(String caseID, final String itemID) {
+        _caseItems.computeIfPresent(caseID, (id, items) -> {
+            items.remove(itemID);
+            return items.isEmpty() ? null : items;
+        });
+    }
+
+
+    private int toBit(int queueType) { return 1 << queueType; }
+
+}
@@ -23,6 +23,7 @@ import org.yawlfoundation.yawl.engine.interfce.WorkItemRecord;
 import org.yawlfoundation.yawl.resourcing.AbstractSelector;
 import org.yawlfoundation.yawl.resourcing.ResourceManager;
 import org.yawlfoundation.yawl.resourcing.client.CostClient;
+import org.yawlfoundation.yawl.resourcing.datastore.eventlog.AllocationStatistics;
 import org.yawlfoundation.yawl.resourcing.datastore.eventlog.EventLogger;
 import org.yawlfoundation.yawl.resourcing.datastore.eventlog.ResourceEvent;
 import org.yawlfoundation.yawl.resourcing.datastore.persistence.Persister;
@@ -110,6 +111,22 @@ public abstract class AbstractAllocator extends AbstractSelector {
     }
 
 
+    /**
+     * Gets the indexed statistics of the events logged for a given specification +
+     * task + event combination.
+     * @param wir a workitem record which is an instance of the specification+task in
+     * question.
+     * @param event the type of event to get statistics for
+     * @return the statistics, or null if they are not indexed (in which case the
+     * logged events must be read)
+     */
+    protected AllocationStatistics.TaskEntry getEventStatistics(WorkItemRecord wir,
+                                                             EventLogger.event event) {
+        long specKey = EventLogger.getSpecificationKey(new YSpecificationID(wir));
+        return AllocationStatistics.getInstance().getEntry(specKey, wir.getTaskID(), event);
+    }
+
+
     /**
      * Converts a set of participants to a map
      * @param pSet the set of participants
@@ -135,6 +152,10 @@ public abstract class AbstractAllocator extends AbstractSelector {
             return participants.iterator().next();              // only one in set
         }
         else {                                                  // more than one in set
+            AllocationStatistics.TaskEntry stats = getEventStatistics(wir, status);
+            if (stats != null) {
+                return allocateOnStatus(participants, wir, stats);
+            }
             List events = getLoggedEvents(wir, status);
             if (!events.isEmpty()) {
                 events.sort(new TimeDescComparator());
@@ -156,6 +177,36 @@ public abstract class AbstractAllocator extends AbstractSelector {
         }
     }
 
+
+    /**
+     * Chooses the participant whose latest event of a kind is the earliest, or
+     * randomly from those participants who have never had that event, if any
+     * @param participants the distribution set
+     * @param wir the work item to allocate
+     * @param stats the indexed event statistics for the work item's task
+     * @return the chosen participant
+     */
+    private Participant allocateOnStatus(Set<Participant> participants,
+                                         WorkItemRecord wir,
+                                         AllocationStatistics.TaskEntry stats) {
+        Set<Participant> never = new HashSet<Participant>();
+        Participant leastRecent = null;
+        long earliest = Long.MAX_VALUE;
+        for (Participant p : participants) {
+            long lastTime = stats.getLastTime(p.getID());
+            if (lastTime < 0) {
+                never.add(p);
+            }
+            else if (lastTime < earliest) {
+                leastRecent = p;
+                earliest = lastTime;
+            }
+        }
+        if (never.size() == 1) return never.iterator().next();
+        if (never.isEmpty()) return leastRecent;
+        return new RandomChoice().performAllocation(never, wir);
+    }
+
     
     /**
      * Gets from the cost service the cost per msec of each of the participants ids
@@ -303,7 +354,7 @@ public abstract class AbstractAllocator extends AbstractSelector {
     static class TimeDescComparator<Object> implements Comparator<Object> {
         @Override
         public int compare(Object o1, Object o2) {
-            return (int) (((ResourceEvent) o2).get_timeStamp() -
+            return Long.compare(((ResourceEvent) o2).get_timeStamp(),
                     ((ResourceEvent) o1).get_timeStamp());
         }
     }
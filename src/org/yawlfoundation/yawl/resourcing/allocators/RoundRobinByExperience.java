@@ -19,6 +19,7 @@
 package org.yawlfoundation.yawl.resourcing.allocators;
 
 import org.yawlfoundation.yawl.engine.interfce.WorkItemRecord;
+import org.yawlfoundation.yawl.resourcing.datastore.eventlog.AllocationStatistics;
 import org.yawlfoundation.yawl.resourcing.datastore.eventlog.ResourceEvent;
 import org.yawlfoundation.yawl.resourcing.datastore.eventlog.EventLogger;
 import org.yawlfoundation.yawl.resourcing.resource.Participant;
@@ -60,10 +61,14 @@ public class RoundRobinByExperience extends AbstractAllocator {
             }
             else {
                 // more than one part. in the set
-                List events = getLoggedEvents(wir, EventLogger.event.complete);
-                if (! events.isEmpty()) {
+                AllocationStatistics.TaskEntry stats =
+                        getEventStatistics(wir, EventLogger.event.complete);
+                List events = (stats == null) ?
+                        getLoggedEvents(wir, EventLogger.event.complete) : null;
+                if ((stats != null) ? ! stats.isEmpty() : ! events.isEmpty()) {
                     for (Participant p : participants) {
-                        long frequency = getFrequency(events, p);
+                        long frequency = (stats != null) ? stats.getCount(p.getID()) :
+                                getFrequency(events, p);
                         if (frequency > mostFrequent) {
                             chosen = p ;
                             mostFrequent = frequency ;
@@ -0,0 +1,346 @@
+/*
+ * Copyright (c) 2004-2020 The YAWL Foundation. All rights reserved.
+ * The YAWL Foundation is a collaboration of individuals and
+ * organisations who are committed to improving workflow technology.
+ *
+ * This file is part of YAWL. YAWL is free software: you can
+ * redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation.
+ *
+ * YAWL is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with YAWL. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.yawlfoundation.yawl.resourcing.calendar;
+
+import java.util.*;
+
+/**
+ * An in-memory index of calendar entries, holding the entries of each resource id
+ * (or resource group) in an interval tree, so that the entries overlapping any period
+ * can be found without a database query.
+ * <p/>
+ * The entries of a resource id are loaded into the index from the database the first
+ * time they are needed, and are then kept up to date by the ResourceCalendar as it
+ * writes entries. The index holds copies of the entries, and returns copies, so that
+ * changes made to an entry by a caller are not seen in the index until the entry is
+ * written.
+ */
+public class CalendarIndex {
+
+    // [resource id, its entries] - for each resource id loaded
+    private final Map<String, IntervalTree> _trees = new HashMap<String, IntervalTree>();
+
+    // [entry id, entry] - for each entry held
+    private final Map<Long, CalendarEntry> _entries = new HashMap<Long, CalendarEntry>();
+
+
+    public CalendarIndex() { }
+
+
+    /**
+     * @param resourceIDs a set of resource (or resource group) ids
+     * @return those ids whose entries are not yet loaded into the index
+     */
+    public synchronized List<String> getUnloaded(Collection<String> resourceIDs) {
+        List<String> unloaded = new ArrayList<String>();
+        for (String id : resourceIDs) {
+            if (! (_trees.containsKey(id) || unloaded.contains(id))) unloaded.add(id);
+        }
+        return unloaded;
+    }
+
+
+    /**
+     * Loads the entries of a set of resource ids into the index
+     * @param resourceIDs the resource ids
+     * @param entries all of the current calendar entries for those resource ids
+     */
+    public synchronized void load(Collection<String> resourceIDs, List<?> entries) {
+        for (String id : resourceIDs) {
+            if (! _trees.containsKey(id)) _trees.put(id, new IntervalTree());
+        }
+        if (entries != null) {
+            for (Object o : entries) {
+                CalendarEntry entry = (CalendarEntry) o;
+                if (! _entries.containsKey(entry.getEntryID())) add(entry);
+            }
+        }
+    }
+
+
+    /**
+     * Adds a newly written entry. It is ignored if its resource id is not yet loaded
+     * @param entry the entry
+     */
+    public synchronized void add(CalendarEntry entry) {
+        IntervalTree tree = _trees.get(entry.getResourceID());
+        if (tree != null) {
+            CalendarEntry copy = copyOf(entry);
+            tree.insert(copy);
+            _entries.put(copy.getEntryID(), copy);
+        }
+    }
+
+
+    /**
+     * Replaces an entry with its newly written values
+     * @param entry the entry
+     */
+    public synchronized void update(CalendarEntry entry) {
+        remove(entry.getEntryID());
+        add(entry);
+    }
+
+
+    /**
+     * Removes an entry
+     * @param entryID the id of the entry to remove
+     */
+    public synchronized void remove(long entryID) {
+        CalendarEntry entry = _entries.remove(entryID);
+        if (entry != null) {
+            IntervalTree tree = _trees.get(entry.getResourceID());
+            if (tree != null) tree.remove(entry);
+        }
+    }
+
+
+    /**
+     * Removes all the entries of a resource id
+     * @param resourceID the resource id
+     */
+    public synchronized void removeResource(String resourceID) {
+        IntervalTree tree = _trees.get(resourceID);
+        if (tree != null) {
+            for (CalendarEntry entry : tree.getOverlapping(Long.MIN_VALUE, Long.MAX_VALUE)) {
+                _entries.remove(entry.getEntryID());
+            }
+            _trees.put(resourceID, new IntervalTree());
+        }
+    }
+
+
+    /**
+     * Removes the entries of a resource id that overlap a period
+     * @param resourceID the resource id
+     * @param from the start of the period
+     * @param to the end of the period
+     */
+    public synchronized void removeOverlapping(String resourceID, long from, long to) {
+        IntervalTree tree = _trees.get(resourceID);
+        if (tree != null) {
+            for (CalendarEntry entry : tree.getOverlapping(from, to)) {
+                remove(entry.getEntryID());
+            }
+        }
+    }
+
+
+    /**
+     * Removes all entries that end before a time
+     * @param time the time
+     */
+    public synchronized void removeEndedBefore(long time) {
+        for (CalendarEntry entry : new ArrayList<CalendarEntry>(_entries.values())) {
+            if (entry.getEndTime() < time) remove(entry.getEntryID());
+        }
+    }
+
+
+    /**
+     * Gets the entries of a set of resource ids that overlap a period, i.e. those
+     * that start before the period ends and end after it starts. Each resource id
+     * must already be loaded
+     * @param resourceIDs the resource ids
+     * @param from the start of the period
+     * @param to the end of the period
+     * @return copies of the matching entries, ordered by start time
+     */
+    public synchronized List<CalendarEntry> getOverlapping(Collection<String> resourceIDs,
+                                                           long from, long to) {
+        List<CalendarEntry> overlapping = new ArrayList<CalendarEntry>();
+        Set<String> visited = new HashSet<String>();
+        for (String id : resourceIDs) {
+            IntervalTree tree = _trees.get(id);
+            if (tree != null && visited.add(id)) {
+                for (CalendarEntry entry : tree.getOverlapping(from, to)) {
+                    overlapping.add(copyOf(entry));
+                }
+            }
+        }
+        if (visited.size() > 1) {
+            Collections.sort(overlapping, new Comparator<CalendarEntry>() {
+                public int compare(CalendarEntry e1, CalendarEntry e2) {
+                    return Long.compare(e1.getStartTime(), e2.getStartTime());
+                }
+            });
+        }
+        return overlapping;
+    }
+
+
+    /** @return the number of entries held */
+    public synchronized int size() { return _entries.size(); }
+
+
+    /**
+     * Removes everything from the index, e.g. after a rollback has made its contents
+     * inconsistent with the database. Entries will be reloaded when next needed
+     */
+    public synchronized void clear() {
+        _trees.clear();
+        _entries.clear();
+    }
+
+
+    private CalendarEntry copyOf(CalendarEntry entry) {
+        try {
+            return entry.clone();
+        }
+        catch (CloneNotSupportedException cnse) {
+            throw new IllegalStateException(cnse);                   // can't occur
+        }
+    }
+
+
+    /*********************************************************************************/
+
+    /**
+     * A randomised balanced binary tree (a treap) of entries ordered by start time,
+     * where each node also holds the latest end time of the entries in its subtree,
+     * so that subtrees that can't contain an overlapping entry are skipped
+     */
+    private static class IntervalTree {
+
+        private final Random _random = new Random();
+        private Node _root;
+
+        void insert(CalendarEntry entry) {
+            _root = insert(_root, new Node(entry, _random.nextInt()));
+        }
+
+        void remove(CalendarEntry entry) {
+            _root = remove(_root, entry.getStartTime(), entry.getEntryID());
+        }
+
+        List<CalendarEntry> getOverlapping(long from, long to) {
+            List<CalendarEntry> overlapping = new ArrayList<CalendarEntry>();
+            collect(_root, from, to, overlapping);
+            return overlapping;
+        }
+
+
+        private Node insert(Node node, Node newNode) {
+            if (node == null) return newNode;
+            if (newNode.compareTo(node.start, node.id) < 0) {
+                node.left = insert(node.left, newNode);
+                if (node.left.priority > node.priority) node = rotateRight(node);
+            }
+            else {
+                node.right = insert(node.right, newNode);
+                if (node.right.priority > node.priority) node = rotateLeft(node);
+            }
+            node.update();
+            return node;
+        }
+
+
+        private Node remove(Node node, long start, long id) {
+            if (node == null) return null;
+            int comparison = node.compareTo(start, id);
+            if (comparison > 0) {
+                node.left = remove(node.left, start, id);
+            }
+            else if (comparison < 0) {
+                node.right = remove(node.right, start, id);
+            }
+            else if (node.left == null) {
+                return node.right;
+            }
+            else if (node.right == null) {
+                return node.left;
+            }
+            else if (node.left.priority > node.right.priority) {
+                node = rotateRight(node);
+                node.right = remove(node.right, start, id);
+            }
+            else {
+                node = rotateLeft(node);
+                node.left = remove(node.left, start, id);
+            }
+            node.update();
+            return node;
+        }
+
+
+        // in order traversal, so entries are collected in start time order
+        private void collect(Node node, long from, long to, List<CalendarEntry> list) {
+            if (node == null || node.maxEnd <= from) return;
+            collect(node.left, from, to, list);
+            if (node.start < to) {
+                if (node.end > from) list.add(node.entry);
+                collect(node.right, from, to, list);
+            }
+        }
+
+
+        private Node rotateRight(Node node) {
+            Node left = node.left;
+            node.left = left.right;
+            left.right = node;
+            node.update();
+            left.update();
+            return left;
+        }
+
+
+        private Node rotateLeft(Node node) {
+            Node right = node.right;
+            node.right = right.left;
+            right.left = node;
+            node.update();
+            right.update();
+            return right;
+        }
+    }
+
+
+    private static class Node {
+        final CalendarEntry entry;
+        final long start;
+        final long end;
+        final long id;
+        final int priority;
+        long maxEnd;                                 // latest end time in subtree
+        Node left;
+        Node right;
+
+        Node(CalendarEntry e, int p) {
+            entry = e;
+            start = e.getStartTime();
+            end = e.getEndTime();
+            id = e.getEntryID();
+            priority = p;
+            maxEnd = end;
+        }
+
+        // orders by start time, then id
+        int compareTo(long otherStart, long otherID) {
+            int comparison = Long.compare(start, otherStart);
+            return comparison != 0 ? comparison : Long.compare(id, otherID);
+        }
+
+        void update() {
+            maxEnd = end;
+            if (left != null && left.maxEnd > maxEnd) maxEnd = left.maxEnd;
+            if (right != null && right.maxEnd > maxEnd) maxEnd = right.maxEnd;
+        }
+    }
+
+}
@@ -20,10 +20,7 @@ package org.yawlfoundation.yawl.resourcing.calendar;
 
 import org.yawlfoundation.yawl.resourcing.datastore.persistence.Persister;
 
-import java.util.Date;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
+import java.util.*;
 
 /**
  * Manages the Calendar Log - an archive of calendar entry and change activity.
@@ -35,6 +32,8 @@ import java.util.Set;
  */
 public class CalendarLogger {
 
+    private static final int MAX_KEYS_PER_QUERY = 500;
+
     private Persister _persister;
 
     public CalendarLogger() {
@@ -78,6 +77,37 @@ public class CalendarLogger {
     }
 
 
+    /**
+     * Gets the latest log entry for each of a number of calendar entries, reading
+     * them from the database together rather than one calendar entry at a time
+     * @param calEntryIDs the ids of the calendar entries
+     * @return a map of [calendar entry id, its latest log entry]. Calendar entries
+     * without a log entry have no mapping
+     */
+    public Map<Long, CalendarLogEntry> getLogEntriesForCalendarKeys(
+            Collection<Long> calEntryIDs) {
+        Map<Long, CalendarLogEntry> logEntries = new HashMap<Long, CalendarLogEntry>();
+        List<Long> keyList = new ArrayList<Long>(new HashSet<Long>(calEntryIDs));
+        for (int i = 0; i < keyList.size(); i += MAX_KEYS_PER_QUERY) {
+            List<?> list = _persister.createQuery("FROM CalendarLogEntry AS cle " +
+                                                  "WHERE cle.calendarKey IN (:keys) " +
+                                                  "ORDER BY cle.entryID DESC")
+                    .setParameterList("keys", keyList.subList(i,
+                            Math.min(i + MAX_KEYS_PER_QUERY, keyList.size())))
+                    .list();
+            if (list != null) {
+                for (Object o : list) {
+                    CalendarLogEntry logEntry = (CalendarLogEntry) o;
+                    if (! logEntries.containsKey(logEntry.getCalendarKey())) {
+                        logEntries.put(logEntry.getCalendarKey(), logEntry);   // latest
+                    }
+                }
+            }
+        }
+        return logEntries;
+    }
+
+
     public List getLogEntriesForReservation(String caseID, String activityName, 
                                             String resourceRec) {
         return _persister.createQuery("FROM CalendarLogEntry AS cle " +
@@ -18,6 +18,8 @@
 
 package org.yawlfoundation.yawl.resourcing.calendar;
 
+import org.apache.logging.log4j.LogManager;
+import org.hibernate.HibernateException;
 import org.hibernate.ObjectNotFoundException;
 import org.hibernate.Transaction;
 import org.yawlfoundation.yawl.resourcing.datastore.persistence.Persister;
@@ -47,14 +49,22 @@ public class ResourceCalendar {
 
     private static final String TRANSIENT_FLAG = "__transient__entry__flag__";
     private static final String UNKNOWN_ID_ERR = "Unknown calendar entry id: ";
+    private static final int MAX_IDS_PER_QUERY = 500;
 
     private static ResourceCalendar _me;
     private final Persister _persister;
+    private final CalendarIndex _index;           // in-memory copy of calendar entries
     private Transaction _tx;
 
+    // changes to the index awaiting the commit of the writes they mirror (guarded by
+    // _index), and whether one of those writes has failed
+    private final List<Runnable> _uncommitted = new ArrayList<Runnable>();
+    private boolean _uncommittedFailed;
+
 
     private ResourceCalendar() {
         _persister = Persister.getInstance();
+        _index = new CalendarIndex();
     }
 
     public static ResourceCalendar getInstance() {
@@ -69,13 +79,37 @@ public class ResourceCalendar {
     }
 
     public void commitTransaction() {
-        _persister.commit();
+        boolean committed = commit();
         _tx = null;
+        synchronized (_index) {
+            endUncommitted(committed);
+        }
     }
 
     public void rollBackTransaction() {
         _persister.rollback();
         _tx = null;
+        synchronized (_index) {           // the index never saw the rolled back writes
+            _uncommitted.clear();
+            _uncommittedFailed = false;
+        }
+    }
+
+
+    // commits the current transaction, returning false if the commit failed
+    private boolean commit() {
+        Transaction tx = _persister.getOrBeginTransaction();
+        if (tx == null) return false;
+        try {
+            if (tx.isActive()) tx.commit();
+            return true;
+        }
+        catch (HibernateException he) {
+            LogManager.getLogger(ResourceCalendar.class).error(
+                    "Failed to commit calendar transaction", he);
+            _persister.rollback();
+            return false;
+        }
     }
 
     private boolean getCommitFlag() {
@@ -163,8 +197,11 @@ public class ResourceCalendar {
      */
     public int clean(long priorTo) {
         if (priorTo > System.currentTimeMillis()) return -1;
-        return _persister.execUpdate("DELETE FROM CalendarEntry AS ce WHERE ce.endTime<" +
-                priorTo, getCommitFlag());
+        boolean commit = getCommitFlag();
+        int count = _persister.execUpdate("DELETE FROM CalendarEntry AS ce WHERE ce.endTime<" +
+                priorTo, commit);
+        updateIndex(count > -1, commit, () -> _index.removeEndedBefore(priorTo));
+        return count;
     }
 
 
@@ -227,16 +264,30 @@ public class ResourceCalendar {
                                long from, long to, int workload) {
         if (resource == null) return false;
         if (workload == 100) return isAvailable(idsToIgnore, resource, from, to);
-        List list = getTimeSlotEntries(resource, from, to);
-        if (list != null) {
-            for (Object o : list) {
-                CalendarEntry entry = (CalendarEntry) o;
-                if ((idsToIgnore == null) || (! idsToIgnore.contains(entry.getEntryID()))) {
-                    workload += entry.getWorkload();
-                }
+        return getWorkload(idsToIgnore, resource, from, to) + workload < 100;
+    }
+
+
+    /**
+     * Gets the total workload of the calendar entries for a resource that cover any
+     * part of the specified period
+     * @param idsToIgnore the primary key(s) of entries to exclude from the total. An
+     * empty Set (or null) means exclude none
+     * @param resource the resource to get the workload for
+     * @param from the start of a time range to search for
+     * @param to the end of a time range to search for
+     * @return the total percentage workload
+     */
+    public int getWorkload(Set<Long> idsToIgnore, AbstractResource resource,
+                           long from, long to) {
+        int workload = 0;
+        for (Object o : getTimeSlotEntries(resource, from, to)) {
+            CalendarEntry entry = (CalendarEntry) o;
+            if ((idsToIgnore == null) || (! idsToIgnore.contains(entry.getEntryID()))) {
+                workload += entry.getWorkload();
             }
         }
-        return workload < 100;
+        return workload;
     }
 
 
@@ -279,15 +330,35 @@ public class ResourceCalendar {
 
     public List getTimeSlotEntries(String resourceID, boolean isParticipant, long from, long to) {
         if (to <= 0) to = Long.MAX_VALUE;
-        return _persister.createQuery(
-                "FROM CalendarEntry AS ce " +
-                "WHERE ce.resourceID IN (:idlist) " +
-                "AND ce.startTime < :end AND ce.endTime > :start " +
-                "ORDER BY ce.startTime")
-                .setParameterList("idlist", createIDListForQuery(resourceID, isParticipant))
-                .setLong("start", from)
-                .setLong("end", to)
-                .list();
+        return getIndexedEntries(createIDListForQuery(resourceID, isParticipant), from, to);
+    }
+
+
+    /**
+     * Gets the lists of calendar entries within a specified period for each of a
+     * number of resources. The entries of those resources not yet held in memory are
+     * read from the database together, rather than one resource at a time
+     * @param resources the resources to get the entries for
+     * @param from the start of a time range to search for (-ve value for all start times)
+     * @param to the end of a time range to search for (-ve value for all end times)
+     * @return a map of [resource id, its list of calendar entries]
+     */
+    public Map<String, List<CalendarEntry>> getTimeSlotEntries(
+            Collection<AbstractResource> resources, long from, long to) {
+        if (to <= 0) to = Long.MAX_VALUE;
+        Set<String> idSet = new HashSet<String>();
+        for (AbstractResource resource : resources) {
+            idSet.addAll(createIDListForQuery(resource.getID(),
+                    resource instanceof Participant));
+        }
+        loadIndex(idSet);
+
+        Map<String, List<CalendarEntry>> entryMap = new HashMap<String, List<CalendarEntry>>();
+        for (AbstractResource resource : resources) {
+            entryMap.put(resource.getID(), getIndexedEntries(createIDListForQuery(
+                    resource.getID(), resource instanceof Participant), from, to));
+        }
+        return entryMap;
     }
 
 
@@ -315,13 +386,49 @@ public class ResourceCalendar {
 
     public List<TimeSlot> getAvailability(AbstractResource resource, long startTime,
                                           long endTime) {
+
+        // get each unavailable slot for the resource
+        List entries = (endTime > startTime) ?
+                getTimeSlotEntries(resource, startTime, endTime) : null;
+        return toAvailableSlots(entries, startTime, endTime);
+    }
+
+
+    /**
+     * Gets the available time slots within a specified period for each of a number of
+     * resources
+     * @param resources the resources to get the availability of
+     * @param startTime the start of the period
+     * @param endTime the end of the period
+     * @return a map of [resource id, its list of available time slots]
+     */
+    public Map<String, List<TimeSlot>> getAvailability(
+            Collection<AbstractResource> resources, long startTime, long endTime) {
+        Map<String, List<CalendarEntry>> entryMap = (endTime > startTime) ?
+                getTimeSlotEntries(resources, startTime, endTime) :
+                Collections.<String, List<CalendarEntry>>emptyMap();
+        Map<String, List<TimeSlot>> slotMap = new HashMap<String, List<TimeSlot>>();
+        for (AbstractResource resource : resources) {
+            slotMap.put(resource.getID(), toAvailableSlots(
+                    entryMap.get(resource.getID()), startTime, endTime));
+        }
+        return slotMap;
+    }
+
+
+    /**
+     * Gets the available time slots within a specified period, being the gaps between
+     * a resource's calendar entries, and any entries of partial workload
+     * @param entries the resource's entries within the period, ordered by start time
+     * @param startTime the start of the period
+     * @param endTime the end of the period
+     * @return the list of available time slots
+     */
+    private List<TimeSlot> toAvailableSlots(List entries, long startTime, long endTime) {
         List<TimeSlot> available = new ArrayList<TimeSlot>();
 
         if (endTime > startTime) {
-
-            // get each unavailable slot for the resource
-            List entries = getTimeSlotEntries(resource, startTime, endTime);
-            if (! entries.isEmpty()) {
+            if (! (entries == null || entries.isEmpty())) {
                 long endOfPrevSlot = startTime;
                 for (Object o : entries) {
                     CalendarEntry entry = (CalendarEntry) o;
@@ -632,7 +739,8 @@ public class ResourceCalendar {
             if (status.equals(TRANSIENT_FLAG)) {
                 try {
                     entry = (CalendarEntry) _persister.load(CalendarEntry.class, entryID);
-                    _persister.delete(entry, tx);
+                    updateIndex(_persister.delete(entry, tx), false,
+                            () -> _index.remove(entryID));
                 }
                 catch (ObjectNotFoundException onfe) {
                     // nothing to remove if not found
@@ -642,7 +750,9 @@ public class ResourceCalendar {
                 entry = (CalendarEntry) _persister.get(CalendarEntry.class, entryID);
                 if (entry != null) {
                     entry.setStatus(status);
-                    _persister.update(entry, tx);
+                    CalendarEntry updated = entry;
+                    updateIndex(_persister.update(entry, tx), false,
+                            () -> _index.update(updated));
                 }
             }
         }
@@ -662,7 +772,9 @@ public class ResourceCalendar {
                     if (logEntry.getPhase().equals("SOU")) {
                         resourceIDs.add(calEntry.getResourceID());
                     }
-                    _persister.delete(calEntry, tx);
+                    long entryID = calEntry.getEntryID();
+                    updateIndex(_persister.delete(calEntry, tx), false,
+                            () -> _index.remove(entryID));
                     notifyStatusChange(calEntry);
                 }
             }
@@ -702,8 +814,9 @@ public class ResourceCalendar {
      */
     public long addEntry(CalendarEntry entry) throws CalendarException {
         if (entry.getEndTime() > entry.getStartTime()) {
-            if (_tx != null) _persister.insert(entry, _tx);
-            else _persister.insert(entry);
+            boolean inserted = (_tx != null) ? _persister.insert(entry, _tx) :
+                    _persister.insert(entry);
+            updateIndex(inserted, _tx == null, () -> _index.add(entry));
             return entry.getEntryID();
         }
         else throw new CalendarException("Failed to add Entry: End time is before Start time.");
@@ -732,13 +845,7 @@ public class ResourceCalendar {
         if (id == null) {
             return getEntries(from, to);
         }
-        return _persister.createQuery("FROM CalendarEntry AS ce WHERE ce.resourceID=:id" +
-                " AND ce.startTime < :end AND ce.endTime > :start " +
-                " ORDER BY ce.startTime")
-                .setString("id", id)
-                .setLong("start", from)
-                .setLong("end", to)
-                .list();
+        return getIndexedEntries(Collections.singletonList(id), from, to);
     }
 
 
@@ -772,7 +879,8 @@ public class ResourceCalendar {
      * @param entry the entry to update
      */
     public void updateEntry(CalendarEntry entry) {
-        _persister.update(entry, getCommitFlag());
+        boolean commit = getCommitFlag();
+        updateIndex(_persister.update(entry, commit), commit, () -> _index.update(entry));
     }
 
 
@@ -782,8 +890,11 @@ public class ResourceCalendar {
      * @return true if the removal was successful
      */
     private boolean removeEntry(long entryID) {
-        return _persister.execUpdate("DELETE FROM CalendarEntry AS ce WHERE ce.entryID="
-                + entryID, getCommitFlag()) > 0;
+        boolean commit = getCommitFlag();
+        int count = _persister.execUpdate("DELETE FROM CalendarEntry AS ce WHERE ce.entryID="
+                + entryID, commit);
+        updateIndex(count > -1, commit, () -> _index.remove(entryID));
+        return count > 0;
     }
 
 
@@ -792,7 +903,9 @@ public class ResourceCalendar {
      * @param entry the calendar entry to remove
      */
     private void removeEntry(CalendarEntry entry) {
-        _persister.delete(entry, getCommitFlag());
+        boolean commit = getCommitFlag();
+        updateIndex(_persister.delete(entry, commit), commit,
+                () -> _index.remove(entry.getEntryID()));
     }
 
 
@@ -812,8 +925,11 @@ public class ResourceCalendar {
      * @return the number of entries removed
      */
     private int removeEntries(String id) {
-        return _persister.execUpdate("DELETE FROM CalendarEntry AS ce WHERE ce.resourceID='"
-                + id + "'", getCommitFlag());
+        boolean commit = getCommitFlag();
+        int count = _persister.execUpdate("DELETE FROM CalendarEntry AS ce WHERE ce.resourceID='"
+                + id + "'", commit);
+        updateIndex(count > -1, commit, () -> _index.removeResource(id));
+        return count;
     }
 
 
@@ -840,7 +956,64 @@ public class ResourceCalendar {
         String cmd = String.format(
                 "DELETE FROM CalendarEntry AS ce WHERE ce.resourceID='%s' " +
                 "AND ce.startTime < %d AND ce.endTime > %d", id, to, from);
-        return _persister.execUpdate(cmd, getCommitFlag());
+        boolean commit = getCommitFlag();
+        int count = _persister.execUpdate(cmd, commit);
+        updateIndex(count > -1, commit, () -> _index.removeOverlapping(id, from, to));
+        return count;
+    }
+
+
+    /**
+     * Gets the entries of a set of resource ids within a specified period from the
+     * index, first loading the entries of any of the ids not yet held. While a
+     * transaction is open, the entries are read from the database instead, so that
+     * the transaction's own (uncommitted) writes are seen
+     * @param resourceIDs the resource (or resource group) ids
+     * @param from the start of the date/time range
+     * @param to the end of the date/time range
+     * @return the matching list of calendar entries, ordered by start time
+     */
+    private List<CalendarEntry> getIndexedEntries(Collection<String> resourceIDs,
+                                                  long from, long to) {
+        if (_tx != null) {
+            List<CalendarEntry> entries = new ArrayList<CalendarEntry>();
+            for (Object o : _persister.createQuery(
+                    "FROM CalendarEntry AS ce " +
+                    "WHERE ce.resourceID IN (:idlist) " +
+                    "AND ce.startTime < :end AND ce.endTime > :start " +
+                    "ORDER BY ce.startTime")
+                    .setParameterList("idlist", resourceIDs)
+                    .setLong("start", from)
+                    .setLong("end", to)
+                    .list()) {
+                entries.add((CalendarEntry) o);
+            }
+            return entries;
+        }
+        loadIndex(resourceIDs);
+        return _index.getOverlapping(resourceIDs, from, to);
+    }
+
+
+    /**
+     * Reads the entries of each of a set of resource ids not yet held by the index
+     * from the database, and loads them into the index. The index is locked while
+     * doing so, so that no entry written meanwhile is missed by the index
+     * @param resourceIDs the resource (or resource group) ids
+     */
+    private void loadIndex(Collection<String> resourceIDs) {
+        if (_tx != null) return;                 // the database holds uncommitted writes
+        synchronized (_index) {
+            List<String> unloaded = _index.getUnloaded(resourceIDs);
+            for (int i = 0; i < unloaded.size(); i += MAX_IDS_PER_QUERY) {
+                List<String> idList = unloaded.subList(i,
+                        Math.min(i + MAX_IDS_PER_QUERY, unloaded.size()));
+                _index.load(idList, _persister.createQuery(
+                        "FROM CalendarEntry AS ce WHERE ce.resourceID IN (:idlist)")
+                        .setParameterList("idlist", idList)
+                        .list());
+            }
+        }
     }
 
 
@@ -935,14 +1108,69 @@ public class ResourceCalendar {
             for (CalendarEntry entry : entries) {
                 CalendarEntry blocked = (CalendarEntry) _persister.get(
                         CalendarEntry.class, entry.getChainID());
-                if (blocked != null) _persister.delete(blocked, tx);
-                _persister.delete(entry, tx);
+                if (blocked != null) deleteEntry(blocked, tx);
+
+                // entries from the index are copies, so delete the persisted entry
+                CalendarEntry persisted = (CalendarEntry) _persister.get(
+                        CalendarEntry.class, entry.getEntryID());
+                if (persisted != null) deleteEntry(persisted, tx);
                 notifyStatusChange(entry);
             }
         }
     }
 
 
+    private void deleteEntry(CalendarEntry entry, Transaction tx) {
+        updateIndex(_persister.delete(entry, tx), false,
+                () -> _index.remove(entry.getEntryID()));
+    }
+
+
+    /**
+     * Mirrors a database write in the index, so that the index only ever holds
+     * committed entries. The change is made now if the write was committed, or when
+     * the transaction it is part of commits. A failed write clears the index, to be
+     * reloaded from the database as needed
+     * @param written true if the database write succeeded
+     * @param committed true if the write was committed by itself, false if it is part
+     *                  of a transaction not yet committed
+     * @param change the change to make to the index
+     */
+    private void updateIndex(boolean written, boolean committed, Runnable change) {
+        synchronized (_index) {
+            if (! committed) {
+                if (written) _uncommitted.add(change);
+                else {
+                    _index.clear();
+                    _uncommittedFailed = true;
+                }
+            }
+            else {
+
+                // committing (or rolling back) the write also ended the transaction
+                // of any earlier writes left uncommitted
+                endUncommitted(written);
+                if (written) change.run();
+            }
+        }
+    }
+
+
+    // makes the index changes awaiting the end of their transaction: if it committed
+    // they are made, otherwise (or if any of its writes failed) the index is cleared.
+    // Must be called holding the index's lock
+    private void endUncommitted(boolean committed) {
+        if (! committed || _uncommittedFailed) {
+            _index.clear();
+        }
+        else {
+            for (Runnable change : _uncommitted) change.run();
+        }
+        _uncommitted.clear();
+        _uncommittedFailed = false;
+    }
+
+
     private void updateBlockedEntry(CalendarEntry blockedEntry, long time) {
         if (blockedEntry != null) {
             long blockDuration = blockedEntry.getEndTime() - blockedEntry.getStartTime();
@@ -144,12 +144,24 @@ public class ResourceScheduler {
             UtilisationReconstructor reconstructor = new UtilisationReconstructor();
             int i = -1;
 
+            // get the calendar entries for each referenced resource, and then the
+            // log entries of all of them together
+            List<AbstractResource> resources = getActualResourceList(uResource);
+            Map<String, List<CalendarEntry>> entryMap =
+                    _calendar.getTimeSlotEntries(resources, from, to);
+            Set<Long> entryIDs = new HashSet<Long>();
+            for (List<CalendarEntry> entries : entryMap.values()) {
+                for (CalendarEntry calEntry : entries) {
+                    entryIDs.add(calEntry.getEntryID());
+                }
+            }
+            Map<Long, CalendarLogEntry> logEntries =
+                    _uLogger.getLogEntriesForCalendarKeys(entryIDs);
+
             // for all of the calendar entries and for each referenced resource
-            for (AbstractResource resource : getActualResourceList(uResource)) {
-                for (Object o : _calendar.getTimeSlotEntries(resource, from, to)) {
-                    CalendarEntry calEntry = (CalendarEntry) o;
-                    CalendarLogEntry logEntry =
-                            _uLogger.getLogEntryForCalendarKey(calEntry.getEntryID());
+            for (AbstractResource resource : resources) {
+                for (CalendarEntry calEntry : entryMap.get(resource.getID())) {
+                    CalendarLogEntry logEntry = logEntries.get(calEntry.getEntryID());
                     String caseID = null;
                     String activityName = null;
                     String phase = null;
@@ -212,8 +224,10 @@ public class ResourceScheduler {
      */
     public List<TimeSlot> getAvailability(UtilisationResource uResource, long from, long to) {
         List<TimeSlot> availableSlots = new ArrayList<TimeSlot>();
-        for (AbstractResource resource : getActualResourceList(uResource)) {
-            availableSlots.addAll(_calendar.getAvailability(resource, from, to));
+        List<AbstractResource> resources = getActualResourceList(uResource);
+        Map<String, List<TimeSlot>> slotMap = _calendar.getAvailability(resources, from, to);
+        for (AbstractResource resource : resources) {
+            availableSlots.addAll(slotMap.get(resource.getID()));
         }
         return availableSlots;
     }
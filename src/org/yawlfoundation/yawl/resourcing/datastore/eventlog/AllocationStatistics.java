@@ -0,0 +1,281 @@
+/*
+ * Copyright (c) 2004-2020 The YAWL Foundation. All rights reserved.
+ * The YAWL Foundation is a collaboration of individuals and
+ * organisations who are committed to improving workflow technology.
+ *
+ * This file is part of YAWL. YAWL is free software: you can
+ * redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation.
+ *
+ * YAWL is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with YAWL. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.yawlfoundation.yawl.resourcing.datastore.eventlog;
+
+import org.apache.logging.log4j.LogManager;
+import org.yawlfoundation.yawl.resourcing.datastore.persistence.Persister;
+
+import java.util.*;
+
+/**
+ * An in-memory index of the logged events that history-based allocators base their
+ * choices on. For each specification, task and event type, it holds the number of
+ * times each participant has been recorded against the event, and the time of the
+ * latest such event.
+ * <p/>
+ * The index is built from the event log when the service starts, and is then kept
+ * up to date as each event is logged, so an allocator can make its choice by
+ * looking up each participant in its distribution set rather than by reading and
+ * sorting the task's full history.
+ * <p/>
+ * The number of tasks held is bounded. When the bound is reached, the least recently
+ * used task is dropped from the index. Once a task has been dropped, any task not
+ * held may have logged events the index no longer counts, so the next time its
+ * statistics are asked for they are read from the event log with a single grouped
+ * query, and the task is indexed again.
+ */
+public class AllocationStatistics {
+
+    public static final int DEFAULT_MAX_TASKS = 10000;
+
+    // the events that history-based allocators use
+    public static final Set<EventLogger.event> INDEXED_EVENTS = Collections.unmodifiableSet(
+            EnumSet.of(EventLogger.event.allocate, EventLogger.event.complete));
+
+    private static AllocationStatistics _me;
+
+    private final Map<TaskKey, TaskEntry> _tasks;
+    private final int _maxTasks;
+    private boolean _built;
+    private boolean _evicted;                // true once a task has been dropped
+
+
+    public AllocationStatistics(int maxTasks) {
+        _maxTasks = maxTasks;
+        _tasks = new LinkedHashMap<TaskKey, TaskEntry>(16, 0.75f, true) {
+            protected boolean removeEldestEntry(Map.Entry<TaskKey, TaskEntry> eldest) {
+                if (size() > _maxTasks) {
+                    _evicted = true;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+
+    public static AllocationStatistics getInstance() {
+        if (_me == null) _me = new AllocationStatistics(DEFAULT_MAX_TASKS);
+        return _me;
+    }
+
+
+    /**
+     * Builds the index from the event log. Should be called before any events are
+     * logged
+     */
+    public void rebuild() {
+        StringBuilder events = new StringBuilder();
+        for (EventLogger.event event : INDEXED_EVENTS) {
+            if (events.length() > 0) events.append(", ");
+            events.append('\'').append(event.name()).append('\'');
+        }
+        Persister persister = Persister.getInstance();
+        List<?> rows = persister.execQuery(String.format(
+                "SELECT re._specKey, re._taskID, re._event, re._resourceID, " +
+                "MAX(re._timeStamp), COUNT(re) FROM ResourceEvent AS re " +
+                "WHERE re._event IN (%s) AND re._taskID IS NOT NULL " +
+                "AND re._resourceID IS NOT NULL " +
+                "GROUP BY re._specKey, re._taskID, re._event, re._resourceID", events));
+        persister.commit();
+        if (rows != null) {
+            rebuild(rows);
+        }
+        else {
+            LogManager.getLogger(AllocationStatistics.class).warn(
+                    "Unable to read the event log - allocators will read it directly");
+        }
+    }
+
+
+    /**
+     * Builds the index from a set of event log summary rows
+     * @param rows a list of Object[] rows, each holding a specification key, task id,
+     *             event name, participant id, latest event time and event count
+     */
+    public synchronized void rebuild(List<?> rows) {
+        _tasks.clear();
+        _evicted = false;
+        for (Object o : rows) {
+            Object[] row = (Object[]) o;
+            EventLogger.event event = EventLogger.getEventByName((String) row[2]);
+            if (event != null) {
+                getOrAddEntry(new TaskKey(((Number) row[0]).longValue(),
+                        (String) row[1], event)).add((String) row[3],
+                        ((Number) row[4]).longValue(), ((Number) row[5]).longValue());
+            }
+        }
+        _built = true;
+    }
+
+
+    /**
+     * Adds a newly logged event to the index
+     * @param event the event
+     */
+    public void add(ResourceEvent event) {
+        EventLogger.event eType = EventLogger.getEventByName(event.get_event());
+        if (eType == null || ! INDEXED_EVENTS.contains(eType) ||
+                event.get_taskID() == null || event.get_resourceID() == null) return;
+
+        TaskEntry entry;
+        synchronized (this) {
+            if (! _built) return;
+            TaskKey key = new TaskKey(event.get_specKey(), event.get_taskID(), eType);
+
+            // a task that may have been dropped is read from the log when next needed
+            if (_evicted && ! _tasks.containsKey(key)) return;
+            entry = getOrAddEntry(key);
+        }
+        entry.add(event.get_resourceID(), event.get_timeStamp(), 1);
+    }
+
+
+    /**
+     * Gets the statistics for an event of a task
+     * @param specKey the specification's key in the event log
+     * @param taskID the task id
+     * @param event the event type
+     * @return the statistics, or null if the index doesn't hold them (in which case
+     * they should be read from the event log)
+     */
+    public TaskEntry getEntry(long specKey, String taskID, EventLogger.event event) {
+        TaskKey key = new TaskKey(specKey, taskID, event);
+        synchronized (this) {
+            if (! (_built && INDEXED_EVENTS.contains(event))) return null;
+            if (! _evicted || _tasks.containsKey(key)) return getOrAddEntry(key);
+        }
+
+        // the task may have been dropped, so read it from the log - outside the lock,
+        // so that allocations for other tasks aren't held up by the query
+        List<?> rows = readTaskRows(specKey, taskID, event);
+        if (rows == null) return null;
+        TaskEntry entry = new TaskEntry();
+        for (Object o : rows) {
+            Object[] row = (Object[]) o;
+            entry.add((String) row[0], ((Number) row[1]).longValue(),
+                    ((Number) row[2]).longValue());
+        }
+        synchronized (this) {
+            TaskEntry existing = _tasks.get(key);       // read meanwhile by another call
+            if (existing != null) return existing;
+            _tasks.put(key, entry);
+            return entry;
+        }
+    }
+
+
+    public synchronized boolean isBuilt() { return _built; }
+
+    public synchronized int getTaskCount() { return _tasks.size(); }
+
+
+    /**
+     * Reads the statistics for an event of a task from the event log
+     * @param specKey the specification's key in the event log
+     * @param taskID the task id
+     * @param event the event type
+     * @return a list of Object[] rows, each holding a participant id, latest event time
+     * and event count, or null if the event log could not be read
+     */
+    protected List<?> readTaskRows(long specKey, String taskID, EventLogger.event event) {
+        Persister persister = Persister.getInstance();
+        List<?> rows = persister.execQuery(String.format(
+                "SELECT re._resourceID, MAX(re._timeStamp), COUNT(re) " +
+                "FROM ResourceEvent AS re WHERE re._specKey = %d " +
+                "AND re._taskID = '%s' AND re._event = '%s' " +
+                "AND re._resourceID IS NOT NULL GROUP BY re._resourceID",
+                specKey, taskID.replace("'", "''"), event.name()));
+        persister.commit();
+        return rows;
+    }
+
+
+    private TaskEntry getOrAddEntry(TaskKey key) {
+        TaskEntry entry = _tasks.get(key);
+        if (entry == null) {
+            entry = new TaskEntry();
+            _tasks.put(key, entry);
+        }
+        return entry;
+    }
+
+
+    /*******************************************************************************/
+
+    /**
+     * The event count and latest event time of each participant for an event of a task
+     */
+    public static class TaskEntry {
+
+        private final Map<String, long[]> _participants = new HashMap<String, long[]>();
+
+        private synchronized void add(String pid, long time, long count) {
+            long[] stats = _participants.get(pid);
+            if (stats == null) {
+                _participants.put(pid, new long[] { time, count });
+            }
+            else {
+                stats[0] = Math.max(stats[0], time);
+                stats[1] += count;
+            }
+        }
+
+        /** @return the number of times a participant is recorded against the event */
+        public synchronized long getCount(String pid) {
+            long[] stats = _participants.get(pid);
+            return stats != null ? stats[1] : 0;
+        }
+
+        /** @return the time of the participant's latest event, or -1 if none */
+        public synchronized long getLastTime(String pid) {
+            long[] stats = _participants.get(pid);
+            return stats != null ? stats[0] : -1;
+        }
+
+        /** @return true if no participant has been recorded against the event */
+        public synchronized boolean isEmpty() { return _participants.isEmpty(); }
+    }
+
+
+    private static class TaskKey {
+        final long specKey;
+        final String taskID;
+        final EventLogger.event event;
+
+        TaskKey(long specKey, String taskID, EventLogger.event event) {
+            this.specKey = specKey;
+            this.taskID = taskID;
+            this.event = event;
+        }
+
+        public boolean equals(Object o) {
+            if (! (o instanceof TaskKey)) return false;
+            TaskKey other = (TaskKey) o;
+            return specKey == other.specKey && event == other.event &&
+                    taskID.equals(other.taskID);
+        }
+
+        public int hashCode() {
+            return (31 * Long.hashCode(specKey) + taskID.hashCode()) * 31 +
+                    event.hashCode();
+        }
+    }
+
+}
@@ -160,8 +160,7 @@ public class EventLogger {
                                     String pid, event eType) {
         long specKey = getSpecificationKey(specID);
         ResourceEvent resEvent = new ResourceEvent(specKey, caseID, pid, eType);
-        insertEvent(resEvent);
-        announceEvent(specID, resEvent);
+        insertEvent(specID, resEvent);
     }
 
 
@@ -169,8 +168,8 @@ public class EventLogger {
         YSpecificationID specID = new YSpecificationID(wir);
         long specKey = getSpecificationKey(specID);
         ResourceEvent resEvent = new ResourceEvent(specKey, wir, pid, eType);
-        insertEvent(resEvent);
-        announceEvent(specID, resEvent);
+        AllocationStatistics.getInstance().add(resEvent);
+        insertEvent(specID, resEvent);
     }
 
 
@@ -183,10 +182,18 @@ public class EventLogger {
     }
 
 
-    private static void announceEvent(YSpecificationID specID, ResourceEvent event) {
-        if (_eventServer != null) {
-            _eventServer.announceResourceEvent(specID, event);
-        }
+    // the event is announced to the event server only once it has been persisted,
+    // so that the log holds any event a listening service may later reload from it
+    private static void insertEvent(final YSpecificationID specID,
+                                    final ResourceEvent event) {
+        _executor.execute(new Runnable() {
+            public void run() {
+                Persister.getInstance().insert(event);
+                if (_eventServer != null) {
+                    _eventServer.announceResourceEvent(specID, event);
+                }
+            }
+        });
         for (ResourceEventListener listener : getListeners()) {
             listener.eventOccurred(specID, event);
         }
@@ -18,6 +18,7 @@
 
 package org.yawlfoundation.yawl.resourcing.datastore.persistence;
 
+import org.hibernate.HibernateException;
 import org.hibernate.Query;
 import org.hibernate.Transaction;
 import org.yawlfoundation.yawl.engine.interfce.WorkItemRecord;
@@ -27,6 +28,7 @@ import org.yawlfoundation.yawl.resourcing.datastore.eventlog.SpecLog;
 import org.yawlfoundation.yawl.resourcing.resource.UserPrivileges;
 
 import java.io.Serializable;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -160,6 +162,27 @@ public final class Persister implements Serializable {
         return (tx != null) ? _db.exec(obj, HibernateEngine.DB_INSERT, tx): insert(obj);
     }
 
+    /**
+     * Updates a number of objects within a single transaction
+     * @param objects the objects to update
+     * @return true if all were updated and committed. On failure, the transaction
+     * is rolled back
+     */
+    public synchronized boolean updateAll(Collection<?> objects) {
+        Transaction tx = getOrBeginTransaction();
+        for (Object obj : objects) {
+            if (! update(obj, tx)) return false;
+        }
+        try {
+            tx.commit();                    // most update failures only surface here
+            return true;
+        }
+        catch (HibernateException he) {
+            rollback();
+            return false;
+        }
+    }
+
     public synchronized boolean update(Object obj, boolean commit) {
         return _db.exec(obj, HibernateEngine.DB_UPDATE, commit);
     }
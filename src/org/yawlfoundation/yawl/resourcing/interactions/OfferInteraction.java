@@ -24,7 +24,6 @@ import org.jdom2.Element;
 import org.jdom2.Namespace;
 import org.yawlfoundation.yawl.engine.interfce.WorkItemRecord;
 import org.yawlfoundation.yawl.resourcing.ResourceManager;
-import org.yawlfoundation.yawl.resourcing.WorkQueue;
 import org.yawlfoundation.yawl.resourcing.constraints.AbstractConstraint;
 import org.yawlfoundation.yawl.resourcing.filters.AbstractFilter;
 import org.yawlfoundation.yawl.resourcing.resource.Participant;
@@ -296,10 +295,7 @@ public class OfferInteraction extends AbstractInteraction {
 
     public void withdrawOffer(WorkItemRecord wir, Set<Participant> offeredSet) {
         if (offeredSet != null) {
-            for (Participant p : offeredSet) {
-                p.getWorkQueues().removeFromQueue(wir, WorkQueue.OFFERED);
-                _rm.announceModifiedQueue(p.getID()) ;
-            }
+            _rm.withdrawOfferFrom(offeredSet, wir);
         }
 
         // a fired instance of a multi-instance workitem on the unoffered queue will
@@ -22,6 +22,7 @@ import org.yawlfoundation.yawl.engine.interfce.ServletUtils;
 import org.yawlfoundation.yawl.engine.interfce.WorkItemRecord;
 import org.yawlfoundation.yawl.engine.interfce.YHttpServlet;
 import org.yawlfoundation.yawl.resourcing.ResourceManager;
+import org.yawlfoundation.yawl.resourcing.datastore.eventlog.AllocationStatistics;
 import org.yawlfoundation.yawl.resourcing.datastore.eventlog.EventLogger;
 import org.yawlfoundation.yawl.resourcing.datastore.eventlog.LogMiner;
 import org.yawlfoundation.yawl.resourcing.datastore.orgdata.DataBackupEngine;
@@ -90,6 +91,11 @@ public class ResourceGateway extends YHttpServlet {
                     // enable/disable process logging
                     EventLogger.setLogging(getBooleanFromContext("EnableLogging", true));
 
+                    // build the index of logged events used by history-based allocators
+                    if (getBooleanFromContext("EnableLogging", true)) {
+                        AllocationStatistics.getInstance().rebuild();
+                    }
+
                     // enable/disable logging of all offers
                     String logOffers = context.getInitParameter("LogOffers");
                     EventLogger.setOfferLogging(getBooleanFromContext("LogOffers", true));
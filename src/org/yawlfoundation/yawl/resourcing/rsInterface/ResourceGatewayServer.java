@@ -22,6 +22,7 @@ import org.apache.logging.log4j.LogManager;
 import org.yawlfoundation.yawl.engine.YSpecificationID;
 import org.yawlfoundation.yawl.engine.interfce.Interface_Client;
 import org.yawlfoundation.yawl.engine.interfce.WorkItemRecord;
+import org.yawlfoundation.yawl.resourcing.client.CostClient;
 import org.yawlfoundation.yawl.resourcing.datastore.eventlog.ResourceEvent;
 import org.yawlfoundation.yawl.resourcing.util.TaggedStringList;
 import org.yawlfoundation.yawl.util.HttpURLValidator;
@@ -31,6 +32,9 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Author: Michael Adams
@@ -44,15 +48,28 @@ public class ResourceGatewayServer extends Interface_Client {
     public static final int NOTIFY_UTILISATION_STATUS_CHANGE = 0;
     public static final int NOTIFY_RESOURCE_EVENT = 1;
 
+    // the limit on the cases awaiting a resync, beyond which all cases are resynced
+    private static final int MAX_COST_RESYNCS = 1000;
+    private static final long COST_RESYNC_DELAY = 30;              // seconds
+
 
     private String _ixURI ;      // the uri to Interface X Service (exception handling)
     private String _isURI ;      // the uri to Interface S Service (resource scheduling)
+    private CostClient _costClient;      // announces events to the Cost Service
+    private ScheduledExecutorService _costExecutor;
     private Map<String, TaggedStringList> _isListeners;
     private Set<String> _eventListeners;
 
+    // accessed only on the cost executor's thread
+    private String _costHandle;                  // the session with the cost service
+    private Set<String> _costResyncs;            // cases that may have missed events
+    private boolean _costResyncAll;
+    private boolean _costResyncScheduled;
+
     public ResourceGatewayServer() {
         _isListeners = new HashMap<String, TaggedStringList>();
         _eventListeners = new HashSet<String>();
+        _costResyncs = new HashSet<String>();
     }
 
 
@@ -61,6 +78,20 @@ public class ResourceGatewayServer extends Interface_Client {
     }
 
 
+    // events are announced to the cost service in order, on a single background
+    // thread, so that the process is not held up by the cost service
+    public void setCostServiceClient(CostClient client) {
+        _costClient = client;
+        if (_costExecutor == null) {
+            _costExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "CostServiceAnnouncer");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+
     public void setSchedulingInterfaceURI(String uri) {
         _isURI = uri;
     }
@@ -141,6 +172,11 @@ public class ResourceGatewayServer extends Interface_Client {
 
 
     public void announceResourceEvent(YSpecificationID specID, ResourceEvent event) {
+        if (_costClient != null) {
+            final String caseID = event.get_caseID();
+            final String eventXML = event.toXML();
+            _costExecutor.execute(() -> announceCostEvent(specID, caseID, eventXML));
+        }
         for (String listener : _eventListeners) {
             Map<String, String> params = prepareParams(NOTIFY_RESOURCE_EVENT);
             params.putAll(specID.toMap());
@@ -164,6 +200,65 @@ public class ResourceGatewayServer extends Interface_Client {
     }
 
 
+    // the cost service answers from the events announced to it, so if an event can't
+    // be announced its case is resynced from the log before any later event is
+    // announced, or after a delay if there are none
+    private void announceCostEvent(YSpecificationID specID, String caseID,
+                                   String eventXML) {
+        try {
+            resyncCostCases();
+            _costClient.notifyResourceEvent(specID, eventXML, getCostHandle());
+        }
+        catch (IOException | RuntimeException e) {
+            _costHandle = null;                 // reconnect, in case it has expired
+            if (caseID != null) {
+                _costResyncs.add(caseID);
+                if (_costResyncs.size() > MAX_COST_RESYNCS) {
+                    _costResyncAll = true;
+                    _costResyncs.clear();
+                }
+            }
+            scheduleCostResync();
+            LogManager.getLogger(this.getClass()).warn(
+                    "Failed to announce event to cost service, case {} will be " +
+                    "resynced: {}", caseID, e.getMessage());
+        }
+    }
+
+
+    private void resyncCostCases() throws IOException {
+        if (_costResyncAll || ! _costResyncs.isEmpty()) {
+            _costClient.resyncCases(_costResyncAll ? null : _costResyncs,
+                    getCostHandle());
+            _costResyncs.clear();
+            _costResyncAll = false;
+        }
+    }
+
+
+    private void scheduleCostResync() {
+        if (! _costResyncScheduled) {
+            _costResyncScheduled = true;
+            _costExecutor.schedule(() -> {
+                _costResyncScheduled = false;
+                try {
+                    resyncCostCases();
+                }
+                catch (IOException | RuntimeException e) {
+                    _costHandle = null;
+                    scheduleCostResync();
+                }
+            }, COST_RESYNC_DELAY, TimeUnit.SECONDS);
+        }
+    }
+
+
+    private String getCostHandle() throws IOException {
+        if (_costHandle == null) _costHandle = _costClient.getHandle();
+        return _costHandle;
+    }
+
+
     private Map<String, String> prepareParams(int action) {
         Map<String, String> params = new HashMap<String, String>();
         params.put("action", String.valueOf(action)) ;
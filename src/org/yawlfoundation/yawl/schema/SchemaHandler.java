@@ -167,6 +167,15 @@ public class SchemaHandler {
     }
 
 
+    /**
+     * @return the compiled schema, or null if it has not been successfully compiled.
+     * Unlike this handler, the compiled schema is thread-safe and may be shared.
+     */
+    public Schema getCompiledSchema() {
+        return compiled ? schema : null;
+    }
+
+
     /**
      * @return all error messages from the last validation/compilation
      */
@@ -1,6 +1,7 @@
 package org.yawlfoundation.yawl.stateless;
 
 import org.yawlfoundation.yawl.engine.WorkItemCompletion;
+import org.yawlfoundation.yawl.engine.YSpecificationID;
 import org.yawlfoundation.yawl.exceptions.*;
 import org.yawlfoundation.yawl.logging.YLogDataItemList;
 import org.yawlfoundation.yawl.stateless.elements.YSpecification;
@@ -16,6 +17,7 @@ import org.yawlfoundation.yawl.stateless.monitor.YCase;
 import org.yawlfoundation.yawl.stateless.monitor.YCaseExporter;
 import org.yawlfoundation.yawl.stateless.monitor.YCaseImporter;
 import org.yawlfoundation.yawl.stateless.monitor.YCaseMonitor;
+import org.yawlfoundation.yawl.stateless.monitor.YSpecificationRegistry;
 import org.yawlfoundation.yawl.stateless.unmarshal.YMarshal;
 
 import java.util.ArrayList;
@@ -31,6 +33,7 @@ public class YStatelessEngine {
 
     private final YEngine _engine;
     private YCaseMonitor _caseMonitor;                        // watches for idle cases
+    private final YSpecificationRegistry _specRegistry;       // for restoring snapshots
 
 
     /**
@@ -38,6 +41,7 @@ public class YStatelessEngine {
      */
     public YStatelessEngine() {
         _engine = new YEngine();
+        _specRegistry = new YSpecificationRegistry();
     }
 
 
@@ -239,6 +243,36 @@ public class YStatelessEngine {
     }
 
 
+    /**
+     * Register a specification with the engine, so that cases of it can be restored
+     * from binary snapshots. Specifications are also registered when a case of them
+     * is launched or restored from XML.
+     * @param spec the specification to register
+     */
+    public void registerSpecification(YSpecification spec) {
+        _specRegistry.add(spec);
+    }
+
+
+    /**
+     * Remove a specification from the engine's registry
+     * @param specID the id of the specification to remove
+     * @return the removed specification, or null if it wasn't registered
+     */
+    public YSpecification unregisterSpecification(YSpecificationID specID) {
+        return _specRegistry.remove(specID);
+    }
+
+
+    /**
+     * @param specID the id of a specification
+     * @return true if the specification is registered with the engine
+     */
+    public boolean isSpecificationRegistered(YSpecificationID specID) {
+        return _specRegistry.contains(specID);
+    }
+
+
     /**
      * Launch a new case instance for the specification specified. A random UUID is
      * assigned as the case identifier.
@@ -302,6 +336,7 @@ public class YStatelessEngine {
      */
     public YNetRunner launchCase(YSpecification spec, String caseID, String caseParams, YLogDataItemList logItems)
             throws YStateException, YDataStateException, YEngineStateException, YQueryException {
+        _specRegistry.add(spec);
         return _engine.launchCase(spec, caseID, caseParams, logItems);
     }
 
@@ -535,6 +570,27 @@ public class YStatelessEngine {
     }
 
 
+    /**
+     * Get the complete state of a case, marshalled to a compact binary snapshot. The
+     * snapshot refers to the case's specification by id only, so it can be restored
+     * only by an engine with the specification registered.
+     * @param caseID the case to get
+     * @return a binary snapshot of the case state
+     * @throws YStateException if there's any problem capturing the current state
+     */
+    public byte[] unloadCaseSnapshot(YIdentifier caseID) throws YStateException {
+        if (_caseMonitor == null) {
+            throw new YStateException("This engine is not monitoring idle cases");
+        }
+        YCase yCase = _caseMonitor.unloadCase(caseID);           // notnull guaranteed
+        yCase.removeWorkItemTimers();
+        byte[] snapshot = yCase.marshalSnapshot();               // ditto
+        _engine.getAnnouncer().announceCaseEvent(
+                new YCaseEvent(YEventType.CASE_UNLOADED, yCase.getRunner()));
+        return snapshot;
+    }
+
+
     /**
      * Marshals an active case to an XML document
      * @param runner a runner within the case
@@ -549,6 +605,20 @@ public class YStatelessEngine {
     }
 
 
+    /**
+     * Marshals an active case to a compact binary snapshot
+     * @param runner a runner within the case
+     * @return a binary snapshot of the case state
+     * @throws YStateException if there's any problem marshaling the current state
+     */
+    public byte[] marshalCaseSnapshot(YNetRunner runner) throws YStateException {
+        if (runner == null) {
+            throw new YStateException("Missing state for case: runner is null.");
+        }
+        return new YCaseExporter().marshalSnapshot(runner);
+    }
+
+
     /**
      * Restores a case instance from its XML representation (previously returned from
      * unloadCase()
@@ -559,6 +629,27 @@ public class YStatelessEngine {
      */
     public YNetRunner restoreCase(String caseXML) throws YSyntaxException, YStateException {
         List<YNetRunner> runners = new YCaseImporter().unmarshal(caseXML, _engine.getAnnouncer());
+        YNetRunner topRunner = restoreCase(runners);
+        _specRegistry.add(topRunner.getNet().getSpecification());
+        return topRunner;
+    }
+
+
+    /**
+     * Restores a case instance from a binary snapshot (previously returned from
+     * unloadCaseSnapshot() or marshalCaseSnapshot())
+     * @param snapshot the binary snapshot of the case state to restore
+     * @return The primary net runner of the case
+     * @throws YStateException if the case's specification is not registered with this
+     * engine, or there's any problem restoring the current state
+     */
+    public YNetRunner restoreCase(byte[] snapshot) throws YStateException {
+        return restoreCase(new YCaseImporter().unmarshal(snapshot, _specRegistry,
+                _engine.getAnnouncer()));
+    }
+
+
+    private YNetRunner restoreCase(List<YNetRunner> runners) throws YStateException {
 
         // collect events and identify 'top' net runner in the runner hierarchy
         List<YEvent> events = new ArrayList<>();
@@ -23,6 +23,7 @@ import org.jdom2.Element;
 import org.jdom2.output.Format;
 import org.jdom2.output.XMLOutputter;
 import org.yawlfoundation.yawl.elements.YNetElement;
+import org.yawlfoundation.yawl.elements.state.YNetElementIndex;
 import org.yawlfoundation.yawl.stateless.elements.data.YParameter;
 import org.yawlfoundation.yawl.stateless.elements.data.YVariable;
 import org.yawlfoundation.yawl.stateless.elements.data.external.ExternalDataGateway;
@@ -56,6 +57,9 @@ public final class YNet extends YDecomposition {
     private String _externalDataGateway;
     private YNet _clone;
 
+    // dense indices of this net's elements, for markings (not shared with clones)
+    private YNetElementIndex _elementIndex;
+
 
     public YNet(String id, YSpecification specification) {
         super(id, specification);
@@ -325,6 +329,7 @@ public final class YNet extends YDecomposition {
             }
             _clone._externalDataGateway = _externalDataGateway;
             _clone._data = (Document) this._data.clone();
+            _clone._elementIndex = null;
 
             //do cleanup of class variable _clone before returning.
             Object temp = _clone;
@@ -343,6 +348,15 @@ public final class YNet extends YDecomposition {
     }
 
 
+    /**
+     * @return the index used by markings of this net to number its elements
+     */
+    public synchronized YNetElementIndex getElementIndex() {
+        if (_elementIndex == null) _elementIndex = new YNetElementIndex();
+        return _elementIndex;
+    }
+
+
     public boolean orJoinEnabled(YTask orJoinTask, YIdentifier caseID) {
 
         if (orJoinTask == null || caseID == null) {
@@ -355,7 +369,7 @@ public final class YNet extends YDecomposition {
         }
 
         YMarking actualMarking = new YMarking(caseID);
-        List<YNetElement> locations = new Vector<YNetElement>(actualMarking.getLocations());
+        List<YNetElement> locations = actualMarking.getLocations();
         Set preSet = orJoinTask.getPresetElements();
         if (locations.containsAll(preSet)) {
             return true;
@@ -19,6 +19,7 @@
 package org.yawlfoundation.yawl.stateless.elements.marking;
 
 import org.yawlfoundation.yawl.elements.YNetElement;
+import org.yawlfoundation.yawl.elements.state.YNetElementIndex;
 import org.yawlfoundation.yawl.stateless.elements.YCondition;
 import org.yawlfoundation.yawl.stateless.elements.YExternalNetElement;
 import org.yawlfoundation.yawl.stateless.elements.YNet;
@@ -27,6 +28,13 @@ import org.yawlfoundation.yawl.stateless.elements.YTask;
 import java.util.*;
 
 /**
+ * A marking of a net: the multiset of net elements (conditions and busy tasks)
+ * holding a token of a case.
+ * <p/>
+ * Locations are held as an array of token counts indexed by the net's
+ * YNetElementIndex, together with a bitset of the locations that hold at least one
+ * token, so that the multiset comparisons made during OR-join and deadlock analysis
+ * don't need to copy and search lists.
  *
  * @author Lachlan Aldred
  * Date: 19/06/2003
@@ -34,7 +42,10 @@ import java.util.*;
  *
  */
 public class YMarking {
-    private List<YNetElement> _locations;
+    private final YNetElementIndex _index;
+    private int[] _counts;                           // token count per element index
+    private final BitSet _support;                   // indices with a count > 0
+    private int _size;                               // total token count
 
 
     public YMarking(YIdentifier identifier) {
@@ -42,48 +53,63 @@ public class YMarking {
     }
 
     public YMarking(List<YNetElement> locations) {
-        _locations = new Vector<YNetElement>(locations);
+        _index = getIndex(locations);
+        _counts = new int[_index.size()];
+        _support = new BitSet(_counts.length);
+        for (YNetElement element : locations) {
+            add(element);
+        }
+    }
+
+    private YMarking(YMarking marking) {
+        _index = marking._index;
+        _counts = marking._counts.clone();
+        _support = (BitSet) marking._support.clone();
+        _size = marking._size;
     }
 
 
     public YSetOfMarkings reachableInOneStep(YTask task, YTask orJoin) {
-        YSetOfMarkings halfBakedSet = null;
-        if (_locations.contains(task)) {
-            YMarking aMarking = new YMarking(_locations);
-            aMarking._locations.remove(task);
-            halfBakedSet = new YSetOfMarkings();
-            halfBakedSet.addMarking(aMarking);
+        List<YMarking> halfBakedMarkings;
+        if (contains(task)) {
+            YMarking aMarking = new YMarking(this);
+            aMarking.remove(task);
+            halfBakedMarkings = Collections.singletonList(aMarking);
         }
         else {
-            halfBakedSet = doPrelimaryMarkingSetBasedOnJoinType(task);
+            halfBakedMarkings = doPrelimaryMarkingSetBasedOnJoinType(task);
         }
-        if (halfBakedSet == null) {
+        if (halfBakedMarkings == null) {
             return null;
         }
 
         //for each marking you generate activate the cancellation set and remove the tokens
-        for (YMarking halfbakedMarking : halfBakedSet.getMarkings()) {
-            halfbakedMarking._locations.removeAll(task.getRemoveSet());
+        Set<YExternalNetElement> removeSet = task.getRemoveSet();
+        if (removeSet != null) {
+            for (YMarking halfbakedMarking : halfBakedMarkings) {
+                halfbakedMarking.removeAll(removeSet);
+            }
         }
 
-        Set<YMarking> iterableHalfBakedSet = halfBakedSet.getMarkings();
         YSetOfMarkings finishedSet = new YSetOfMarkings();
         Set<YExternalNetElement> postset = task.getPostsetElements();
 
         switch (task.getSplitType()) {
             case YTask._AND:
             case YTask._OR: {
-                for (YMarking marking : iterableHalfBakedSet) {
-                    marking._locations.addAll(postset);
+                for (YMarking marking : halfBakedMarkings) {
+                    for (YExternalNetElement element : postset) {
+                        marking.add(element);
+                    }
                     finishedSet.addMarking(marking);
                 }
                 break;
             }
             case YTask._XOR: {
-                for (YMarking halfbakedMarking : iterableHalfBakedSet) {
+                for (YMarking halfbakedMarking : halfBakedMarkings) {
                     for (YExternalNetElement element : postset) {
-                        YMarking aFinalMarking = new YMarking(halfbakedMarking.getLocations());
-                        aFinalMarking._locations.add((YCondition) element);
+                        YMarking aFinalMarking = new YMarking(halfbakedMarking);
+                        aFinalMarking.add((YCondition) element);
                         finishedSet.addMarking(aFinalMarking);
                     }
                 }
@@ -110,9 +136,9 @@ public class YMarking {
     }
 
 
-    private YSetOfMarkings doPrelimaryMarkingSetBasedOnJoinType(YTask task) {
-        Set preset = task.getPresetElements();
-        YSetOfMarkings markingSet = new YSetOfMarkings();
+    private List<YMarking> doPrelimaryMarkingSetBasedOnJoinType(YTask task) {
+        Set<YExternalNetElement> preset = task.getPresetElements();
+        List<YMarking> markings = new ArrayList<YMarking>();
         int joinType = task.getJoinType();
         switch (joinType) {
             case YTask._AND:
@@ -120,12 +146,11 @@ public class YMarking {
                 if (!nonOrJoinEnabled(task)) {
                     return null;
                 } else {
-                    YMarking returnedMarking = new YMarking(_locations);
-                    for (Iterator iterator = preset.iterator(); iterator.hasNext();) {
-                        YCondition condition = (YCondition) iterator.next();
-                        returnedMarking._locations.remove(condition);
+                    YMarking returnedMarking = new YMarking(this);
+                    for (YExternalNetElement element : preset) {
+                        returnedMarking.remove((YCondition) element);
                     }
-                    markingSet.addMarking(returnedMarking);
+                    markings.add(returnedMarking);
                 }
                 break;
             }
@@ -138,18 +163,18 @@ public class YMarking {
                 if (!nonOrJoinEnabled(task)) {
                     return null;
                 }
-                for (Iterator iterator = preset.iterator(); iterator.hasNext();) {
-                    YCondition condition = (YCondition) iterator.next();
-                    if (_locations.contains(condition)) {
-                        YMarking returnedMarking = new YMarking(_locations);
-                        returnedMarking._locations.remove(condition);
-                        markingSet.addMarking(returnedMarking);
+                for (YExternalNetElement element : preset) {
+                    YCondition condition = (YCondition) element;
+                    if (contains(condition)) {
+                        YMarking returnedMarking = new YMarking(this);
+                        returnedMarking.remove(condition);
+                        markings.add(returnedMarking);
                     }
                 }
                 break;
             }
         }
-        return markingSet;
+        return markings;
     }
 
 
@@ -160,15 +185,20 @@ public class YMarking {
      * @return true iff this marking enables the task.
      */
     public boolean nonOrJoinEnabled(YTask task) {
-        if (_locations.contains(task)) {
+        if (contains(task)) {
             return true;
         }
-        Set preset = task.getPresetElements();
+        Set<YExternalNetElement> preset = task.getPresetElements();
         int joinType = task.getJoinType();
         switch (joinType) {
             case YTask._AND:
             {
-                return _locations.containsAll(preset);
+                for (YExternalNetElement element : preset) {
+                    if (! contains(element)) {
+                        return false;
+                    }
+                }
+                return true;
             }
             case YTask._OR:
             {
@@ -176,9 +206,8 @@ public class YMarking {
             }
             case YTask._XOR:
             {
-                for (Iterator iterator = preset.iterator(); iterator.hasNext();) {
-                    YCondition condition = (YCondition) iterator.next();
-                    if (_locations.contains(condition)) {
+                for (YExternalNetElement element : preset) {
+                    if (contains((YCondition) element)) {
                         return true;
                     }
                 }
@@ -189,15 +218,19 @@ public class YMarking {
     }
 
 
+    /**
+     * @return a live view of this marking's locations, one entry per token, grouped
+     * by element
+     */
     public List<YNetElement> getLocations() {
-        return _locations;
+        return new Locations();
     }
 
 
     public int hashCode() {
         long hashCode = 0;
-        for (YNetElement element : _locations) {
-            hashCode += element.hashCode();
+        for (int i = _support.nextSetBit(0); i >= 0; i = _support.nextSetBit(i + 1)) {
+            hashCode += (long) _counts[i] * _index.get(i).hashCode();
         }
         return (int) (hashCode % Integer.MAX_VALUE);
     }
@@ -207,36 +240,15 @@ public class YMarking {
         if (!(marking instanceof YMarking)) {
             return false;
         }
-        List otherMarkingsLocations = new Vector(((YMarking) marking).getLocations());
-        List myLocations = new Vector(_locations);
-        for (Iterator iterator = myLocations.iterator(); iterator.hasNext();) {
-            YExternalNetElement netElement = (YExternalNetElement) iterator.next();
-            if (otherMarkingsLocations.contains(netElement)) {
-                otherMarkingsLocations.remove(netElement);
-            } else {
-                return false;
-            }
-        }
-        return otherMarkingsLocations.size() <= 0;
+        YMarking other = aligned((YMarking) marking);
+        return _size == other._size && _support.equals(other._support) &&
+                covers(this, other);
     }
 
 
     public boolean strictlyGreaterThanOrEqualWithSupports(YMarking marking) {
-        List otherMarkingsLocations = new Vector(marking.getLocations());
-        List myLocations = new Vector(_locations);
-        if (!(myLocations.containsAll(otherMarkingsLocations)
-                && otherMarkingsLocations.containsAll(myLocations))) {
-            return false;
-        }
-        for (Iterator iterator = otherMarkingsLocations.iterator(); iterator.hasNext();) {
-            YExternalNetElement netElement = (YExternalNetElement) iterator.next();
-            if (myLocations.contains(netElement)) {
-                myLocations.remove(netElement);
-            } else {
-                return false;
-            }
-        }
-        return true;
+        YMarking other = aligned(marking);
+        return _support.equals(other._support) && covers(this, other);
     }
 
     //moe - ResetAnalyser
@@ -247,68 +259,43 @@ public class YMarking {
 
     //moe - ResetAnalyser
     public boolean isBiggerThan(YMarking marking) {
-        List otherMarkingsLocations = new Vector(marking.getLocations());
-        List myLocations = new Vector(_locations);
+        YMarking other = aligned(marking);
+        boolean mineCoversOthers = containsAll(_support, other._support);
+        boolean othersCoversMine = containsAll(other._support, _support);
 
         //This test is for c1+c2+c3 bigger than c1+c2
-        if ((myLocations.containsAll(otherMarkingsLocations)
-                && !otherMarkingsLocations.containsAll(myLocations))) {
+        if (mineCoversOthers && !othersCoversMine) {
             return true;
         }
 
         //This test is for c1+2c2 bigger than c1+c2
-        else if (myLocations.containsAll(otherMarkingsLocations)
-                && otherMarkingsLocations.containsAll(myLocations)
-                && myLocations.size() > otherMarkingsLocations.size())
-        {
-            return true;
-        }
-        return false;
+        return mineCoversOthers && othersCoversMine && _size > other._size;
     }
 
     public boolean strictlyLessThanWithSupports(YMarking marking) {
-        List otherMarkingsLocations = new Vector(marking.getLocations());
-        List myLocations = new Vector(_locations);
-        if (!(myLocations.containsAll(otherMarkingsLocations)
-                && otherMarkingsLocations.containsAll(myLocations))) {
-            return false;
-        }
-        for (Iterator iterator = myLocations.iterator(); iterator.hasNext();) {
-            YExternalNetElement netElement = (YExternalNetElement) iterator.next();
-            if (otherMarkingsLocations.contains(netElement)) {
-                otherMarkingsLocations.remove(netElement);
-            } else {
-                return false;
-            }
-        }
-        return otherMarkingsLocations.size() > 0;
+        YMarking other = aligned(marking);
+        return _support.equals(other._support) && covers(other, this) &&
+                other._size > _size;
     }
 
 
     public boolean isBiggerEnablingMarkingThan(YMarking marking, YTask orJoin) {
-        Set preset = orJoin.getPresetElements();
-        Set thisMarkingsOccupiedPresetElements = new HashSet();
-        Set otherMarkingsOccupiedPresetElements = new HashSet();
-        for (Iterator presetIter = preset.iterator(); presetIter.hasNext();) {
-            YCondition condition = (YCondition) presetIter.next();
-            if (this._locations.contains(condition)) {
-                thisMarkingsOccupiedPresetElements.add(condition);
-            }
-            if (marking._locations.contains(condition)) {
-                otherMarkingsOccupiedPresetElements.add(condition);
-            }
+        boolean mineCoversOthers = true;
+        boolean othersCoversMine = true;
+        for (YExternalNetElement element : orJoin.getPresetElements()) {
+            YCondition condition = (YCondition) element;
+            boolean mine = this.contains(condition);
+            boolean others = marking.contains(condition);
+            if (others && !mine) mineCoversOthers = false;
+            if (mine && !others) othersCoversMine = false;
         }
-        return thisMarkingsOccupiedPresetElements.containsAll(
-                otherMarkingsOccupiedPresetElements)
-                &&
-                !otherMarkingsOccupiedPresetElements.containsAll(
-                        thisMarkingsOccupiedPresetElements);
+        return mineCoversOthers && !othersCoversMine;
     }
 
 
     public boolean deadLock(YTask orJoin) {
-        for (YNetElement element : _locations) {
-            if (element instanceof YTask) {        //a busy task means not deadlocked
+        for (int i = _support.nextSetBit(0); i >= 0; i = _support.nextSetBit(i + 1)) {
+            if (_index.get(i) instanceof YTask) {     //a busy task means not deadlocked
                 return false;
             }
         }
@@ -325,7 +312,7 @@ public class YMarking {
 
                     //if we find an orJoin that contains an identifier then the marking
                     //is definitely not deadlocked
-                    if (_locations.contains(condition) && task != orJoin) {
+                    if (contains(condition) && task != orJoin) {
                         return false;
                     }
                 }
@@ -337,29 +324,180 @@ public class YMarking {
     
     private Set<YExternalNetElement> getLocationsAsSet() {
         Set<YExternalNetElement> set = new HashSet<YExternalNetElement>();
-        for (YNetElement element : _locations) {
-            set.add((YExternalNetElement) element);
+        for (int i = _support.nextSetBit(0); i >= 0; i = _support.nextSetBit(i + 1)) {
+            set.add((YExternalNetElement) _index.get(i));
         }
         return set;
     }
 
 
     public String toString() {
-        return _locations.toString();
+        return getLocations().toString();
     }
 
     public boolean equivalentTo(YMarking marking) {
-        Vector otherMarkingsLocations = new Vector(marking.getLocations());
+        return equals(marking);
+    }
+
+
+    /******************************************************************************/
+
+    // markings share the element index of the net their locations belong to
+    private static YNetElementIndex getIndex(List<YNetElement> locations) {
+        for (YNetElement element : locations) {
+            if (element instanceof YExternalNetElement) {
+                YNet net = ((YExternalNetElement) element).getNet();
+                if (net != null) return net.getElementIndex();
+            }
+        }
+        return new YNetElementIndex();
+    }
+
+
+    // returns the marking, or an equal copy of it indexed by this marking's index
+    private YMarking aligned(YMarking marking) {
+        return marking._index == _index ? marking : new YMarking(this._index, marking);
+    }
+
+    private YMarking(YNetElementIndex index, YMarking marking) {
+        _index = index;
+        _counts = new int[index.size()];
+        _support = new BitSet(_counts.length);
+        for (YNetElement element : marking.getLocations()) {
+            add(element);
+        }
+    }
+
 
-        // short-circuit test if sizes differ
-        if (otherMarkingsLocations.size() != _locations.size()) return false;
+    private int count(int i) {
+        return i < _counts.length ? _counts[i] : 0;
+    }
 
-        // ok, same size so sort and compare for equality
-        Vector thisMarkingsLocations = new Vector(_locations);        // don't sort orig.
-        Collections.sort(otherMarkingsLocations);
-        Collections.sort(thisMarkingsLocations);
 
-        // vectors are equal if each element pair is equal 
-        return thisMarkingsLocations.equals(otherMarkingsLocations);
+    private boolean contains(YNetElement element) {
+        int i = _index.find(element);
+        return i > -1 && _support.get(i);
     }
-}
\ No newline at end of file
+
+
+    private void add(YNetElement element) {
+        int i = _index.indexOf(element);
+        if (i >= _counts.length) {
+            _counts = Arrays.copyOf(_counts, Math.max(i + 1, _index.size()));
+        }
+        _counts[i]++;
+        _support.set(i);
+        _size++;
+    }
+
+
+    // removes one token from the element, if it has one
+    private boolean remove(YNetElement element) {
+        int i = _index.find(element);
+        if (i < 0 || count(i) == 0) return false;
+        if (--_counts[i] == 0) _support.clear(i);
+        _size--;
+        return true;
+    }
+
+
+    // removes all tokens from each of the elements
+    private void removeAll(Collection<? extends YNetElement> elements) {
+        for (YNetElement element : elements) {
+            int i = _index.find(element);
+            if (i > -1 && count(i) > 0) {
+                _size -= _counts[i];
+                _counts[i] = 0;
+                _support.clear(i);
+            }
+        }
+    }
+
+
+    // true if every bit set in 'other' is also set in 'bits'
+    private static boolean containsAll(BitSet bits, BitSet other) {
+        for (int i = other.nextSetBit(0); i >= 0; i = other.nextSetBit(i + 1)) {
+            if (! bits.get(i)) return false;
+        }
+        return true;
+    }
+
+
+    // true if 'm' has at least as many tokens as 'other' at each of other's locations
+    private static boolean covers(YMarking m, YMarking other) {
+        BitSet bits = other._support;
+        for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) {
+            if (m.count(i) < other._counts[i]) return false;
+        }
+        return true;
+    }
+
+
+    /******************************************************************************/
+
+    // a list view of the marking, with each element repeated once per token
+    private class Locations extends AbstractList<YNetElement> {
+
+        public int size() { return _size; }
+
+        public YNetElement get(int n) {
+            if (n < 0 || n >= _size) throw new IndexOutOfBoundsException(String.valueOf(n));
+            for (int i = _support.nextSetBit(0); i >= 0; i = _support.nextSetBit(i + 1)) {
+                n -= _counts[i];
+                if (n < 0) return _index.get(i);
+            }
+            throw new IndexOutOfBoundsException(String.valueOf(n));
+        }
+
+        public void add(int n, YNetElement element) {
+            YMarking.this.add(element);               // position is not significant
+            modCount++;
+        }
+
+        public YNetElement remove(int n) {
+            YNetElement element = get(n);
+            YMarking.this.remove(element);
+            modCount++;
+            return element;
+        }
+
+        public boolean remove(Object o) {
+            if (o instanceof YNetElement && YMarking.this.remove((YNetElement) o)) {
+                modCount++;
+                return true;
+            }
+            return false;
+        }
+
+        public boolean contains(Object o) {
+            return o instanceof YNetElement && YMarking.this.contains((YNetElement) o);
+        }
+
+        public Iterator<YNetElement> iterator() {
+            return new Iterator<YNetElement>() {
+                int index = _support.nextSetBit(0);
+                int remaining = index < 0 ? 0 : _counts[index];
+                YNetElement last;
+
+                public boolean hasNext() { return remaining > 0; }
+
+                public YNetElement next() {
+                    if (remaining == 0) throw new NoSuchElementException();
+                    last = _index.get(index);
+                    if (--remaining == 0) {
+                        index = _support.nextSetBit(index + 1);
+                        remaining = index < 0 ? 0 : _counts[index];
+                    }
+                    return last;
+                }
+
+                public void remove() {
+                    if (last == null) throw new IllegalStateException();
+                    YMarking.this.remove(last);
+                    last = null;
+                }
+            };
+        }
+    }
+
+}
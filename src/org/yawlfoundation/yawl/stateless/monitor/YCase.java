@@ -59,6 +59,14 @@ public class YCase {
     }
 
 
+    public byte[] marshalSnapshot() throws YStateException {
+        if (_runner == null) {
+            throw new YStateException("Missing state for case.");
+        }
+        return new YCaseExporter().marshalSnapshot(_runner);
+    }
+
+
     public YNetRunner getRunner() { return _runner; }
 
 
@@ -2,6 +2,8 @@ package org.yawlfoundation.yawl.stateless.monitor;
 
 import org.jdom2.Document;
 import org.jdom2.Element;
+import org.yawlfoundation.yawl.engine.YSpecificationID;
+import org.yawlfoundation.yawl.exceptions.YStateException;
 import org.yawlfoundation.yawl.stateless.YStatelessEngine;
 import org.yawlfoundation.yawl.stateless.elements.YSpecification;
 import org.yawlfoundation.yawl.stateless.elements.YTask;
@@ -14,7 +16,9 @@ import org.yawlfoundation.yawl.util.JDOMUtil;
 import org.yawlfoundation.yawl.util.StringUtil;
 import org.yawlfoundation.yawl.util.XNode;
 
+import java.io.IOException;
 import java.util.Date;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -24,6 +28,11 @@ import java.util.Set;
  */
 public class YCaseExporter {
 
+    // work item flags in a binary snapshot
+    static final int ALLOWS_DYNAMIC = 1;
+    static final int MANUAL_RESOURCING = 2;
+    static final int TIMER_STARTED = 4;
+
     public YCaseExporter() {  }
 
 
@@ -36,6 +45,37 @@ public class YCaseExporter {
     }
 
 
+    /**
+     * Marshals the state of a case to a compact binary snapshot. Unlike the XML form,
+     * the snapshot does not include the case's specification, only its id, so the
+     * specification must be registered with the engine that restores the case
+     * @param runner a runner of the case
+     * @return the snapshot
+     * @throws YStateException if the case state can't be written
+     */
+    public byte[] marshalSnapshot(YNetRunner runner) throws YStateException {
+        try {
+            YCaseSnapshot.Writer writer = new YCaseSnapshot.Writer();
+            YSpecificationID specID = runner.getSpecificationID();
+            writer.writeString(specID.getIdentifier());
+            writer.writeString(specID.getVersionAsString());
+            writer.writeString(specID.getUri());
+            writer.writeString(runner.getCaseID().toString());
+
+            Set<YNetRunner> runners = runner.getAllRunnersForCase();
+            writer.writeCount(runners.size());
+            for (YNetRunner caseRunner : runners) {
+                writeRunner(writer, caseRunner);
+            }
+            return writer.toByteArray();
+        }
+        catch (IOException ioe) {
+            throw new YStateException("Failed to write case snapshot: " +
+                    ioe.getMessage());
+        }
+    }
+
+
     private Element stringToClonedElement(String xml) {
         return JDOMUtil.stringToElement(xml).clone();
     }
@@ -158,6 +198,87 @@ public class YCaseExporter {
     }
 
 
+    private void writeRunner(YCaseSnapshot.Writer writer, YNetRunner runner)
+            throws IOException {
+        YIdentifier id = runner.getCaseID();
+        YIdentifier parent = id.getParent();
+        writer.writeString(parent != null ? parent.toString() : null);
+        writeIdentifier(writer, id);
+        writer.writeString(runner.getNetData().getData());
+        writer.writeString(runner.getContainingTaskID());
+        writer.writeLong(runner.getStartTime());
+        writer.writeString(runner.getExecutionStatus());
+        writeMarkedTasks(writer, runner.getEnabledTasks());
+        writeMarkedTasks(writer, runner.getBusyTasks());
+
+        Map<String, String> timerStates = runner.get_timerStates();
+        writer.writeCount(timerStates.size());
+        for (Map.Entry<String, String> entry : timerStates.entrySet()) {
+            writer.writeString(entry.getKey());
+            writer.writeString(entry.getValue());
+        }
+
+        Set<YWorkItem> items = runner.getWorkItemRepository().getWorkItems();
+        writer.writeCount(items.size());
+        for (YWorkItem item : items) {
+            writeWorkItem(writer, item);
+        }
+    }
+
+
+    private void writeIdentifier(YCaseSnapshot.Writer writer, YIdentifier id)
+            throws IOException {
+        writer.writeString(id.toString());
+        List<String> locations = id.getLocationNames();
+        writer.writeCount(locations.size());
+        for (String location : locations) {
+            writer.writeString(location);
+        }
+        List<YIdentifier> children = id.getChildren();
+        writer.writeCount(children.size());
+        for (YIdentifier child : children) {
+            writeIdentifier(writer, child);
+        }
+    }
+
+
+    private void writeMarkedTasks(YCaseSnapshot.Writer writer, Set<YTask> tasks)
+            throws IOException {
+        writer.writeCount(tasks.size());
+        for (YTask task : tasks) {
+            writer.writeString(task.getID());
+        }
+    }
+
+
+    private void writeWorkItem(YCaseSnapshot.Writer writer, YWorkItem item)
+            throws IOException {
+        writer.writeString(item.get_thisID());
+        writer.writeLong(getTime(item.getEnablementTime()));
+        writer.writeLong(getTime(item.getFiringTime()));
+        writer.writeLong(getTime(item.getStartTime()));
+        writer.writeString(item.getStatus().toString());
+        writer.writeString(item.get_prevStatus());
+        writer.writeFlags(getFlags(item));
+        writer.writeString(item.getDataString());
+        writer.writeLong(item.getTimerExpiry());
+        writer.writeString(item.getDeferredChoiceGroupID());
+        writer.writeString(item.getCodelet());
+        writer.writeString(getWIParent(item));
+        YTimerParameters timerParameters = item.getTimerParameters();
+        writer.writeString(timerParameters != null ? timerParameters.toXML() : null);
+    }
+
+
+    private int getFlags(YWorkItem item) {
+        int flags = 0;
+        if (item.allowsDynamicCreation()) flags |= ALLOWS_DYNAMIC;
+        if (item.requiresManualResourcing()) flags |= MANUAL_RESOURCING;
+        if (item.hasTimerStarted()) flags |= TIMER_STARTED;
+        return flags;
+    }
+
+
     private long getTime(Date date) {
         return date != null ? date.getTime() : 0;
     }
@@ -4,6 +4,7 @@ import org.jdom2.Document;
 import org.jdom2.Element;
 import org.jdom2.Namespace;
 import org.yawlfoundation.yawl.engine.YNetData;
+import org.yawlfoundation.yawl.engine.YSpecificationID;
 import org.yawlfoundation.yawl.engine.YWorkItemStatus;
 import org.yawlfoundation.yawl.exceptions.YStateException;
 import org.yawlfoundation.yawl.exceptions.YSyntaxException;
@@ -21,6 +22,7 @@ import org.yawlfoundation.yawl.util.StringUtil;
 import org.yawlfoundation.yawl.util.XNode;
 import org.yawlfoundation.yawl.util.XNodeParser;
 
+import java.io.IOException;
 import java.util.*;
 
 /**
@@ -47,6 +49,49 @@ public class YCaseImporter {
         _spec = unmarshalSpecification(root);
         List<YNetRunner> runners = unmarshalRunners(root);
         List<YWorkItem> workitems = unmarshalWorkItems(root);
+        return restore(runners, workitems, announcer);
+    }
+
+
+    /**
+     * Restores a case from a binary snapshot written by YCaseExporter.marshalSnapshot
+     * @param snapshot the snapshot
+     * @param registry the specifications known to the engine, which must include
+     *                 the specification of the snapshot's case
+     * @param announcer the engine's announcer
+     * @return the restored runners of the case
+     * @throws YStateException if the snapshot is malformed, or its specification
+     * isn't registered
+     */
+    public List<YNetRunner> unmarshal(byte[] snapshot, YSpecificationRegistry registry,
+                                      YAnnouncer announcer) throws YStateException {
+        YCaseSnapshot.Reader reader = new YCaseSnapshot.Reader(snapshot);
+        List<YNetRunner> runners = new ArrayList<>();
+        List<YWorkItem> workitems = new ArrayList<>();
+        try {
+            YSpecificationID specID = new YSpecificationID(reader.readString(),
+                    reader.readString(), reader.readString());
+            _spec = registry.get(specID);
+            if (_spec == null) {
+                throw new YStateException("Specification " + specID +
+                        " is not registered: unable to restore case");
+            }
+            String caseID = reader.readString();
+            readRunners(reader, runners, workitems);
+            if (runners.isEmpty()) {
+                throw new YStateException("No net runners found to import for case " +
+                        caseID);
+            }
+        }
+        catch (IOException | IndexOutOfBoundsException e) {
+            throw new YStateException("Malformed case snapshot: " + e.getMessage());
+        }
+        return restore(runners, workitems, announcer);
+    }
+
+
+    private List<YNetRunner> restore(List<YNetRunner> runners, List<YWorkItem> workitems,
+                                     YAnnouncer announcer) throws YStateException {
         runners.sort(new RunnerComparator());
         attachRunners(runners, announcer);
         restoreWorkItems(workitems, runners);
@@ -151,6 +196,130 @@ public class YCaseImporter {
     }
 
     
+    private void readRunners(YCaseSnapshot.Reader reader, List<YNetRunner> runners,
+                             List<YWorkItem> workitems) throws IOException {
+        List<YIdentifier> parents = new ArrayList<>();
+        Map<String, Set<YIdentifier>> parentChildMap = new HashMap<>();
+        Set<YWorkItem> parentItems = new HashSet<>();
+        Map<String, Set<YWorkItem>> parentItemChildMap = new HashMap<>();
+        int runnerCount = reader.readSize();
+        for (int i = 0; i < runnerCount; i++) {
+            String parentID = reader.readString();
+            YNetRunner runner = readRunner(reader);
+            runners.add(runner);
+            if (StringUtil.isNullOrEmpty(parentID)) {
+                parents.add(runner.getCaseID());
+            }
+            else {
+                addChild(parentChildMap, parentID, runner.getCaseID());
+            }
+
+            int itemCount = reader.readSize();
+            for (int j = 0; j < itemCount; j++) {
+                YWorkItem item = readWorkItem(reader);
+                workitems.add(item);
+                String pid = reader.readString();
+                if (item.isParent()) {
+                    parentItems.add(item);
+                }
+                else {
+                    addChild(parentItemChildMap, pid, item);
+                }
+                item.setTimerParameters(toTimerParameters(reader.readString()));
+            }
+        }
+        reuniteRunnerFamilies(parents, parentChildMap);
+        reuniteWorkItemFamilies(parentItems, parentItemChildMap);
+    }
+
+
+    private YNetRunner readRunner(YCaseSnapshot.Reader reader) throws IOException {
+        YIdentifier caseID = readIdentifier(reader);
+        YNetRunner runner = new YNetRunner();
+        runner.set_caseIDForNet(caseID);
+        YNetData netData = new YNetData(caseID.toString());
+        netData.setData(reader.readString());
+        runner.setNetData(netData);
+        runner.setContainingTaskID(reader.readString());
+        runner.setSpecificationID(_spec.getSpecificationID());
+        runner.setStartTime(reader.readLong());
+        runner.setExecutionStatus(reader.readString());
+        runner.setEnabledTaskNames(readStringSet(reader));
+        runner.setBusyTaskNames(readStringSet(reader));
+
+        Map<String, String> timerStates = new HashMap<>();
+        int stateCount = reader.readSize();
+        for (int i = 0; i < stateCount; i++) {
+            timerStates.put(reader.readString(), reader.readString());
+        }
+        runner.set_timerStates(timerStates);
+        return runner;
+    }
+
+
+    private YIdentifier readIdentifier(YCaseSnapshot.Reader reader) throws IOException {
+        YIdentifier id = new YIdentifier(reader.readString());
+        int locationCount = reader.readSize();
+        List<String> locations = new ArrayList<>(locationCount);
+        for (int i = 0; i < locationCount; i++) {
+            locations.add(reader.readString());
+        }
+        id.setLocationNames(locations);
+
+        int childCount = reader.readSize();
+        List<YIdentifier> children = new ArrayList<>(childCount);
+        for (int i = 0; i < childCount; i++) {
+            YIdentifier childID = readIdentifier(reader);
+            childID.set_parent(id);
+            children.add(childID);
+        }
+        id.setChildren(children);
+        return id;
+    }
+
+
+    // reads all but the item's parent id and timer parameters, which follow it
+    private YWorkItem readWorkItem(YCaseSnapshot.Reader reader) throws IOException {
+        YWorkItem item = new YWorkItem();
+        item.set_thisID(reader.readString());
+        item.setSpecID(_spec.getSpecificationID());
+        Date timestamp = toDate(reader.readLong());
+        if (timestamp != null) item.set_enablementTime(timestamp);
+        timestamp = toDate(reader.readLong());
+        if (timestamp != null) item.set_firingTime(timestamp);
+        timestamp = toDate(reader.readLong());
+        if (timestamp != null) item.set_startTime(timestamp);
+        item.set_status(reader.readString());
+        item.set_prevStatus(reader.readString());
+
+        int flags = reader.readFlags();
+        item.set_allowsDynamicCreation((flags & YCaseExporter.ALLOWS_DYNAMIC) != 0);
+        item.setRequiresManualResourcing((flags & YCaseExporter.MANUAL_RESOURCING) != 0);
+        if ((flags & YCaseExporter.TIMER_STARTED) != 0) {
+            _timedItems.add(item);
+        }
+
+        String data = reader.readString();
+        if (! StringUtil.isNullOrEmpty(data)) {
+            item.setDataElement(JDOMUtil.stringToElement(data));
+        }
+        item.setTimerExpiry(reader.readLong());
+        item.set_deferredChoiceGroupID(reader.readString());
+        item.setCodelet(reader.readString());
+        return item;
+    }
+
+
+    private Set<String> readStringSet(YCaseSnapshot.Reader reader) throws IOException {
+        int count = reader.readSize();
+        Set<String> set = new HashSet<>();
+        for (int i = 0; i < count; i++) {
+            set.add(reader.readString());
+        }
+        return set;
+    }
+
+
     private <T> void addChild(Map<String, Set<T>> parentChildMap, String parentID, T child) {
         if (parentID != null) {
             Set<T> children = parentChildMap.computeIfAbsent(parentID, k -> new HashSet<T>());
@@ -247,6 +416,11 @@ public class YCaseImporter {
      }
 
 
+    private Date toDate(long time) {
+        return time != 0 ? new Date(time) : null;
+    }
+
+
     private Date toDate(String timeStr) {
         return ! (timeStr == null || "0".equals(timeStr)) ?
                 new Date(StringUtil.strToLong(timeStr, 0)) : null;
@@ -589,6 +763,16 @@ public class YCaseImporter {
     }
 
 
+    private YTimerParameters toTimerParameters(String timerXML) {
+        if (! StringUtil.isNullOrEmpty(timerXML)) {
+            XNode timerNode = new XNodeParser().parse(
+                    "<timerparameters>" + timerXML + "</timerparameters>");
+            return new YTimerParameters().fromXNode(timerNode);
+        }
+        return null;
+    }
+
+
     // JDOM returns "" if child text is missing, we want nulls
     private String getChildText(Element e, String name) {
         String text = e.getChildText(name);
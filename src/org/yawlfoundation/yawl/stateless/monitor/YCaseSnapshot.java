@@ -0,0 +1,159 @@
+package org.yawlfoundation.yawl.stateless.monitor;
+
+import org.yawlfoundation.yawl.exceptions.YStateException;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The binary form of a case snapshot, a compact alternative to the XML produced by
+ * YCaseExporter. A snapshot holds the state of each net runner and work item of a
+ * case, but refers to the case's specification by its id only, so that restoring a
+ * case need not re-parse the specification.
+ * <p/>
+ * Counts are written as variable length ints, and strings via a table, so that a
+ * string repeated within the snapshot (e.g. task ids, location names, statuses) is
+ * written in full only once.
+ */
+class YCaseSnapshot {
+
+    static final int MAGIC = 0x59435331;                              // 'YCS1'
+    static final byte VERSION = 1;
+
+    // string references: 0 = null, 1 = a new string follows, n = table index n - 2
+    private static final int NULL_STRING = 0;
+    private static final int NEW_STRING = 1;
+
+
+    private YCaseSnapshot() { }
+
+
+    /**
+     * Writes snapshot values to a byte array
+     */
+    static class Writer {
+
+        private final ByteArrayOutputStream _bytes = new ByteArrayOutputStream(4096);
+        private final DataOutputStream _out = new DataOutputStream(_bytes);
+        private final Map<String, Integer> _strings = new HashMap<>();
+
+        Writer() throws IOException {
+            _out.writeInt(MAGIC);
+            _out.writeByte(VERSION);
+        }
+
+
+        void writeString(String s) throws IOException {
+            if (s == null) {
+                writeCount(NULL_STRING);
+                return;
+            }
+            Integer index = _strings.get(s);
+            if (index != null) {
+                writeCount(index + 2);
+            }
+            else {
+                _strings.put(s, _strings.size());
+                writeCount(NEW_STRING);
+                byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+                writeCount(utf8.length);
+                _out.write(utf8);
+            }
+        }
+
+
+        // an unsigned int, 7 bits per byte
+        void writeCount(int value) throws IOException {
+            while ((value & ~0x7F) != 0) {
+                _out.writeByte((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            _out.writeByte(value);
+        }
+
+
+        void writeLong(long value) throws IOException { _out.writeLong(value); }
+
+        void writeFlags(int flags) throws IOException { _out.writeByte(flags); }
+
+        byte[] toByteArray() throws IOException {
+            _out.flush();
+            return _bytes.toByteArray();
+        }
+    }
+
+
+    /**
+     * Reads snapshot values, in the order they were written, from a byte array
+     */
+    static class Reader {
+
+        private final DataInputStream _in;
+        private final List<String> _strings = new ArrayList<>();
+
+        Reader(byte[] snapshot) throws YStateException {
+            if (snapshot == null) {
+                throw new YStateException("Case snapshot is null");
+            }
+            _in = new DataInputStream(new ByteArrayInputStream(snapshot));
+            try {
+                if (_in.readInt() != MAGIC) {
+                    throw new YStateException("Not a case snapshot");
+                }
+                int version = _in.readByte();
+                if (version != VERSION) {
+                    throw new YStateException("Unsupported case snapshot version: " +
+                            version);
+                }
+            }
+            catch (IOException ioe) {
+                throw new YStateException("Not a case snapshot");
+            }
+        }
+
+
+        String readString() throws IOException {
+            int ref = readCount();
+            if (ref == NULL_STRING) return null;
+            if (ref != NEW_STRING) return _strings.get(ref - 2);
+
+            byte[] utf8 = new byte[readSize()];
+            _in.readFully(utf8);
+            String s = new String(utf8, StandardCharsets.UTF_8);
+            _strings.add(s);
+            return s;
+        }
+
+
+        int readCount() throws IOException {
+            int value = 0;
+            for (int shift = 0; shift < 32; shift += 7) {
+                int b = _in.readUnsignedByte();
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) return value;
+            }
+            throw new IOException("Malformed count in case snapshot");
+        }
+
+
+        // the length of a string, or the size of a collection, each byte or element
+        // of which takes at least one byte of the remaining input
+        int readSize() throws IOException {
+            int size = readCount();
+            if (size < 0 || size > _in.available()) {
+                throw new IOException("Malformed size in case snapshot: " + size);
+            }
+            return size;
+        }
+
+
+        long readLong() throws IOException { return _in.readLong(); }
+
+        int readFlags() throws IOException { return _in.readUnsignedByte(); }
+    }
+
+}
@@ -0,0 +1,60 @@
+package org.yawlfoundation.yawl.stateless.monitor;
+
+import org.yawlfoundation.yawl.engine.YSpecificationID;
+import org.yawlfoundation.yawl.stateless.elements.YSpecification;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The specifications known to a stateless engine, keyed by specification id. A
+ * binary case snapshot refers to its specification by id only, so the specification
+ * must be found here when the case is restored.
+ */
+public class YSpecificationRegistry {
+
+    private final Map<YSpecificationID, YSpecification> _specs;
+
+
+    public YSpecificationRegistry() {
+        _specs = new ConcurrentHashMap<>();
+    }
+
+
+    /**
+     * Adds a specification, replacing any registered with the same id
+     * @param spec the specification to add
+     */
+    public void add(YSpecification spec) {
+        _specs.put(spec.getSpecificationID(), spec);
+    }
+
+
+    public YSpecification get(YSpecificationID specID) {
+        return specID != null ? _specs.get(specID) : null;
+    }
+
+
+    public YSpecification remove(YSpecificationID specID) {
+        return specID != null ? _specs.remove(specID) : null;
+    }
+
+
+    public boolean contains(YSpecificationID specID) {
+        return specID != null && _specs.containsKey(specID);
+    }
+
+
+    public Set<YSpecificationID> getSpecificationIDs() {
+        return new HashSet<>(_specs.keySet());
+    }
+
+
+    public int size() { return _specs.size(); }
+
+
+    public void clear() { _specs.clear(); }
+
+}
@@ -1 +1 @@
-/* * Copyright (c) 2004-2020 The YAWL Foundation. All rights reserved. * The YAWL Foundation is a collaboration of individuals and * organisations who are committed to improving workflow technology. * * This file is part of YAWL. YAWL is free software: you can * redistribute it and/or modify it under the terms of the GNU Lesser * General Public License as published by the Free Software Foundation. * * YAWL is distributed in the hope that it will be useful, but WITHOUT * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General * Public License for more details. * * You should have received a copy of the GNU Lesser General Public * License along with YAWL. If not, see <http://www.gnu.org/licenses/>. */package org.yawlfoundation.yawl.stateless.schema;import org.jdom2.Element;import org.yawlfoundation.yawl.stateless.elements.data.YVariable;import org.yawlfoundation.yawl.exceptions.YDataValidationException;import org.yawlfoundation.yawl.schema.SchemaHandler;import org.yawlfoundation.yawl.schema.XSDType;import org.yawlfoundation.yawl.schema.internal.YInternalType;import org.yawlfoundation.yawl.util.DOMUtil;import org.yawlfoundation.yawl.util.JDOMUtil;import org.yawlfoundation.yawl.util.StringUtil;import javax.xml.XMLConstants;import java.util.*;/** * This class serves as a validation mechanism for the specification specific * schema and the instance data from either the net or a task. This is performed * by taking the data available at the various validation points and converting * it into conventional XML which is then validated using a SchemaHandler. * * @author Mike Fowler *         Date: 05-Jul-2006 */public class YDataValidator {    // Object that performs the real validation on XML documents    private SchemaHandler handler;    /**     * Constructs a new validator and handler. The     * handler is not ready for use until validateSchema     * has been called.     * @param schema a W3C XML Schema     */    public YDataValidator(String schema) {        this.handler = new SchemaHandler(schema);    }    /**     * Compiles and determines the validity of the current schema     * @return true if the schema compiled without error.     */    public boolean validateSchema() {        return handler.compileSchema();    }    /**     * Validates a single data variable     *     * @param variable to be validated     * @param data XML representation of variable to be validated     * @param source     * @throws YDataValidationException if the data is not valid     */    public void validate(YVariable variable, Element data, String source)            throws YDataValidationException {        List<YVariable> vars = new ArrayList<YVariable>(1);        vars.add(variable);        validate(vars, data, source);    }    /**     * Validates a collection of variables against the schema. This is achieved by     * temporarily adding a schema element declaration for the data. This avoids     * attempting to create a new schema containing only the relevant data types.     *     * @param vars variables to be validated     * @param data XML representation fo the variables to be validated     * @param source     * @throws YDataValidationException if the data is not valid     */    public void validate(Collection vars, Element data, String source)            throws YDataValidationException {        try {            String schema = ensurePrefixedSchema(handler.getSchema());            org.w3c.dom.Document xsd = DOMUtil.getDocumentFromString(schema);            String ns = XMLConstants.W3C_XML_SCHEMA_NS_URI;            //need to determine the prefix for the schema namespace            String prefix = ensureValidPrefix(xsd.lookupPrefix(ns));            org.w3c.dom.Element element = xsd.createElementNS(ns, prefix + "element");            element.setAttribute("name", data.getName());            org.w3c.dom.Element complex = xsd.createElementNS(ns, prefix + "complexType");            org.w3c.dom.Element sequence = xsd.createElementNS(ns, prefix + "sequence");            ArrayList varList = new ArrayList(vars);            Collections.sort(varList);               // sort on YParameter ordering value            for (Object obj : varList) {                YVariable var = (YVariable) obj;                org.w3c.dom.Element child = xsd.createElementNS(ns, prefix + "element");                child.setAttribute("name", var.getName());                String type = var.getDataTypeName();                if (XSDType.isBuiltInType(type)) {                    type = prefix + type;                }                else if (YInternalType.isType(type)) {                    type = prefix + type;                    xsd.getDocumentElement().appendChild(DOMUtil.getDocumentFromString(                            YInternalType.valueOf(type).getSchemaString()).getDocumentElement());                }                child.setAttribute("type", type);                if (var.isOptional()) {                    child.setAttribute("minOccurs", "0");                }                sequence.appendChild(child);            }            complex.appendChild(sequence);            element.appendChild(complex);            xsd.getDocumentElement().appendChild(element);            SchemaHandler handler =                          new SchemaHandler(DOMUtil.getXMLStringFragmentFromNode(xsd));            if (! handler.compileSchema()) {                throw new YDataValidationException(                    handler.getSchema(),                    data,                    handler.getConcatenatedMessage(),                    source,                    "Problem with process model.  Failed to compile schema");            }            if (! handler.validate(JDOMUtil.elementToString(data))) {                throw new YDataValidationException(                    handler.getSchema(),                    data,                    handler.getConcatenatedMessage(),                    source,                    "Problem with process model.  Schema validation failed");            }        }        catch (Exception e) {            if (e instanceof YDataValidationException) throw (YDataValidationException) e;        }    }    /**     * @return String representation of the schema     */    public String getSchema() {        return handler.getSchema();    }    /**     * @return the SchemaHandler for this validator     */    public SchemaHandler getSchemaHandler() { return handler; }    /**     * @return All error/warning messages relating to the last validation/compilation     */    public List<String> getMessages() {        return handler.getMessages();    }    /**     * @return the set of (first-level) type names defined in this schema     */    public Set<String> getPrimaryTypeNames() {        return handler.getPrimaryTypeNames();    }    /**     * Utility method to ensure the prefix is valid (enforces : and     * defaults to xs:)     *     * @param prefix to validate     * @return validated prefix     */    private String ensureValidPrefix(String prefix) {        if (StringUtil.isNullOrEmpty(prefix)) {            return "xs:";        }        else if (! prefix.endsWith(":")) {            return prefix + ":";        }        return prefix;    }    /**     * A schema may not have a valid prefix if a spec contains no complex types, so     * this makes sure it gets one in that case     * @param schema the schema string to check     * @return a correctly (or defaultly) prefixed schema string     */    private String ensurePrefixedSchema(String schema) {        if (!schema.contains(":schema")) {            schema = schema.replaceFirst("schema xmlns", "schema xmlns:xs");            schema = schema.replaceAll("<", "<xs:")                           .replaceAll("<xs:/", "</xs:")                           .replaceAll("type=\"", "type=\"xs:");        }            return schema ;    }}
\ No newline at end of file
+/* * Copyright (c) 2004-2020 The YAWL Foundation. All rights reserved. * The YAWL Foundation is a collaboration of individuals and * organisations who are committed to improving workflow technology. * * This file is part of YAWL. YAWL is free software: you can * redistribute it and/or modify it under the terms of the GNU Lesser * General Public License as published by the Free Software Foundation. * * YAWL is distributed in the hope that it will be useful, but WITHOUT * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General * Public License for more details. * * You should have received a copy of the GNU Lesser General Public * License along with YAWL. If not, see <http://www.gnu.org/licenses/>. */package org.yawlfoundation.yawl.stateless.schema;import org.jdom2.Element;import org.jdom2.output.Format;import org.jdom2.output.SAXOutputter;import org.yawlfoundation.yawl.stateless.elements.data.YVariable;import org.yawlfoundation.yawl.exceptions.YDataValidationException;import org.yawlfoundation.yawl.schema.ErrorHandler;import org.yawlfoundation.yawl.schema.SchemaHandler;import org.yawlfoundation.yawl.schema.XSDType;import org.yawlfoundation.yawl.schema.internal.YInternalType;import org.yawlfoundation.yawl.util.DOMUtil;import org.yawlfoundation.yawl.util.StringUtil;import javax.xml.XMLConstants;import javax.xml.validation.Schema;import javax.xml.validation.ValidatorHandler;import java.util.*;import java.util.concurrent.ConcurrentHashMap;/** * This class serves as a validation mechanism for the specification specific * schema and the instance data from either the net or a task. This is performed * by taking the data available at the various validation points and converting * it into conventional XML which is then validated using a SchemaHandler. * * @author Mike Fowler *         Date: 05-Jul-2006 */public class YDataValidator {    // Object that performs the real validation on XML documents    private SchemaHandler handler;    // Compiled wrapper schemas, keyed on data element name and variable declarations    private final Map<String, CompiledWrapper> wrappers =            new ConcurrentHashMap<String, CompiledWrapper>();    // The schema string the wrappers were built from    private volatile String cachedSchema;    /**     * Constructs a new validator and handler. The     * handler is not ready for use until validateSchema     * has been called.     * @param schema a W3C XML Schema     */    public YDataValidator(String schema) {        this.handler = new SchemaHandler(schema);    }    /**     * Compiles and determines the validity of the current schema     * @return true if the schema compiled without error.     */    public boolean validateSchema() {        return handler.compileSchema();    }    /**     * Validates a single data variable     *     * @param variable to be validated     * @param data XML representation of variable to be validated     * @param source     * @throws YDataValidationException if the data is not valid     */    public void validate(YVariable variable, Element data, String source)            throws YDataValidationException {        List<YVariable> vars = new ArrayList<YVariable>(1);        vars.add(variable);        validate(vars, data, source);    }    /**     * Validates a collection of variables against the schema. This is achieved by     * temporarily adding a schema element declaration for the data. This avoids     * attempting to create a new schema containing only the relevant data types.     *     * @param vars variables to be validated     * @param data XML representation fo the variables to be validated     * @param source     * @throws YDataValidationException if the data is not valid     */    public void validate(Collection vars, Element data, String source)            throws YDataValidationException {        try {            List<YVariable> varList = new ArrayList<YVariable>();            for (Object var : vars) varList.add((YVariable) var);            Collections.sort(varList);               // sort on YParameter ordering value            CompiledWrapper wrapper = getWrapper(varList, data.getName());            if (wrapper.schema == null) {                throw new YDataValidationException(                    wrapper.schemaString,                    data,                    wrapper.message,                    source,                    "Problem with process model.  Failed to compile schema");            }            ErrorHandler errorHandler = new ErrorHandler();            String message = validate(wrapper.schema, data, errorHandler);            if (message != null) {                throw new YDataValidationException(                    wrapper.schemaString,                    data,                    message,                    source,                    "Problem with process model.  Schema validation failed");            }        }        catch (Exception e) {            if (e instanceof YDataValidationException) throw (YDataValidationException) e;        }    }    /**     * Gets the compiled wrapper schema for a data element and set of variables,     * building and compiling it on first use. The wrapper depends only on the     * element name and the name, type and optionality of each variable (in order),     * so the same compiled schema serves every validation of a decomposition's     * data for as long as the specification's schema is unchanged.     * @param varList the sorted variables     * @param dataName the name of the element being validated     * @return the compiled (or failed) wrapper schema     * @throws Exception if the wrapper schema can't be built     */    private CompiledWrapper getWrapper(List<YVariable> varList, String dataName) throws Exception {        String schema = handler.getSchema();        if (schema != cachedSchema) {            // schema has been replaced            wrappers.clear();            cachedSchema = schema;        }        StringBuilder key = new StringBuilder(dataName);        for (YVariable var : varList) {            key.append('\n').append(var.getName()).append('\t')               .append(var.getDataTypeName()).append('\t').append(var.isOptional());        }        CompiledWrapper wrapper = wrappers.get(key.toString());        if (wrapper == null) {            wrapper = new CompiledWrapper(buildWrapperSchema(schema, varList, dataName));            wrappers.put(key.toString(), wrapper);        }        return wrapper;    }    /**     * Builds a schema string that adds a declaration for the data element to the     * specification's schema. This avoids attempting to create a new schema     * containing only the relevant data types.     */    private String buildWrapperSchema(String schema, List<YVariable> varList, String dataName)            throws Exception {        org.w3c.dom.Document xsd = DOMUtil.getDocumentFromString(                ensurePrefixedSchema(schema));        String ns = XMLConstants.W3C_XML_SCHEMA_NS_URI;        //need to determine the prefix for the schema namespace        String prefix = ensureValidPrefix(xsd.lookupPrefix(ns));        org.w3c.dom.Element element = xsd.createElementNS(ns, prefix + "element");        element.setAttribute("name", dataName);        org.w3c.dom.Element complex = xsd.createElementNS(ns, prefix + "complexType");        org.w3c.dom.Element sequence = xsd.createElementNS(ns, prefix + "sequence");        for (YVariable var : varList) {            org.w3c.dom.Element child = xsd.createElementNS(ns, prefix + "element");            child.setAttribute("name", var.getName());            String type = var.getDataTypeName();            if (XSDType.isBuiltInType(type)) {                type = prefix + type;            }            else if (YInternalType.isType(type)) {                type = prefix + type;                xsd.getDocumentElement().appendChild(DOMUtil.getDocumentFromString(                        YInternalType.valueOf(type).getSchemaString()).getDocumentElement());            }            child.setAttribute("type", type);            if (var.isOptional()) {                child.setAttribute("minOccurs", "0");            }            sequence.appendChild(child);        }        complex.appendChild(sequence);        element.appendChild(complex);        xsd.getDocumentElement().appendChild(element);        return DOMUtil.getXMLStringFragmentFromNode(xsd);    }    /**     * Validates the data element in place against a compiled schema. The element is     * streamed to the validator as SAX events, formatted as it would be if it were     * first written to a string, so that whitespace is treated identically.     * @param schema the compiled schema     * @param data the element to validate     * @param errorHandler a handler to collect any errors     * @return null if valid, or the error messages if not     */    private String validate(Schema schema, Element data, ErrorHandler errorHandler) {        String exceptionMessage = null;        try {            ValidatorHandler validator = schema.newValidatorHandler();            validator.setErrorHandler(errorHandler);            SAXOutputter outputter = new SAXOutputter(validator);            outputter.setFormat(Format.getPrettyFormat());            outputter.output(data);        }        catch (Exception e) {            exceptionMessage = "Validation failed with exception: " + e.getMessage();        }        if (errorHandler.isValid() && exceptionMessage == null) return null;        StringBuilder builder = new StringBuilder();        List<String> messages = errorHandler.getErrors();        messages.addAll(errorHandler.getWarnings());        if (exceptionMessage != null) messages.add(exceptionMessage);        for (String msg : messages) {            builder.append(msg).append("\n");        }        return builder.toString();    }    /**     * @return String representation of the schema     */    public String getSchema() {        return handler.getSchema();    }    /**     * @return the SchemaHandler for this validator     */    public SchemaHandler getSchemaHandler() { return handler; }    /**     * @return All error/warning messages relating to the last validation/compilation     */    public List<String> getMessages() {        return handler.getMessages();    }    /**     * @return the set of (first-level) type names defined in this schema     */    public Set<String> getPrimaryTypeNames() {        return handler.getPrimaryTypeNames();    }    /**     * Utility method to ensure the prefix is valid (enforces : and     * defaults to xs:)     *     * @param prefix to validate     * @return validated prefix     */    private String ensureValidPrefix(String prefix) {        if (StringUtil.isNullOrEmpty(prefix)) {            return "xs:";        }        else if (! prefix.endsWith(":")) {            return prefix + ":";        }        return prefix;    }    /**     * A schema may not have a valid prefix if a spec contains no complex types, so     * this makes sure it gets one in that case     * @param schema the schema string to check     * @return a correctly (or defaultly) prefixed schema string     */    private String ensurePrefixedSchema(String schema) {        if (!schema.contains(":schema")) {            schema = schema.replaceFirst("schema xmlns", "schema xmlns:xs");            schema = schema.replaceAll("<", "<xs:")                           .replaceAll("<xs:/", "</xs:")                           .replaceAll("type=\"", "type=\"xs:");        }            return schema ;    }    /******************************************************************************/    // A wrapper schema and, if it compiled, its thread-safe compiled form    private static class CompiledWrapper {        final String schemaString;        final Schema schema;        final String message;        CompiledWrapper(String schemaString) {            SchemaHandler wrapperHandler = new SchemaHandler(schemaString);            boolean compiled = wrapperHandler.compileSchema();            this.schemaString = schemaString;            this.schema = compiled ? wrapperHandler.getCompiledSchema() : null;            this.message = compiled ? null : wrapperHandler.getConcatenatedMessage();        }    }}
\ No newline at end of file
@@ -29,6 +29,7 @@ import org.jdom2.output.DOMOutputter;
 import org.yawlfoundation.yawl.util.JDOMUtil;
 import org.yawlfoundation.yawl.util.SaxonErrorListener;
 import org.yawlfoundation.yawl.util.StringUtil;
+import org.yawlfoundation.yawl.util.XQueryCache;
 
 import java.io.StringWriter;
 import java.util.List;
@@ -41,6 +42,7 @@ import java.util.List;
 public class SaxonUtil {
 
     private static final Processor _processor = new Processor(false);
+    private static final XQueryCache _cache = new XQueryCache(_processor);
 //    private static final Serializer _output = new Serializer();
  //   private static final XQueryCompiler _compiler = _processor.newXQueryCompiler();
 //    private static final DOMOutputter _domOutputter = new DOMOutputter();
@@ -139,9 +141,8 @@ public class SaxonUtil {
         // wrap the jdom doc into something saxon understands
         org.w3c.dom.Document domDoc = toDOM(dataDoc);
 
-        // compile & load query
-        XQueryExecutable executable = compileXQuery(query);
-        XQueryEvaluator evaluator = executable.load();
+        // get the compiled query & load it
+        XQueryEvaluator evaluator = _cache.get(query).load();
 
         // set the context to the data document
         evaluator.setContextItem(_processor.newDocumentBuilder().wrap(domDoc));
@@ -37,6 +37,9 @@ import org.yawlfoundation.yawl.schema.XSDType;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackReader;
+import java.io.Reader;
 import java.io.StringReader;
 import java.util.List;
 
@@ -54,8 +57,17 @@ import java.util.List;
 public class JDOMUtil {
 
     private static final Logger _log = LogManager.getLogger(JDOMUtil.class);
-    private static final SAXBuilder _builder = new SAXBuilder(
-            new XMLReaderSAX2Factory(false, "org.apache.xerces.parsers.SAXParser"));
+
+    // SAXBuilders are not thread-safe, so each thread gets its own (reusable) builder
+    private static final ThreadLocal<SAXBuilder> _builder = new ThreadLocal<SAXBuilder>() {
+        protected SAXBuilder initialValue() {
+            SAXBuilder builder = new SAXBuilder(
+                    new XMLReaderSAX2Factory(false, "org.apache.xerces.parsers.SAXParser"));
+            builder.setReuseParser(true);
+            builder.setIgnoringBoundaryWhitespace(true);
+            return builder;
+        }
+    };
 
     public static final String UTF8_BOM = "\uFEFF";
 
@@ -94,12 +106,11 @@ public class JDOMUtil {
 
     /****************************************************************************/
 
-    public synchronized static Document stringToDocument(String s) {
+    public static Document stringToDocument(String s) {
         if (s == null) return null;
         if (s.startsWith(UTF8_BOM)) s = s.substring(1);      // remove BOM if any
         try {
-            _builder.setIgnoringBoundaryWhitespace(true);            
-            return _builder.build(new StringReader(s));
+            return getBuilder().build(new StringReader(s));
         }
         catch (JDOMException jde) {
             _log.error("JDOMException converting to Document, String = " + s , jde);
@@ -111,14 +122,76 @@ public class JDOMUtil {
     }
 
     
-    public synchronized static Document stringToDocumentUncaught(String s)
+    public static Document stringToDocumentUncaught(String s)
             throws IOException, JDOMException {
         if (s == null) {
             throw new JDOMException("Attempt to convert null string to document");
         }
         if (s.startsWith(UTF8_BOM)) s = s.substring(1);   // remove BOM if any
-        _builder.setIgnoringBoundaryWhitespace(true);
-        return _builder.build(new StringReader(s));
+        return getBuilder().build(new StringReader(s));
+    }
+
+
+    /****************************************************************************/
+
+    /**
+     * Parses a document directly from a stream (e.g. a servlet request body),
+     * without first reading it into a String. A byte order mark, if any, is
+     * handled by the parser.
+     * @param is the stream to parse
+     * @return the parsed Document, or null if it can't be parsed
+     */
+    public static Document streamToDocument(InputStream is) {
+        if (is == null) return null;
+        try {
+            return streamToDocumentUncaught(is);
+        }
+        catch (JDOMException jde) {
+            _log.error("JDOMException converting stream to Document", jde);
+        }
+        catch (IOException ioe) {
+            _log.error("IOException converting stream to Document", ioe);
+        }
+        return null ;
+    }
+
+
+    public static Document streamToDocumentUncaught(InputStream is)
+            throws IOException, JDOMException {
+        if (is == null) {
+            throw new JDOMException("Attempt to convert null stream to document");
+        }
+        return getBuilder().build(is);
+    }
+
+
+    /**
+     * Parses a document directly from a character stream, without first reading it
+     * into a String.
+     * @param reader the reader to parse
+     * @return the parsed Document, or null if it can't be parsed
+     */
+    public static Document readerToDocument(Reader reader) {
+        if (reader == null) return null;
+        try {
+            return readerToDocumentUncaught(reader);
+        }
+        catch (JDOMException jde) {
+            _log.error("JDOMException converting reader to Document", jde);
+        }
+        catch (IOException ioe) {
+            _log.error("IOException converting reader to Document", ioe);
+        }
+        return null ;
+    }
+
+
+    public static Document readerToDocumentUncaught(Reader reader)
+            throws IOException, JDOMException {
+        if (reader == null) {
+            throw new JDOMException("Attempt to convert null reader to document");
+        }
+        return getBuilder().build(skipBOM(reader));
     }
 
 
@@ -137,9 +210,9 @@ public class JDOMUtil {
     }
 
 
-    public synchronized static Document fileToDocument(File file) {
+    public static Document fileToDocument(File file) {
         try {
-            return (file != null && file.exists()) ? _builder.build(file) : null ;
+            return (file != null && file.exists()) ? getBuilder().build(file) : null ;
         }
         catch (JDOMException jde) {
             _log.error("JDOMException loading file into Document, filepath = " +
@@ -282,4 +355,19 @@ public class JDOMUtil {
         return e;
     }
 
-} //ends
+
+    /****************************************************************************/
+
+    private static SAXBuilder getBuilder() {
+        return _builder.get();
+    }
+
+
+    private static Reader skipBOM(Reader reader) throws IOException {
+        PushbackReader pbReader = new PushbackReader(reader, 1);
+        int c = pbReader.read();
+        if (c != -1 && c != UTF8_BOM.charAt(0)) pbReader.unread(c);
+        return pbReader;
+    }
+
+}
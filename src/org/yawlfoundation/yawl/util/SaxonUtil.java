@@ -24,13 +24,23 @@ import org.apache.logging.log4j.Logger;
 import org.jdom2.Content;
 import org.jdom2.Document;
 import org.jdom2.Element;
-import org.jdom2.JDOMException;
-import org.jdom2.output.DOMOutputter;
+import org.jdom2.Text;
+import org.jdom2.input.sax.SAXHandler;
+import org.jdom2.transform.JDOMSource;
 
 import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 /**
+ * Compiled queries are cached (see XQueryCache), and each evaluation gets its own
+ * evaluator and serializer, so these methods may be called concurrently.
+ * <p/>
+ * Data trees are passed to Saxon as native (XdmNode) trees, and tree results are
+ * built directly into JDOM, so there's no serialise and reparse of the data or
+ * the result on each evaluation.
+ *
  * @author Michael Adams
  * @date 10/07/2008
  */
@@ -38,15 +48,17 @@ import java.util.List;
 public class SaxonUtil {
 
     private static final Processor _processor = new Processor(false);
-    private static final Serializer _output = new Serializer();
-    private static final XQueryCompiler _compiler = _processor.newXQueryCompiler();
-    private static final DOMOutputter _domOutputter = new DOMOutputter();
+    private static final XQueryCache _cache = new XQueryCache(_processor);
 
-    private static final Logger _log = LogManager.getLogger(SaxonUtil.class);
+    // holds the messages of the most recent compilation on each thread
+    private static final ThreadLocal<SaxonErrorListener> _errorListener =
+            new ThreadLocal<SaxonErrorListener>() {
+                protected SaxonErrorListener initialValue() {
+                    return new SaxonErrorListener();
+                }
+            };
 
-    static {
-        _compiler.setErrorListener(new SaxonErrorListener());
-    }
+    private static final Logger _log = LogManager.getLogger(SaxonUtil.class);
 
 
     /**
@@ -59,16 +71,45 @@ public class SaxonUtil {
     public static String evaluateQuery(String query, Document dataDoc)
             throws SaxonApiException {
         if (_log.isDebugEnabled()) log(query, dataDoc);
+        return evaluateQuery(query, toXdmNode(dataDoc));
+    }
 
-        // initialise, compile & load the evaluator
-        XQueryEvaluator evaluator = initEvaluator(query, dataDoc);
+
+    /**
+     * Evaluates an XQuery against a Saxon data tree
+     * @param query the XQuery to evaluate
+     * @param dataTree the data tree, as built by toXdmNode
+     * @return an XML String representing the result of the evaluation
+     * @throws SaxonApiException if there's a problem with the XQuery or data tree
+     */
+    public static String evaluateQuery(String query, XdmNode dataTree)
+            throws SaxonApiException {
+        return evaluateQuery(_cache.get(query), dataTree);
+    }
+
+
+    /**
+     * Evaluates a query, previously compiled via compileXQuery, against a Saxon
+     * data tree
+     * @param query the compiled XQuery to evaluate
+     * @param dataTree the data tree, as built by toXdmNode
+     * @return an XML String representing the result of the evaluation
+     * @throws SaxonApiException if there's a problem with the evaluation
+     */
+    public static String evaluateQuery(XQueryExecutable query, XdmNode dataTree)
+            throws SaxonApiException {
+
+        // load the evaluator
+        XQueryEvaluator evaluator = query.load();
+        evaluator.setContextItem(dataTree);
 
         // create a StringWriter to receive the output of the evaluation
         StringWriter writer = new StringWriter();
-        _output.setOutputWriter(writer);
+        Serializer output = new Serializer();
+        output.setOutputWriter(writer);
 
         // evaluate the query & return the result as a string
-        evaluator.run(_output);
+        evaluator.run(output);
         String result = writer.toString();
         if (_log.isDebugEnabled()) log(result, null);
         return removeHeader(result);
@@ -84,7 +125,34 @@ public class SaxonUtil {
      */
     public static Element evaluateTreeQuery(String query, Document dataDoc)
             throws SaxonApiException {
-        return JDOMUtil.stringToElement(evaluateQuery(query, dataDoc));
+        if (_log.isDebugEnabled()) log(query, dataDoc);
+        return evaluateTreeQuery(query, toXdmNode(dataDoc));
+    }
+
+
+    /**
+     * Evaluates an XQuery against a Saxon data tree
+     * @param query the XQuery to evaluate
+     * @param dataTree the data tree, as built by toXdmNode
+     * @return a JDOM Element representing the result of the evaluation, or null if
+     * the result is not a single element
+     * @throws SaxonApiException if there's a problem with the XQuery or data tree
+     */
+    public static Element evaluateTreeQuery(String query, XdmNode dataTree)
+            throws SaxonApiException {
+        XdmValue result = initEvaluator(query, dataTree).evaluate();
+        if (result.size() == 1) {
+            XdmItem item = result.itemAt(0);
+            if (! item.isAtomicValue()) {
+                XdmNode node = (XdmNode) item;
+                if (node.getNodeKind() == XdmNodeKind.ELEMENT ||
+                        node.getNodeKind() == XdmNodeKind.DOCUMENT) {
+                    return toElement(node);
+                }
+            }
+        }
+        _log.error("XQuery result is not a single element, query = {}", query);
+        return null;
     }
 
 
@@ -98,57 +166,131 @@ public class SaxonUtil {
     public static List<Content> evaluateListQuery(String query, Element dataElem)
             throws SaxonApiException {
 
-        // put the element in a jdom document
+        // put the element in a jdom document & evaluate against its saxon tree
         Document dataDoc = new Document(dataElem.clone());
-        String result = evaluateQuery(query, dataDoc);
+        XdmValue result = initEvaluator(query, toXdmNode(dataDoc)).evaluate();
+
+        // express the result as a content list, in the same form as a parse of its
+        // serialisation would: adjacent atomic values are space separated, adjacent
+        // text is merged, and whitespace-only text between elements is dropped
+        List<Content> contentList = new ArrayList<Content>();
+        StringBuilder text = new StringBuilder();
+        boolean lastWasAtomic = false;
+        for (XdmItem item : result) {
+            if (item.isAtomicValue()) {
+                if (lastWasAtomic) text.append(' ');
+                text.append(item.getStringValue());
+                lastWasAtomic = true;
+                continue;
+            }
+            lastWasAtomic = false;
+            XdmNode node = (XdmNode) item;
+            if (node.getNodeKind() == XdmNodeKind.TEXT) {
+                text.append(node.getStringValue());
+            }
+            else if (node.getNodeKind() == XdmNodeKind.ELEMENT) {
+                addText(contentList, text);
+                contentList.add(toElement(node));
+            }
+            else if (node.getNodeKind() == XdmNodeKind.DOCUMENT) {
+                addText(contentList, text);
+                contentList.addAll(toDocument(node).getRootElement().cloneContent());
+            }
+        }
+        addText(contentList, text);
+        return contentList;
+    }
+
 
-        // use the string result to create a doc to get it expressed as an element list
-        Document resultDoc = JDOMUtil.stringToDocument(StringUtil.wrap(result, "root"));
-        return resultDoc.getRootElement().cloneContent();
+    /**
+     * Builds a Saxon tree from a JDOM Document, so that it may be used for any
+     * number of query evaluations without further conversion
+     * @param doc the JDOM Document
+     * @return the equivalent Saxon tree
+     * @throws SaxonApiException if the tree can't be built
+     */
+    public static XdmNode toXdmNode(Document doc) throws SaxonApiException {
+        return _processor.newDocumentBuilder().build(new JDOMSource(doc));
     }
 
 
     /**
-     * Compiles an XQuery so that it can be executed
+     * Compiles an XQuery so that it can be executed. The compiled query is not cached,
+     * so that any compilation messages are available via getCompilerMessages()
      * @param query the XQuery to compile
      * @return the executable query
      * @throws SaxonApiException if there's a problem with the XQuery
      */
     public static XQueryExecutable compileXQuery(String query)
             throws SaxonApiException {
-        ((SaxonErrorListener) _compiler.getErrorListener()).reset();
-        return _compiler.compile(query);
+        SaxonErrorListener listener = _errorListener.get();
+        listener.reset();
+        return _cache.compile(query, listener);
     }
 
+    /** @return the messages of the most recent compilation on the calling thread */
     public static List<String> getCompilerMessages() {
-        return ((SaxonErrorListener) _compiler.getErrorListener()).getAllMessages();
+        return _errorListener.get().getAllMessages();
+    }
+
+
+    /**
+     * Compiles and caches a set of queries ahead of their evaluation. The queries
+     * remain cached until released.
+     * @param owner the owner of the queries (e.g. a specification id)
+     * @param queries the queries to compile
+     */
+    public static void prepareQueries(Object owner, Collection<String> queries) {
+        _cache.prepare(owner, queries);
+    }
+
+
+    /**
+     * Removes from the cache the queries previously prepared for an owner (unless
+     * they are also held by another owner)
+     * @param owner the owner of the queries
+     */
+    public static void releaseQueries(Object owner) {
+        _cache.release(owner);
     }
 
 
     /******************************************************************************/
 
-    private static XQueryEvaluator initEvaluator(String query, Document dataDoc)
+    private static XQueryEvaluator initEvaluator(String query, XdmNode dataTree)
             throws SaxonApiException {
 
-        // wrap the jdom doc into something saxon understands
-        org.w3c.dom.Document domDoc = toDOM(dataDoc);
-
-        // compile & load query
-        XQueryExecutable executable = compileXQuery(query);
-        XQueryEvaluator evaluator = executable.load();
+        // get the compiled query & load it
+        XQueryEvaluator evaluator = _cache.get(query).load();
 
-        // set the context to the data document
-        evaluator.setContextItem(_processor.newDocumentBuilder().wrap(domDoc));
+        // set the context to the data tree
+        evaluator.setContextItem(dataTree);
         return evaluator ;
     }
 
 
-    private static org.w3c.dom.Document toDOM(Document doc) throws SaxonApiException {
-        try {
-            return _domOutputter.output(doc);
-        }
-        catch (JDOMException jde) {
-            throw new SaxonApiException("Failed to translate JDOM Document for processing.");
+    private static Element toElement(XdmNode node) throws SaxonApiException {
+        Document doc = toDocument(node);
+        return doc.hasRootElement() ? doc.detachRootElement() : null;
+    }
+
+
+    // streams a saxon node straight into a jdom tree, ignoring boundary whitespace
+    // (as JDOMUtil's builder does)
+    private static Document toDocument(XdmNode node) throws SaxonApiException {
+        SAXHandler handler = new SAXHandler();
+        handler.setIgnoringBoundaryWhitespace(true);
+        _processor.writeXdmValue(node, new SAXDestination(handler));
+        return handler.getDocument();
+    }
+
+
+    private static void addText(List<Content> contentList, StringBuilder text) {
+        if (text.length() > 0) {
+            if (text.toString().trim().length() > 0) {
+                contentList.add(new Text(text.toString()));
+            }
+            text.setLength(0);
         }
     }
 
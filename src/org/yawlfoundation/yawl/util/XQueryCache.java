@@ -0,0 +1,199 @@
+/*
+ * Copyright (c) 2004-2020 The YAWL Foundation. All rights reserved.
+ * The YAWL Foundation is a collaboration of individuals and
+ * organisations who are committed to improving workflow technology.
+ *
+ * This file is part of YAWL. YAWL is free software: you can
+ * redistribute it and/or modify it under the terms of the GNU Lesser
+ * General Public License as published by the Free Software Foundation.
+ *
+ * YAWL is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY
+ * or FITNESS FOR A PARTICULAR PURPOSE. See the GNU Lesser General
+ * Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with YAWL. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.yawlfoundation.yawl.util;
+
+import net.sf.saxon.s9api.Processor;
+import net.sf.saxon.s9api.SaxonApiException;
+import net.sf.saxon.s9api.XQueryCompiler;
+import net.sf.saxon.s9api.XQueryExecutable;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded, thread-safe cache of compiled XQueries, keyed on query text.
+ * <p/>
+ * Compiled queries (XQueryExecutables) are immutable and so may be shared between
+ * threads; each evaluation loads its own evaluator from the cached executable.
+ * <p/>
+ * Queries may be 'prepared' on behalf of an owner (e.g. a specification on load),
+ * which pins them in the cache until the owner releases them (e.g. on unload).
+ * Queries that are not pinned by any owner are evicted, least recently used first,
+ * when the cache grows beyond its maximum size.
+ */
+public class XQueryCache {
+
+    private static final int DEFAULT_MAX_SIZE = 5000;
+
+    private final Processor _processor;
+    private final int _maxSize;
+    private final ConcurrentHashMap<String, CachedQuery> _cache;
+    private final Map<Object, Set<String>> _ownedQueries;
+    private final AtomicLong _clock;
+
+
+    public XQueryCache(Processor processor) {
+        this(processor, DEFAULT_MAX_SIZE);
+    }
+
+
+    public XQueryCache(Processor processor, int maxSize) {
+        _processor = processor;
+        _maxSize = maxSize;
+        _cache = new ConcurrentHashMap<String, CachedQuery>();
+        _ownedQueries = new ConcurrentHashMap<Object, Set<String>>();
+        _clock = new AtomicLong();
+    }
+
+
+    /**
+     * Gets the compiled form of a query, compiling and caching it if necessary
+     * @param query the XQuery
+     * @return the compiled XQuery
+     * @throws SaxonApiException if the query can't be compiled
+     */
+    public XQueryExecutable get(String query) throws SaxonApiException {
+        CachedQuery cached = _cache.get(query);
+        if (cached == null) {
+            cached = new CachedQuery(compile(query, new SaxonErrorListener()));
+            CachedQuery existing = _cache.putIfAbsent(query, cached);
+            if (existing != null) {
+                cached = existing;
+            }
+            else if (_cache.size() > _maxSize) {
+                evict();
+            }
+        }
+        cached.touch(_clock.incrementAndGet());
+        return cached.executable;
+    }
+
+
+    /**
+     * Compiles a query without caching it
+     * @param query the XQuery
+     * @param listener receives any compilation messages
+     * @return the compiled XQuery
+     * @throws SaxonApiException if the query can't be compiled
+     */
+    public XQueryExecutable compile(String query, SaxonErrorListener listener)
+            throws SaxonApiException {
+
+        // compilers are not thread-safe, so each compilation gets its own
+        XQueryCompiler compiler = _processor.newXQueryCompiler();
+        compiler.setErrorListener(listener);
+        return compiler.compile(query);
+    }
+
+
+    /**
+     * Compiles and pins a set of queries on behalf of an owner. Queries that fail
+     * to compile are ignored here - they will raise an error when evaluated.
+     * @param owner the object the queries belong to (e.g. a specification id)
+     * @param queries the queries to compile
+     */
+    public void prepare(Object owner, Collection<String> queries) {
+        Set<String> owned = Collections.newSetFromMap(
+                new ConcurrentHashMap<String, Boolean>());
+        for (String query : queries) {
+            try {
+                get(query);
+                owned.add(query);
+            }
+            catch (SaxonApiException sae) {
+                // leave it for runtime to report
+            }
+        }
+        _ownedQueries.put(owner, owned);
+    }
+
+
+    /**
+     * Releases the queries pinned for an owner, removing those not pinned by some
+     * other owner from the cache
+     * @param owner the object the queries were prepared for
+     */
+    public void release(Object owner) {
+        Set<String> owned = _ownedQueries.remove(owner);
+        if (owned != null) {
+            owned.removeAll(getPinnedQueries());
+            for (String query : owned) {
+                _cache.remove(query);
+            }
+        }
+    }
+
+
+    public int size() { return _cache.size(); }
+
+    public boolean contains(String query) { return _cache.containsKey(query); }
+
+    public void clear() {
+        _cache.clear();
+        _ownedQueries.clear();
+    }
+
+
+    // removes the least recently used quarter of the unpinned queries
+    private synchronized void evict() {
+        if (_cache.size() <= _maxSize) return;         // another thread got here first
+
+        // snapshot the access times, since they may change while sorting
+        Set<String> pinned = getPinnedQueries();
+        final Map<String, Long> candidates = new HashMap<String, Long>();
+        for (Map.Entry<String, CachedQuery> entry : _cache.entrySet()) {
+            if (! pinned.contains(entry.getKey())) {
+                candidates.put(entry.getKey(), entry.getValue().lastUsed);
+            }
+        }
+        List<String> lruOrder = new ArrayList<String>(candidates.keySet());
+        Collections.sort(lruOrder, new Comparator<String>() {
+            public int compare(String q1, String q2) {
+                return candidates.get(q1).compareTo(candidates.get(q2));
+            }
+        });
+        int toRemove = Math.max(_cache.size() - _maxSize, _maxSize / 4);
+        for (int i = 0; i < Math.min(toRemove, lruOrder.size()); i++) {
+            _cache.remove(lruOrder.get(i));
+        }
+    }
+
+
+    private Set<String> getPinnedQueries() {
+        Set<String> pinned = new HashSet<String>();
+        for (Set<String> owned : _ownedQueries.values()) {
+            pinned.addAll(owned);
+        }
+        return pinned;
+    }
+
+
+    /******************************************************************************/
+
+    private static class CachedQuery {
+        final XQueryExecutable executable;
+        volatile long lastUsed;
+
+        CachedQuery(XQueryExecutable executable) { this.executable = executable; }
+
+        void touch(long time) { lastUsed = time; }
+    }
+
+}
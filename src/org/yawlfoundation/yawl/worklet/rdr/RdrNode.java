@@ -55,6 +55,9 @@ public class RdrNode implements Cloneable {
 
     private YAttributeMap _attributes;
 
+    // the condition, parsed once for repeated evaluation
+    private transient ConditionEvaluator.CompiledCondition _compiledCondition;
+
     private static final ConditionEvaluator EVALUATOR = new ConditionEvaluator();
 
 
@@ -178,6 +181,17 @@ public class RdrNode implements Cloneable {
     }
 
     public boolean isLeaf() { return trueChild == null && falseChild == null; }
+
+
+    // compiled on first use, and again if the condition has since been changed
+    private ConditionEvaluator.CompiledCondition getCompiledCondition() {
+        ConditionEvaluator.CompiledCondition compiled = _compiledCondition;
+        if (compiled == null || ! compiled.isCompiledFrom(condition)) {
+            compiled = EVALUATOR.compile(condition);
+            _compiledCondition = compiled;
+        }
+        return compiled;
+    }
     
 
 //===========================================================================//
@@ -269,7 +283,7 @@ public class RdrNode implements Cloneable {
         RdrPair pair = null;
 
         try {
-	        if (EVALUATOR.evaluate(condition, caseData)) {  // if condition evals to True
+	        if (EVALUATOR.evaluate(getCompiledCondition(), caseData)) {  // evals to True
 	            if (trueChild == null) {                    // ...and no exception rule
 
                     // this is last satisfied and last searched
@@ -19,6 +19,7 @@
 package org.yawlfoundation.yawl.worklet.support;
 
 import net.sf.saxon.s9api.SaxonApiException;
+import net.sf.saxon.s9api.XQueryExecutable;
 import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -34,7 +35,9 @@ import org.yawlfoundation.yawl.worklet.rdrutil.RdrConditionException;
 import org.yawlfoundation.yawl.worklet.rdrutil.RdrConditionFunctions;
 import org.yawlfoundation.yawl.worklet.rdrutil.RdrFunctionLoader;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Vector;
 
@@ -67,6 +70,10 @@ import java.util.Vector;
  *  does not evaluate to a boolean value (see getMessage() for the kinds of
  *  things that can go wrong).
  *
+ *  A condition that is evaluated repeatedly (such as that of an RdrNode) can be
+ *  compiled once via compile(), then evaluated against each set of case data
+ *  without being re-parsed.
+ *
  *  @author Michael Adams
  *  v0.8, 04-09/2006
  */
@@ -81,7 +88,8 @@ public class ConditionEvaluator {
     private static final String[] _AllOps     = { "*", "/", "+", "-", ">=", "<=",
             "<", ">", "!=", "=", "&", "|", "!"} ;
 
-    private boolean _isDesignTime = false;
+    // stands in for the result of a parenthesised sub-expression in a compiled condition
+    private static final String SUB_EXPRESSION = "__subexpr";
 
     private static final Logger _log = LogManager.getLogger(ConditionEvaluator.class);
 
@@ -107,19 +115,20 @@ public class ConditionEvaluator {
             throw new RdrConditionException("Cannot evaluate tree: data element is null");
         }
 
-        _isDesignTime = isDesignTime;
         String result;
 
         // DEBUG: log received items
-        _log.debug("Received condition: {}");
-        _log.debug("Data = {}", JDOMUtil.elementToString(data)) ;
+        if (_log.isDebugEnabled()) {
+            _log.debug("Received condition: {}", cond);
+            _log.debug("Data = {}", JDOMUtil.elementToString(data));
+        }
 
         // check if it's an XQuery or cost predicate
         if (cond.startsWith("{") || cond.startsWith("/")) {
             result = evaluateXQuery(cond, data);
         }
         else {
-            result = parseAndEvaluate(cond, data) ;            // evaluate ordinary condition
+            result = parseAndEvaluate(cond, data, isDesignTime) ;  // ordinary condition
         }
 
         // if a boolean result, return it
@@ -134,6 +143,72 @@ public class ConditionEvaluator {
         return evaluate(cond, data, false);
     }
 
+
+    /**
+     * Parses a condition once, so that it can be evaluated repeatedly without
+     * being re-parsed. A condition that can't be compiled (including one that is
+     * malformed) is still returned, and is evaluated from its source each time,
+     * so that evaluating a compiled condition always has the same outcome as
+     * evaluating its source.
+     * @param cond the condition to compile
+     * @return the compiled condition
+     */
+    public CompiledCondition compile(String cond) {
+        if (! StringUtil.isNullOrEmpty(cond)) {
+            try {
+                if (cond.startsWith("{") || cond.startsWith("/")) {
+                    String expr = cond.startsWith("{") ? deQuote(cond) : cond;
+                    return new CompiledCondition(cond, expr, SaxonUtil.compileXQuery(
+                            String.format("boolean(%s)", expr)));
+                }
+                CompiledExpression expression = compileExpression(cond);
+                if (expression != null) {
+                    return new CompiledCondition(cond, expression);
+                }
+            }
+            catch (Exception e) {
+                // fall through to uncompiled
+            }
+        }
+        return new CompiledCondition(cond);
+    }
+
+
+    /**
+     *  Evaluate a compiled condition using the datalist of variables and values.
+     *  @param cond - the compiled condition to evaluate
+     *  @param data - the datalist of variables and values
+     *  @param isDesignTime - true if functions are not to be evaluated
+     *
+     *  @return the boolean result of the evaluation
+     */
+    public boolean evaluate(CompiledCondition cond, Element data, boolean isDesignTime)
+            throws RdrConditionException {
+        String result = null;
+        if (data != null) {
+            if (cond._xquery != null) {
+                result = evaluateXQuery(cond._xquery, cond._xqueryExpr, data);
+            }
+            else if (cond._expression != null) {
+                result = evaluate(cond._expression, data, isDesignTime);
+            }
+        }
+
+        // not compiled, or its result needs re-parsing: evaluate the source
+        if (result == null) return evaluate(cond.getSource(), data, isDesignTime);
+
+        if (isBoolean(result))
+            return result.equalsIgnoreCase("TRUE") ;
+        else throw new RdrConditionException(getMessage(1));   // result not T/F
+    }
+
+
+    // default runtime call
+    public boolean evaluate(CompiledCondition cond, Element data)
+            throws RdrConditionException {
+        return evaluate(cond, data, false);
+    }
+
     //==========================================================================//
 
     /**
@@ -470,6 +545,18 @@ public class ConditionEvaluator {
         }
     }
 
+    private String evaluateXQuery(XQueryExecutable query, String expr, Element data)
+            throws RdrConditionException {
+        try {
+            return SaxonUtil.evaluateQuery(query,
+                    SaxonUtil.toXdmNode(new Document(data.clone())));
+        }
+        catch (SaxonApiException sae) {
+            throw new RdrConditionException("Invalid XPath expression (" + expr + ").");
+        }
+    }
+
+
     /** returns the index position of 'c' in 's', or -1 if not found */
     private int Pos(char c, String s) {
         return s.indexOf(c) ;
@@ -686,7 +773,8 @@ public class ConditionEvaluator {
 
 
     /** parses and evaluates expression 's' using operator precedence */
-    private String parseAndEvaluate(String s, Element data) throws RdrConditionException {
+    private String parseAndEvaluate(String s, Element data, boolean isDesignTime)
+            throws RdrConditionException {
 
         String subExpr, ans ;
         String[] tokens ;
@@ -706,7 +794,8 @@ public class ConditionEvaluator {
                 String internal = deQuote(subExpr);
 
                 // recurse if required
-                ans = (internal.isEmpty()) ? internal : parseAndEvaluate(internal, data);
+                ans = (internal.isEmpty()) ? internal :
+                        parseAndEvaluate(internal, data, isDesignTime);
                 s = replaceStr(s, subExpr, ans) ;                  // insert result
             }
             parIndex = s.indexOf('(');
@@ -740,7 +829,7 @@ public class ConditionEvaluator {
 
         // one token left - can be boolean string or single (boolean) function call
         if (isFunctionCall(tokens[0]))
-            tokens[0] = _isDesignTime ? "true" : evalFunction(tokens[0], data);
+            tokens[0] = isDesignTime ? "true" : evalFunction(tokens[0], data);
         if (negation) {
             tokens[0] = tokens[0].equalsIgnoreCase("true") ? "false" : "true";
         }
@@ -750,6 +839,138 @@ public class ConditionEvaluator {
 
 
 
+    //==========================================================================//
+
+    /**
+     *  COMPILATION METHODS
+     */
+
+    /**
+     * Parses an expression as parseAndEvaluate does, but without evaluating
+     * anything: each parenthesised sub-expression is compiled in turn and replaced
+     * by a placeholder token, the result is tokenised, and the order in which
+     * parseAndEvaluate would apply the operators is recorded.
+     * @return the compiled expression, or null if its evaluation may depend on how
+     * the results of its sub-expressions would be tokenised (e.g. a sub-expression
+     * directly adjacent to another term)
+     */
+    private CompiledExpression compileExpression(String s) throws RdrConditionException {
+        if (s.contains(SUB_EXPRESSION)) return null;
+        List<CompiledExpression> subs = new ArrayList<CompiledExpression>();
+        int parIndex = s.indexOf('(');
+
+        while (parIndex > -1) {
+            if (isFunctionArgumentDelimiter(s, parIndex)) {
+                s = maskArgumentDelimiters(s, parIndex);
+            }
+            else {
+                String subExpr = extractSubExpr(s);
+                String internal = deQuote(subExpr);
+                String placeholder = internal;                   // empty is just removed
+                if (! internal.isEmpty()) {
+                    int end = parIndex + subExpr.length();
+                    if (! (isTermBoundary(s, parIndex - 1) && isTermBoundary(s, end))) {
+                        return null;
+                    }
+                    CompiledExpression sub = compileExpression(internal);
+                    if (sub == null) return null;
+                    placeholder = SUB_EXPRESSION + subs.size();
+                    subs.add(sub);
+                }
+                s = replaceStr(s, subExpr, placeholder);
+            }
+            parIndex = s.indexOf('(');
+        }
+        if (s.isEmpty()) return null;
+        boolean negation = s.charAt(0) == '!';
+        if (negation) s = s.substring(1);
+
+        String[] tokens = tokenize(s.trim());
+
+        // locate the sub-expression placeholders
+        int[] subPositions = new int[subs.size()];
+        for (int i = 0; i < subs.size(); i++) {
+            subPositions[i] = indexOfArray(tokens, SUB_EXPRESSION + i);
+            if (subPositions[i] < 0) return null;
+        }
+
+        // record the order of operations
+        List<Integer> operations = new ArrayList<Integer>();
+        String[] reduced = tokens;
+        int opIndex = findNextOperator(reduced);
+        while (opIndex > -1) {
+            operations.add(opIndex);
+            reduced = reduceTokens(reduced, opIndex, SUB_EXPRESSION);
+            opIndex = findNextOperator(reduced);
+        }
+
+        return new CompiledExpression(tokens, subPositions,
+                subs.toArray(new CompiledExpression[subs.size()]), operations, negation);
+    }
+
+
+    /** @return true if the char at 'i' in 's' separates a term from its neighbours */
+    private boolean isTermBoundary(String s, int i) {
+        return i < 0 || i >= s.length() || Character.isWhitespace(s.charAt(i)) ||
+                isOperator(s.charAt(i));
+    }
+
+
+    /**
+     * Evaluates a compiled expression, with the same result as parseAndEvaluate
+     * would give for its source
+     * @return the result, or null if a sub-expression's result would not be read
+     * back as a single token (in which case the source must be evaluated instead)
+     */
+    private String evaluate(CompiledExpression expr, Element data, boolean isDesignTime)
+            throws RdrConditionException {
+        String[] tokens = expr.tokens.clone();
+        for (int i = 0; i < expr.subs.length; i++) {
+            String value = evaluate(expr.subs[i], data, isDesignTime);
+            if (value == null || ! isSingleToken(value)) return null;
+            tokens[expr.subPositions[i]] = value;
+        }
+
+        for (int opIndex : expr.operations) {
+            String ans = evalExpression(tokens[opIndex-1], tokens[opIndex],
+                    tokens[opIndex+1], data) ;
+            tokens = reduceTokens(tokens, opIndex, ans) ;
+        }
+
+        // one token left - can be boolean string or single (boolean) function call
+        if (isFunctionCall(tokens[0]))
+            tokens[0] = isDesignTime ? "true" : evalFunction(tokens[0], data);
+        if (expr.negation) {
+            tokens[0] = tokens[0].equalsIgnoreCase("true") ? "false" : "true";
+        }
+        return tokens[0];
+    }
+
+
+    /** @return true if 's' would be read by tokenize as exactly one operand token */
+    private boolean isSingleToken(String s) {
+        if (s.isEmpty()) return false;
+        char first = s.charAt(0);
+        if (first == '"') {
+            return s.indexOf('"', 1) == s.length() - 1;
+        }
+        if (isDigitOrDot(first)) {
+            for (char c : s.toCharArray()) {
+                if (! isDigitOrDot(c)) return false;
+            }
+            return isNumber(s);
+        }
+        if (isLetterOrUScore(first)) {
+            for (char c : s.toCharArray()) {
+                if (! isValidVarNameChar(c)) return false;
+            }
+            return isBoolean(s) || ! isFunctionName(s);
+        }
+        return false;
+    }
+
+
+
     /** evaluates an expression and returns the result
      *  @param lOp - the left operand
      *  @param operator - as the name implies
@@ -995,6 +1216,75 @@ public class ConditionEvaluator {
     }
 
 
+    /*********************************************************************/
+
+    /**
+     * A condition parsed once for repeated evaluation (see compile). Immutable, so
+     * it may be shared between threads.
+     */
+    public static final class CompiledCondition {
+
+        private final String _source;
+        private final String _xqueryExpr;
+        private final XQueryExecutable _xquery;              // for XQuery conditions
+        private final CompiledExpression _expression;        // for other conditions
+
+        // a condition that is evaluated from its source
+        private CompiledCondition(String source) {
+            this(source, null, null, null);
+        }
+
+        private CompiledCondition(String source, String expr, XQueryExecutable xquery) {
+            this(source, expr, xquery, null);
+        }
+
+        private CompiledCondition(String source, CompiledExpression expression) {
+            this(source, null, null, expression);
+        }
+
+        private CompiledCondition(String source, String expr, XQueryExecutable xquery,
+                                  CompiledExpression expression) {
+            _source = source;
+            _xqueryExpr = expr;
+            _xquery = xquery;
+            _expression = expression;
+        }
+
+        public String getSource() { return _source; }
+
+        public boolean isCompiled() { return _xquery != null || _expression != null; }
+
+        public boolean isCompiledFrom(String cond) {
+            return _source == null ? cond == null : _source.equals(cond);
+        }
+    }
+
+
+    // an expression's tokens, with the positions of its (compiled) parenthesised
+    // sub-expressions, and the index of the operator applied at each reduction
+    private static final class CompiledExpression {
+
+        private final String[] tokens;
+        private final int[] subPositions;
+        private final CompiledExpression[] subs;
+        private final int[] operations;
+        private final boolean negation;
+
+        CompiledExpression(String[] tokens, int[] subPositions,
+                           CompiledExpression[] subs, List<Integer> operations,
+                           boolean negation) {
+            this.tokens = tokens;
+            this.subPositions = subPositions;
+            this.subs = subs;
+            this.operations = new int[operations.size()];
+            for (int i = 0; i < this.operations.length; i++) {
+                this.operations[i] = operations.get(i);
+            }
+            this.negation = negation;
+        }
+    }
+
+
     /*********************************************************************/
 
     public static void main(String args[]) {
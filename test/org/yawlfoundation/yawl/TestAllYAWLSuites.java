@@ -1,14 +1,19 @@
 package org.yawlfoundation.yawl;
 
 import org.yawlfoundation.yawl.authentication.AuthenticationTestSuite;
+import org.yawlfoundation.yawl.balancer.BalancerTestSuite;
+import org.yawlfoundation.yawl.cost.CostTestSuite;
+import org.yawlfoundation.yawl.documentStore.DocumentStoreTestSuite;
 import org.yawlfoundation.yawl.elements.ElementsTestSuite;
 import org.yawlfoundation.yawl.elements.state.StateTestSuite;
 import org.yawlfoundation.yawl.engine.EngineTestSuite;
 import org.yawlfoundation.yawl.exceptions.ExceptionTestSuite;
 import org.yawlfoundation.yawl.logging.LoggingTestSuite;
 import org.yawlfoundation.yawl.schema.SchemaTestSuite;
+import org.yawlfoundation.yawl.stateless.monitor.StatelessTestSuite;
 import org.yawlfoundation.yawl.unmarshal.UnmarshallerTestSuite;
 import org.yawlfoundation.yawl.util.UtilTestSuite;
+import org.yawlfoundation.yawl.worklet.WorkletTestSuite;
 import junit.framework.Test;
 import junit.framework.TestSuite;
 import junit.textui.TestRunner;
@@ -39,6 +44,11 @@ public class TestAllYAWLSuites extends TestSuite{
         suite.addTest(UtilTestSuite.suite());
         suite.addTest(org.yawlfoundation.yawl.swingWorklist.WorklistTestSuite.suite());
         suite.addTest(AuthenticationTestSuite.suite());
+        suite.addTest(WorkletTestSuite.suite());
+        suite.addTest(DocumentStoreTestSuite.suite());
+        suite.addTest(CostTestSuite.suite());
+        suite.addTest(StatelessTestSuite.suite());
+        suite.addTest(BalancerTestSuite.suite());
         return suite;
     }
 
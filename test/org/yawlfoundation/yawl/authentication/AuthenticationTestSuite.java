@@ -28,6 +28,7 @@ public class AuthenticationTestSuite extends TestSuite{
     public static Test suite(){
         TestSuite suite = new TestSuite();
         suite.addTestSuite(TestConnections.class);
+        suite.addTestSuite(TestSessionTimer.class);
         //return
         return suite;
     }
@@ -86,6 +86,23 @@ public class TestConnections extends TestCase {
     }
 
 
+    public void testClientConnected() throws YPersistenceException {
+        clearUsers();
+        _engine.addExternalClient(new YExternalClient("fred", "head", "doco"));
+        YExternalClient client = _engine.getExternalClient("fred");
+        assertFalse(_sessionCache.isClientConnected(client));
+
+        String handle = _sessionCache.connect("fred", "head", 1200);
+        assertTrue(_sessionCache.isClientConnected(client));
+        assertFalse(_sessionCache.isServiceConnected("http://localhost/none"));
+
+        _sessionCache.disconnect(client);
+        assertFalse(_sessionCache.isClientConnected(client));
+        assertFalse(_sessionCache.checkConnection(handle));
+        _engine.removeExternalClient("fred");
+    }
+
+
     public static void main(String args[]) {
         TestRunner runner = new TestRunner();
         runner.doRun(suite());
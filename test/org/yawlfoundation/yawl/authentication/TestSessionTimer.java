@@ -0,0 +1,136 @@
+package org.yawlfoundation.yawl.authentication;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Checks that the session timer times out idle sessions, and only idle sessions.
+ */
+public class TestSessionTimer extends TestCase {
+
+    private static final long TICK = 50;                               // msecs
+
+    private StubCache _cache;
+    private YSessionTimer _timer;
+
+    public TestSessionTimer(String name) {
+        super(name);
+    }
+
+
+    public void setUp() {
+        _cache = new StubCache();
+        _timer = new YSessionTimer(_cache, TICK);
+    }
+
+
+    public void tearDown() {
+        _timer.shutdown();
+    }
+
+
+    public void testIdleSessionExpires() throws InterruptedException {
+        Session session = _cache.connect(1);
+        assertTrue(_timer.add(session));
+        Thread.sleep(500);
+        assertFalse(_cache.isExpired(session));
+        Thread.sleep(500 + 4 * TICK);
+        assertTrue(_cache.isExpired(session));
+        assertFalse(_timer.expire(session));                        // already gone
+    }
+
+
+    public void testActiveSessionKeptAlive() throws InterruptedException {
+        Session session = _cache.connect(1);
+        _timer.add(session);
+        for (int i = 0; i < 10; i++) {
+            Thread.sleep(200);
+            assertTrue(_timer.reset(session));
+        }
+        assertFalse(_cache.isExpired(session));
+        Thread.sleep(1000 + 4 * TICK);
+        assertTrue(_cache.isExpired(session));
+    }
+
+
+    public void testExpireStopsTiming() throws InterruptedException {
+        Session session = _cache.connect(1);
+        _timer.add(session);
+        assertTrue(_timer.expire(session));
+        Thread.sleep(1000 + 4 * TICK);
+        assertFalse(_cache.isExpired(session));
+    }
+
+
+    public void testNeverTimeout() {
+        Session session = _cache.connect(-1);
+        assertFalse(_timer.add(session));
+        assertFalse(_timer.reset(session));
+        assertFalse(_timer.expire(session));
+    }
+
+
+    /***************************************************************************/
+
+    private static class Session extends YAbstractSession {
+        Session(long timeOutSeconds) { super(timeOutSeconds); }
+    }
+
+
+    private static class StubCache implements ISessionCache {
+
+        private final Map<String, Session> _sessions =
+                new ConcurrentHashMap<String, Session>();
+        private final Map<String, Session> _expired =
+                new ConcurrentHashMap<String, Session>();
+
+        Session connect(long timeOutSeconds) {
+            Session session = new Session(timeOutSeconds);
+            _sessions.put(session.getHandle(), session);
+            return session;
+        }
+
+        boolean isExpired(Session session) {
+            return _expired.containsKey(session.getHandle());
+        }
+
+        public String connect(String name, String password, long timeOutSeconds) {
+            return connect(timeOutSeconds).getHandle();
+        }
+
+        public boolean checkConnection(String handle) {
+            return _sessions.containsKey(handle);
+        }
+
+        public YAbstractSession getSession(String handle) {
+            return _sessions.get(handle);
+        }
+
+        public void expire(String handle) {
+            Session session = _sessions.remove(handle);
+            if (session != null) _expired.put(handle, session);
+        }
+
+        public void disconnect(String handle) { _sessions.remove(handle); }
+
+        public void shutdown() { }
+    }
+
+
+    public static void main(String args[]) {
+        TestRunner runner = new TestRunner();
+        runner.doRun(suite());
+        System.exit(0);
+    }
+
+    public static Test suite() {
+        TestSuite suite = new TestSuite();
+        suite.addTestSuite(TestSessionTimer.class);
+        return suite;
+    }
+}
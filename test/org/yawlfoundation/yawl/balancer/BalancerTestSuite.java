@@ -0,0 +1,20 @@
+package org.yawlfoundation.yawl.balancer;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+/**
+ * The tests of the load balancer's case routing.
+ */
+public class BalancerTestSuite extends TestSuite {
+
+    public BalancerTestSuite(String name) {
+        super(name);
+    }
+
+    public static Test suite() {
+        TestSuite suite = new TestSuite();
+        suite.addTestSuite(TestLoadBalancer.class);
+        return suite;
+    }
+}
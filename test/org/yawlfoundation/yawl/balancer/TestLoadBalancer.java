@@ -0,0 +1,362 @@
+package org.yawlfoundation.yawl.balancer;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+import org.yawlfoundation.yawl.balancer.instance.EngineInstance;
+import org.yawlfoundation.yawl.balancer.instance.EngineSet;
+import org.yawlfoundation.yawl.balancer.monitor.Monitor;
+import org.yawlfoundation.yawl.balancer.servlet.LoadBalancerServlet;
+import org.yawlfoundation.yawl.elements.YSpecification;
+import org.yawlfoundation.yawl.engine.YSpecificationID;
+import org.yawlfoundation.yawl.unmarshal.YMarshal;
+import org.yawlfoundation.yawl.util.StringUtil;
+
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.*;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.*;
+
+/**
+ * Checks the load balancer's case routing against two stub engines: that requests
+ * for a case go to the engine running it, that a completed case is removed from the
+ * routing index, and that new cases go to the least busy engine.
+ */
+public class TestLoadBalancer extends TestCase {
+
+    private static StubEngine _engineA;
+    private static StubEngine _engineB;
+    private static LoadBalancerServlet _servlet;
+
+    private YSpecificationID _specID;
+
+    public TestLoadBalancer(String name) {
+        super(name);
+    }
+
+
+    public void setUp() throws Exception {
+        startBalancer();
+        _engineA.clear();
+        _engineB.clear();
+        _specID = new YSpecificationID("UID_spec", "0.1", "TestSpec");
+    }
+
+
+    public void testCaseRoutes() throws Exception {
+        EngineSet engineSet = newEngineSet();
+        EngineInstance a = getEngine(engineSet, _engineA);
+        EngineInstance b = getEngine(engineSet, _engineB);
+
+        engineSet.addCase(a, "7", _specID);
+        assertSame(a, engineSet.getEngineForCase("7"));
+        assertTrue(a.hasCase("7"));
+        assertNull(engineSet.getEngineForCase("8"));
+
+        // only the engine running the case can remove it
+        assertNull(engineSet.removeCase(b, "7"));
+        assertSame(a, engineSet.getEngineForCase("7"));
+
+        assertEquals(_specID, engineSet.removeCase(a, "7"));
+        assertNull(engineSet.getEngineForCase("7"));
+        assertFalse(a.hasCase("7"));
+    }
+
+
+    public void testRestoredCases() throws Exception {
+        EngineSet engineSet = newEngineSet();
+        EngineInstance b = getEngine(engineSet, _engineB);
+        Map<String, YSpecificationID> caseMap = new HashMap<String, YSpecificationID>();
+        caseMap.put("12", _specID);
+        caseMap.put("15", _specID);
+        engineSet.addCases(b, caseMap);
+        assertSame(b, engineSet.getEngineForCase("12"));
+        assertSame(b, engineSet.getEngineForCase("15"));
+        assertEquals("16", engineSet.getNextCaseNbr());      // resumes above restored
+    }
+
+
+    public void testIdlestEngine() throws Exception {
+        EngineSet engineSet = newEngineSet();
+        EngineInstance a = getEngine(engineSet, _engineA);
+        EngineInstance b = getEngine(engineSet, _engineB);
+
+        a.addComplexityMetric(2.0);
+        assertSame(b, engineSet.getIdlestEngine());
+        b.addComplexityMetric(3.0);
+        assertSame(a, engineSet.getIdlestEngine());
+        a.addComplexityMetric(2.0);
+        assertSame(b, engineSet.getIdlestEngine());
+        a.removeComplexityMetric(4.0);
+        assertEquals(0.0, a.getBusyness(), 0.0001);
+        assertSame(a, engineSet.getIdlestEngine());
+    }
+
+
+    public void testServletRouting() throws Exception {
+        String specXML = StringUtil.fileToString(new File(
+                getClass().getResource("BalancerSpecification.xml").getFile()));
+        YSpecification spec = YMarshal.unmarshalSpecifications(specXML, false).get(0);
+        _specID = spec.getSpecificationID();
+
+        post("connect", "/ib", "userid", "admin", "password", "YAWL");
+        assertFalse(post("upload", "/ia", "specXML", specXML).contains("failure"));
+
+        // two launches go to different engines, since the first makes its engine busier
+        String first = launch();
+        String second = launch();
+        StubEngine firstEngine = _engineA.hasCase(first) ? _engineA : _engineB;
+        StubEngine secondEngine = firstEngine == _engineA ? _engineB : _engineA;
+        assertTrue(firstEngine.hasCase(first));
+        assertTrue(secondEngine.hasCase(second));
+
+        // item and case requests go to the engine running the case
+        firstEngine.clear();
+        secondEngine.clear();
+        post("getWorkItem", "/ib", "workItemID", first + ".1:Receive");
+        post("getCaseState", "/ib", "caseID", second);
+        assertEquals(first + ".1:Receive", firstEngine.getLast("getWorkItem", "workItemID"));
+        assertNull(secondEngine.getLast("getWorkItem", "workItemID"));
+        assertEquals(second, secondEngine.getLast("getCaseState", "caseID"));
+        assertNull(firstEngine.getLast("getCaseState", "caseID"));
+
+        // a completed case is no longer routed
+        assertTrue(post("obs_caseCompleted", "/ib", "caseid", first).contains("OK"));
+        assertNull(_servlet.getEngineSet().getEngineForCase(first));
+        firstEngine.clear();
+        String result = post("getWorkItem", "/ib", "workItemID", first + ".1:Receive");
+        assertTrue(result.contains("Unknown Case Identifier"));
+        assertNull(firstEngine.getLast("getWorkItem", "workItemID"));
+
+        // and its engine, now the less busy, gets the next case
+        assertTrue(firstEngine.hasCase(launch()));
+    }
+
+
+    private String launch() throws IOException {
+        String caseID = StringUtil.unwrap(post("launchCase", "/ib",
+                "specidentifier", _specID.getIdentifier(),
+                "specversion", _specID.getVersionAsString(),
+                "specuri", _specID.getUri()));
+        assertTrue(caseID, StringUtil.isIntegerString(caseID));
+        return caseID;
+    }
+
+
+    // posts an action and its parameters to the balancer, returning its response
+    private String post(String action, String path, String... params) throws IOException {
+        final Map<String, String> paramMap = new HashMap<String, String>();
+        paramMap.put("action", action);
+        for (int i = 0; i < params.length; i += 2) {
+            paramMap.put(params[i], params[i + 1]);
+        }
+        final Map<String, String> requestValues = new HashMap<String, String>();
+        requestValues.put("getPathInfo", path);
+        requestValues.put("getMethod", "POST");
+        HttpServletRequest request = stub(HttpServletRequest.class, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                String name = method.getName();
+                if (name.equals("getParameter")) return paramMap.get(args[0]);
+                if (name.equals("getParameterNames")) {
+                    return Collections.enumeration(new ArrayList<String>(paramMap.keySet()));
+                }
+                return requestValues.get(name);
+            }
+        });
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        HttpServletResponse response = stub(HttpServletResponse.class, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if (method.getName().equals("getOutputStream")) {
+                    return new ServletOutputStream() {
+                        public void write(int b) { bytes.write(b); }
+                    };
+                }
+                return null;
+            }
+        });
+        try {
+            _servlet.doPost(request, response);
+        }
+        catch (javax.servlet.ServletException se) {
+            throw new IOException(se);
+        }
+        return bytes.toString("UTF-8");
+    }
+
+
+    private EngineSet newEngineSet() {
+        EngineSet engineSet = new EngineSet(new Monitor(_servlet));
+        engineSet.initialize();
+        return engineSet;
+    }
+
+
+    private EngineInstance getEngine(EngineSet engineSet, StubEngine stub) {
+        for (EngineInstance instance : engineSet.getAll()) {
+            if (instance.getPort() == stub.getPort()) return instance;
+        }
+        fail("No engine instance for port " + stub.getPort());
+        return null;
+    }
+
+
+    // the balancer's config is static and can be loaded only once, so the stub
+    // engines and the servlet are shared by each test
+    private static synchronized void startBalancer() throws Exception {
+        if (_servlet != null) return;
+        _engineA = new StubEngine();
+        _engineB = new StubEngine();
+        final String config = "mode=1\npoll_interval=0\nmax_init_wait_secs=30\n" +
+                "locations=localhost:" + _engineA.getPort() + ",localhost:" +
+                _engineB.getPort() + "\n";
+        final String realPath = System.getProperty("java.io.tmpdir");
+
+        final ServletContext context = stub(ServletContext.class, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                String name = method.getName();
+                if (name.equals("getResourceAsStream")) {
+                    return new ByteArrayInputStream(config.getBytes());
+                }
+                if (name.equals("getRealPath")) return realPath;
+                return null;
+            }
+        });
+        ServletConfig servletConfig = stub(ServletConfig.class, new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                String name = method.getName();
+                if (name.equals("getServletContext")) return context;
+                if (name.equals("getServletName")) return "loadBalancer";
+                return null;
+            }
+        });
+        _servlet = new LoadBalancerServlet();
+        _servlet.init(servletConfig);
+
+        // wait for the engine instances to find the stubs, rather than have the
+        // first request wait for them
+        long deadline = System.currentTimeMillis() + 30000;
+        for (EngineInstance instance : _servlet.getEngineSet().getAll()) {
+            while (! instance.isInitialized() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50);
+            }
+            assertTrue(instance.isInitialized());
+        }
+    }
+
+
+    @SuppressWarnings("unchecked")
+    private static <T> T stub(Class<T> type, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(TestLoadBalancer.class.getClassLoader(),
+                new Class<?>[] { type }, handler);
+    }
+
+
+    /**
+     * A minimal engine that answers pings and the Interface A and B calls the
+     * balancer makes, and records the requests it receives
+     */
+    private static class StubEngine implements HttpHandler {
+
+        private final HttpServer _server;
+        private final List<Map<String, String>> _requests =
+                Collections.synchronizedList(new ArrayList<Map<String, String>>());
+        private final Set<String> _cases =
+                Collections.synchronizedSet(new HashSet<String>());
+
+        StubEngine() throws IOException {
+            _server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+            _server.createContext("/", this);
+            _server.start();
+        }
+
+
+        int getPort() { return _server.getAddress().getPort(); }
+
+        boolean hasCase(String caseID) { return _cases.contains(caseID); }
+
+        void clear() { _requests.clear(); }
+
+
+        // the value of a parameter of the last request for an action
+        String getLast(String action, String param) {
+            synchronized (_requests) {
+                for (int i = _requests.size() - 1; i >= 0; i--) {
+                    Map<String, String> request = _requests.get(i);
+                    if (action.equals(request.get("action"))) return request.get(param);
+                }
+            }
+            return null;
+        }
+
+
+        public void handle(HttpExchange exchange) throws IOException {
+            if (exchange.getRequestMethod().equals("HEAD")) {
+                exchange.sendResponseHeaders(200, -1);
+                exchange.close();
+                return;
+            }
+            Map<String, String> params = parse(exchange.getRequestBody());
+            _requests.add(params);
+            byte[] reply = StringUtil.wrap(reply(params), "response").getBytes("UTF-8");
+            exchange.sendResponseHeaders(200, reply.length);
+            OutputStream out = exchange.getResponseBody();
+            out.write(reply);
+            out.close();
+        }
+
+
+        private String reply(Map<String, String> params) {
+            String action = params.get("action");
+            if ("connect".equals(action)) return "handle" + getPort();
+            if ("getSpecificationPrototypesList".equals(action)) return "";
+            if ("getAllRunningCases".equals(action)) return "<AllRunningCases/>";
+            if ("launchCase".equals(action)) {
+                _cases.add(params.get("caseid"));
+                return params.get("caseid");
+            }
+            return "<success/>";
+        }
+
+
+        private Map<String, String> parse(InputStream in) throws IOException {
+            Map<String, String> params = new HashMap<String, String>();
+            String body = StringUtil.streamToString(in);
+            if (body != null) {
+                for (String pair : body.split("&")) {
+                    int eq = pair.indexOf('=');
+                    if (eq > 0) {
+                        params.put(pair.substring(0, eq),
+                                URLDecoder.decode(pair.substring(eq + 1), "UTF-8"));
+                    }
+                }
+            }
+            return params;
+        }
+    }
+
+
+    public static void main(String args[]) {
+        TestRunner runner = new TestRunner();
+        runner.doRun(suite());
+        System.exit(0);
+    }
+
+    public static Test suite() {
+        TestSuite suite = new TestSuite();
+        suite.addTestSuite(TestLoadBalancer.class);
+        return suite;
+    }
+}
@@ -0,0 +1,20 @@
+package org.yawlfoundation.yawl.cost;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+/**
+ * The tests of the cost service.
+ */
+public class CostTestSuite extends TestSuite {
+
+    public CostTestSuite(String name) {
+        super(name);
+    }
+
+    public static Test suite() {
+        TestSuite suite = new TestSuite();
+        suite.addTestSuite(TestCostLedger.class);
+        return suite;
+    }
+}
@@ -0,0 +1,218 @@
+package org.yawlfoundation.yawl.cost;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+import org.yawlfoundation.yawl.cost.data.CostModel;
+import org.yawlfoundation.yawl.cost.data.DriverMatrix;
+import org.yawlfoundation.yawl.cost.evaluate.CaseCosts;
+import org.yawlfoundation.yawl.cost.evaluate.CostLedger;
+import org.yawlfoundation.yawl.cost.evaluate.Predicate;
+import org.yawlfoundation.yawl.cost.evaluate.PredicateEvaluator;
+import org.yawlfoundation.yawl.engine.YSpecificationID;
+import org.yawlfoundation.yawl.resourcing.datastore.eventlog.ResourceEvent;
+import org.yawlfoundation.yawl.util.XNodeParser;
+
+import java.util.*;
+
+/**
+ * Checks that the costs of cases accumulated event by event in the cost ledger
+ * match those recalculated from the full list of events, that events held while a
+ * case is loaded are merged with its logged events without being counted twice, and
+ * that a case which may have missed events is reloaded from its logged events.
+ */
+public class TestCostLedger extends TestCase {
+
+    private static final long MINUTE = 60000;
+    private static final String[] TASKS = { "Receive", "Assess", "Approve" };
+
+    private YSpecificationID _specID;
+    private DriverMatrix _matrix;
+    private PredicateEvaluator _evaluator;
+
+    public TestCostLedger(String name) {
+        super(name);
+    }
+
+
+    public void setUp() {
+        _specID = new YSpecificationID("id", "0.1", "Claims");
+        _matrix = new DriverMatrix(Collections.singleton(new CostModel(
+                new XNodeParser().parse(getModelXML()))));
+        _evaluator = new PredicateEvaluator();
+    }
+
+
+    public void testMatchesRecalculation() throws Exception {
+        CostLedger ledger = new CostLedger();
+        List<ResourceEvent> events = new ArrayList<ResourceEvent>();
+        for (int i = 1; i <= 20; i++) {
+            for (ResourceEvent event : getCaseEvents(String.valueOf(i), i)) {
+                events.add(event);
+                ledger.add(_specID, event, _matrix);
+            }
+        }
+        List<CaseCosts> cases = new ArrayList<CaseCosts>();
+        for (int i = 1; i <= 20; i++) {
+            cases.add(ledger.getCosts(_specID, String.valueOf(i)));
+        }
+
+        for (String p : new String[] { "cost()", "cost(task(Assess))",
+                "cost(task(Assess, Approve))", "cost(case(max))", "cost(case(min))",
+                "cost(case(average))" }) {
+            Predicate predicate = new Predicate(p);
+            assertEquals(p, _evaluator.calculate(predicate, events, _matrix),
+                    _evaluator.calculate(predicate, cases), 0.0001);
+        }
+        Predicate predicate = new Predicate("cost(task(Approve)) > 1");
+        assertEquals(_evaluator.evaluate(predicate, events, _matrix),
+                _evaluator.evaluate(predicate, cases));
+    }
+
+
+    public void testCaseTotals() {
+        CaseCosts costs = new CaseCosts("1");
+        for (ResourceEvent event : getCaseEvents("1", 2)) {
+            costs.add(event, _matrix);
+        }
+
+        // fixed 5 for each task, plus busy minutes at 1 per minute for Assess
+        assertEquals(17.0, costs.getTotal(), 0.0001);
+        assertEquals(5.0, costs.getTaskTotal("Receive"), 0.0001);
+        assertEquals(7.0, costs.getTaskTotal("Assess"), 0.0001);
+        assertEquals(0.0, costs.getTaskTotal("Unknown"), 0.0001);
+    }
+
+
+    public void testLoading() {
+        CostLedger ledger = new CostLedger();
+        List<ResourceEvent> events = getCaseEvents("7", 3);
+
+        // events of cases not launched or tracked are ignored
+        ledger.add(_specID, events.get(1), _matrix);
+        assertEquals(0, ledger.size());
+
+        // events announced while the case is loaded are held, and not counted twice
+        assertTrue(ledger.track(_specID, "7"));
+        assertFalse(ledger.track(_specID, "7"));
+        assertNull(ledger.getCosts(_specID, "7"));
+        int logged = events.size() - 3;
+        for (int i = logged - 2; i < events.size(); i++) {
+            ledger.add(_specID, events.get(i), _matrix);
+        }
+        CaseCosts costs = ledger.load("7", events.subList(0, logged), _matrix);
+        assertNotNull(costs);
+        assertSame(costs, ledger.getCosts(_specID, "7"));
+        assertNull(ledger.getCosts(new YSpecificationID("id", "0.2", "Claims"), "7"));
+
+        CaseCosts expected = new CaseCosts("7");
+        for (ResourceEvent event : events) expected.add(event, _matrix);
+        assertEquals(expected.getTotal(), costs.getTotal(), 0.0001);
+
+        ledger.clear(_specID);
+        assertEquals(0, ledger.size());
+        assertNull(ledger.load("7", events, _matrix));
+    }
+
+
+    public void testBounded() {
+        CostLedger ledger = new CostLedger(10);
+        for (int i = 1; i <= 25; i++) {
+            ledger.add(_specID, getCaseEvents(String.valueOf(i), 1).get(0), _matrix);
+        }
+        assertEquals(10, ledger.size());
+        assertNull(ledger.getCosts(_specID, "1"));
+        assertNotNull(ledger.getCosts(_specID, "25"));
+    }
+
+
+    public void testResync() {
+        CostLedger ledger = new CostLedger();
+        List<ResourceEvent> events = getCaseEvents("9", 4);
+
+        // the case misses the announcement of one event, so is resynced
+        for (int i = 0; i < events.size(); i++) {
+            if (i != 5) ledger.add(_specID, events.get(i), _matrix);
+        }
+        ledger.untrack("9");
+        assertNull(ledger.getCosts(_specID, "9"));
+
+        // later events are ignored until the case is reloaded from the log
+        ledger.add(_specID, events.get(events.size() - 1), _matrix);
+        assertEquals(0, ledger.size());
+        assertTrue(ledger.track(_specID, "9"));
+        CaseCosts costs = ledger.load("9", events, _matrix);
+
+        CaseCosts expected = new CaseCosts("9");
+        for (ResourceEvent event : events) expected.add(event, _matrix);
+        assertEquals(expected.getTotal(), costs.getTotal(), 0.0001);
+    }
+
+
+    // a launch, then an allocate, start and complete for each task
+    private List<ResourceEvent> getCaseEvents(String caseID, int busyMinutes) {
+        List<ResourceEvent> events = new ArrayList<ResourceEvent>();
+        long time = Long.parseLong(caseID) * 1000 * MINUTE;
+        events.add(newEvent(caseID, null, null, "launch_case", time));
+        for (String task : TASKS) {
+            String itemID = caseID + ":" + task;
+            events.add(newEvent(caseID, task, itemID, "allocate", time += MINUTE));
+            events.add(newEvent(caseID, task, itemID, "start", time += MINUTE));
+            events.add(newEvent(caseID, task, itemID, "complete",
+                    time += busyMinutes * MINUTE));
+        }
+        return events;
+    }
+
+
+    private ResourceEvent newEvent(String caseID, String taskID, String itemID,
+                                   String type, long time) {
+        ResourceEvent event = new ResourceEvent();
+        event.set_caseID(caseID);
+        event.set_taskID(taskID);
+        event.set_itemID(itemID);
+        event.set_resourceID("PA-1");
+        event.set_event(type);
+        event.set_timeStamp(time);
+        return event;
+    }
+
+
+    private String getModelXML() {
+        StringBuilder xml = new StringBuilder("<costmodel id=\"m1\"><processid>" +
+                "<identifier>id</identifier><version>0.1</version><uri>Claims</uri>" +
+                "</processid><drivers>");
+        for (String task : TASKS) {
+            xml.append(getDriverXML(task + "Fixed", task, "5", "fixed", null));
+        }
+        xml.append(getDriverXML("AssessBusy", "Assess", "60", "hour", "busy"));
+        xml.append("</drivers></costmodel>");
+        return xml.toString();
+    }
+
+
+    private String getDriverXML(String id, String task, String amount, String unit,
+                                String status) {
+        return "<driver id=\"" + id + "\"><metadata><name>" + id + "</name></metadata>" +
+                "<facets><facet id=\"" + id + "\" aspect=\"task\"><name>" + task +
+                "</name></facet></facets><costtypes><costtype>labour</costtype>" +
+                "</costtypes><unitcost><amount>" + amount + "</amount>" +
+                "<currency>AUD</currency><unit>" + unit + "</unit>" +
+                (status != null ? "<status>" + status + "</status>" : "") +
+                "</unitcost></driver>";
+    }
+
+
+    public static void main(String args[]) {
+        TestRunner runner = new TestRunner();
+        runner.doRun(suite());
+        System.exit(0);
+    }
+
+    public static Test suite() {
+        TestSuite suite = new TestSuite();
+        suite.addTestSuite(TestCostLedger.class);
+        return suite;
+    }
+}
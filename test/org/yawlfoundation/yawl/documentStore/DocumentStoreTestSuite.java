@@ -0,0 +1,21 @@
+package org.yawlfoundation.yawl.documentStore;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+/**
+ * The tests of the document store service.
+ */
+public class DocumentStoreTestSuite extends TestSuite {
+
+    public DocumentStoreTestSuite(String name) {
+        super(name);
+    }
+
+    public static Test suite() {
+        TestSuite suite = new TestSuite();
+        suite.addTestSuite(TestChunkStore.class);
+        suite.addTestSuite(TestChunkReferences.class);
+        return suite;
+    }
+}
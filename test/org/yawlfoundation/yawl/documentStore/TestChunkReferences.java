@@ -0,0 +1,131 @@
+package org.yawlfoundation.yawl.documentStore;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+import org.yawlfoundation.yawl.util.HibernateEngine;
+
+import java.util.*;
+
+/**
+ * Checks that the chunk reference counts kept alongside stored documents report a
+ * chunk as unreferenced only once no document uses it, and that counts are built for
+ * documents stored before they were kept.
+ */
+public class TestChunkReferences extends TestCase {
+
+    private static int _dbCount = 0;
+
+    private HibernateEngine _db;
+    private ChunkReferences _refs;
+
+    public TestChunkReferences(String name) {
+        super(name);
+    }
+
+
+    public void setUp() {
+        Properties settings = new Properties();
+        settings.setProperty("hibernate.connection.url",
+                "jdbc:h2:mem:chunkrefs" + (_dbCount++) + ";DB_CLOSE_DELAY=-1");
+        settings.setProperty("hibernate.connection.driver_class", "org.h2.Driver");
+        settings.setProperty("hibernate.dialect", "org.hibernate.dialect.H2Dialect");
+        settings.setProperty("hibernate.connection.username", "sa");
+        settings.setProperty("hibernate.connection.password", "");
+        settings.setProperty("hibernate.connection.provider_class",
+               "org.hibernate.engine.jdbc.connections.internal.DriverManagerConnectionProviderImpl");
+        Set<Class> classes = new HashSet<Class>();
+        classes.add(YDocument.class);
+        classes.add(YChunkReference.class);
+        _db = new HibernateEngine(true, classes, settings);
+        _refs = new ChunkReferences(_db);
+    }
+
+
+    public void tearDown() {
+        _db.closeFactory();
+    }
+
+
+    public void testSharedChunks() {
+        YDocument first = store("case1", Arrays.asList("a", "b", "a"));
+        YDocument second = store("case2", Arrays.asList("b", "c"));
+
+        // a chunk stays referenced until the last document using it is removed
+        remove(first);
+        assertEquals(set("a"), _refs.removeUnreferenced(first.getChunks()));
+        remove(second);
+        assertEquals(set("b", "c"), _refs.removeUnreferenced(second.getChunks()));
+        assertEquals(set("b"), _refs.removeUnreferenced(set("b")));   // no count left
+    }
+
+
+    public void testReusedBeforeRemoval() {
+        YDocument first = store("case1", Arrays.asList("a", "b"));
+        remove(first);
+
+        // a document stored before the unreferenced chunks are removed keeps them
+        store("case2", Arrays.asList("b"));
+        assertEquals(set("a"), _refs.removeUnreferenced(first.getChunks()));
+    }
+
+
+    public void testInitialise() {
+        for (List<String> chunks : Arrays.asList(Arrays.asList("a", "b"),
+                Arrays.asList("b"), Arrays.asList("c", "c"))) {
+            YDocument doc = new YDocument("case", -1, (byte[]) null);
+            doc.setChunks(chunks, chunks.size());
+            assertTrue(_db.exec(doc, HibernateEngine.DB_INSERT, true));
+        }
+        _refs.initialise();
+        assertEquals(1, getCount("a"));
+        assertEquals(2, getCount("b"));
+        assertEquals(1, getCount("c"));
+
+        // counts are built once only
+        _refs.initialise();
+        assertEquals(2, getCount("b"));
+    }
+
+
+    private YDocument store(String caseID, List<String> chunks) {
+        YDocument doc = new YDocument(caseID, -1, (byte[]) null);
+        doc.setChunks(chunks, chunks.size());
+        assertTrue(_db.exec(doc, HibernateEngine.DB_INSERT, false));
+        assertTrue(_refs.adjust(new LinkedHashSet<String>(chunks), 1));
+        _db.commit();
+        return doc;
+    }
+
+
+    private void remove(YDocument doc) {
+        assertTrue(_db.exec(doc, HibernateEngine.DB_DELETE, false));
+        assertTrue(_refs.adjust(new LinkedHashSet<String>(doc.getChunks()), -1));
+        _db.commit();
+    }
+
+
+    private int getCount(String hash) {
+        YChunkReference ref = (YChunkReference) _db.get(YChunkReference.class, hash);
+        return ref != null ? ref.getCount() : 0;
+    }
+
+
+    private Set<String> set(String... hashes) {
+        return new HashSet<String>(Arrays.asList(hashes));
+    }
+
+
+    public static void main(String args[]) {
+        TestRunner runner = new TestRunner();
+        runner.doRun(suite());
+        System.exit(0);
+    }
+
+    public static Test suite() {
+        TestSuite suite = new TestSuite();
+        suite.addTestSuite(TestChunkReferences.class);
+        return suite;
+    }
+}
@@ -0,0 +1,197 @@
+package org.yawlfoundation.yawl.documentStore;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Checks that files round-trip through the chunk store, including byte ranges that
+ * span chunk boundaries, that identical content is stored once, and that a large file
+ * can be streamed through the store without being held in memory.
+ */
+public class TestChunkStore extends TestCase {
+
+    private static final int CHUNK = ChunkStore.CHUNK_SIZE;
+    private static final long LARGE_SIZE = 16L * CHUNK;                   // 16Mb
+
+    private File _root;
+    private ChunkStore _store;
+
+    public TestChunkStore(String name) {
+        super(name);
+    }
+
+
+    public void setUp() throws IOException {
+        _root = File.createTempFile("chunkstore", "");
+        _root.delete();
+        _store = new ChunkStore(_root);
+    }
+
+
+    public void tearDown() {
+        delete(_root);
+    }
+
+
+    public void testRoundTrip() throws IOException {
+        for (int size : new int[] { 1, CHUNK - 1, CHUNK, CHUNK + 1, 3 * CHUNK + 17 }) {
+            byte[] content = randomBytes(size, size);
+            List<String> hashes = new ArrayList<String>();
+            assertEquals(size, _store.write(new ByteArrayInputStream(content), hashes));
+            assertEquals((size + CHUNK - 1) / CHUNK, hashes.size());
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            _store.read(hashes, out);
+            assertTrue(Arrays.equals(content, out.toByteArray()));
+        }
+    }
+
+
+    public void testEmpty() throws IOException {
+        List<String> hashes = new ArrayList<String>();
+        assertEquals(0, _store.write(new ByteArrayInputStream(new byte[0]), hashes));
+        assertTrue(hashes.isEmpty());
+    }
+
+
+    public void testRangeReads() throws IOException {
+        byte[] content = randomBytes(3 * CHUNK + 17, 1);
+        List<String> hashes = new ArrayList<String>();
+        _store.write(new ByteArrayInputStream(content), hashes);
+        int[][] ranges = { {0, 10}, {CHUNK - 5, 10}, {CHUNK, CHUNK}, {5, 2 * CHUNK + 1},
+                {3 * CHUNK, 17}, {3 * CHUNK + 10, 100} };
+        for (int[] range : ranges) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            _store.read(hashes, range[0], range[1], out);
+            int end = Math.min(content.length, range[0] + range[1]);
+            assertTrue(range[0] + "+" + range[1], Arrays.equals(
+                    Arrays.copyOfRange(content, range[0], end), out.toByteArray()));
+        }
+    }
+
+
+    public void testDeduplication() throws IOException {
+        byte[] shared = randomBytes(2 * CHUNK, 2);
+        byte[] extended = Arrays.copyOf(shared, 2 * CHUNK + 100);
+        List<String> first = new ArrayList<String>();
+        List<String> second = new ArrayList<String>();
+        _store.write(new ByteArrayInputStream(shared), first);
+        _store.write(new ByteArrayInputStream(extended), second);
+        assertEquals(first, second.subList(0, 2));
+        assertEquals(3, countChunks(_root));
+
+        _store.delete(second.subList(2, 3));
+        assertFalse(_store.contains(second.get(2)));
+        assertTrue(_store.contains(first.get(0)));
+    }
+
+
+    public void testMissingChunk() throws IOException {
+        List<String> hashes = new ArrayList<String>();
+        _store.write(new ByteArrayInputStream(randomBytes(100, 3)), hashes);
+        _store.delete(hashes);
+        try {
+            _store.read(hashes, new ByteArrayOutputStream());
+            fail("read should have failed");
+        }
+        catch (IOException ioe) {
+            assertTrue(ioe.getMessage().contains("missing chunk"));
+        }
+    }
+
+
+    public void testStreaming() throws IOException {
+        List<String> hashes = new ArrayList<String>();
+        assertEquals(LARGE_SIZE, _store.write(new GeneratedStream(LARGE_SIZE), hashes));
+        assertEquals(LARGE_SIZE / CHUNK, hashes.size());
+
+        CountingStream out = new CountingStream();
+        _store.read(hashes, out);
+        assertEquals(LARGE_SIZE, out.count);
+    }
+
+
+    private byte[] randomBytes(int size, long seed) {
+        byte[] bytes = new byte[size];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+
+
+    private int countChunks(File dir) {
+        int count = 0;
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                count += file.isDirectory() ? countChunks(file) : 1;
+            }
+        }
+        return count;
+    }
+
+
+    private void delete(File file) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File child : files) delete(child);
+        }
+        file.delete();
+    }
+
+
+    // a stream of pseudo-random content that is never held in memory
+    private static class GeneratedStream extends InputStream {
+        private long _remaining;
+        private long _value = 17;
+
+        GeneratedStream(long size) { _remaining = size; }
+
+        public int read() {
+            if (_remaining <= 0) return -1;
+            _remaining--;
+            _value = _value * 6364136223846793005L + 1442695040888963407L;
+            return (int) (_value >>> 56);
+        }
+
+        public int read(byte[] b, int off, int len) {
+            if (_remaining <= 0) return -1;
+            int count = (int) Math.min(len, _remaining);
+            for (int i = 0; i < count; i++) b[off + i] = (byte) read();
+            return count;
+        }
+    }
+
+
+    private static class CountingStream extends OutputStream {
+        long count;
+
+        public void write(int b) { count++; }
+
+        public void write(byte[] b, int off, int len) { count += len; }
+    }
+
+
+    public static void main(String args[]) {
+        TestRunner runner = new TestRunner();
+        runner.doRun(suite());
+        System.exit(0);
+    }
+
+    public static Test suite() {
+        TestSuite suite = new TestSuite();
+        suite.addTestSuite(TestChunkStore.class);
+        return suite;
+    }
+}
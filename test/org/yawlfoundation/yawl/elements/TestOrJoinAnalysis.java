@@ -0,0 +1,121 @@
+package org.yawlfoundation.yawl.elements;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+import org.yawlfoundation.yawl.elements.e2wfoj.E2WFOJNet;
+import org.yawlfoundation.yawl.elements.state.TestYMarking;
+import org.yawlfoundation.yawl.elements.state.YIdentifier;
+import org.yawlfoundation.yawl.elements.state.YMarking;
+import org.yawlfoundation.yawl.unmarshal.YMarshal;
+import org.yawlfoundation.yawl.util.StringUtil;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checks that cached OR-join analysis agrees with a fresh analysis for the OR-joins
+ * in the test and example specifications.
+ */
+public class TestOrJoinAnalysis extends TestCase {
+
+    private static final String EXAMPLE_SPECS_DIR = "exampleSpecs/xml/Beta2-7";
+    private static final String[] EXAMPLE_SPECS = { "MakeMusic.xml", "maketrip1.xml",
+            "makeTrip2.xml", "makeTrip3.xml" };
+
+    private List<Check> _checks;
+
+    public TestOrJoinAnalysis(String name) {
+        super(name);
+    }
+
+
+    public void setUp() throws Exception {
+        _checks = new ArrayList<Check>();
+        File looped = new File(TestYMarking.class.getResource(
+                "YAWLOrJoinTestSpecificationLongLoops.xml").getFile());
+        addChecks(looped);
+        for (String fileName : EXAMPLE_SPECS) {
+            File file = new File(EXAMPLE_SPECS_DIR, fileName);
+            if (file.exists()) addChecks(file);
+        }
+    }
+
+
+    public void testCachedAgreesWithFresh() {
+        assertFalse(_checks.isEmpty());
+        for (Check check : _checks) {
+            assertEquals(check.toString(), freshAnalysis(check), cachedAnalysis(check));
+            assertEquals(check.toString(), freshAnalysis(check), cachedAnalysis(check));
+        }
+    }
+
+
+    // the analysis as it was made before caching
+    private boolean freshAnalysis(Check check) {
+        YMarking marking = new YMarking(check.id);
+        E2WFOJNet e2Net = new E2WFOJNet(check.net, check.orJoin);
+        e2Net.restrictNet(marking);
+        e2Net.restrictNet(check.orJoin);
+        return e2Net.orJoinEnabled(marking, check.orJoin);
+    }
+
+
+    private boolean cachedAnalysis(Check check) {
+        return check.net.orJoinEnabled(check.orJoin, check.id);
+    }
+
+
+    // adds, for each OR-join, a marking with a token in one preset condition and
+    // the input condition
+    private void addChecks(File file) throws Exception {
+        for (YSpecification spec : YMarshal.unmarshalSpecifications(
+                StringUtil.fileToString(file.getAbsolutePath()))) {
+            for (YDecomposition decomposition : spec.getDecompositions()) {
+                if (! (decomposition instanceof YNet)) continue;
+                YNet net = (YNet) decomposition;
+                for (YTask task : net.getNetTasks()) {
+                    if (task.getJoinType() != YTask._OR) continue;
+                    for (YExternalNetElement pre : task.getPresetElements()) {
+                        YIdentifier id = new YIdentifier(null);
+                        id.addLocation(null, (YCondition) pre);
+                        id.addLocation(null, net.getInputCondition());
+                        _checks.add(new Check(net, task, id));
+                    }
+                }
+            }
+        }
+    }
+
+
+    private static class Check {
+        final YNet net;
+        final YTask orJoin;
+        final YIdentifier id;
+
+        Check(YNet net, YTask orJoin, YIdentifier id) {
+            this.net = net;
+            this.orJoin = orJoin;
+            this.id = id;
+        }
+
+        public String toString() {
+            return net.getID() + ":" + orJoin.getID() + " " + id.getLocations();
+        }
+    }
+
+
+    public static void main(String args[]) {
+        TestRunner runner = new TestRunner();
+        runner.doRun(suite());
+        System.exit(0);
+    }
+
+    public static Test suite() {
+        TestSuite suite = new TestSuite();
+        suite.addTestSuite(TestOrJoinAnalysis.class);
+        return suite;
+    }
+}
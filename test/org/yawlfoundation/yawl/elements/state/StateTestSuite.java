@@ -22,6 +22,7 @@ public class StateTestSuite extends TestSuite {
         suite.addTestSuite(TestYIdentifier.class);
         suite.addTestSuite(TestYMarking.class);
         suite.addTestSuite(TestYSetOfMarkings.class);
+        suite.addTestSuite(TestYMarkingEquivalence.class);
         return suite;
     }
 
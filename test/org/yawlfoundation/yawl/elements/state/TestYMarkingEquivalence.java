@@ -0,0 +1,428 @@
+package org.yawlfoundation.yawl.elements.state;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+import org.yawlfoundation.yawl.elements.*;
+import org.yawlfoundation.yawl.unmarshal.YMarshal;
+import org.yawlfoundation.yawl.util.StringUtil;
+
+import java.io.File;
+import java.util.*;
+
+/**
+ * Property tests comparing YMarking against a list-based reference marking that
+ * implements the marking semantics as they were before markings were held as
+ * indexed token counts. Random markings are drawn from the elements of the OR-join
+ * test specifications and every comparison and step operation is checked against
+ * the reference.
+ */
+public class TestYMarkingEquivalence extends TestCase {
+
+    private static final String[] SPECIFICATIONS = {
+            "YAWLOrJoinTestSpecificationLongLoops.xml", "YAWLOrJoinTestSpecification.xml",
+            "YAWLOrJoinTestSpecificationWithLoop.xml" };
+
+    private static final int MARKINGS_PER_NET = 150;
+    private static final int MAX_TOKENS = 7;
+
+    private final Random _random = new Random(20261018L);
+    private List<YNet> _nets;
+
+    public TestYMarkingEquivalence(String name) {
+        super(name);
+    }
+
+
+    public void setUp() throws Exception {
+        _nets = new ArrayList<YNet>();
+        for (String fileName : SPECIFICATIONS) {
+            File file = new File(getClass().getResource(fileName).getFile());
+            for (YSpecification spec : YMarshal.unmarshalSpecifications(
+                    StringUtil.fileToString(file.getAbsolutePath()))) {
+                for (YDecomposition decomposition : spec.getDecompositions()) {
+                    if (decomposition instanceof YNet) _nets.add((YNet) decomposition);
+                }
+            }
+        }
+    }
+
+
+    public void testComparisons() {
+        for (YNet net : _nets) {
+            List<List<YNetElement>> samples = sample(net);
+            for (List<YNetElement> a : samples) {
+                YMarking m1 = new YMarking(a);
+                ReferenceMarking r1 = new ReferenceMarking(a);
+                assertEquals(r1.toString(), r1.hashCode(), m1.hashCode());
+                assertEquals(multiset(r1._locations), multiset(m1.getLocations()));
+
+                for (List<YNetElement> b : pairedWith(a, samples)) {
+                    YMarking m2 = new YMarking(b);
+                    ReferenceMarking r2 = new ReferenceMarking(b);
+                    String msg = r1 + " : " + r2;
+                    assertEquals(msg, r1.equals(r2), m1.equals(m2));
+                    assertEquals(msg, r1.equivalentTo(r2), m1.equivalentTo(m2));
+                    assertEquals(msg, r1.isBiggerThan(r2), m1.isBiggerThan(m2));
+                    assertEquals(msg, r1.isBiggerThanOrEqual(r2), m1.isBiggerThanOrEqual(m2));
+                    assertEquals(msg, r1.strictlyGreaterThanOrEqualWithSupports(r2),
+                            m1.strictlyGreaterThanOrEqualWithSupports(m2));
+                    assertEquals(msg, r1.strictlyLessThanWithSupports(r2),
+                            m1.strictlyLessThanWithSupports(m2));
+                    for (YTask task : net.getNetTasks()) {
+                        if (task.getJoinType() == YTask._OR) {
+                            assertEquals(msg, r1.isBiggerEnablingMarkingThan(r2, task),
+                                    m1.isBiggerEnablingMarkingThan(m2, task));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+
+    public void testEnablementAndDeadlock() {
+        for (YNet net : _nets) {
+            for (List<YNetElement> locations : sample(net)) {
+                YMarking marking = new YMarking(locations);
+                ReferenceMarking reference = new ReferenceMarking(locations);
+                for (YTask task : net.getNetTasks()) {
+                    String msg = reference + " : " + task.getID();
+                    if (task.getJoinType() != YTask._OR) {
+                        assertEquals(msg, reference.nonOrJoinEnabled(task),
+                                marking.nonOrJoinEnabled(task));
+                    }
+                    if (task.getJoinType() == YTask._OR) {
+                        assertEquals(msg, reference.deadLock(task), marking.deadLock(task));
+                    }
+                }
+                assertEquals(reference.toString(), reference.deadLock(null),
+                        marking.deadLock(null));
+            }
+        }
+    }
+
+
+    public void testReachableInOneStep() {
+        for (YNet net : _nets) {
+            for (List<YNetElement> locations : sample(net)) {
+                YMarking marking = new YMarking(locations);
+                ReferenceMarking reference = new ReferenceMarking(locations);
+                for (YTask task : net.getNetTasks()) {
+                    if (task.getJoinType() == YTask._OR && ! locations.contains(task)) {
+                        continue;                   // unsupported by both
+                    }
+                    String msg = reference + " : " + task.getID();
+                    List<ReferenceMarking> expected = reference.reachableInOneStep(task);
+                    YSetOfMarkings actual = marking.reachableInOneStep(task, null);
+                    if (expected == null) {
+                        assertNull(msg, actual);
+                        continue;
+                    }
+                    assertNotNull(msg, actual);
+                    Set<List<String>> expectedSet = new HashSet<List<String>>();
+                    for (ReferenceMarking r : expected) expectedSet.add(multiset(r._locations));
+                    Set<List<String>> actualSet = new HashSet<List<String>>();
+                    for (YMarking m : actual.getMarkings()) actualSet.add(multiset(m.getLocations()));
+                    assertEquals(msg, expected.size(), actual.size());
+                    assertEquals(msg, expectedSet, actualSet);
+                }
+            }
+        }
+    }
+
+
+    public void testSetOfMarkings() {
+        for (YNet net : _nets) {
+            YSetOfMarkings set = new YSetOfMarkings();
+            List<ReferenceMarking> distinct = new ArrayList<ReferenceMarking>();
+            List<List<YNetElement>> samples = sample(net);
+            for (List<YNetElement> locations : samples) {
+                set.addMarking(new YMarking(locations));
+                ReferenceMarking reference = new ReferenceMarking(locations);
+                boolean found = false;
+                for (ReferenceMarking r : distinct) {
+                    if (r.equivalentTo(reference)) found = true;
+                }
+                if (! found) distinct.add(reference);
+            }
+            assertEquals(distinct.size(), set.size());
+            for (List<YNetElement> locations : samples) {
+                List<YNetElement> shuffled = new ArrayList<YNetElement>(locations);
+                Collections.shuffle(shuffled, _random);
+                assertTrue(set.contains(new YMarking(shuffled)));
+            }
+        }
+    }
+
+
+    public void testLocationsView() {
+        YNet net = _nets.get(0);
+        List<YNetElement> locations = sample(net).get(1);
+        YMarking marking = new YMarking(locations);
+        List<YNetElement> view = marking.getLocations();
+        YCondition extra = new YCondition("extra", "not in the net", null);
+        view.add(extra);
+        view.add(extra);
+        assertEquals(locations.size() + 2, marking.getLocations().size());
+        assertTrue(marking.getLocations().contains(extra));
+        assertTrue(view.remove(extra));
+        assertTrue(marking.getLocations().contains(extra));
+        assertTrue(view.remove(extra));
+        assertFalse(marking.getLocations().contains(extra));
+        assertEquals(new YMarking(locations), marking);
+
+        view.add(extra);
+        List<YNetElement> expected = new ArrayList<YNetElement>(locations);
+        expected.add(0, extra);
+        assertEquals(new YMarking(expected), marking);
+        assertEquals(new YMarking(expected).hashCode(), marking.hashCode());
+
+        Iterator<YNetElement> iterator = view.iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next() == extra) iterator.remove();
+        }
+        assertEquals(new YMarking(locations), marking);
+    }
+
+
+    // random multisets of conditions, with the occasional busy task
+    private List<List<YNetElement>> sample(YNet net) {
+        List<YNetElement> conditions = new ArrayList<YNetElement>();
+        List<YNetElement> tasks = new ArrayList<YNetElement>();
+        for (YExternalNetElement element : net.getNetElements().values()) {
+            if (element instanceof YTask) tasks.add(element);
+            else conditions.add(element);
+        }
+        Collections.sort(conditions);
+        Collections.sort(tasks);
+
+        List<List<YNetElement>> samples = new ArrayList<List<YNetElement>>();
+        samples.add(new ArrayList<YNetElement>());
+        for (int i = 0; i < MARKINGS_PER_NET; i++) {
+            List<YNetElement> locations = new ArrayList<YNetElement>();
+            int tokens = _random.nextInt(MAX_TOKENS) + 1;
+            for (int j = 0; j < tokens; j++) {
+                if (! tasks.isEmpty() && _random.nextInt(8) == 0) {
+                    locations.add(tasks.get(_random.nextInt(tasks.size())));
+                }
+                else {
+                    locations.add(conditions.get(_random.nextInt(conditions.size())));
+                }
+            }
+            samples.add(locations);
+        }
+        return samples;
+    }
+
+
+    // pairs a marking with a spread of others, including near variants of itself
+    private List<List<YNetElement>> pairedWith(List<YNetElement> a,
+                                               List<List<YNetElement>> samples) {
+        List<List<YNetElement>> paired = new ArrayList<List<YNetElement>>();
+        for (int i = 0; i < 10; i++) {
+            paired.add(samples.get(_random.nextInt(samples.size())));
+        }
+        List<YNetElement> shuffled = new ArrayList<YNetElement>(a);
+        Collections.shuffle(shuffled, _random);
+        paired.add(shuffled);
+        if (! a.isEmpty()) {
+            List<YNetElement> more = new ArrayList<YNetElement>(a);
+            more.add(a.get(_random.nextInt(a.size())));
+            paired.add(more);
+            List<YNetElement> less = new ArrayList<YNetElement>(a);
+            less.remove(_random.nextInt(less.size()));
+            paired.add(less);
+        }
+        return paired;
+    }
+
+
+    private List<String> multiset(List<YNetElement> locations) {
+        List<String> ids = new ArrayList<String>();
+        for (YNetElement element : locations) ids.add(element.getID());
+        Collections.sort(ids);
+        return ids;
+    }
+
+
+    /******************************************************************************/
+
+    // the list-based marking semantics that YMarking must preserve
+    private static class ReferenceMarking {
+        private final List<YNetElement> _locations;
+
+        ReferenceMarking(List<YNetElement> locations) {
+            _locations = new Vector<YNetElement>(locations);
+        }
+
+        List<ReferenceMarking> reachableInOneStep(YTask task) {
+            List<ReferenceMarking> halfBaked = new ArrayList<ReferenceMarking>();
+            if (_locations.contains(task)) {
+                ReferenceMarking aMarking = new ReferenceMarking(_locations);
+                aMarking._locations.remove(task);
+                halfBaked.add(aMarking);
+            }
+            else {
+                if (! nonOrJoinEnabled(task)) return null;
+                Set<YExternalNetElement> preset = task.getPresetElements();
+                if (task.getJoinType() == YTask._AND) {
+                    ReferenceMarking returned = new ReferenceMarking(_locations);
+                    for (YExternalNetElement condition : preset) {
+                        returned._locations.remove(condition);
+                    }
+                    halfBaked.add(returned);
+                }
+                else {
+                    for (YExternalNetElement condition : preset) {
+                        if (_locations.contains(condition)) {
+                            ReferenceMarking returned = new ReferenceMarking(_locations);
+                            returned._locations.remove(condition);
+                            addIfAbsent(halfBaked, returned);
+                        }
+                    }
+                }
+            }
+            Set<YExternalNetElement> removeSet = task.getRemoveSet();
+            for (ReferenceMarking marking : halfBaked) {
+                if (removeSet != null) marking._locations.removeAll(removeSet);
+            }
+
+            List<ReferenceMarking> finished = new ArrayList<ReferenceMarking>();
+            Set<YExternalNetElement> postset = task.getPostsetElements();
+            for (ReferenceMarking marking : halfBaked) {
+                if (task.getSplitType() == YTask._XOR) {
+                    for (YExternalNetElement element : postset) {
+                        ReferenceMarking aFinal = new ReferenceMarking(marking._locations);
+                        aFinal._locations.add(element);
+                        addIfAbsent(finished, aFinal);
+                    }
+                }
+                else {
+                    marking._locations.addAll(postset);
+                    addIfAbsent(finished, marking);
+                }
+            }
+            return finished;
+        }
+
+        private void addIfAbsent(List<ReferenceMarking> markings, ReferenceMarking m) {
+            for (ReferenceMarking marking : markings) {
+                if (marking.equivalentTo(m)) return;
+            }
+            markings.add(m);
+        }
+
+        boolean nonOrJoinEnabled(YTask task) {
+            if (_locations.contains(task)) return true;
+            Set<YExternalNetElement> preset = task.getPresetElements();
+            if (task.getJoinType() == YTask._AND) return _locations.containsAll(preset);
+            for (YExternalNetElement condition : preset) {
+                if (_locations.contains(condition)) return true;
+            }
+            return false;
+        }
+
+        public int hashCode() {
+            long hashCode = 0;
+            for (YNetElement element : _locations) hashCode += element.hashCode();
+            return (int) (hashCode % Integer.MAX_VALUE);
+        }
+
+        public boolean equals(Object o) {
+            if (! (o instanceof ReferenceMarking)) return false;
+            List<YNetElement> others = new Vector<YNetElement>(((ReferenceMarking) o)._locations);
+            for (YNetElement element : _locations) {
+                if (! others.remove(element)) return false;
+            }
+            return others.isEmpty();
+        }
+
+        boolean strictlyGreaterThanOrEqualWithSupports(ReferenceMarking marking) {
+            List<YNetElement> others = marking._locations;
+            List<YNetElement> mine = new Vector<YNetElement>(_locations);
+            if (! (mine.containsAll(others) && others.containsAll(mine))) return false;
+            for (YNetElement element : others) {
+                if (! mine.remove(element)) return false;
+            }
+            return true;
+        }
+
+        boolean isBiggerThanOrEqual(ReferenceMarking marking) {
+            return isBiggerThan(marking) || equivalentTo(marking);
+        }
+
+        boolean isBiggerThan(ReferenceMarking marking) {
+            List<YNetElement> others = marking._locations;
+            List<YNetElement> mine = _locations;
+            if (mine.containsAll(others) && ! others.containsAll(mine)) return true;
+            return mine.containsAll(others) && others.containsAll(mine) &&
+                    mine.size() > others.size();
+        }
+
+        boolean strictlyLessThanWithSupports(ReferenceMarking marking) {
+            List<YNetElement> others = new Vector<YNetElement>(marking._locations);
+            List<YNetElement> mine = _locations;
+            if (! (mine.containsAll(others) && others.containsAll(mine))) return false;
+            for (YNetElement element : mine) {
+                if (! others.remove(element)) return false;
+            }
+            return others.size() > 0;
+        }
+
+        boolean isBiggerEnablingMarkingThan(ReferenceMarking marking, YTask orJoin) {
+            Set<YExternalNetElement> mine = new HashSet<YExternalNetElement>();
+            Set<YExternalNetElement> others = new HashSet<YExternalNetElement>();
+            for (YExternalNetElement condition : orJoin.getPresetElements()) {
+                if (_locations.contains(condition)) mine.add(condition);
+                if (marking._locations.contains(condition)) others.add(condition);
+            }
+            return mine.containsAll(others) && ! others.containsAll(mine);
+        }
+
+        boolean deadLock(YTask orJoin) {
+            Set<YExternalNetElement> locations = new HashSet<YExternalNetElement>();
+            for (YNetElement element : _locations) {
+                if (element instanceof YTask) return false;
+                locations.add((YExternalNetElement) element);
+            }
+            for (YExternalNetElement postElement : YNet.getPostset(locations)) {
+                YTask task = (YTask) postElement;
+                if (task.getJoinType() != YTask._OR) {
+                    if (nonOrJoinEnabled(task)) return false;
+                }
+                else {
+                    for (YExternalNetElement condition : task.getPresetElements()) {
+                        if (_locations.contains(condition) && task != orJoin) return false;
+                    }
+                }
+            }
+            return true;
+        }
+
+        boolean equivalentTo(ReferenceMarking marking) {
+            List<YNetElement> others = new Vector<YNetElement>(marking._locations);
+            if (others.size() != _locations.size()) return false;
+            List<YNetElement> mine = new Vector<YNetElement>(_locations);
+            Collections.sort((List) others);
+            Collections.sort((List) mine);
+            return mine.equals(others);
+        }
+
+        public String toString() { return _locations.toString(); }
+    }
+
+
+    public static void main(String args[]) {
+        TestRunner runner = new TestRunner();
+        runner.doRun(suite());
+        System.exit(0);
+    }
+
+    public static Test suite() {
+        TestSuite suite = new TestSuite();
+        suite.addTestSuite(TestYMarkingEquivalence.class);
+        return suite;
+    }
+}
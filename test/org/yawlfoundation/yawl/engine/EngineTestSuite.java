@@ -32,6 +32,14 @@ public class EngineTestSuite extends TestCase{
         suite.addTestSuite(TestYWorkItem.class);
         suite.addTestSuite(TestYWorkItemID.class);
         suite.addTestSuite(TestYWorkItemRepository.class);
+        suite.addTestSuite(TestConcurrentCases.class);
+        suite.addTestSuite(TestIncrementalEnablement.class);
+        suite.addTestSuite(TestPersistenceWriteBehind.class);
+        suite.addTestSuite(TestEngineWriteBehind.class);
+        suite.addTestSuite(TestCaseNbrStore.class);
+        suite.addTestSuite(TestPerfReporter.class);
+        suite.addTestSuite(TestPooledTransport.class);
+        suite.addTestSuite(TestAnnouncementDispatcher.class);
         return suite;
     }
 
@@ -0,0 +1,244 @@
+package org.yawlfoundation.yawl.engine;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+import org.yawlfoundation.yawl.engine.announcement.YEngineEvent;
+import org.yawlfoundation.yawl.engine.interfce.interfaceB.AnnouncementDispatcher;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.yawlfoundation.yawl.engine.announcement.YEngineEvent.*;
+
+/**
+ * Checks that the announcement dispatcher bounds the concurrency and queue length of
+ * each service, rejects announcements to a full queue without waiting, retries
+ * announcements that could not be connected, and discards work item announcements
+ * cancelled before they are sent.
+ */
+public class TestAnnouncementDispatcher extends TestCase {
+
+    private static final String SERVICE = "http://localhost:8080/testService/ib";
+
+    private AnnouncementDispatcher _dispatcher;
+    private final List<String> _sent = new CopyOnWriteArrayList<String>();
+    private final List<String> _failed = new CopyOnWriteArrayList<String>();
+    private final AtomicInteger _active = new AtomicInteger();
+    private final AtomicInteger _maxActive = new AtomicInteger();
+
+    public TestAnnouncementDispatcher(String name) {
+        super(name);
+    }
+
+
+    public void setUp() {
+        AnnouncementDispatcher.setLimits(2, 10, 3);
+        _dispatcher = new AnnouncementDispatcher("test");
+    }
+
+
+    public void tearDown() {
+        _dispatcher.shutdown();
+        AnnouncementDispatcher.setLimits(AnnouncementDispatcher.DEFAULT_THREADS_PER_SERVICE,
+                AnnouncementDispatcher.DEFAULT_QUEUE_CAPACITY,
+                AnnouncementDispatcher.DEFAULT_MAX_RETRIES);
+    }
+
+
+    public void testDeliveryAndConcurrency() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(10);
+        for (int i = 0; i < 10; i++) {
+            _dispatcher.dispatch(SERVICE, new TestDelivery(ITEM_ADD, "item" + i, done, 20));
+        }
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(10, _sent.size());
+        assertTrue(_maxActive.get() <= 2);
+        assertEquals(10, _dispatcher.getStatistics(SERVICE).getSent());
+    }
+
+
+    public void testServicesIndependent() throws InterruptedException {
+        CountDownLatch blocker = new CountDownLatch(1);
+        _dispatcher.dispatch("http://slow/ib", new BlockingDelivery(blocker, null));
+        _dispatcher.dispatch("http://slow/ib", new BlockingDelivery(blocker, null));
+        CountDownLatch done = new CountDownLatch(1);
+        _dispatcher.dispatch(SERVICE, new TestDelivery(ITEM_ADD, "item", done, 0));
+        assertTrue(done.await(1, TimeUnit.SECONDS));
+        blocker.countDown();
+    }
+
+
+    public void testFullQueue() throws InterruptedException {
+        CountDownLatch blocker = blockDeliveryThreads();
+        for (int i = 0; i < 10; i++) {
+            _dispatcher.dispatch(SERVICE, new TestDelivery(CASE_START, "case" + i, null, 0));
+        }
+
+        // both are rejected during the dispatch, but only the non-broadcast fails
+        _dispatcher.dispatch(SERVICE, new TestDelivery(CASE_COMPLETE, "x", null, 0));
+        _dispatcher.dispatch(SERVICE, new TestDelivery(ITEM_ADD, "y", null, 0));
+        assertEquals(2, _dispatcher.getStatistics(SERVICE).getRejected());
+        assertEquals(1, _failed.size());
+        assertEquals(ITEM_ADD + ":y", _failed.get(0));
+        assertEquals(10, _dispatcher.getStatistics(SERVICE).getMaxDepth());
+        blocker.countDown();
+    }
+
+
+    public void testRetries() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(1);
+        TestDelivery delivery = new TestDelivery(ITEM_ADD, "item", done, 0);
+        delivery.refusals = 2;
+        _dispatcher.dispatch(SERVICE, delivery);
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(1, _sent.size());
+        assertEquals(2, _dispatcher.getStatistics(SERVICE).getRetries());
+
+        done = new CountDownLatch(1);
+        delivery = new TestDelivery(ITEM_ADD, "item2", done, 0);
+        delivery.refusals = 10;
+        _dispatcher.dispatch(SERVICE, delivery);
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(1, _failed.size());
+        assertEquals(5, _dispatcher.getStatistics(SERVICE).getRetries());
+    }
+
+
+    public void testBroadcastNotRetried() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(1);
+        TestDelivery delivery = new TestDelivery(CASE_START, "case", done, 0);
+        delivery.refusals = 1;
+        _dispatcher.dispatch(SERVICE, delivery);
+        assertTrue(done.await(1, TimeUnit.SECONDS));
+        assertEquals(0, _dispatcher.getStatistics(SERVICE).getRetries());
+        assertEquals(1, _dispatcher.getStatistics(SERVICE).getFailed());
+    }
+
+
+    public void testCoalescing() throws InterruptedException {
+        CountDownLatch blocker = blockDeliveryThreads();
+        CountDownLatch done = new CountDownLatch(1);
+        _dispatcher.dispatch(SERVICE, new TestDelivery(ITEM_ADD, "item1", null, 0));
+        _dispatcher.dispatch(SERVICE, new TestDelivery(ITEM_ADD, "item2", done, 0));
+        _dispatcher.dispatch(SERVICE, new TestDelivery(ITEM_CANCEL, "item1", null, 0));
+        assertEquals(2, _dispatcher.getStatistics(SERVICE).getCoalesced());
+
+        // item2's announcement was queued last, so once it is sent the queue is empty
+        blocker.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(1, _sent.size());
+        assertEquals(ITEM_ADD + ":item2", _sent.get(0));
+
+        // once the announcement is sent, its cancellation must be too
+        done = new CountDownLatch(1);
+        _dispatcher.dispatch(SERVICE, new TestDelivery(ITEM_CANCEL, "item2", done, 0));
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertTrue(_sent.contains(ITEM_CANCEL + ":item2"));
+    }
+
+
+    public void testStatisticsXML() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(1);
+        _dispatcher.dispatch(SERVICE, new TestDelivery(ITEM_ADD, "item", done, 0));
+        assertTrue(done.await(1, TimeUnit.SECONDS));
+        String xml = AnnouncementDispatcher.getAllStatistics();
+        assertTrue(xml.contains("uri=\"" + SERVICE + "\""));
+        assertTrue(xml.contains("sent=\"1\""));
+    }
+
+
+    /***************************************************************************/
+
+    // occupies both of the service's delivery threads, returning the latch that
+    // releases them
+    private CountDownLatch blockDeliveryThreads() throws InterruptedException {
+        CountDownLatch blocker = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(2);
+        _dispatcher.dispatch(SERVICE, new BlockingDelivery(blocker, started));
+        _dispatcher.dispatch(SERVICE, new BlockingDelivery(blocker, started));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        return blocker;
+    }
+
+
+    private class TestDelivery implements AnnouncementDispatcher.Delivery {
+        final YEngineEvent event;
+        final String itemID;
+        final CountDownLatch done;
+        final long delay;
+        int refusals;
+
+        TestDelivery(YEngineEvent event, String itemID, CountDownLatch done, long delay) {
+            this.event = event;
+            this.itemID = itemID;
+            this.done = done;
+            this.delay = delay;
+        }
+
+        public YEngineEvent getEvent() { return event; }
+
+        public String getWorkItemID() { return event.isBroadcast() ? null : itemID; }
+
+        public void send() throws IOException {
+            if (refusals-- > 0) throw new ConnectException("refused");
+            _maxActive.accumulateAndGet(_active.incrementAndGet(), Math::max);
+            try {
+                if (delay > 0) Thread.sleep(delay);
+            }
+            catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+            _active.decrementAndGet();
+            _sent.add(event + ":" + itemID);
+            if (done != null) done.countDown();
+        }
+
+        public void failed(IOException ioe) {
+            _failed.add(event + ":" + itemID);
+            if (done != null) done.countDown();
+        }
+    }
+
+
+    // occupies a delivery thread until released
+    private class BlockingDelivery extends TestDelivery {
+        final CountDownLatch blocker;
+        final CountDownLatch started;
+
+        BlockingDelivery(CountDownLatch blocker, CountDownLatch started) {
+            super(CASE_START, null, null, 0);
+            this.blocker = blocker;
+            this.started = started;
+        }
+
+        public void send() {
+            if (started != null) started.countDown();
+            try {
+                blocker.await();
+            }
+            catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+
+    public static void main(String args[]) {
+        TestRunner runner = new TestRunner();
+        runner.doRun(suite());
+        System.exit(0);
+    }
+
+    public static Test suite() {
+        TestSuite suite = new TestSuite();
+        suite.addTestSuite(TestAnnouncementDispatcher.class);
+        return suite;
+    }
+}
@@ -0,0 +1,148 @@
+package org.yawlfoundation.yawl.engine;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+import org.yawlfoundation.yawl.exceptions.YPersistenceException;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks block allocation of case numbers against an in-memory H2 database: that
+ * numbers are unique under contention, that a restart resumes above the last
+ * reserved block, and that a number is still persisted when its block can't be.
+ */
+public class TestCaseNbrStore extends TestCase {
+
+    private static final int BLOCK_SIZE = 100;
+    private static final int ALLOCATIONS = 500;
+
+    private YPersistenceManager _pmgr;
+    private volatile boolean _failReservations;
+
+    public TestCaseNbrStore(String name) {
+        super(name);
+    }
+
+
+    public void setUp() throws Exception {
+        _failReservations = false;
+        _pmgr = new YPersistenceManager() {
+            public void updateInOwnTransaction(Object obj) throws YPersistenceException {
+                if (_failReservations) throw new YPersistenceException("Unavailable");
+                super.updateInOwnTransaction(obj);
+            }
+        };
+        _pmgr.initialise(true, TestPersistenceWriteBehind.getH2Settings("casenbrs"));
+    }
+
+
+    public void tearDown() {
+        _pmgr.closeFactory();
+        YPersistenceManager.factory = null;
+    }
+
+
+    public void testRestartResumesAboveBlock() throws Exception {
+        YCaseNbrStore store = newStore(10);
+        for (int i = 0; i < 25; i++) {
+            assertEquals(String.valueOf(i + 1), store.getNextCaseNbr(_pmgr));
+        }
+        assertEquals(30, restore().getPersistedCaseNbr());
+
+        YCaseNbrStore restored = restore();
+        restored.setPersisting(true);
+        restored.setBlockSize(10);
+        assertEquals("31", restored.getNextCaseNbr(_pmgr));
+        assertEquals(40, restore().getPersistedCaseNbr());
+    }
+
+
+    public void testUniqueUnderContention() throws Exception {
+        final YCaseNbrStore store = newStore(BLOCK_SIZE);
+        final Set<String> allocated = ConcurrentHashMap.newKeySet();
+        int threads = Math.max(4, Runtime.getRuntime().availableProcessors());
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        for (int i = 0; i < ALLOCATIONS; i++) {
+            executor.execute(new Runnable() {
+                public void run() {
+                    allocated.add(launch(store));
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.MINUTES));
+        assertEquals(ALLOCATIONS, allocated.size());
+        assertTrue(restore().getPersistedCaseNbr() >= ALLOCATIONS);
+    }
+
+
+    public void testFailedReservation() throws Exception {
+        YCaseNbrStore store = newStore(10);
+        _failReservations = true;
+        assertEquals("1", launch(store));
+        assertEquals("2", launch(store));
+        assertEquals(2, restore().getPersistedCaseNbr());     // each number persisted
+
+        _failReservations = false;
+        assertEquals("3", launch(store));                     // block is reserved now
+        assertEquals(12, restore().getPersistedCaseNbr());
+        assertEquals("4", launch(store));
+        assertEquals(12, restore().getPersistedCaseNbr());
+    }
+
+
+    // allocates a number as a case launch does, within a transaction
+    private String launch(YCaseNbrStore store) {
+        try {
+            boolean local = _pmgr.startTransaction();
+            String nbr = store.getNextCaseNbr(_pmgr);
+            if (local) _pmgr.commit();
+            return nbr;
+        }
+        catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+
+    private YCaseNbrStore newStore(int blockSize) throws Exception {
+        _pmgr.startTransaction();
+        for (Object o : _pmgr.getObjectsForClass("YCaseNbrStore")) {
+            _pmgr.deleteObject(o);
+        }
+        _pmgr.commit();
+        YCaseNbrStore store = new YCaseNbrStore();
+        store.setPersisting(true);
+        store.setBlockSize(blockSize);
+        return store;
+    }
+
+
+    private YCaseNbrStore restore() throws Exception {
+        _pmgr.startTransaction();
+        List stored = _pmgr.getObjectsForClass("YCaseNbrStore");
+        _pmgr.commit();
+        assertEquals(1, stored.size());
+        return (YCaseNbrStore) stored.get(0);
+    }
+
+
+    public static void main(String args[]) {
+        TestRunner runner = new TestRunner();
+        runner.doRun(suite());
+        System.exit(0);
+    }
+
+    public static Test suite() {
+        TestSuite suite = new TestSuite();
+        suite.addTestSuite(TestCaseNbrStore.class);
+        return suite;
+    }
+}
@@ -0,0 +1,147 @@
+package org.yawlfoundation.yawl.engine;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+import org.yawlfoundation.yawl.authentication.YClient;
+import org.yawlfoundation.yawl.elements.YSpecification;
+import org.yawlfoundation.yawl.elements.state.YIdentifier;
+import org.yawlfoundation.yawl.logging.YLogDataItemList;
+import org.yawlfoundation.yawl.unmarshal.YMarshal;
+import org.yawlfoundation.yawl.util.StringUtil;
+
+import java.io.File;
+import java.net.URL;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Checks that unrelated cases can be launched and progressed from many threads at
+ * once, now that each case is guarded by its own lock rather than a single engine
+ * wide lock: every launch gets a distinct case id, and no launch or completion fails.
+ */
+public class TestConcurrentCases extends TestCase {
+
+    private static final int THREADS = 8;
+    private static final int CASES_PER_THREAD = 25;
+    private static final String TASK_ID = "register";
+
+    private YEngine _engine;
+    private YSpecification _specification;
+    private YClient _client;
+
+    public TestConcurrentCases(String name) {
+        super(name);
+    }
+
+
+    public void setUp() throws Exception {
+        _engine = YEngine.getInstance();
+        EngineClearer.clear(_engine);
+        URL fileURL = getClass().getResource("CaseCancellation.xml");
+        File yawlXMLFile = new File(fileURL.getFile());
+        _specification = YMarshal.unmarshalSpecifications(
+                StringUtil.fileToString(yawlXMLFile.getAbsolutePath())).get(0);
+        _engine.loadSpecification(_specification);
+        _client = _engine.getExternalClient("admin");
+    }
+
+
+    public void tearDown() throws Exception {
+        EngineClearer.clear(_engine);
+    }
+
+
+    public void testConcurrentLaunches() throws Exception {
+        List<String> caseIDs = launchCases();
+        assertEquals(THREADS * CASES_PER_THREAD, caseIDs.size());
+        assertEquals(caseIDs.size(), new HashSet<String>(caseIDs).size());
+        assertEquals(caseIDs.size(), _engine.getRunningCaseIDs().size());
+        for (String caseID : caseIDs) {
+            assertNotNull(_engine.getWorkItem(caseID + ":" + TASK_ID));
+        }
+    }
+
+
+    public void testConcurrentCompletions() throws Exception {
+        List<String> caseIDs = launchCases();
+        List<Callable<String>> tasks = new ArrayList<Callable<String>>();
+        for (final String caseID : caseIDs) {
+            tasks.add(new Callable<String>() {
+                public String call() throws Exception {
+                    YWorkItem item = _engine.getWorkItem(caseID + ":" + TASK_ID);
+                    YWorkItem started = _engine.startWorkItem(item, _client);
+                    _engine.completeWorkItem(started, "<data/>", null,
+                            WorkItemCompletion.Normal);
+                    return caseID;
+                }
+            });
+        }
+        assertEquals(caseIDs.size(), runAll(tasks).size());
+
+        // each case has moved past its first task, and no case was lost
+        for (String caseID : caseIDs) {
+            assertNull(_engine.getWorkItem(caseID + ":" + TASK_ID));
+            assertNotNull(_engine.getCaseID(caseID));
+        }
+    }
+
+
+    public void testCaseLocks() {
+        YCaseLockTable locks = new YCaseLockTable(10);
+        assertEquals(16, locks.getStripeCount());
+        assertSame(locks.getLock("12"), locks.getLock("12.1.2"));
+        assertSame(locks.getLock("12"), locks.getLock("12:register"));
+        assertSame(locks.getLock("12"), locks.getLock(new YIdentifier("12")));
+    }
+
+
+    // launches the cases from several threads at once, returning their ids
+    private List<String> launchCases() throws Exception {
+        List<Callable<String>> tasks = new ArrayList<Callable<String>>();
+        for (int i = 0; i < THREADS * CASES_PER_THREAD; i++) {
+            tasks.add(new Callable<String>() {
+                public String call() throws Exception {
+                    return _engine.launchCase(_specification.getSpecificationID(),
+                            null, null, new YLogDataItemList());
+                }
+            });
+        }
+        return runAll(tasks);
+    }
+
+
+    // runs the tasks on THREADS threads, failing on the first exception raised
+    private List<String> runAll(List<Callable<String>> tasks) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<String> results = new ArrayList<String>();
+            for (Future<String> future : executor.invokeAll(tasks, 5, TimeUnit.MINUTES)) {
+                try {
+                    results.add(future.get());
+                }
+                catch (ExecutionException ee) {
+                    fail("Concurrent call failed: " + ee.getCause());
+                }
+            }
+            return results;
+        }
+        finally {
+            executor.shutdownNow();
+        }
+    }
+
+
+    public static void main(String args[]) {
+        TestRunner runner = new TestRunner();
+        runner.doRun(suite());
+        System.exit(0);
+    }
+
+    public static Test suite() {
+        TestSuite suite = new TestSuite();
+        suite.addTestSuite(TestConcurrentCases.class);
+        return suite;
+    }
+}
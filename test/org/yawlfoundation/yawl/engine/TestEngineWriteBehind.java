@@ -0,0 +1,106 @@
+package org.yawlfoundation.yawl.engine;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+import org.hibernate.SessionFactory;
+import org.yawlfoundation.yawl.exceptions.YPersistenceException;
+import org.yawlfoundation.yawl.logging.YLogDataItemList;
+import org.yawlfoundation.yawl.util.StringUtil;
+import org.yawlfoundation.yawl.util.YVerificationHandler;
+
+import java.io.File;
+import java.net.URL;
+import java.util.List;
+
+/**
+ * Checks that, with persistence in write-behind mode, a case that launches and
+ * completes within the same transaction leaves nothing behind to be restored when
+ * the engine restarts.
+ */
+public class TestEngineWriteBehind extends TestCase {
+
+    private YEngine _engine;
+
+    public TestEngineWriteBehind(String name) {
+        super(name);
+    }
+
+
+    public void setUp() throws Exception {
+        _engine = startEngine();
+    }
+
+
+    public void tearDown() throws Exception {
+        EngineClearer.clear(_engine);
+        YEngine.getPersistenceManager().closeFactory();
+        YPersistenceManager.factory = null;
+        YEngine._thisInstance = null;           // the next getInstance() starts afresh
+    }
+
+
+    public void testCaseCompletedAtLaunch() throws Exception {
+        URL fileURL = getClass().getResource("ImmediateCompletion.xml");
+        File specFile = new File(fileURL.getFile());
+        YSpecificationID specID = _engine.addSpecifications(
+                StringUtil.fileToString(specFile.getAbsolutePath()), false,
+                new YVerificationHandler()).get(0);
+        _engine.launchCase(specID, null, null, new YLogDataItemList());
+        assertTrue(_engine.getRunningCaseIDs().isEmpty());
+        assertNoCaseRows();
+
+        // restart from the persisted state
+        YEngine.getPersistenceManager().closeFactory();
+        _engine = startEngine();
+        assertTrue(_engine.getLoadedSpecificationIDs().contains(specID));
+        assertTrue(_engine.getRunningCaseIDs().isEmpty());
+        assertNoCaseRows();
+    }
+
+
+    private void assertNoCaseRows() throws YPersistenceException {
+        for (String className : new String[] { "YNetRunner", "YIdentifier",
+                "GroupedMIOutputData" }) {
+            assertEquals(className, 0, getRows(className).size());
+        }
+    }
+
+
+    private YEngine startEngine() throws YPersistenceException {
+        YPersistenceManager pmgr = new YPersistenceManager() {
+            protected SessionFactory initialise(boolean journalising)
+                    throws YPersistenceException {
+                return initialise(journalising,
+                        TestPersistenceWriteBehind.getH2Settings("enginewritebehind"));
+            }
+        };
+        YEngine._thisInstance = new YEngine();
+        YEngine.initialise(pmgr, true, false, false);
+        YEngine.getInstance().setPersistenceWriteBehind(true);
+        return YEngine.getInstance();
+    }
+
+
+    private List getRows(String className) throws YPersistenceException {
+        YPersistenceManager pmgr = YEngine.getPersistenceManager();
+        pmgr.startTransaction();
+        List rows = pmgr.getObjectsForClass(className);
+        pmgr.commit();
+        return rows;
+    }
+
+
+    public static void main(String args[]) {
+        TestRunner runner = new TestRunner();
+        runner.doRun(suite());
+        System.exit(0);
+    }
+
+    public static Test suite() {
+        TestSuite suite = new TestSuite();
+        suite.addTestSuite(TestEngineWriteBehind.class);
+        return suite;
+    }
+}
@@ -0,0 +1,165 @@
+package org.yawlfoundation.yawl.engine;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+import org.yawlfoundation.yawl.authentication.YClient;
+import org.yawlfoundation.yawl.elements.YSpecification;
+import org.yawlfoundation.yawl.elements.state.YIdentifier;
+import org.yawlfoundation.yawl.logging.YLogDataItemList;
+import org.yawlfoundation.yawl.unmarshal.YMarshal;
+import org.yawlfoundation.yawl.util.StringUtil;
+
+import java.io.File;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Runs a set of the engine test specifications with task enablement evaluated
+ * incrementally and then over every task, and checks that both modes produce the
+ * same sequence of work item states.
+ * <p/>
+ * Each case is driven deterministically: at each step the first executing item (by
+ * id) is completed, or if there are none the first enabled or fired item is started.
+ */
+public class TestIncrementalEnablement extends TestCase {
+
+    private static final String[] SPECIFICATIONS = { "YAWL_Specification2.xml",
+            "YAWL_Specification4.xml", "CaseCancellation.xml", "TestOrJoin.xml",
+            "ImproperCompletion.xml", "DeadlockingSpecification.xml" };
+
+    private static final int MAX_STEPS = 200;
+
+    private YEngine _engine;
+    private YClient _client;
+
+    public TestIncrementalEnablement(String name) {
+        super(name);
+    }
+
+
+    public void setUp() throws Exception {
+        _engine = YEngine.getInstance();
+        _client = _engine.getExternalClient("admin");
+    }
+
+
+    public void tearDown() throws Exception {
+        _engine.setIncrementalEnablement(true);
+        EngineClearer.clear(_engine);
+    }
+
+
+    public void testEquivalentEventSequences() throws Exception {
+        for (String fileName : SPECIFICATIONS) {
+            List<String> incremental = run(fileName, true);
+            List<String> full = run(fileName, false);
+            assertFalse(fileName, incremental.isEmpty());
+            assertEquals(fileName, full, incremental);
+        }
+    }
+
+
+    // returns a trace of the case's work item states after each step
+    private List<String> run(String fileName, boolean incremental) throws Exception {
+        _engine.setIncrementalEnablement(incremental);
+        EngineClearer.clear(_engine);
+        YSpecification specification = loadSpecification(fileName);
+        _engine.loadSpecification(specification);
+        String caseID = _engine.launchCase(specification.getSpecificationID(),
+                null, null, new YLogDataItemList());
+        YIdentifier id = _engine.getCaseID(caseID);
+
+        List<String> trace = new ArrayList<String>();
+        for (int step = 0; step < MAX_STEPS; step++) {
+            List<YWorkItem> items = getItems(id);
+            trace.add(describe(items, caseID));
+            if (! advance(items, caseID, trace)) break;
+        }
+        return trace;
+    }
+
+
+    // completes or starts a single work item; returns false if there are none left
+    private boolean advance(List<YWorkItem> items, String caseID, List<String> trace) {
+        YWorkItem toStart = null;
+        for (YWorkItem item : items) {
+            try {
+                if (item.getStatus() == YWorkItemStatus.statusExecuting) {
+                    _engine.completeWorkItem(item, "<data/>", null,
+                            WorkItemCompletion.Normal);
+                    return true;
+                }
+                if (toStart == null && (item.getStatus() == YWorkItemStatus.statusEnabled
+                        || item.getStatus() == YWorkItemStatus.statusFired)) {
+                    toStart = item;
+                }
+            }
+            catch (Exception e) {
+                trace.add(relativise(item.getIDString(), caseID) + " failed: " +
+                        e.getClass().getSimpleName());
+                return false;
+            }
+        }
+        if (toStart == null) return false;
+        try {
+            _engine.startWorkItem(toStart, _client);
+            return true;
+        }
+        catch (Exception e) {
+            trace.add(relativise(toStart.getIDString(), caseID) + " failed: " +
+                    e.getClass().getSimpleName());
+            return false;
+        }
+    }
+
+
+    private List<YWorkItem> getItems(YIdentifier id) {
+        List<YWorkItem> items = new ArrayList<YWorkItem>();
+        if (id != null && _engine.getNetRunner(id) != null) {
+            items.addAll(_engine.getWorkItemRepository().getWorkItemsForCase(id));
+        }
+        Collections.sort(items, (a, b) -> a.getIDString().compareTo(b.getIDString()));
+        return items;
+    }
+
+
+    private String describe(List<YWorkItem> items, String caseID) {
+        StringBuilder s = new StringBuilder();
+        for (YWorkItem item : items) {
+            s.append(relativise(item.getIDString(), caseID))
+             .append('=').append(item.getStatus()).append(' ');
+        }
+        return s.toString().trim();
+    }
+
+
+    // case numbers differ between runs, so items are described relative to the case
+    private String relativise(String itemID, String caseID) {
+        return itemID.startsWith(caseID) ? "#" + itemID.substring(caseID.length()) : itemID;
+    }
+
+
+    private YSpecification loadSpecification(String fileName) throws Exception {
+        URL fileURL = getClass().getResource(fileName);
+        File yawlXMLFile = new File(fileURL.getFile());
+        return YMarshal.unmarshalSpecifications(
+                StringUtil.fileToString(yawlXMLFile.getAbsolutePath())).get(0);
+    }
+
+
+    public static void main(String args[]) {
+        TestRunner runner = new TestRunner();
+        runner.doRun(suite());
+        System.exit(0);
+    }
+
+    public static Test suite() {
+        TestSuite suite = new TestSuite();
+        suite.addTestSuite(TestIncrementalEnablement.class);
+        return suite;
+    }
+}
@@ -0,0 +1,160 @@
+package org.yawlfoundation.yawl.engine;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+import org.yawlfoundation.yawl.engine.interfce.LatencyHistogram;
+import org.yawlfoundation.yawl.engine.interfce.PerfReporter;
+import org.yawlfoundation.yawl.util.XNode;
+import org.yawlfoundation.yawl.util.XNodeParser;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.TabularData;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Checks the accuracy of the latency histograms behind the Interface B
+ * performance statistics, that no recording is lost across interval polls made
+ * under concurrent load, and the XML and JMX views.
+ */
+public class TestPerfReporter extends TestCase {
+
+    private static final int THREADS = 8;
+    private static final int RECORDS_PER_THREAD = 50000;
+
+    public TestPerfReporter(String name) {
+        super(name);
+    }
+
+
+    public void testAccuracy() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int micros = 1; micros <= 10000; micros++) {
+            histogram.record(micros * 1000L);
+        }
+        LatencyHistogram.Snapshot snapshot = histogram.getSnapshot();
+        assertEquals(10000, snapshot.getCount());
+        assertEquals(5.0005, snapshot.getMeanMsecs(), 0.0001);
+        assertEquals(10.0, snapshot.getMaxMsecs(), 0.0001);
+        assertEquals(5.0, snapshot.getMedianMsecs(), 5.0 * 0.04);
+        assertEquals(9.0, snapshot.getP90Msecs(), 9.0 * 0.04);
+        assertEquals(9.9, snapshot.getP99Msecs(), 9.9 * 0.04);
+        assertEquals(0.001, snapshot.getMinMsecs(), 0.001 * 0.04);
+    }
+
+
+    public void testIntervals() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 100; i++) histogram.record(2000000);
+        assertEquals(100, histogram.getIntervalSnapshot(false).getCount());
+        assertEquals(100, histogram.getIntervalSnapshot(true).getCount());
+
+        for (int i = 0; i < 50; i++) histogram.record(1000000);
+        LatencyHistogram.Snapshot interval = histogram.getIntervalSnapshot(true);
+        assertEquals(50, interval.getCount());
+        assertEquals(1.0, interval.getMaxMsecs(), 0.0001);
+        assertEquals(150, histogram.getSnapshot().getCount());
+        assertEquals(2.0, histogram.getSnapshot().getMaxMsecs(), 0.0001);
+        assertEquals(0, histogram.getIntervalSnapshot(true).getCount());
+    }
+
+
+    public void testNothingLostUnderLoad() throws InterruptedException {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        List<Thread> threads = startRecording(histogram);
+        long polled = 0;
+        while (isAlive(threads)) {
+            polled += histogram.getIntervalSnapshot(true).getCount();
+            Thread.sleep(1);
+        }
+        polled += histogram.getIntervalSnapshot(true).getCount();
+        assertEquals((long) THREADS * RECORDS_PER_THREAD, polled);
+        assertEquals(polled, histogram.getSnapshot().getCount());
+    }
+
+
+    public void testPollXML() {
+        long start = System.nanoTime();
+        for (int i = 0; i < 20; i++) {
+            PerfReporter.add("testPollXML", start);
+        }
+        PerfReporter.poll();                        // clears any earlier interval
+        PerfReporter.add("testPollXML", System.nanoTime());
+        XNode action = getAction(PerfReporter.poll(), "testPollXML");
+        assertNotNull(action);
+        assertEquals("1", action.getAttributeValue("count"));
+        assertNotNull(action.getAttributeValue("p99"));
+        assertNull(getAction(PerfReporter.poll(), "testPollXML"));
+    }
+
+
+    public void testJMX() throws Exception {
+        PerfReporter.add("testJMX", System.nanoTime());
+        PerfReporter.registerMBean();
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName("org.yawlfoundation.yawl:type=PerfReporter");
+            TabularData stats = (TabularData) server.getAttribute(name, "Statistics");
+            assertNotNull(stats.get(new Object[] { "testJMX" }));
+            assertNotNull(server.getAttribute(name, "IntervalStatistics"));
+        }
+        finally {
+            PerfReporter.unregisterMBean();
+        }
+    }
+
+
+    private XNode getAction(String xml, String name) {
+        XNode requests = new XNodeParser().parse(xml).getChild("requests");
+        for (XNode action : requests.getChildren()) {
+            if (name.equals(action.getAttributeValue("name"))) return action;
+        }
+        return null;
+    }
+
+
+    private List<Thread> startRecording(final LatencyHistogram histogram) {
+        final AtomicLong seed = new AtomicLong();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < THREADS; i++) {
+            Thread thread = new Thread(new Runnable() {
+                public void run() {
+                    long value = seed.incrementAndGet();
+                    for (int j = 0; j < RECORDS_PER_THREAD; j++) {
+                        value = value * 6364136223846793005L + 1442695040888963407L;
+                        histogram.record((value >>> 40) & 0xFFFFFF);     // < 17ms
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        return threads;
+    }
+
+
+    private boolean isAlive(List<Thread> threads) {
+        for (Thread thread : threads) {
+            if (thread.isAlive()) return true;
+        }
+        return false;
+    }
+
+
+    public static void main(String args[]) {
+        TestRunner runner = new TestRunner();
+        runner.doRun(suite());
+        System.exit(0);
+    }
+
+    public static Test suite() {
+        TestSuite suite = new TestSuite();
+        suite.addTestSuite(TestPerfReporter.class);
+        return suite;
+    }
+}
@@ -0,0 +1,137 @@
+package org.yawlfoundation.yawl.engine;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+import org.hibernate.stat.Statistics;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Checks the persistence manager's write-through and write-behind modes against an
+ * embedded (in-memory) H2 database: both must leave the same rows, and write-behind
+ * must issue fewer statements. Each simulated transition inserts a work item
+ * record, updates it and the case record several times, and deletes the previous
+ * transition's record - a similar mix to that of a task completion.
+ */
+public class TestPersistenceWriteBehind extends TestCase {
+
+    private static final int TRANSITIONS = 50;
+    private static final int UPDATES_PER_TRANSITION = 6;
+
+    private YPersistenceManager _pmgr;
+
+    public TestPersistenceWriteBehind(String name) {
+        super(name);
+    }
+
+
+    public void setUp() throws Exception {
+        _pmgr = new YPersistenceManager();
+        _pmgr.initialise(true, getH2Settings("writebehind"));
+    }
+
+
+    // settings for an in-memory H2 database, with statistics gathering on
+    static Properties getH2Settings(String dbName) {
+        Properties settings = new Properties();
+        settings.setProperty("hibernate.connection.url",
+                "jdbc:h2:mem:" + dbName + ";DB_CLOSE_DELAY=-1");
+        settings.setProperty("hibernate.connection.driver_class", "org.h2.Driver");
+        settings.setProperty("hibernate.dialect", "org.hibernate.dialect.H2Dialect");
+        settings.setProperty("hibernate.connection.username", "sa");
+        settings.setProperty("hibernate.connection.password", "");
+        settings.setProperty("hibernate.connection.provider_class",
+               "org.hibernate.engine.jdbc.connections.internal.DriverManagerConnectionProviderImpl");
+        settings.setProperty("hibernate.generate_statistics", "true");
+        return settings;
+    }
+
+
+    public void tearDown() {
+        _pmgr.closeFactory();
+        YPersistenceManager.factory = null;
+    }
+
+
+    public void testSameFinalState() throws Exception {
+        run("wt", false);
+        run("wb", true);
+        Map<String, String> writeThrough = getRows("wt");
+        Map<String, String> writeBehind = getRows("wb");
+        assertEquals(2, writeThrough.size());
+        assertEquals(writeThrough, writeBehind);
+    }
+
+
+    public void testFewerStatements() throws Exception {
+        long writeThrough = run("through", false);
+        long writeBehind = run("behind", true);
+        assertTrue(writeBehind < writeThrough);
+    }
+
+
+    // returns the count of prepared statements
+    private long run(String prefix, boolean writeBehind) throws Exception {
+        _pmgr.setWriteBehind(writeBehind);
+        Statistics stats = _pmgr.getFactory().getStatistics();
+        stats.clear();
+
+        YNetData caseData = new YNetData(prefix + ":case");
+        caseData.setData("<data/>");
+        _pmgr.startTransaction();
+        _pmgr.storeObject(caseData);
+        _pmgr.commit();
+
+        YNetData previous = null;
+        for (int i = 0; i < TRANSITIONS; i++) {
+            _pmgr.startTransaction();
+            YNetData itemData = new YNetData(prefix + ":item" + i);
+            itemData.setData("<data/>");
+            _pmgr.storeObject(itemData);
+            for (int j = 0; j < UPDATES_PER_TRANSITION; j++) {
+                caseData.setData("<data>" + i + "." + j + "</data>");
+                _pmgr.updateObject(caseData);
+                itemData.setData("<data>" + j + "</data>");
+                _pmgr.updateObject(itemData);
+            }
+            if (previous != null) _pmgr.deleteObject(previous);
+            _pmgr.commit();
+            previous = itemData;
+        }
+        return stats.getPrepareStatementCount();
+    }
+
+
+    // rows are keyed without the run's prefix, so runs can be compared
+    private Map<String, String> getRows(String prefix) throws Exception {
+        Map<String, String> rows = new HashMap<String, String>();
+        _pmgr.startTransaction();
+        List list = _pmgr.getObjectsForClass("YNetData");
+        _pmgr.commit();
+        for (Object o : list) {
+            YNetData data = (YNetData) o;
+            if (data.getId().startsWith(prefix + ":")) {
+                rows.put(data.getId().substring(prefix.length()), data.getData());
+            }
+        }
+        return rows;
+    }
+
+
+    public static void main(String args[]) {
+        TestRunner runner = new TestRunner();
+        runner.doRun(suite());
+        System.exit(0);
+    }
+
+    public static Test suite() {
+        TestSuite suite = new TestSuite();
+        suite.addTestSuite(TestPersistenceWriteBehind.class);
+        return suite;
+    }
+}
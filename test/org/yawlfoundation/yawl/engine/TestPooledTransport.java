@@ -0,0 +1,367 @@
+package org.yawlfoundation.yawl.engine;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+import org.yawlfoundation.yawl.engine.interfce.HttpTransport;
+import org.yawlfoundation.yawl.engine.interfce.Interface_Client;
+import org.yawlfoundation.yawl.engine.interfce.PooledHttpTransport;
+import org.yawlfoundation.yawl.engine.interfce.TransportStatistics;
+import org.yawlfoundation.yawl.engine.interfce.URLConnectionTransport;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Checks that requests made through a pooled transport get the same replies as those
+ * made on a new connection each time, that connections are reused and bounded, and
+ * that replies closing the connection and stale connections are handled without
+ * resending requests the server may already have processed.
+ */
+public class TestPooledTransport extends TestCase {
+
+    private HttpServer _server;
+    private String _url;
+    private final AtomicInteger _active = new AtomicInteger();
+    private final AtomicInteger _maxActive = new AtomicInteger();
+
+    public TestPooledTransport(String name) {
+        super(name);
+    }
+
+
+    public void setUp() throws IOException {
+        System.setProperty("sun.net.httpserver.nodelay", "true");     // as for Tomcat
+        _server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        _server.createContext("/echo", new EchoHandler());
+        _server.setExecutor(Executors.newFixedThreadPool(16));
+        _server.start();
+        _url = "http://localhost:" + _server.getAddress().getPort();
+    }
+
+
+    public void tearDown() {
+        _server.stop(0);
+    }
+
+
+    public void testSameReplies() throws IOException {
+        PooledHttpTransport pooled = new PooledHttpTransport();
+        HttpTransport unpooled = new URLConnectionTransport();
+        String[] values = { "", "simple", "\u00fcn\u00efc\u00f6d\u00e9 & more = 100%", bigValue() };
+        for (String path : new String[] { "/echo", "/echo?chunked=true" }) {
+            for (String value : values) {
+                String data = "action=echo&value=" + encode(value);
+                URL url = new URL(_url + path);
+                assertEquals(unpooled.post(url, data, 0, 0), pooled.post(url, data, 0, 0));
+                assertEquals("<response>" + value + "</response>",
+                        pooled.post(url, data, 0, 0));
+            }
+        }
+        TransportStatistics stats = pooled.getStatistics();
+        assertEquals(1, stats.getConnectionsOpened());
+        assertEquals(stats.getRequests() - 1, stats.getConnectionsReused());
+        pooled.shutdown();
+        assertEquals(0, stats.getOpenConnections());
+    }
+
+
+    public void testClientStripsReply() throws IOException {
+        TestClient client = new TestClient();
+        client.setTransport(new PooledHttpTransport());
+        Map<String, String> params = new HashMap<String, String>();
+        params.put("value", "<result>ok</result>");
+        assertEquals("<result>ok</result>", client.post(_url + "/echo", params));
+        client.getTransport().shutdown();
+    }
+
+
+    public void testConnectionClose() throws IOException {
+        PooledHttpTransport pooled = new PooledHttpTransport();
+        URL url = new URL(_url + "/echo?close=true");
+        for (int i = 0; i < 3; i++) {
+            assertEquals("<response>x</response>", pooled.post(url, "value=x", 0, 0));
+        }
+        assertEquals(3, pooled.getStatistics().getConnectionsOpened());
+        assertEquals(0, pooled.getStatistics().getOpenConnections());
+    }
+
+
+    public void testErrorStatus() throws IOException {
+        PooledHttpTransport pooled = new PooledHttpTransport();
+        try {
+            pooled.post(new URL(_url + "/echo?status=404"), "value=x", 0, 0);
+            fail("request should have failed");
+        }
+        catch (FileNotFoundException fnfe) {
+            // expected
+        }
+        try {
+            pooled.post(new URL(_url + "/echo?status=500"), "value=x", 0, 0);
+            fail("request should have failed");
+        }
+        catch (IOException ioe) {
+            assertTrue(ioe.getMessage().contains("500"));
+        }
+        assertEquals(2, pooled.getStatistics().getFailures());
+
+        // the connection is still usable after an error reply
+        assertEquals("<response>x</response>",
+                pooled.post(new URL(_url + "/echo"), "value=x", 0, 0));
+        assertEquals(1, pooled.getStatistics().getConnectionsOpened());
+        pooled.shutdown();
+    }
+
+
+    public void testBoundedConnections() throws Exception {
+        final PooledHttpTransport pooled = new PooledHttpTransport(3, 15000);
+        final URL url = new URL(_url + "/echo?delay=20");
+        List<Thread> threads = new ArrayList<Thread>();
+        final AtomicInteger failures = new AtomicInteger();
+        for (int i = 0; i < 12; i++) {
+            Thread thread = new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        for (int j = 0; j < 5; j++) pooled.post(url, "value=x", 0, 0);
+                    }
+                    catch (IOException ioe) {
+                        failures.incrementAndGet();
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) thread.join();
+        assertEquals(0, failures.get());
+        assertTrue(_maxActive.get() <= 3);
+        assertTrue(pooled.getStatistics().getConnectionsOpened() <= 3);
+        assertEquals(60, pooled.getStatistics().getRequests());
+        pooled.shutdown();
+    }
+
+
+    public void testIdleConnectionClosedByServer() throws Exception {
+        RawServer raw = new RawServer(true);
+        PooledHttpTransport pooled = new PooledHttpTransport();
+        URL url = new URL("http://localhost:" + raw.getPort() + "/");
+        assertEquals("ok", pooled.post(url, "value=x", 0, 0));
+        raw.awaitClose();
+        assertEquals("ok", pooled.post(url, "value=x", 0, 0));
+        assertEquals(2, pooled.getStatistics().getConnectionsOpened());
+        assertEquals(0, pooled.getStatistics().getStaleConnectionRetries());
+        pooled.shutdown();
+        raw.stop();
+    }
+
+
+    public void testWrittenRequestNotRetried() throws Exception {
+        RawServer raw = new RawServer(false);
+        PooledHttpTransport pooled = new PooledHttpTransport();
+        URL url = new URL("http://localhost:" + raw.getPort() + "/");
+        assertEquals("ok", pooled.post(url, "value=x", 0, 0));
+        try {
+
+            // the server reads the second request in full, then closes without replying
+            pooled.post(url, "value=x", 0, 0);
+            fail("request should have failed");
+        }
+        catch (IOException ioe) {
+            // expected
+        }
+        assertEquals(2, raw.getRequestCount());
+        assertEquals(0, pooled.getStatistics().getStaleConnectionRetries());
+        assertEquals(1, pooled.getStatistics().getFailures());
+        pooled.shutdown();
+        raw.stop();
+    }
+
+
+    public void testConfigureHosts() throws IOException {
+        PooledHttpTransport pooled = new PooledHttpTransport();
+        pooled.configureHosts("localhost:" + _server.getAddress().getPort() + "=2/50; bad");
+        try {
+            pooled.post(new URL(_url + "/echo?delay=500"), "value=x", 0, 0);
+            fail("request should have timed out");
+        }
+        catch (IOException ioe) {
+            // expected - read timeout overridden for the host
+        }
+        pooled.shutdown();
+    }
+
+
+    /***************************************************************************/
+
+    private String bigValue() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 2000; i++) sb.append("<item>").append(i).append("</item>");
+        return sb.toString();
+    }
+
+
+    private String encode(String s) {
+        try {
+            return java.net.URLEncoder.encode(s, "UTF-8");
+        }
+        catch (UnsupportedEncodingException uee) {
+            return s;
+        }
+    }
+
+
+    // replies with the posted 'value' wrapped in a response element
+    private class EchoHandler implements HttpHandler {
+
+        public void handle(HttpExchange exchange) throws IOException {
+            Map<String, String> query = parse(exchange.getRequestURI().getQuery());
+            Map<String, String> params = parse(readBody(exchange.getRequestBody()));
+            if (query.containsKey("delay")) {
+                int active = _active.incrementAndGet();
+                _maxActive.accumulateAndGet(active, Math::max);
+                try {
+                    Thread.sleep(Long.parseLong(query.get("delay")));
+                }
+                catch (InterruptedException ie) {
+                    // nothing to do
+                }
+                _active.decrementAndGet();          // before the reply frees the client
+            }
+            if (query.containsKey("close")) {
+                exchange.getResponseHeaders().set("Connection", "close");
+            }
+            String value = params.get("value");
+            byte[] reply = ("<response>" + (value != null ? value : "") +
+                    "</response>").getBytes(StandardCharsets.UTF_8);
+            int status = query.containsKey("status") ?
+                    Integer.parseInt(query.get("status")) : 200;
+            exchange.sendResponseHeaders(status,
+                    query.containsKey("chunked") ? 0 : reply.length);
+            OutputStream os = exchange.getResponseBody();
+            os.write(reply);
+            os.close();
+        }
+
+
+        private String readBody(InputStream is) throws IOException {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int bytesRead;
+            while ((bytesRead = is.read(buffer)) > 0) out.write(buffer, 0, bytesRead);
+            return out.toString("UTF-8");
+        }
+
+
+        private Map<String, String> parse(String s) throws UnsupportedEncodingException {
+            Map<String, String> map = new HashMap<String, String>();
+            if (s != null) {
+                for (String pair : s.split("&")) {
+                    int eq = pair.indexOf('=');
+                    if (eq > 0) map.put(pair.substring(0, eq),
+                            URLDecoder.decode(pair.substring(eq + 1), "UTF-8"));
+                }
+            }
+            return map;
+        }
+    }
+
+
+    // a minimal server that replies to one request per connection, then either
+    // closes the connection straight away or does so on receiving the next request
+    private static class RawServer implements Runnable {
+
+        private final ServerSocket _socket;
+        private final boolean _closeAfterReply;
+        private final Thread _thread;
+        private final AtomicInteger _requests = new AtomicInteger();
+        private volatile boolean _closed;
+
+        RawServer(boolean closeAfterReply) throws IOException {
+            _socket = new ServerSocket(0);
+            _closeAfterReply = closeAfterReply;
+            _thread = new Thread(this);
+            _thread.start();
+        }
+
+        int getPort() { return _socket.getLocalPort(); }
+
+        int getRequestCount() { return _requests.get(); }
+
+        void awaitClose() throws InterruptedException {
+            while (! _closed) Thread.sleep(5);
+            Thread.sleep(1100);                          // so reuse is checked
+        }
+
+        void stop() throws IOException { _socket.close(); }
+
+        public void run() {
+            try {
+                while (true) {
+                    Socket socket = _socket.accept();
+                    InputStream in = socket.getInputStream();
+                    readRequest(in);
+                    OutputStream out = socket.getOutputStream();
+                    out.write(("HTTP/1.1 200 OK\r\nContent-Length: 2\r\n\r\nok")
+                            .getBytes(StandardCharsets.ISO_8859_1));
+                    out.flush();
+                    if (! _closeAfterReply) readRequest(in);
+                    socket.close();
+                    _closed = true;
+                }
+            }
+            catch (IOException ioe) {
+                // stopped
+            }
+        }
+
+        // reads the headers and the body of a request
+        private void readRequest(InputStream in) throws IOException {
+            StringBuilder headers = new StringBuilder();
+            while (! headers.toString().endsWith("\r\n\r\n")) {
+                int c = in.read();
+                if (c < 0) return;
+                headers.append((char) c);
+            }
+            int start = headers.indexOf("Content-Length: ") + 16;
+            int length = Integer.parseInt(headers.substring(start,
+                    headers.indexOf("\r\n", start)));
+            for (int i = 0; i < length; i++) in.read();
+            _requests.incrementAndGet();
+        }
+    }
+
+
+    private static class TestClient extends Interface_Client {
+        String post(String url, Map<String, String> params) throws IOException {
+            return executePost(url, params);
+        }
+    }
+
+
+    public static void main(String args[]) {
+        TestRunner runner = new TestRunner();
+        runner.doRun(suite());
+        System.exit(0);
+    }
+
+    public static Test suite() {
+        TestSuite suite = new TestSuite();
+        suite.addTestSuite(TestPooledTransport.class);
+        return suite;
+    }
+}
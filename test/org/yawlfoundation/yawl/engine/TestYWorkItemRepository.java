@@ -59,4 +59,31 @@ public class TestYWorkItemRepository extends TestCase {
             assertEquals(_parentWorkItem, child.getParent());
         }
     }
+
+
+    public void testStatusIndex() throws YPersistenceException {
+        assertEquals(1, _workitemRepository.getParentWorkItems().size());
+        assertEquals(5, _workitemRepository.getFiredWorkItems().size());
+
+        YWorkItem child = _parentWorkItem.getChildren().iterator().next();
+        child.setStatus(YWorkItemStatus.statusExecuting);
+        assertEquals(4, _workitemRepository.getFiredWorkItems().size());
+        assertTrue(_workitemRepository.getExecutingWorkItems().contains(child));
+
+        _workitemRepository.remove(child);
+        assertTrue(_workitemRepository.getExecutingWorkItems().isEmpty());
+    }
+
+
+    public void testCaseIndex() throws YPersistenceException {
+        YIdentifier otherCase = new YIdentifier(null);
+        new YWorkItem(null, new YSpecificationID("ASpecID"), _task,
+                new YWorkItemID(otherCase, "task4321"), false, false);
+
+        Set<YWorkItem> removed = _workitemRepository.cancelNet(_parentWorkItem.getCaseID());
+        assertEquals(6, removed.size());
+        assertNotNull(_workitemRepository.get(otherCase.toString(), "task4321"));
+        assertEquals(1, _workitemRepository.getEnabledWorkItems().size());
+        assertTrue(_workitemRepository.getFiredWorkItems().isEmpty());
+    }
 }
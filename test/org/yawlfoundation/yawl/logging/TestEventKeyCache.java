@@ -0,0 +1,158 @@
+package org.yawlfoundation.yawl.logging;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+import org.yawlfoundation.yawl.elements.state.YIdentifier;
+import org.yawlfoundation.yawl.engine.YSpecificationID;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Checks the net and task instance keys held by the event key cache for each case,
+ * their removal and the bounded retention of completed cases, and that concurrent
+ * threads each see their own cases' keys.
+ */
+public class TestEventKeyCache extends TestCase {
+
+    private static final int THREADS = 8;
+    private static final int CASES_PER_THREAD = 200;
+    private static final int LOOKUPS_PER_CASE = 20;
+
+    private YEventKeyCache _cache;
+
+    public TestEventKeyCache(String name) {
+        super(name);
+    }
+
+
+    public void setUp() {
+        _cache = new YEventKeyCache(3);
+    }
+
+
+    public void testInstanceKeys() throws Exception {
+        YIdentifier caseID = new YIdentifier("12");
+        YIdentifier child = caseID.createChild(null);
+        assertEquals(-1, _cache.getNetInstanceID(caseID));
+        assertEquals(-1, _cache.getTaskInstanceID(child, 5));
+
+        _cache.putNetInstanceID(caseID, 100);
+        _cache.putNetInstanceID(child, 101);
+        for (int taskID = 1; taskID <= 10; taskID++) {
+            _cache.putTaskInstanceID(child, taskID, 1000 + taskID);
+        }
+        _cache.putTaskInstanceID(child, 5, 2005);                         // replaced
+        assertEquals(100, _cache.getNetInstanceID(caseID));
+        assertEquals(101, _cache.getNetInstanceID(child));
+        assertEquals(1001, _cache.getTaskInstanceID(child, 1));
+        assertEquals(2005, _cache.getTaskInstanceID(child, 5));
+        assertEquals(1010, _cache.getTaskInstanceID(child, 10));
+        assertEquals(-1, _cache.getTaskInstanceID(caseID, 1));
+        assertEquals(1, _cache.getCachedCaseCount());
+    }
+
+
+    public void testRemoveSubnet() throws Exception {
+        YIdentifier caseID = new YIdentifier("7");
+        YIdentifier subnet = caseID.createChild(null);
+        YIdentifier item = subnet.createChild(null);
+        YIdentifier sibling = caseID.createChild(null);
+        _cache.putNetInstanceID(caseID, 1);
+        _cache.putNetInstanceID(subnet, 2);
+        _cache.putTaskInstanceID(item, 3, 4);
+        _cache.putTaskInstanceID(sibling, 3, 5);
+
+        _cache.removeCase(subnet);
+        assertEquals(-1, _cache.getNetInstanceID(subnet));
+        assertEquals(-1, _cache.getTaskInstanceID(item, 3));
+        assertEquals(1, _cache.getNetInstanceID(caseID));
+        assertEquals(5, _cache.getTaskInstanceID(sibling, 3));
+    }
+
+
+    public void testCompletedCasesBounded() {
+        List<YIdentifier> cases = new ArrayList<YIdentifier>();
+        for (int i = 1; i <= 6; i++) {
+            YIdentifier caseID = new YIdentifier(String.valueOf(i));
+            _cache.putNetInstanceID(caseID, i);
+            cases.add(caseID);
+        }
+        for (int i = 0; i < 5; i++) {
+            _cache.removeCase(cases.get(i));
+            _cache.removeCase(cases.get(i));                 // counted only once
+        }
+
+        // the 3 most recently completed cases, and the active one, are kept
+        assertEquals(4, _cache.getCachedCaseCount());
+        assertEquals(-1, _cache.getNetInstanceID(cases.get(1)));
+        assertEquals(3, _cache.getNetInstanceID(cases.get(2)));
+        assertEquals(5, _cache.getNetInstanceID(cases.get(4)));
+        assertEquals(6, _cache.getNetInstanceID(cases.get(5)));
+    }
+
+
+    public void testSpecificationKeys() {
+        YSpecificationID specID = new YSpecificationID("id", "0.1", "uri");
+        _cache.putNetID(specID, "net", 10);
+        _cache.putTaskID(10L, "task", 20);
+        _cache.putDataTypeID("type", "<definition/>", 30);
+        assertEquals(10, _cache.getNetID(specID, "net"));
+        assertEquals(20, _cache.getTaskID(10L, "task"));
+        assertEquals(30, _cache.getDataTypeID("type", "<definition/>"));
+        assertEquals(-1, _cache.getNetID(specID, "other"));
+
+        _cache.removeSpecification(specID);
+        assertEquals(-1, _cache.getNetID(specID, "net"));
+        assertEquals(-1, _cache.getTaskID(10L, "task"));
+        assertEquals(30, _cache.getDataTypeID("type", "<definition/>"));
+    }
+
+
+    public void testConcurrentLookups() throws InterruptedException {
+        final YEventKeyCache cache = new YEventKeyCache();
+        final AtomicInteger wrongKeys = new AtomicInteger();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < THREADS; t++) {
+            final int thread = t;
+            threads.add(new Thread(new Runnable() {
+                public void run() {
+                    for (int c = 0; c < CASES_PER_THREAD; c++) {
+                        YIdentifier caseID = new YIdentifier(thread + "_" + c);
+                        cache.putNetInstanceID(caseID, c);
+                        cache.putTaskInstanceID(caseID, 1000 + c, c);
+                    }
+                    for (int i = 0; i < LOOKUPS_PER_CASE; i++) {
+                        for (int c = 0; c < CASES_PER_THREAD; c++) {
+                            YIdentifier caseID = new YIdentifier(thread + "_" + c);
+                            if (cache.getNetInstanceID(caseID) != c ||
+                                    cache.getTaskInstanceID(caseID, 1000 + c) != c) {
+                                wrongKeys.incrementAndGet();
+                            }
+                        }
+                    }
+                }
+            }));
+        }
+        for (Thread thread : threads) thread.start();
+        for (Thread thread : threads) thread.join();
+        assertEquals(0, wrongKeys.get());
+        assertEquals(THREADS * CASES_PER_THREAD, cache.getCachedCaseCount());
+    }
+
+
+    public static void main(String args[]) {
+        TestRunner runner = new TestRunner();
+        runner.doRun(suite());
+        System.exit(0);
+    }
+
+    public static Test suite() {
+        TestSuite suite = new TestSuite();
+        suite.addTestSuite(TestEventKeyCache.class);
+        return suite;
+    }
+}
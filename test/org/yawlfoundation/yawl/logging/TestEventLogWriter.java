@@ -0,0 +1,189 @@
+package org.yawlfoundation.yawl.logging;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Checks that the process log writer writes every event, in order, in bounded
+ * batches, the behaviour of each durability mode, and that no event submitted by
+ * concurrent producers is lost.
+ */
+public class TestEventLogWriter extends TestCase {
+
+    private static final int PRODUCERS = 4;
+    private static final int EVENTS_PER_PRODUCER = 2000;
+
+    private RecordingHandler _handler;
+    private YEventLogWriter _writer;
+
+    public TestEventLogWriter(String name) {
+        super(name);
+    }
+
+
+    public void setUp() {
+        _handler = new RecordingHandler();
+    }
+
+
+    public void tearDown() {
+        if (_writer != null) _writer.shutdown();
+    }
+
+
+    public void testOrderAndBatchSize() {
+        _writer = new YEventLogWriter(_handler, YEventLogWriter.Durability.ASYNC,
+                50, 5, 1000);
+        final List<Integer> written = Collections.synchronizedList(new ArrayList<Integer>());
+        for (int i = 0; i < 1000; i++) {
+            final int index = i;
+            assertTrue(_writer.submit(new Runnable() {
+                public void run() { written.add(index); }
+            }));
+        }
+        _writer.shutdown();
+        assertEquals(1000, written.size());
+        for (int i = 0; i < 1000; i++) assertEquals(i, (int) written.get(i));
+        assertTrue(_handler.maxBatchSize <= 50);
+        assertEquals(1000, _writer.getWrittenCount());
+        assertEquals(_handler.batches.get(), _writer.getBatchCount());
+    }
+
+
+    public void testBatchDelay() throws InterruptedException {
+        _writer = new YEventLogWriter(_handler, YEventLogWriter.Durability.ASYNC,
+                100, 200, 1000);
+        for (int i = 0; i < 10; i++) {
+            _writer.submit(new Counter());
+            Thread.sleep(5);
+        }
+        _writer.shutdown();
+        assertEquals(1, _handler.batches.get());
+        assertEquals(10, _handler.events.get());
+    }
+
+
+    public void testSync() {
+        _writer = new YEventLogWriter(_handler, YEventLogWriter.Durability.SYNC,
+                50, 5, 1000);
+        for (int i = 1; i <= 20; i++) {
+            assertTrue(_writer.submit(new Counter()));
+            assertEquals(i, _handler.events.get());          // written on return
+        }
+    }
+
+
+    public void testDrop() throws InterruptedException {
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch started = new CountDownLatch(1);
+        _writer = new YEventLogWriter(_handler, YEventLogWriter.Durability.DROP,
+                1, 0, 10);
+        _writer.submit(new Runnable() {
+            public void run() {
+                started.countDown();
+                await(release);
+            }
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));        // writer is now blocked
+        for (int i = 0; i < 10; i++) assertTrue(_writer.submit(new Counter()));
+        assertFalse(_writer.submit(new Counter()));
+        assertEquals(1, _writer.getDroppedCount());
+        release.countDown();
+        _writer.shutdown();
+        assertEquals(10, _handler.events.get());
+        assertEquals(11, _writer.getWrittenCount());
+        assertFalse(_writer.submit(new Counter()));              // after shutdown
+    }
+
+
+    public void testFailedBatch() {
+        _handler.fail = true;
+        _writer = new YEventLogWriter(_handler, YEventLogWriter.Durability.SYNC,
+                10, 0, 100);
+        _writer.submit(new Counter());
+        assertEquals(1, _writer.getFailedBatchCount());
+        _writer.submit(new Runnable() {
+            public void run() { throw new IllegalStateException("test"); }
+        });
+        assertEquals(2, _writer.getFailedBatchCount());
+        assertEquals(2, _writer.getWrittenCount());
+    }
+
+
+    public void testConcurrentProducers() throws InterruptedException {
+        _writer = new YEventLogWriter(_handler, YEventLogWriter.Durability.ASYNC,
+                50, 5, 1000);
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < PRODUCERS; t++) {
+            threads.add(new Thread(new Runnable() {
+                public void run() {
+                    for (int i = 0; i < EVENTS_PER_PRODUCER; i++) {
+                        _writer.submit(new Counter());
+                    }
+                }
+            }));
+        }
+        for (Thread thread : threads) thread.start();
+        for (Thread thread : threads) thread.join();
+        _writer.shutdown();
+        assertEquals(PRODUCERS * EVENTS_PER_PRODUCER, _handler.events.get());
+        assertEquals(PRODUCERS * EVENTS_PER_PRODUCER, _writer.getWrittenCount());
+        assertEquals(0, _writer.getDroppedCount());
+        assertTrue(_handler.maxBatchSize <= 50);
+    }
+
+
+    /***************************************************************************/
+
+    private void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        }
+        catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+
+    private class Counter implements Runnable {
+        public void run() { _handler.events.incrementAndGet(); }
+    }
+
+
+    // records each batch written
+    private static class RecordingHandler implements YEventLogWriter.BatchHandler {
+        final AtomicInteger batches = new AtomicInteger();
+        final AtomicInteger events = new AtomicInteger();
+        volatile int maxBatchSize;
+        volatile boolean fail;
+
+        public boolean write(List<Runnable> batch) {
+            batches.incrementAndGet();
+            maxBatchSize = Math.max(maxBatchSize, batch.size());
+            for (Runnable event : batch) event.run();
+            return ! fail;
+        }
+    }
+
+
+    public static void main(String args[]) {
+        TestRunner runner = new TestRunner();
+        runner.doRun(suite());
+        System.exit(0);
+    }
+
+    public static Test suite() {
+        TestSuite suite = new TestSuite();
+        suite.addTestSuite(TestEventLogWriter.class);
+        return suite;
+    }
+}
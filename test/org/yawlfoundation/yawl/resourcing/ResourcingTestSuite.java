@@ -20,6 +20,9 @@ public class ResourcingTestSuite extends TestSuite {
 //        suite.addTestSuite(TestGetSelectors.class);
 //        suite.addTestSuite(TestHibernate.class);
         suite.addTestSuite(TestDB.class);
+        suite.addTestSuite(TestAllocationStatistics.class);
+        suite.addTestSuite(TestWorkQueueIndex.class);
+        suite.addTestSuite(TestCalendarIndex.class);
 //        suite.addTestSuite(TestJDBC.class);
 /*        suite.addTestSuite(TestParseXML.class);*/
         return suite;
@@ -0,0 +1,181 @@
+package org.yawlfoundation.yawl.resourcing;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+import org.yawlfoundation.yawl.resourcing.datastore.eventlog.AllocationStatistics;
+import org.yawlfoundation.yawl.resourcing.datastore.eventlog.EventLogger;
+import org.yawlfoundation.yawl.resourcing.datastore.eventlog.ResourceEvent;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Checks that the allocation statistics index, built from event log summary rows and
+ * then from logged events, holds the event counts and latest times of each
+ * participant, that it drops the least recently used tasks when full and reads them
+ * back from the log when next needed, and that a least-recently-allocated choice
+ * made from the index matches one made by sorting the task's logged events.
+ */
+public class TestAllocationStatistics extends TestCase {
+
+    private static final int PARTICIPANTS = 50;
+    private static final int HISTORY = 2000;
+
+    private AllocationStatistics _stats;
+    private final AtomicInteger _logReads = new AtomicInteger();
+
+    public TestAllocationStatistics(String name) {
+        super(name);
+    }
+
+
+    public void setUp() {
+
+        // the event log holds two completions of task b, and can't be read for task x
+        _stats = new AllocationStatistics(2) {
+            protected List<?> readTaskRows(long specKey, String taskID,
+                                           EventLogger.event event) {
+                _logReads.incrementAndGet();
+                if (taskID.equals("x")) return null;
+                return taskID.equals("b") ?
+                        Collections.singletonList(new Object[] { "p1", 200L, 2L }) :
+                        Collections.emptyList();
+            }
+        };
+    }
+
+
+    public void testNotBuilt() {
+        _stats.add(newEvent(1, "task", "p1", EventLogger.event.allocate, 100));
+        assertNull(_stats.getEntry(1, "task", EventLogger.event.allocate));
+    }
+
+
+    public void testRebuildAndAdd() {
+        List<Object[]> rows = new ArrayList<Object[]>();
+        rows.add(new Object[] { 1L, "task", "allocate", "p1", 100L, 3L });
+        rows.add(new Object[] { 1L, "task", "allocate", "p2", 200L, 1L });
+        rows.add(new Object[] { 1L, "task", "complete", "p1", 150L, 2L });
+        _stats.rebuild(rows);
+
+        AllocationStatistics.TaskEntry entry =
+                _stats.getEntry(1, "task", EventLogger.event.allocate);
+        assertEquals(3, entry.getCount("p1"));
+        assertEquals(200, entry.getLastTime("p2"));
+        assertEquals(0, entry.getCount("p3"));
+        assertEquals(-1, entry.getLastTime("p3"));
+
+        _stats.add(newEvent(1, "task", "p3", EventLogger.event.allocate, 300));
+        _stats.add(newEvent(1, "task", "p1", EventLogger.event.allocate, 50));
+        _stats.add(newEvent(1, "task", "p1", EventLogger.event.start, 400));   // ignored
+        assertEquals(300, entry.getLastTime("p3"));
+        assertEquals(4, entry.getCount("p1"));
+        assertEquals(100, entry.getLastTime("p1"));                     // unchanged
+
+        assertTrue(_stats.getEntry(1, "other", EventLogger.event.complete).isEmpty());
+        assertNull(_stats.getEntry(1, "task", EventLogger.event.start));
+    }
+
+
+    public void testEviction() {
+        _stats.rebuild(Collections.emptyList());
+        _stats.add(newEvent(1, "a", "p1", EventLogger.event.complete, 100));
+        _stats.add(newEvent(1, "b", "p1", EventLogger.event.complete, 100));
+        _stats.getEntry(1, "a", EventLogger.event.complete);          // b is now eldest
+        _stats.add(newEvent(1, "c", "p1", EventLogger.event.complete, 100));
+        assertEquals(2, _stats.getTaskCount());
+        assertEquals(0, _logReads.get());
+
+        // b's events are no longer counted, so it is read back from the log
+        _stats.add(newEvent(1, "b", "p1", EventLogger.event.complete, 200));
+        AllocationStatistics.TaskEntry entry =
+                _stats.getEntry(1, "b", EventLogger.event.complete);
+        assertEquals(2, entry.getCount("p1"));
+        assertEquals(200, entry.getLastTime("p1"));
+        assertEquals(1, _logReads.get());
+        assertSame(entry, _stats.getEntry(1, "b", EventLogger.event.complete));
+        assertEquals(1, _logReads.get());
+        assertEquals(2, _stats.getTaskCount());
+
+        // a task that can't be read is left to the caller, and is tried again
+        assertNull(_stats.getEntry(1, "x", EventLogger.event.complete));
+        assertNull(_stats.getEntry(1, "x", EventLogger.event.complete));
+        assertEquals(3, _logReads.get());
+    }
+
+
+    public void testChoice() {
+        AllocationStatistics stats = new AllocationStatistics(10);
+        stats.rebuild(Collections.emptyList());
+        List<ResourceEvent> events = new ArrayList<ResourceEvent>();
+        Random random = new Random(7);
+        for (int i = 0; i < HISTORY; i++) {
+            ResourceEvent event = newEvent(1, "task", "p" + random.nextInt(PARTICIPANTS),
+                    EventLogger.event.allocate, 1000L + i);
+            events.add(event);
+            stats.add(event);
+        }
+        List<String> pids = new ArrayList<String>();
+        for (int i = 0; i < PARTICIPANTS; i++) pids.add("p" + i);
+        assertEquals(chooseBySorting(events, pids), chooseByIndex(stats, pids));
+    }
+
+
+    /***************************************************************************/
+
+    // the participant allocated least recently, as found from the full log
+    private String chooseBySorting(List<ResourceEvent> events, List<String> pids) {
+        List<ResourceEvent> copy = new ArrayList<ResourceEvent>(events);
+        copy.sort(new Comparator<ResourceEvent>() {
+            public int compare(ResourceEvent e1, ResourceEvent e2) {
+                return Long.compare(e2.get_timeStamp(), e1.get_timeStamp());
+            }
+        });
+        Set<String> remaining = new HashSet<String>(pids);
+        for (ResourceEvent event : copy) {
+            remaining.remove(event.get_resourceID());
+            if (remaining.size() == 1) return remaining.iterator().next();
+        }
+        return null;
+    }
+
+
+    private String chooseByIndex(AllocationStatistics stats, List<String> pids) {
+        AllocationStatistics.TaskEntry entry =
+                stats.getEntry(1, "task", EventLogger.event.allocate);
+        String choice = null;
+        long earliest = Long.MAX_VALUE;
+        for (String pid : pids) {
+            long lastTime = entry.getLastTime(pid);
+            if (lastTime < earliest) {
+                choice = pid;
+                earliest = lastTime;
+            }
+        }
+        return choice;
+    }
+
+
+    private ResourceEvent newEvent(long specKey, String taskID, String pid,
+                                   EventLogger.event eType, long time) {
+        ResourceEvent event = new ResourceEvent(specKey, "1", pid, eType);
+        event.set_taskID(taskID);
+        event.set_timeStamp(time);
+        return event;
+    }
+
+
+    public static void main(String args[]) {
+        TestRunner runner = new TestRunner();
+        runner.doRun(suite());
+        System.exit(0);
+    }
+
+    public static Test suite() {
+        TestSuite suite = new TestSuite();
+        suite.addTestSuite(TestAllocationStatistics.class);
+        return suite;
+    }
+}
@@ -0,0 +1,164 @@
+package org.yawlfoundation.yawl.resourcing;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+import org.yawlfoundation.yawl.resourcing.calendar.CalendarEntry;
+import org.yawlfoundation.yawl.resourcing.calendar.CalendarIndex;
+import org.yawlfoundation.yawl.resourcing.calendar.ResourceCalendar;
+
+import java.util.*;
+
+/**
+ * Checks that the calendar index finds the same overlapping entries as a search of
+ * every entry, in start time order, and that it follows entries as they are added,
+ * changed and removed.
+ */
+public class TestCalendarIndex extends TestCase {
+
+    private static final long HOUR = 3600000;
+
+    private CalendarIndex _index;
+    private long _nextID;
+
+    public TestCalendarIndex(String name) {
+        super(name);
+    }
+
+
+    public void setUp() {
+        _index = new CalendarIndex();
+        _nextID = 1;
+    }
+
+
+    public void testOverlapping() {
+        Random random = new Random(5);
+        List<String> ids = Arrays.asList("PA-1", "PA-2", "ALL_RESOURCES");
+        _index.load(ids, null);
+        List<CalendarEntry> all = new ArrayList<CalendarEntry>();
+        for (int i = 0; i < 2000; i++) {
+            long start = random.nextInt(1000) * HOUR;
+            CalendarEntry entry = newEntry(ids.get(random.nextInt(ids.size())), start,
+                    start + (1 + random.nextInt(48)) * HOUR);
+            all.add(entry);
+            _index.add(entry);
+        }
+
+        List<String> queried = Arrays.asList("PA-1", "ALL_RESOURCES");
+        for (int i = 0; i < 200; i++) {
+            long from = random.nextInt(1000) * HOUR;
+            long to = from + random.nextInt(100) * HOUR;
+            List<CalendarEntry> found = _index.getOverlapping(queried, from, to);
+            assertEquals(search(all, queried, from, to), toIDs(found));
+            for (int j = 1; j < found.size(); j++) {
+                assertTrue(found.get(j - 1).getStartTime() <= found.get(j).getStartTime());
+            }
+        }
+    }
+
+
+    public void testWrites() {
+        _index.load(Collections.singletonList("PA-1"), null);
+        CalendarEntry entry = newEntry("PA-1", 10 * HOUR, 12 * HOUR);
+        _index.add(entry);
+        assertEquals(1, overlapping("PA-1", 11 * HOUR, 11 * HOUR + 1).size());
+
+        // changes to the caller's entry aren't seen until written
+        entry.setStartTime(20 * HOUR);
+        entry.setEndTime(22 * HOUR);
+        assertEquals(1, overlapping("PA-1", 11 * HOUR, 11 * HOUR + 1).size());
+        _index.update(entry);
+        assertTrue(overlapping("PA-1", 11 * HOUR, 11 * HOUR + 1).isEmpty());
+        assertEquals(1, overlapping("PA-1", 21 * HOUR, 23 * HOUR).size());
+
+        // periods are half-open: entries only touching the period aren't included
+        assertTrue(overlapping("PA-1", 22 * HOUR, 24 * HOUR).isEmpty());
+        assertTrue(overlapping("PA-1", 18 * HOUR, 20 * HOUR).isEmpty());
+
+        _index.remove(entry.getEntryID());
+        assertTrue(overlapping("PA-1", 0, Long.MAX_VALUE).isEmpty());
+        assertEquals(0, _index.size());
+    }
+
+
+    public void testBulkRemovals() {
+        _index.load(Arrays.asList("PA-1", "PA-2"), null);
+        for (int i = 0; i < 10; i++) {
+            _index.add(newEntry("PA-1", i * 10 * HOUR, (i * 10 + 5) * HOUR));
+            _index.add(newEntry("PA-2", i * 10 * HOUR, (i * 10 + 5) * HOUR));
+        }
+        _index.removeOverlapping("PA-1", 12 * HOUR, 32 * HOUR);
+        assertEquals(7, overlapping("PA-1", 0, Long.MAX_VALUE).size());
+        _index.removeEndedBefore(50 * HOUR);
+        assertEquals(5, overlapping("PA-1", 0, Long.MAX_VALUE).size());
+        assertEquals(5, overlapping("PA-2", 0, Long.MAX_VALUE).size());
+        _index.removeResource("PA-2");
+        assertTrue(overlapping("PA-2", 0, Long.MAX_VALUE).isEmpty());
+        assertEquals(5, _index.size());
+    }
+
+
+    public void testLoading() {
+        assertEquals(Arrays.asList("PA-1", "PA-2"),
+                _index.getUnloaded(Arrays.asList("PA-1", "PA-2", "PA-1")));
+
+        // writes for resources not yet loaded are left to the load
+        _index.add(newEntry("PA-1", 0, HOUR));
+        assertEquals(0, _index.size());
+        _index.load(Collections.singletonList("PA-1"),
+                Collections.singletonList(newEntry("PA-1", 0, HOUR)));
+        assertEquals(1, _index.size());
+        assertEquals(Collections.singletonList("PA-2"),
+                _index.getUnloaded(Arrays.asList("PA-1", "PA-2")));
+
+        _index.clear();
+        assertEquals(2, _index.getUnloaded(Arrays.asList("PA-1", "PA-2")).size());
+    }
+
+
+    private CalendarEntry newEntry(String resourceID, long start, long end) {
+        CalendarEntry entry = new CalendarEntry(resourceID, start, end,
+                ResourceCalendar.Status.unavailable, 100, "admin", null);
+        entry.setEntryID(_nextID++);
+        return entry;
+    }
+
+
+    private List<CalendarEntry> overlapping(String resourceID, long from, long to) {
+        return _index.getOverlapping(Collections.singletonList(resourceID), from, to);
+    }
+
+
+    private Set<Long> search(List<CalendarEntry> all, List<String> ids, long from, long to) {
+        Set<Long> found = new HashSet<Long>();
+        for (CalendarEntry entry : all) {
+            if (ids.contains(entry.getResourceID()) && entry.getStartTime() < to &&
+                    entry.getEndTime() > from) {
+                found.add(entry.getEntryID());
+            }
+        }
+        return found;
+    }
+
+
+    private Set<Long> toIDs(List<CalendarEntry> entries) {
+        Set<Long> ids = new HashSet<Long>();
+        for (CalendarEntry entry : entries) ids.add(entry.getEntryID());
+        return ids;
+    }
+
+
+    public static void main(String args[]) {
+        TestRunner runner = new TestRunner();
+        runner.doRun(suite());
+        System.exit(0);
+    }
+
+    public static Test suite() {
+        TestSuite suite = new TestSuite();
+        suite.addTestSuite(TestCalendarIndex.class);
+        return suite;
+    }
+}
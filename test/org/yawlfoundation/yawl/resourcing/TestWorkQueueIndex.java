@@ -0,0 +1,194 @@
+package org.yawlfoundation.yawl.resourcing;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+import org.yawlfoundation.yawl.engine.interfce.WorkItemRecord;
+import org.yawlfoundation.yawl.resourcing.resource.Participant;
+
+import java.util.*;
+
+/**
+ * Checks that the work queue index follows the contents of indexed participant
+ * queues as items are added, moved and removed, and that the participants it finds
+ * offered an item are those found by searching every participant's offered queue.
+ */
+public class TestWorkQueueIndex extends TestCase {
+
+    private static final int PARTICIPANTS = 500;
+    private static final int ITEMS = 50;
+    private static final int OFFERED_TO = 10;
+
+    private WorkQueueIndex _index;
+
+    public TestWorkQueueIndex(String name) {
+        super(name);
+    }
+
+
+    public void setUp() {
+        _index = WorkQueueIndex.getInstance();
+        _index.clear();
+    }
+
+
+    public void tearDown() {
+        _index.clear();
+    }
+
+
+    public void testAddAndRemove() {
+        WorkItemRecord wir = newItem("12", "Approve");
+        WorkQueue q1 = newQueue("PA-1", WorkQueue.OFFERED);
+        WorkQueue q2 = newQueue("PA-2", WorkQueue.OFFERED);
+        q1.add(wir, false);
+        q2.add(wir, false);
+        assertEquals(set("PA-1", "PA-2"), _index.getHolders(wir.getID()));
+        assertEquals(set("PA-1", "PA-2"), _index.getHolders(wir.getID(), WorkQueue.OFFERED));
+        assertTrue(_index.getHolders(wir.getID(), WorkQueue.ALLOCATED).isEmpty());
+
+        // accepted by one participant: withdrawn from the other's offered queue
+        WorkQueue allocated = newQueue("PA-1", WorkQueue.ALLOCATED);
+        q1.remove(wir);
+        allocated.add(wir, false);
+        q2.remove(wir);
+        assertEquals(set("PA-1"), _index.getHolders(wir.getID()));
+        assertEquals(set("PA-1"), _index.getHolders(wir.getID(), WorkQueue.ALLOCATED));
+        assertTrue(_index.getHolders(wir.getID(), WorkQueue.OFFERED).isEmpty());
+
+        allocated.remove(wir);
+        assertTrue(_index.getHolders(wir.getID()).isEmpty());
+        assertTrue(_index.getItemsForCase("12").isEmpty());
+        assertEquals(0, _index.getItemCount());
+    }
+
+
+    public void testCaseItems() {
+        WorkItemRecord wir1 = newItem("7", "Check");
+        WorkItemRecord wir2 = newItem("7.1", "Review");
+        WorkItemRecord other = newItem("8", "Check");
+        WorkQueue q1 = newQueue("PA-1", WorkQueue.OFFERED);
+        WorkQueue q2 = newQueue("PA-2", WorkQueue.STARTED);
+        q1.add(wir1, false);
+        q1.add(other, false);
+        q2.add(wir2, false);
+        assertEquals(set(wir1.getID(), wir2.getID()), _index.getItemsForCase("7"));
+        assertEquals(set("PA-1", "PA-2"), _index.getCaseHolders("7"));
+        assertEquals(set("PA-1"), _index.getCaseHolders("8"));
+
+        q1.removeCase("7");
+        q2.removeCase("7");
+        assertTrue(_index.getItemsForCase("7").isEmpty());
+        assertTrue(_index.getCaseHolders("7").isEmpty());
+        assertEquals(set("PA-1"), _index.getHolders(other.getID()));
+
+        q1.clear();
+        assertEquals(0, _index.getItemCount());
+    }
+
+
+    public void testIndexedQueuesOnly() {
+        WorkItemRecord wir = newItem("3", "Pay");
+        WorkQueue unindexed = new WorkQueue("PA-1", WorkQueue.OFFERED, false);
+        unindexed.add(wir, false);
+        assertTrue(_index.getHolders(wir.getID()).isEmpty());
+
+        // existing contents are indexed when a queue becomes indexed, and vice versa
+        unindexed.setIndexed(true);
+        assertEquals(set("PA-1"), _index.getHolders(wir.getID()));
+        unindexed.setIndexed(false);
+        assertTrue(_index.getHolders(wir.getID()).isEmpty());
+
+        // admin queues are never indexed
+        WorkQueue worklisted = newQueue("admin", WorkQueue.WORKLISTED);
+        worklisted.add(wir, false);
+        assertFalse(worklisted.isIndexed());
+        assertTrue(_index.getHolders(wir.getID()).isEmpty());
+    }
+
+
+    public void testQueueSetCopiesNotIndexed() {
+        WorkItemRecord wir = newItem("4", "File");
+        Participant p = new Participant("Smith", "Jo", "jsmith");
+        p.setID("PA-1");
+        QueueSet owned = p.createQueueSet(false);
+        owned.addToQueue(wir, WorkQueue.OFFERED, false);
+        assertEquals(set("PA-1"), _index.getHolders(wir.getID()));
+
+        // a copy rebuilt from xml, as a client does, leaves the index unchanged
+        QueueSet copy = new QueueSet("PA-1", QueueSet.setType.participantSet, false);
+        copy.fromXML(owned.toXML());
+        assertFalse(copy.isIndexed());
+        assertFalse(copy.getQueue(WorkQueue.OFFERED).isIndexed());
+        assertEquals(1, _index.getItemCount());
+
+        owned.removeFromQueue(wir, WorkQueue.OFFERED);
+        assertTrue(_index.getHolders(wir.getID()).isEmpty());
+        assertEquals(0, _index.getItemCount());
+    }
+
+
+    public void testOwnerChange() {
+        WorkItemRecord wir = newItem("5", "Sign");
+        WorkQueue queue = newQueue("PA-1", WorkQueue.SUSPENDED);
+        queue.add(wir, false);
+        queue.setOwnerID("PA-9");
+        assertEquals(set("PA-9"), _index.getHolders(wir.getID(), WorkQueue.SUSPENDED));
+    }
+
+
+    public void testHoldersMatchQueues() {
+        List<WorkQueue> queues = new ArrayList<WorkQueue>();
+        for (int i = 0; i < PARTICIPANTS; i++) {
+            queues.add(newQueue("PA-" + i, WorkQueue.OFFERED));
+        }
+        List<WorkItemRecord> items = new ArrayList<WorkItemRecord>();
+        Random random = new Random(11);
+        for (int i = 0; i < ITEMS; i++) {
+            WorkItemRecord wir = newItem(String.valueOf(i), "Task");
+            items.add(wir);
+            for (int j = 0; j < OFFERED_TO; j++) {
+                queues.get(random.nextInt(PARTICIPANTS)).add(wir, false);
+            }
+        }
+
+        for (WorkItemRecord wir : items) {
+            Set<String> scanned = new HashSet<String>();
+            for (WorkQueue queue : queues) {
+                if (queue.get(wir.getID()) != null) scanned.add(queue.getOwnerID());
+            }
+            assertEquals(scanned, _index.getHolders(wir.getID(), WorkQueue.OFFERED));
+        }
+    }
+
+
+    private WorkQueue newQueue(String pid, int queueType) {
+        WorkQueue queue = new WorkQueue(pid, queueType, false);
+        queue.setIndexed(true);
+        return queue;
+    }
+
+
+    private WorkItemRecord newItem(String caseID, String taskID) {
+        return new WorkItemRecord(caseID, taskID, "spec", WorkItemRecord.statusEnabled);
+    }
+
+
+    private Set<String> set(String... values) {
+        return new HashSet<String>(Arrays.asList(values));
+    }
+
+
+    public static void main(String args[]) {
+        TestRunner runner = new TestRunner();
+        runner.doRun(suite());
+        System.exit(0);
+    }
+
+    public static Test suite() {
+        TestSuite suite = new TestSuite();
+        suite.addTestSuite(TestWorkQueueIndex.class);
+        return suite;
+    }
+}
@@ -21,6 +21,7 @@ public class SchemaTestSuite extends TestSuite{
         TestSuite suite = new TestSuite();
         suite.addTestSuite(TestSchemaHandler.class);
         suite.addTestSuite(TestSchemaHandlerValidation.class);
+        suite.addTestSuite(TestDataValidatorCache.class);
         return suite;
     }
 }
\ No newline at end of file
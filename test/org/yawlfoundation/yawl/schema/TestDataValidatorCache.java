@@ -0,0 +1,157 @@
+package org.yawlfoundation.yawl.schema;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+import org.jdom2.Element;
+import org.yawlfoundation.yawl.elements.data.YParameter;
+import org.yawlfoundation.yawl.elements.data.YVariable;
+import org.yawlfoundation.yawl.exceptions.YDataValidationException;
+import org.yawlfoundation.yawl.util.JDOMUtil;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks that validating against cached, precompiled wrapper schemas gives the
+ * same outcomes as compiling a wrapper per validation, including when shared
+ * between threads.
+ */
+public class TestDataValidatorCache extends TestCase {
+
+    private static final String SCHEMA =
+            "<xs:schema xmlns:xs=\"http://www.w3.org/2001/XMLSchema\">" +
+            "<xs:simpleType name=\"title\"><xs:restriction base=\"xs:string\">" +
+            "<xs:enumeration value=\"Mr.\"/><xs:enumeration value=\"Ms.\"/>" +
+            "</xs:restriction></xs:simpleType></xs:schema>";
+
+    private static final String VALID =
+            "<task><title>Ms.</title><count>3</count><note>hi</note></task>";
+    private static final String PADDED =                 // trimmed as before
+            "<task><title>  Ms. </title><count>3</count></task>";
+    private static final String BAD_TYPE =
+            "<task><title>Dr.</title><count>three</count></task>";
+    private static final String MISSING =
+            "<task><count>3</count></task>";
+
+    private static final String XSD_NAMESPACE = "http://www.w3.org/2001/XMLSchema";
+    private static final int VALIDATIONS = 200;
+
+    private YDataValidator _validator;
+    private List<YVariable> _params;
+
+    public TestDataValidatorCache(String name) {
+        super(name);
+    }
+
+
+    public void setUp() {
+        _validator = new YDataValidator(SCHEMA);
+        assertTrue(_validator.validateSchema());
+        _params = new ArrayList<YVariable>();
+        _params.add(newParam("count", "int", 1, false));
+        _params.add(newParam("title", "title", 0, false));
+        _params.add(newParam("note", "string", 2, true));
+    }
+
+
+    public void testSameOutcomes() {
+        for (String xml : new String[] { VALID, PADDED, BAD_TYPE, MISSING }) {
+            assertEquals(xml, isValid(new YDataValidator(SCHEMA), xml),
+                    isValid(_validator, xml));
+            assertEquals(xml, isValid(new YDataValidator(SCHEMA), xml),
+                    isValid(_validator, xml));                 // cached this time
+        }
+        assertTrue(isValid(_validator, VALID));
+        assertTrue(isValid(_validator, PADDED));
+        assertFalse(isValid(_validator, BAD_TYPE));
+        assertFalse(isValid(_validator, MISSING));
+    }
+
+
+    public void testErrorMessages() {
+        try {
+            _validator.validate(_params, JDOMUtil.stringToElement(BAD_TYPE), "test");
+            fail("validation should have failed");
+        }
+        catch (YDataValidationException e) {
+            assertTrue(e.getMessage().contains("Schema validation failed"));
+            assertTrue(e.getMessage().contains("Dr."));
+            assertTrue(e.getMessage().contains("three"));
+        }
+    }
+
+
+    public void testUnknownTypeFailsToCompile() {
+        List<YVariable> params = new ArrayList<YVariable>(_params);
+        params.add(newParam("other", "noSuchType", 3, false));
+        for (int i = 0; i < 2; i++) {
+            try {
+                _validator.validate(params, JDOMUtil.stringToElement(VALID), "test");
+                fail("compilation should have failed");
+            }
+            catch (YDataValidationException e) {
+                assertTrue(e.getMessage().contains("Failed to compile schema"));
+            }
+        }
+    }
+
+
+    public void testConcurrentValidation() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+        for (int i = 0; i < VALIDATIONS; i++) {
+            final String xml = i % 2 == 0 ? VALID : BAD_TYPE;
+            results.add(executor.submit(new Callable<Boolean>() {
+                public Boolean call() {
+                    return isValid(_validator, xml) == (xml == VALID);
+                }
+            }));
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.MINUTES));
+        for (Future<Boolean> result : results) {
+            assertTrue(result.get());
+        }
+    }
+
+
+    private boolean isValid(YDataValidator validator, String xml) {
+        try {
+            validator.validate(_params, JDOMUtil.stringToElement(xml), "test");
+            return true;
+        }
+        catch (YDataValidationException e) {
+            return false;
+        }
+    }
+
+
+    private YParameter newParam(String name, String type, int ordering,
+                                boolean optional) {
+        YParameter param = new YParameter(null, YParameter._INPUT_PARAM_TYPE);
+        param.setDataTypeAndName(type, name, XSD_NAMESPACE);
+        param.setOrdering(ordering);
+        param.setOptional(optional);
+        return param;
+    }
+
+
+    public static void main(String args[]) {
+        TestRunner runner = new TestRunner();
+        runner.doRun(suite());
+        System.exit(0);
+    }
+
+    public static Test suite() {
+        TestSuite suite = new TestSuite();
+        suite.addTestSuite(TestDataValidatorCache.class);
+        return suite;
+    }
+}
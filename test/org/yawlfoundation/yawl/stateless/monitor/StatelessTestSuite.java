@@ -0,0 +1,20 @@
+package org.yawlfoundation.yawl.stateless.monitor;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+/**
+ * The tests of the stateless engine's case monitoring.
+ */
+public class StatelessTestSuite extends TestSuite {
+
+    public StatelessTestSuite(String name) {
+        super(name);
+    }
+
+    public static Test suite() {
+        TestSuite suite = new TestSuite();
+        suite.addTestSuite(TestCaseSnapshot.class);
+        return suite;
+    }
+}
@@ -0,0 +1,266 @@
+package org.yawlfoundation.yawl.stateless.monitor;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+import org.yawlfoundation.yawl.exceptions.YStateException;
+import org.yawlfoundation.yawl.stateless.YStatelessEngine;
+import org.yawlfoundation.yawl.stateless.elements.YSpecification;
+import org.yawlfoundation.yawl.stateless.elements.YTask;
+import org.yawlfoundation.yawl.stateless.elements.marking.YIdentifier;
+import org.yawlfoundation.yawl.stateless.engine.YNetRunner;
+import org.yawlfoundation.yawl.stateless.engine.YWorkItem;
+import org.yawlfoundation.yawl.util.JDOMUtil;
+import org.yawlfoundation.yawl.util.StringUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Checks that the binary snapshot encodes and decodes its values, that a case
+ * restored from a binary snapshot has the same state as the original case and as the
+ * case restored from the XML form, and that a snapshot is smaller than the XML form.
+ */
+public class TestCaseSnapshot extends TestCase {
+
+    // long enough not to expire during a test
+    private static final long IDLE_TIMEOUT = 600000;
+
+    private YStatelessEngine _engine;
+    private YSpecification _spec;
+
+    public TestCaseSnapshot(String name) {
+        super(name);
+    }
+
+
+    public void setUp() throws Exception {
+        _engine = new YStatelessEngine();
+        URL fileURL = getClass().getResource("SnapshotSpecification.xml");
+        File specFile = new File(fileURL.getFile());
+        _spec = _engine.unmarshalSpecification(
+                StringUtil.fileToString(specFile.getAbsolutePath()));
+    }
+
+
+    public void tearDown() {
+        _engine.setCaseMonitoringEnabled(false);
+    }
+
+
+    public void testValues() throws Exception {
+        YCaseSnapshot.Writer writer = new YCaseSnapshot.Writer();
+        String[] strings = { "Receive", null, "", "\u00dcn\u00efc\u00f8d\u00e9", "Receive", "Pack" };
+        int[] counts = { 0, 1, 127, 128, 16383, 16384, Integer.MAX_VALUE };
+        for (String s : strings) writer.writeString(s);
+        for (int count : counts) writer.writeCount(count);
+        writer.writeLong(Long.MIN_VALUE);
+        writer.writeFlags(YCaseExporter.TIMER_STARTED);
+
+        YCaseSnapshot.Reader reader = new YCaseSnapshot.Reader(writer.toByteArray());
+        for (String s : strings) assertEquals(s, reader.readString());
+        for (int count : counts) assertEquals(count, reader.readCount());
+        assertEquals(Long.MIN_VALUE, reader.readLong());
+        assertEquals(YCaseExporter.TIMER_STARTED, reader.readFlags());
+    }
+
+
+    public void testRepeatedStrings() throws Exception {
+        YCaseSnapshot.Writer once = new YCaseSnapshot.Writer();
+        once.writeString("InputCondition");
+        YCaseSnapshot.Writer many = new YCaseSnapshot.Writer();
+        for (int i = 0; i < 100; i++) many.writeString("InputCondition");
+
+        // each repeat is written as a one byte reference to the first
+        assertEquals(once.toByteArray().length + 99, many.toByteArray().length);
+    }
+
+
+    public void testMalformed() {
+        try {
+            new YCaseSnapshot.Reader("<case/>".getBytes());
+            fail("Expected a YStateException");
+        }
+        catch (YStateException yse) {
+            // expected
+        }
+    }
+
+
+    public void testCorruptLength() throws Exception {
+        for (int length : new int[] { -1, Integer.MAX_VALUE, 5 }) {
+            YCaseSnapshot.Writer writer = new YCaseSnapshot.Writer();
+            writer.writeCount(1);                                 // a new string
+            writer.writeCount(length);
+            writer.writeFlags(0);
+            YCaseSnapshot.Reader reader = new YCaseSnapshot.Reader(writer.toByteArray());
+            try {
+                reader.readString();
+                fail("Expected an IOException");
+            }
+            catch (IOException ioe) {
+                assertTrue(ioe.getMessage().startsWith("Malformed"));
+            }
+        }
+
+        // a case snapshot with a corrupt length is rejected as malformed
+        byte[] snapshot = _engine.marshalCaseSnapshot(launchAndProgress("case-4"));
+        byte[] corrupt = new byte[snapshot.length + 4];
+        System.arraycopy(snapshot, 0, corrupt, 0, 6);        // header, first string
+        System.arraycopy(new byte[] { -1, -1, -1, -1, 0x0F }, 0, corrupt, 6, 5);
+        System.arraycopy(snapshot, 7, corrupt, 11, snapshot.length - 7);
+        try {
+            _engine.restoreCase(corrupt);
+            fail("Expected a YStateException");
+        }
+        catch (YStateException yse) {
+            assertTrue(yse.getMessage().startsWith("Malformed"));
+        }
+    }
+
+
+    public void testRoundTrip() throws Exception {
+        YNetRunner runner = launchAndProgress("case-1");
+        String expected = summarise(runner);
+        byte[] snapshot = _engine.marshalCaseSnapshot(runner);
+        String caseXML = _engine.marshalCase(runner);
+
+        YStatelessEngine other = new YStatelessEngine();
+        other.registerSpecification(_spec);
+        YNetRunner fromSnapshot = other.restoreCase(snapshot);
+        assertEquals(expected, summarise(fromSnapshot));
+        assertEquals(summarise(other.restoreCase(caseXML)), summarise(fromSnapshot));
+        assertTrue(snapshot.length < caseXML.length());
+
+        // and the restored case can be snapshotted again
+        YNetRunner again = other.restoreCase(other.marshalCaseSnapshot(fromSnapshot));
+        assertEquals(expected, summarise(again));
+    }
+
+
+    public void testUnregisteredSpecification() throws Exception {
+        byte[] snapshot = _engine.marshalCaseSnapshot(launchAndProgress("case-2"));
+        YStatelessEngine other = new YStatelessEngine();
+        assertFalse(other.isSpecificationRegistered(_spec.getSpecificationID()));
+        try {
+            other.restoreCase(snapshot);
+            fail("Expected a YStateException");
+        }
+        catch (YStateException yse) {
+            // expected
+        }
+    }
+
+
+    public void testUnload() throws Exception {
+        _engine.setCaseMonitoringEnabled(true, IDLE_TIMEOUT);
+        YNetRunner runner = launchAndProgress("case-3");
+        String expected = summarise(runner);
+        byte[] snapshot = _engine.unloadCaseSnapshot(runner.getCaseID());
+        try {
+            _engine.isIdleCase(runner);
+            fail("Expected the unloaded case to be unknown");
+        }
+        catch (YStateException yse) {
+            // expected
+        }
+        assertEquals(expected, summarise(_engine.restoreCase(snapshot)));
+    }
+
+
+    // completes the first task, then starts one of the two it enables
+    private YNetRunner launchAndProgress(String caseID) throws Exception {
+        YNetRunner runner = _engine.launchCase(_spec, caseID);
+        if (_engine.isCaseMonitoringEnabled()) awaitMonitored(runner);
+        YWorkItem started = _engine.startWorkItem(getEnabledItem(runner, "Receive"));
+        _engine.completeWorkItem(started, "<Work/>", null);
+        _engine.startWorkItem(getEnabledItem(runner, "Check"));
+        return runner;
+    }
+
+
+    // case events reach the monitor asynchronously. Until the started event replaces
+    // the starting one, the monitor holds the case without its idle timeout
+    private void awaitMonitored(YNetRunner runner) throws Exception {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (true) {
+            try {
+                _engine.isIdleCase(runner);
+                return;
+            }
+            catch (YStateException yse) {
+                if (System.currentTimeMillis() > deadline) throw yse;
+                Thread.sleep(10);
+            }
+        }
+    }
+
+
+    private YWorkItem getEnabledItem(YNetRunner runner, String taskID) {
+        for (YWorkItem item : runner.getWorkItemRepository().getEnabledWorkItems()) {
+            if (item.getTaskID().equals(taskID)) return item;
+        }
+        fail("No enabled item for task " + taskID);
+        return null;
+    }
+
+
+    // an order independent description of a case's state
+    private String summarise(YNetRunner topRunner) {
+        List<String> lines = new ArrayList<>();
+        for (YNetRunner runner : topRunner.getAllRunnersForCase()) {
+            lines.add("runner " + runner.getCaseID() + " " + runner.getExecutionStatus() +
+                    " " + runner.getStartTime() + " " +
+                    JDOMUtil.elementToString(JDOMUtil.stringToElement(
+                            runner.getNetData().getData())));
+            lines.add("enabled " + toSortedIDs(runner.getEnabledTasks()));
+            lines.add("busy " + toSortedIDs(runner.getBusyTasks()));
+            summariseIdentifier(runner.getCaseID(), lines);
+            for (YWorkItem item : runner.getWorkItemRepository().getWorkItems()) {
+                YWorkItem parent = item.getParent();
+                lines.add("item " + item.get_thisID() + " " + item.getStatus() + " " +
+                        item.get_prevStatus() + " " + item.getEnablementTime() + " " +
+                        item.getStartTime() + " " + item.getDataString() + " " +
+                        (parent != null ? parent.get_thisID() : null));
+            }
+        }
+        Collections.sort(lines);
+        return lines.toString();
+    }
+
+
+    private void summariseIdentifier(YIdentifier id, List<String> lines) {
+        List<String> locations = new ArrayList<>(id.getLocationNames());
+        Collections.sort(locations);
+        lines.add("id " + id + " " + locations);
+        for (YIdentifier child : id.getChildren()) {
+            summariseIdentifier(child, lines);
+        }
+    }
+
+
+    private List<String> toSortedIDs(Iterable<YTask> tasks) {
+        List<String> ids = new ArrayList<>();
+        for (YTask task : tasks) ids.add(task.getID());
+        Collections.sort(ids);
+        return ids;
+    }
+
+
+    public static void main(String args[]) {
+        TestRunner runner = new TestRunner();
+        runner.doRun(suite());
+        System.exit(0);
+    }
+
+    public static Test suite() {
+        TestSuite suite = new TestSuite();
+        suite.addTestSuite(TestCaseSnapshot.class);
+        return suite;
+    }
+}
@@ -0,0 +1,101 @@
+package org.yawlfoundation.yawl.util;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+import org.jdom2.Document;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Checks the parsing entry points of JDOMUtil, and that its per-thread builders
+ * parse correctly when used from several threads at once.
+ */
+public class TestJDOMUtil extends TestCase {
+
+    private static final int PARSES_PER_THREAD = 200;
+
+    private static final String XML =
+            "<workItem>\n  <id>123.4:task_1</id>\n  <status>Enabled</status>\n" +
+            "  <data><order><item qty=\"2\">widget</item>  <note> a note </note>" +
+            "</order></data>\n</workItem>";
+
+    public TestJDOMUtil(String name) {
+        super(name);
+    }
+
+
+    public void testEntryPointsAgree() throws Exception {
+        String expected = JDOMUtil.documentToString(JDOMUtil.stringToDocument(XML));
+        assertNotNull(expected);
+
+        byte[] bytes = (JDOMUtil.UTF8_BOM + XML).getBytes("UTF-8");
+        assertEquals(expected, JDOMUtil.documentToString(
+                JDOMUtil.streamToDocument(new ByteArrayInputStream(bytes))));
+        assertEquals(expected, JDOMUtil.documentToString(
+                JDOMUtil.readerToDocument(new StringReader(JDOMUtil.UTF8_BOM + XML))));
+        assertEquals(expected, JDOMUtil.documentToString(
+                JDOMUtil.stringToDocument(JDOMUtil.UTF8_BOM + XML)));
+    }
+
+
+    public void testBadInput() {
+        assertNull(JDOMUtil.stringToDocument("<unclosed>"));
+        assertNull(JDOMUtil.readerToDocument(new StringReader("<unclosed>")));
+        assertNull(JDOMUtil.streamToDocument(null));
+        assertNull(JDOMUtil.readerToDocument(null));
+    }
+
+
+    public void testConcurrentParsing() throws Exception {
+        final String expected = JDOMUtil.documentToString(JDOMUtil.stringToDocument(XML));
+        int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+        final AtomicInteger parsed = new AtomicInteger();
+        final List<Exception> failures = new ArrayList<Exception>();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        for (int i = 0; i < threads; i++) {
+            executor.execute(new Runnable() {
+                public void run() {
+                    try {
+                        for (int j = 0; j < PARSES_PER_THREAD; j++) {
+                            Document doc = JDOMUtil.stringToDocumentUncaught(XML);
+                            if (expected.equals(JDOMUtil.documentToString(doc))) {
+                                parsed.incrementAndGet();
+                            }
+                        }
+                    }
+                    catch (Exception e) {
+                        synchronized (failures) {
+                            failures.add(e);
+                        }
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.MINUTES));
+        assertTrue(failures.toString(), failures.isEmpty());
+        assertEquals(threads * PARSES_PER_THREAD, parsed.get());
+    }
+
+
+    public static void main(String args[]) {
+        TestRunner runner = new TestRunner();
+        runner.doRun(suite());
+        System.exit(0);
+    }
+
+    public static Test suite() {
+        TestSuite suite = new TestSuite();
+        suite.addTestSuite(TestJDOMUtil.class);
+        return suite;
+    }
+}
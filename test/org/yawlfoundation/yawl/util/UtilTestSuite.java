@@ -17,6 +17,7 @@ public class UtilTestSuite extends TestSuite{
 
     public static Test suite(){
         TestSuite suite = new TestSuite();
+        suite.addTestSuite(TestJDOMUtil.class);
         return suite;
     }
 }
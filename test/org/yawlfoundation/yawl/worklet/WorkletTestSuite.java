@@ -0,0 +1,21 @@
+package org.yawlfoundation.yawl.worklet;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+import org.yawlfoundation.yawl.worklet.support.TestConditionEvaluator;
+
+/**
+ * The tests of the worklet service's rule evaluation.
+ */
+public class WorkletTestSuite extends TestSuite {
+
+    public WorkletTestSuite(String name) {
+        super(name);
+    }
+
+    public static Test suite() {
+        TestSuite suite = new TestSuite();
+        suite.addTestSuite(TestConditionEvaluator.class);
+        return suite;
+    }
+}
@@ -0,0 +1,123 @@
+package org.yawlfoundation.yawl.worklet.support;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import junit.textui.TestRunner;
+import org.jdom2.Element;
+import org.yawlfoundation.yawl.util.JDOMUtil;
+import org.yawlfoundation.yawl.worklet.rdrutil.RdrConditionException;
+
+/**
+ * Checks that evaluating compiled RDR conditions gives the same outcomes (results
+ * and exception messages) as evaluating their source strings.
+ */
+public class TestConditionEvaluator extends TestCase {
+
+    private static final String DATA =
+            "<data><Age>42</Age><Name>Fred</Name><Amount>1250.50</Amount>" +
+            "<Approved>true</Approved><Count>0</Count><Minus>-3</Minus></data>";
+
+    private static final String[] CONDITIONS = {
+            "Age > 40", "Age < 40", "Age >= 42 & Name = \"Fred\"",
+            "Age + 8 = 50", "Age * 2 - 4 / 2 = 82", "(Age + 8) * 2 = 100",
+            "((Age + 8) * 2 = 100) & (Amount > 1000)", "!(Age > 40)", "!Approved",
+            "Approved", "Approved = true", "Age != 42 | Name = \"Fred\"",
+            "(Age)", "(Age) > 41", "(Age > 41)", "(Name) = \"Fred\"",
+            "(\"Fred\") = Name", "(Name = \"Fred\") = true", "Minus < 0",
+            "(Minus) < 0", "(Age - 50) < 0", "(1.5 * 2) = 3", "((()))Age > 1",
+            "Unknown = \"Unknown\"", "Count = 0 | (Age / Count > 1)",
+            "Age > \"forty\"", "Age >", "Age > 40 &", "(Age > 40", "Age @ 4",
+            "\"unterminated = 1", "42", "Name", "Age = (Count)", "true",
+            "/data/Age > 40", "{/data/Name = 'Fred'}", "/data/Age[", "{boolean(}",
+            "(Age > 40)(Age < 50)", "Age(Count)", "cost[case] > 0"
+    };
+
+    private ConditionEvaluator _evaluator;
+    private Element _data;
+
+    public TestConditionEvaluator(String name) {
+        super(name);
+    }
+
+
+    public void setUp() {
+        _evaluator = new ConditionEvaluator();
+        _data = JDOMUtil.stringToElement(DATA);
+    }
+
+
+    public void testSameOutcomes() {
+        for (String condition : CONDITIONS) {
+            ConditionEvaluator.CompiledCondition compiled = _evaluator.compile(condition);
+            for (boolean isDesignTime : new boolean[] { false, true }) {
+                assertEquals(condition, evaluate(condition, isDesignTime),
+                        evaluate(compiled, isDesignTime));
+            }
+        }
+    }
+
+
+    public void testCompiled() {
+        assertTrue(_evaluator.compile("((Age + 8) * 2 = 100) & (Amount > 1000)")
+                .isCompiled());
+        assertTrue(_evaluator.compile("/data/Age > 40").isCompiled());
+        assertFalse(_evaluator.compile("Age >").isCompiled());
+        assertFalse(_evaluator.compile("").isCompiled());
+        assertFalse(_evaluator.compile(null).isCompiled());
+    }
+
+
+    public void testSourceTracking() {
+        ConditionEvaluator.CompiledCondition compiled = _evaluator.compile("Age > 40");
+        assertTrue(compiled.isCompiledFrom("Age > 40"));
+        assertFalse(compiled.isCompiledFrom("Age > 41"));
+        assertTrue(_evaluator.compile(null).isCompiledFrom(null));
+    }
+
+
+    public void testNullData() {
+        try {
+            _evaluator.evaluate(_evaluator.compile("Age > 40"), null);
+            fail("evaluation should have failed");
+        }
+        catch (RdrConditionException e) {
+            assertTrue(e.getMessage().contains("data element is null"));
+        }
+    }
+
+
+    // the result, or the exception message, of evaluating a source condition
+    private String evaluate(String condition, boolean isDesignTime) {
+        try {
+            return String.valueOf(_evaluator.evaluate(condition, _data, isDesignTime));
+        }
+        catch (Exception e) {
+            return e.getClass().getSimpleName() + ": " + e.getMessage();
+        }
+    }
+
+
+    private String evaluate(ConditionEvaluator.CompiledCondition condition,
+                            boolean isDesignTime) {
+        try {
+            return String.valueOf(_evaluator.evaluate(condition, _data, isDesignTime));
+        }
+        catch (Exception e) {
+            return e.getClass().getSimpleName() + ": " + e.getMessage();
+        }
+    }
+
+
+    public static void main(String args[]) {
+        TestRunner runner = new TestRunner();
+        runner.doRun(suite());
+        System.exit(0);
+    }
+
+    public static Test suite() {
+        TestSuite suite = new TestSuite();
+        suite.addTestSuite(TestConditionEvaluator.class);
+        return suite;
+    }
+}